@@ -0,0 +1,48 @@
+package com.vision.middleware.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Configuration class for running {@code @Async} methods off the request thread.
+ */
+@Configuration
+@EnableAsync
+public class AsyncConfig implements AsyncConfigurer {
+
+    /**
+     * Bean definition for the executor used by {@code @Async} methods.
+     * The queue is bounded; when it is full the submitting thread runs the task itself,
+     * which slows producers down instead of dropping work.
+     *
+     * @return configured task executor
+     */
+    @Bean(name = "taskExecutor")
+    public ThreadPoolTaskExecutor taskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(10_000);
+        executor.setThreadNamePrefix("async-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true); // let queued work (e.g. timeline fan-out) finish
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Makes {@code @Async} methods use {@link #taskExecutor()}.
+     *
+     * @return the async executor
+     */
+    @Override
+    public Executor getAsyncExecutor() {
+        return taskExecutor();
+    }
+}
@@ -0,0 +1,49 @@
+package com.vision.middleware.config;
+
+import com.vision.middleware.service.ClusterTransport;
+import com.vision.middleware.service.LocalClusterTransport;
+import com.vision.middleware.service.PostgresClusterTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration class for the transport connecting the nodes of a cluster, e.g. to fan out WebSocket messages and
+ * the changes behind the in-memory caches.
+ */
+@Configuration
+public class ClusterConfig {
+
+    /**
+     * Transport within this JVM only, for a single node.
+     */
+    public static final String TRANSPORT_LOCAL = "local";
+
+    /**
+     * Transport over Postgres {@code LISTEN}/{@code NOTIFY}, for several nodes sharing the database.
+     */
+    public static final String TRANSPORT_POSTGRES = "postgres";
+
+    /**
+     * The configured transport, {@code local} or {@code postgres}.
+     */
+    @Value("${cluster.transport:" + TRANSPORT_LOCAL + "}")
+    private String transport;
+
+    /**
+     * Bean definition for the cluster transport selected with {@code cluster.transport}.
+     *
+     * @param dataSource the application's data source, used by the Postgres transport
+     * @return the configured transport, closed at shutdown
+     */
+    @Bean(destroyMethod = "close")
+    public ClusterTransport clusterTransport(DataSource dataSource) {
+        return switch (transport) {
+            case TRANSPORT_LOCAL -> new LocalClusterTransport();
+            case TRANSPORT_POSTGRES -> new PostgresClusterTransport(dataSource);
+            default -> throw new IllegalStateException("Unknown cluster.transport: " + transport);
+        };
+    }
+}
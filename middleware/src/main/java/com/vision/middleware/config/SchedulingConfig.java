@@ -0,0 +1,12 @@
+package com.vision.middleware.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration class enabling {@code @Scheduled} background jobs (e.g. hot score decay).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
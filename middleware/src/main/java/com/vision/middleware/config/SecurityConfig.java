@@ -118,11 +118,15 @@ public class SecurityConfig {
                 auth.requestMatchers("/user/following/list").hasAnyRole("ADMIN", "USER"); //probably very unnecessary
                 auth.requestMatchers("/user/account/**").hasAnyRole("ADMIN", "USER");
                 auth.requestMatchers("/user/search").permitAll(); // allow searching by anyone
+                auth.requestMatchers("/user/autocomplete").permitAll();
                 auth.requestMatchers("/user/**").hasAnyRole("ADMIN", "USER");
                 auth.requestMatchers("/chat/**").hasAnyRole("ADMIN", "USER"); // is this being used?
                 auth.requestMatchers("/replies/post/**").permitAll();
+                auth.requestMatchers("/post/import").hasRole("ADMIN");
                 auth.requestMatchers("/post/new").hasAnyRole("ADMIN", "USER");
+                auth.requestMatchers("/post/feed").hasAnyRole("ADMIN", "USER");
                 auth.requestMatchers("/post/all").permitAll();
+                auth.requestMatchers("/post/all/cursor").permitAll();
                 auth.requestMatchers("/post/search**").permitAll(); // anyone is allowed to search i guess
                 auth.requestMatchers("/ws/notifications/testCreate").denyAll();
                 auth.requestMatchers("/ws/**", "/ws/notifications/**").permitAll(); // websocket
@@ -1,5 +1,6 @@
 package com.vision.middleware.config;
 
+import com.vision.middleware.service.WebSocketClusterBridge;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
@@ -18,6 +19,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final AuthChannelInterceptor authChannelInterceptor;
 
+    private final WebSocketClusterBridge webSocketClusterBridge;
+
     /**
      * Configures the client inbound channel to add authentication interceptors.
      *
@@ -30,6 +33,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     /**
      * Configures the message broker to enable simple broker and set destination prefixes.
+     * Each node's simple broker only reaches its own sessions, so the broker channel is intercepted by the
+     * {@link WebSocketClusterBridge}, which relays user and topic messages to the other nodes that need them.
      *
      * @param config the {@link MessageBrokerRegistry} object for configuring the message broker
      */
@@ -38,6 +43,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        config.configureBrokerChannel().interceptors(webSocketClusterBridge);
     }
 
     /**
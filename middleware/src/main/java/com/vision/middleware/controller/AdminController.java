@@ -1,8 +1,14 @@
 package com.vision.middleware.controller;
 
+import com.vision.middleware.dto.VoteReconciliationReportDTO;
+import com.vision.middleware.service.VoteReconciliationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -12,8 +18,12 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 @RequestMapping("/admin")
 @CrossOrigin("*") // todo: change this later
+@RequiredArgsConstructor
 public class AdminController {
 
+    @Autowired
+    private final VoteReconciliationService voteReconciliationService;
+
     /**
      * Returns a success message indicating admin-level access to the requester.
      *
@@ -24,4 +34,28 @@ public class AdminController {
         return ResponseEntity.ok("Admin level access");
     }
 
+    /**
+     * Returns the progress of the running vote count reconciliation, or the result of the last one.
+     *
+     * @return ResponseEntity with the reconciliation report and an HTTP 200 OK status.
+     */
+    @GetMapping("/votes/reconcile")
+    public ResponseEntity<VoteReconciliationReportDTO> getVoteReconciliation() {
+        return ResponseEntity.ok(voteReconciliationService.getProgress());
+    }
+
+    /**
+     * Starts reconciling the vote counts of all posts and replies in the background.
+     *
+     * @return ResponseEntity with the reconciliation report and an HTTP 202 Accepted status,
+     * or 409 Conflict if a reconciliation is already running.
+     */
+    @PostMapping("/votes/reconcile")
+    public ResponseEntity<VoteReconciliationReportDTO> startVoteReconciliation() {
+        if (voteReconciliationService.isRunning()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(voteReconciliationService.getProgress());
+        }
+        voteReconciliationService.reconcileAsync();
+        return ResponseEntity.accepted().body(voteReconciliationService.getProgress());
+    }
 }
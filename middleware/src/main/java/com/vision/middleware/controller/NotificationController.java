@@ -3,20 +3,25 @@ package com.vision.middleware.controller;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Notification;
+import com.vision.middleware.dto.AcknowledgeRequest;
 import com.vision.middleware.dto.NotificationDTO;
 import com.vision.middleware.service.NotificationService;
 import com.vision.middleware.service.UserService;
+import com.vision.middleware.utils.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.security.Principal;
@@ -46,37 +51,109 @@ public class NotificationController {
     private final UserService userService;
 
     /**
-     * Handles WebSocket message to acknowledge a notification.
+     * Utility for reading the user ID from JWT tokens.
+     */
+    @Autowired
+    private final JwtUtil jwtUtil;
+
+    /**
+     * Handles WebSocket message to acknowledge a notification. Runs a single update scoped to the user's own
+     * notifications, so a notification of another user, or one that does not exist, is left alone.
      *
      * @param principal  the authenticated user principal, containing the user's ID as the name
      * @param notificationId  the ID of the notification to acknowledge
-     *
-     * @throws IdNotFoundException if the notification ID does not exist
      */
     @MessageMapping("/notifications/acknowledge")
     public void acknowledgeNotification(Principal principal, @Payload long notificationId) {
-        ApplicationUser user = userService.loadUserById(Long.parseLong(principal.getName()));
+        notificationService.acknowledgeNotifications(Long.parseLong(principal.getName()), List.of(notificationId));
+    }
 
-        // does notification belong to user?
-        if (notificationService.doesNotificationBelongToUser(notificationId, user)) {
-            notificationService.acknowledgeNotification(notificationId);
+    /**
+     * Handles WebSocket message to acknowledge several notifications at once: a list of IDs, or all up to an ID.
+     * The number of notifications acknowledged is sent back to /user/queue/notifications/acknowledged.
+     *
+     * @param principal  the authenticated user principal, containing the user's ID as the name
+     * @param request    the IDs, or the ID up to which to acknowledge
+     * @return the number of notifications acknowledged now, or null (nothing sent back) if the request is invalid
+     */
+    @MessageMapping("/notifications/acknowledgeBulk")
+    @SendToUser("/queue/notifications/acknowledged")
+    public Integer acknowledgeNotifications(Principal principal, @Payload AcknowledgeRequest request) {
+        try {
+            return acknowledge(Long.parseLong(principal.getName()), request);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid bulk acknowledgement of {}: {}", principal.getName(), e.getMessage());
+            return null;
         }
     }
 
     /**
-     * Handles WebSocket message to retrieve and send all unread notifications for the authenticated user.
+     * Acknowledges several notifications of the authenticated user at once: a list of IDs (at most
+     * {@link NotificationService#MAX_BULK_ACKNOWLEDGE}), or all up to an ID. Notifications of other users are
+     * left alone.
+     *
+     * @param token    Authorization token containing the user's ID
+     * @param request  the IDs, or the ID up to which to acknowledge
+     * @return the number of notifications acknowledged now, or 400 if not exactly one of the two is given or
+     *         there are too many IDs
+     */
+    @PostMapping("/notifications/acknowledge")
+    @ResponseBody
+    public ResponseEntity<Integer> acknowledgeNotifications(@RequestHeader("Authorization") String token,
+                                                            @RequestBody AcknowledgeRequest request) {
+        long id = jwtUtil.checkJwtAuthAndGetUserId(token);
+        try {
+            return ResponseEntity.ok(acknowledge(id, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    private int acknowledge(long userId, AcknowledgeRequest request) {
+        if (request == null || (request.getIds() == null) == (request.getUpToId() == null)) {
+            throw new IllegalArgumentException("Either ids or upToId must be given.");
+        }
+        if (request.getUpToId() != null) {
+            return notificationService.acknowledgeNotificationsUpTo(userId, request.getUpToId());
+        }
+        return notificationService.acknowledgeNotifications(userId, request.getIds());
+    }
+
+    /**
+     * Handles WebSocket message to retrieve and send a page of unread notifications for the authenticated user.
+     * The page is sent as one frame to /user/queue/notifications/unread; the client asks for the next one by
+     * sending the page's {@code nextCursor} as the payload of this message.
      *
      * @param principal  the authenticated user principal, containing the user's ID
+     * @param cursor     cursor of the previous page, or empty for the first page
      */
     @MessageMapping("/notifications/getUnread")
-    public void getUnreadNotifications(Principal principal) {
+    public void getUnreadNotifications(Principal principal, @Payload(required = false) String cursor) {
         if (principal != null) {
             ApplicationUser user = userService.loadUserById(Long.parseLong(principal.getName()));
-            notificationService.sendUnreadNotifications(user);
+            try {
+                notificationService.sendUnreadNotifications(user, cursor);
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unread notifications request of {} with a malformed cursor", user.getId());
+                return;
+            }
             log.info("Unread user notifications sent to {}", user.getId());
         }
     }
 
+    /**
+     * Retrieves the number of unread notifications of the authenticated user, e.g. for a badge.
+     *
+     * @param token  Authorization token containing the user's ID
+     * @return the unread notification count
+     */
+    @GetMapping("/notifications/unread/count")
+    @ResponseBody
+    public ResponseEntity<Long> getUnreadCount(@RequestHeader("Authorization") String token) {
+        long id = jwtUtil.checkJwtAuthAndGetUserId(token);
+        return ResponseEntity.ok(notificationService.getUnreadCount(id));
+    }
+
     /**
      * **TODO: TEMPORARY TESTING METHOD - TO BE REMOVED LATER**
      *
@@ -95,6 +172,8 @@ public class NotificationController {
                 .notificationType(notification.getNotificationType())
                 .timeCreated(Instant.now())
                 .notificationBody(notification.getNotificationBody())
+                .targetType(notification.getTargetType())
+                .targetId(notification.getTargetId())
                 .acknowledged(false)
                 .associatedUser(userService.loadUserById(notification.getToUserId()))
                 .build();
@@ -4,21 +4,31 @@ import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.MediaPost;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.PostImportReportDTO;
 import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.service.PostImportService;
+import com.vision.middleware.service.PostSearchService;
 import com.vision.middleware.service.PostService;
+import com.vision.middleware.service.TimelineService;
+import com.vision.middleware.service.VoteCounterBuffer;
 import com.vision.middleware.utils.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -29,10 +39,15 @@ import java.util.Optional;
  */
 @RestController
 @RequestMapping("/post")
-@CrossOrigin("*") // todo: change this later
+@CrossOrigin(value = "*", exposedHeaders = PostController.NEXT_CURSOR_HEADER) // todo: change this later
 @RequiredArgsConstructor
 public class PostController {
 
+    /**
+     * Response header carrying the cursor of the next page of search results.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     /**
      * Utility for handling JSON Web Tokens (JWTs).
      */
@@ -45,6 +60,30 @@ public class PostController {
     @Autowired
     private final PostService postService;
 
+    /**
+     * Service for users' home timelines.
+     */
+    @Autowired
+    private final TimelineService timelineService;
+
+    /**
+     * Service for searching posts.
+     */
+    @Autowired
+    private final PostSearchService postSearchService;
+
+    /**
+     * Service for bulk-importing posts.
+     */
+    @Autowired
+    private final PostImportService postImportService;
+
+    /**
+     * Vote counts not yet written to the database, added to the counts that are read.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
     /**
      * Repository for user data access.
      */
@@ -65,12 +104,30 @@ public class PostController {
         return ResponseEntity.ok(buildDTOFromPost(createdPost));
     }
 
+    /**
+     * Bulk-imports posts from a JSON array of PostDTOs, streaming the request body.
+     * Posts without a postedBy user ID are attributed to the caller. Admin only.
+     *
+     * @param token        Authorization token containing the user's ID
+     * @param body         JSON array of posts to import
+     * @return              Summary of the import, or 400 if the body is not a JSON array of posts
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PostImportReportDTO> importPosts(@RequestHeader("Authorization") String token, InputStream body) {
+        long id = jwtUtil.checkJwtAuthAndGetUserId(token);
+        try {
+            return ResponseEntity.ok(postImportService.importPosts(body, id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
     /**
      * Retrieves a paginated list of posts, sorted by the specified criteria.
      *
      * @param page         Page number (0-indexed)
      * @param size         Number of posts per page
-     * @param sortBy       Sort criteria ("date" or "popularity")
+     * @param sortBy       Sort criteria ("date", "popularity", "hot" or "active")
      * @param beforeDate   Optional filter: posts before this date
      * @param afterDate    Optional filter: posts after this date
      * @return              Paginated list of PostDTOs
@@ -83,10 +140,7 @@ public class PostController {
             @RequestParam(value = "before-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date beforeDate,
             @RequestParam(value = "after-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date afterDate) {
         
-        Page<Post> posts = postService.getAllPosts(page, size, sortBy, beforeDate, afterDate);
-        Page<PostDTO> postsDTO = posts.map(this::buildDTOFromPost);
-        
-        return ResponseEntity.ok(postsDTO);
+        return ResponseEntity.ok(postService.getAllPostDTOs(page, size, sortBy, beforeDate, afterDate));
     }
 
     /**
@@ -95,7 +149,7 @@ public class PostController {
      * @param username     Username of the post author
      * @param page         Page number (0-indexed)
      * @param size         Number of posts per page
-     * @param sortBy       Sort criteria ("date" or "popularity")
+     * @param sortBy       Sort criteria ("date", "popularity", "hot" or "active")
      * @param beforeDate   Optional filter: posts before this date
      * @param afterDate    Optional filter: posts after this date
      * @return              Paginated list of PostDTOs
@@ -107,9 +161,92 @@ public class PostController {
                            @RequestParam(value = "sort-by", defaultValue = "date") String sortBy,
                            @RequestParam(value = "before-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date beforeDate,
                            @RequestParam(value = "after-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date afterDate) {
-        Page<Post> posts = postService.getAllPostsByUsername(username, page, size, sortBy, beforeDate, afterDate);
-        Page<PostDTO> postsDTO = posts.map(this::buildDTOFromPost);
-        return ResponseEntity.ok(postsDTO);
+        return ResponseEntity.ok(postService.getAllPostDTOsByUsername(username, page, size, sortBy, beforeDate, afterDate));
+    }
+
+    /**
+     * Retrieves a slice of posts using cursor pagination, sorted by the specified criteria.
+     * Intended for infinite scrolling: pass the returned nextCursor to get the following slice.
+     *
+     * @param cursor       Cursor returned with the previous slice (omit for the first slice)
+     * @param size         Number of posts per slice
+     * @param sortBy       Sort criteria ("date", "popularity" or "active"; "hot" cannot be paged with a cursor)
+     * @param beforeDate   Optional filter: posts before this date
+     * @param afterDate    Optional filter: posts after this date
+     * @return              Slice of PostDTOs with the cursor of the next slice, or 400 if the sort or cursor is invalid
+     */
+    @GetMapping("/all/cursor")
+    public ResponseEntity<CursorPageDTO<PostDTO>> getPostSlice(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "sort-by", defaultValue = "date") String sortBy,
+            @RequestParam(value = "before-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date beforeDate,
+            @RequestParam(value = "after-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date afterDate) {
+
+        Slice<Post> posts;
+        try {
+            posts = postService.getPostSlice(cursor, size, sortBy, beforeDate, afterDate);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad sort or cursor
+        }
+
+        return ResponseEntity.ok(buildCursorPageDTO(posts, sortBy));
+    }
+
+    /**
+     * Retrieves a slice of posts from a specific user using cursor pagination, sorted by the specified criteria.
+     *
+     * @param username     Username of the post author
+     * @param cursor       Cursor returned with the previous slice (omit for the first slice)
+     * @param size         Number of posts per slice
+     * @param sortBy       Sort criteria ("date", "popularity" or "active"; "hot" cannot be paged with a cursor)
+     * @param beforeDate   Optional filter: posts before this date
+     * @param afterDate    Optional filter: posts after this date
+     * @return              Slice of PostDTOs with the cursor of the next slice, or 400 if the sort or cursor is invalid
+     */
+    @GetMapping("/by-user/cursor")
+    public ResponseEntity<CursorPageDTO<PostDTO>> getPostSliceByUsername(
+            @RequestParam(value = "username", defaultValue = "") String username,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "sort-by", defaultValue = "date") String sortBy,
+            @RequestParam(value = "before-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date beforeDate,
+            @RequestParam(value = "after-date", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date afterDate) {
+
+        Slice<Post> posts;
+        try {
+            posts = postService.getPostSliceByUsername(username, cursor, size, sortBy, beforeDate, afterDate);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad sort or cursor
+        }
+
+        return ResponseEntity.ok(buildCursorPageDTO(posts, sortBy));
+    }
+
+    /**
+     * Retrieves a slice of the user's home timeline (their own posts and posts of users they follow),
+     * newest first, using cursor pagination.
+     *
+     * @param token        Authorization token containing the user's ID
+     * @param cursor       Cursor returned with the previous slice (omit for the first slice)
+     * @param size         Number of posts per slice
+     * @return              Slice of PostDTOs with the cursor of the next slice, or 400 if the cursor is invalid
+     */
+    @GetMapping("/feed")
+    public ResponseEntity<CursorPageDTO<PostDTO>> getFeed(
+            @RequestHeader("Authorization") String token,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "10") int size) {
+        long userId = jwtUtil.checkJwtAuthAndGetUserId(token);
+
+        Slice<Post> posts;
+        try {
+            posts = timelineService.getTimeline(userId, cursor, size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
+
+        return ResponseEntity.ok(buildCursorPageDTO(posts, "date"));
     }
 
     /**
@@ -130,13 +267,12 @@ public class PostController {
      *
      * @param token        Authorization token containing the user's ID
      * @param voteDTO      Vote data (post ID and vote type)
-     * @return              Updated VoteDTO
+     * @return              VoteDTO with the post's like and dislike counts after the vote
      */
     @PostMapping("/vote")
     public VoteDTO voteOnPost(@RequestHeader("Authorization") String token, @RequestBody VoteDTO voteDTO) {
         long userId = jwtUtil.checkJwtAuthAndGetUserId(token);
-        postService.userVoteOnPost(voteDTO.getVotableId(), userId, voteDTO.getVoteType());
-        return voteDTO;
+        return postService.userVoteOnPost(voteDTO.getVotableId(), userId, voteDTO.getVoteType());
     }
 
     /**
@@ -171,33 +307,63 @@ public class PostController {
     }
 
     /**
-     * Searches for posts containing the specified query.
+     * Retrieves the user's votes on a batch of posts, e.g. all posts of a page, in one request.
+     *
+     * @param token        Authorization token containing the user's ID
+     * @param votableIds   IDs of the posts to check (at most VotingService.MAX_BULK_VOTES)
+     * @return              Map of post ID to VoteType for the posts the user has voted on,
+     *                      or 400 if too many IDs are given
+     */
+    @PostMapping("/votes")
+    public ResponseEntity<Map<Long, UserVote.VoteType>> checkUserVotes(@RequestHeader("Authorization") String token,
+                                                                       @RequestBody List<Long> votableIds) {
+        long userId = jwtUtil.checkJwtAuthAndGetUserId(token);
+        try {
+            return ResponseEntity.ok(postService.getUserVotes(votableIds, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    /**
+     * Searches for posts matching the specified query, best match first.
+     * Returns one page of results; if there are more, the cursor of the next page is sent
+     * in the X-Next-Cursor response header.
      *
      * @param query        Search query
-     * @return              List of matching PostDTOs
+     * @param cursor       Cursor from the X-Next-Cursor header of the previous page (omit for the first page)
+     * @param size         Number of results per page
+     * @return              List of matching PostDTOs, or 400 if the query or cursor is invalid
      */
     @GetMapping("/search")
-    public ResponseEntity<List<PostDTO>> searchPosts(@RequestParam String query) {
+    public ResponseEntity<List<PostDTO>> searchPosts(@RequestParam String query,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "size", defaultValue = "20") int size) {
         // todo: do not allow searches with empty queries?
         if (isQueryInvalid(query)) {
             return ResponseEntity.badRequest().body(null); // do not allow
         }
 
-        // perform search and map to DTOs.
-        return ResponseEntity.ok(
-                postService.searchPosts(query).stream().map(this::buildDTOFromPost).toList()
-        );
+        try {
+            return buildSearchResponse(postSearchService.searchPosts(query, null, null, null, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
     }
 
     /**
-     * Searches for posts containing the specified query, authored by a specific user.
+     * Searches for posts matching the specified query, authored by a specific user.
      *
      * @param query        Search query
      * @param userId       ID of the post author
+     * @param cursor       Cursor from the X-Next-Cursor header of the previous page (omit for the first page)
+     * @param size         Number of results per page
      * @return              List of matching PostDTOs
      */
     @GetMapping("/search-by-user")
-    public ResponseEntity<List<PostDTO>> searchPostsByUser(@RequestParam String query, @RequestParam long userId) {
+    public ResponseEntity<List<PostDTO>> searchPostsByUser(@RequestParam String query, @RequestParam long userId,
+                                                           @RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "size", defaultValue = "20") int size) {
         ApplicationUser user = userRepository.findById(userId).orElse(null);
 
         // is query valid? does user exist?
@@ -206,18 +372,22 @@ public class PostController {
         }
 
         // ok to do search.
-        return ResponseEntity.ok(
-                postService.searchPostsByUser(query, user).stream().map(this::buildDTOFromPost).toList()
-        );
+        try {
+            return buildSearchResponse(postSearchService.searchPosts(query, user, null, null, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
     }
 
     /**
-     * Searches for posts containing the specified query, authored by a specific user, within a date range.
+     * Searches for posts matching the specified query, authored by a specific user, within a date range.
      *
      * @param query        Search query
      * @param userId       ID of the post author
      * @param startDate    Start of the date range (inclusive)
      * @param endDate      End of the date range (inclusive)
+     * @param cursor       Cursor from the X-Next-Cursor header of the previous page (omit for the first page)
+     * @param size         Number of results per page
      * @return              List of matching PostDTOs
      */
     @GetMapping("/search-by-user-date")
@@ -225,7 +395,9 @@ public class PostController {
             @RequestParam String query,
             @RequestParam long userId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size
     ) {
         ApplicationUser user = userRepository.findById(userId).orElse(null);
 
@@ -235,10 +407,26 @@ public class PostController {
         }
 
         // perform search
-        return ResponseEntity.ok(
-                postService.searchPostsByDateRange(query, user, startDate, endDate)
-                        .stream().map(this::buildDTOFromPost).toList()
-        );
+        try {
+            return buildSearchResponse(postSearchService.searchPosts(query, user, startDate, endDate, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
+    }
+
+    /**
+     * Builds the response of a search endpoint: the results as the body, and the next page's cursor
+     * (if any) in the X-Next-Cursor header, so the body stays a plain list.
+     *
+     * @param results the page of search results
+     * @return the response entity
+     */
+    private ResponseEntity<List<PostDTO>> buildSearchResponse(CursorPageDTO<PostDTO> results) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (results.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, results.getNextCursor());
+        }
+        return response.body(results.getContent());
     }
 
     /**
@@ -251,6 +439,22 @@ public class PostController {
         return query == null || query.trim().isEmpty();
     }
 
+    /**
+     * Builds a CursorPageDTO from a slice of Post entities, including the cursor of the next slice.
+     *
+     * @param posts  the slice of Posts to be converted
+     * @param sortBy the sort criteria the slice was fetched with
+     * @return a CursorPageDTO of PostDTOs
+     */
+    private CursorPageDTO<PostDTO> buildCursorPageDTO(Slice<Post> posts, String sortBy) {
+        return CursorPageDTO.<PostDTO>builder()
+                .content(posts.getContent().stream().map(this::buildDTOFromPost).toList())
+                .size(posts.getNumberOfElements())
+                .hasNext(posts.hasNext())
+                .nextCursor(postService.nextCursor(posts, sortBy))
+                .build();
+    }
+
     /**
      * Builds a PostDTO from a Post entity, mapping relevant fields for external exposure.
      *
@@ -263,6 +467,8 @@ public class PostController {
         PostDTO.PostDTOBuilder builder = PostDTO.builder()
                 .postId(post.getId())
                 .datePosted(post.getDatePosted())
+                .replyCount(post.getReplyCount())
+                .lastActivityAt(post.getLastActivityAt())
                 .dislikeCount(post.getDislikeCount())
                 .likeCount(post.getLikeCount())
                 .text(post.getText())
@@ -279,6 +485,8 @@ public class PostController {
             builder.mediaFileName(mediaPost.getMediaFileName());
         }
 
-        return builder.build();
+        PostDTO postDTO = builder.build();
+        voteCounterBuffer.mergeInto(postDTO);
+        return postDTO;
     }
 }
@@ -4,6 +4,7 @@ import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.Reply;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.ReplyDTO;
 import com.vision.middleware.dto.ReplyRequest;
 import com.vision.middleware.dto.UserDTO;
@@ -19,6 +20,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -28,12 +30,12 @@ import java.util.Optional;
  * voting on existing replies, and retrieving reply information.
  *
  * All endpoints require authentication, except
- * {@link #getRepliesToPostNoAuth(long) retrieving replies to a post}.
+ * {@link #getRepliesToPostNoAuth(long) retrieving replies to a post} and retrieving pages of them.
  */
 @RestController
 @RequestMapping("/replies")
 @RequiredArgsConstructor
-@CrossOrigin("*")
+@CrossOrigin(value = "*", exposedHeaders = PostController.NEXT_CURSOR_HEADER) // todo: change this later
 public class ReplyController {
 
     /**
@@ -78,6 +80,55 @@ public class ReplyController {
         return ResponseEntity.ok(commentTreeForPost);
     }
 
+    /**
+     * Retrieves the first page of the comment tree for a post without requiring authentication: the first
+     * top-level replies, each with its first children, down to a maximum depth. Replies whose children are
+     * not all included carry their childCount and a moreCursor for the rest. If there are more top-level
+     * replies, their cursor is sent in the X-Next-Cursor response header.
+     *
+     * @param postId the ID of the post for which to retrieve replies
+     * @param limit number of top-level replies
+     * @param children number of children included per reply
+     * @param depth number of levels included, 1 for the top-level replies only
+     * @return a list of ReplyDTOs representing the first page of the comment tree
+     */
+    @GetMapping("/post/{postId}/tree")
+    public ResponseEntity<List<ReplyDTO>> getReplyTreePageNoAuth(
+            @PathVariable long postId,
+            @RequestParam(value = "limit", defaultValue = "" + ReplyService.DEFAULT_TREE_PAGE_SIZE) int limit,
+            @RequestParam(value = "children", defaultValue = "" + ReplyService.DEFAULT_TREE_CHILDREN) int children,
+            @RequestParam(value = "depth", defaultValue = "" + ReplyService.DEFAULT_TREE_DEPTH) int depth
+    ) {
+        return buildPageResponse(replyService.getCommentTreePage(postId, null, limit, children, depth));
+    }
+
+    /**
+     * Retrieves more replies of a comment tree without requiring authentication: the top-level replies after
+     * an X-Next-Cursor header, or the children of a reply from its moreCursor. Each reply again includes its
+     * first children, down to a maximum depth.
+     *
+     * @param postId the ID of the post for which to retrieve replies
+     * @param cursor the X-Next-Cursor header or moreCursor returned earlier
+     * @param limit number of replies
+     * @param children number of children included per reply
+     * @param depth number of levels included, 1 for the page's replies only
+     * @return a list of ReplyDTOs, or 400 if the cursor is invalid
+     */
+    @GetMapping("/post/{postId}/tree/more")
+    public ResponseEntity<List<ReplyDTO>> getMoreRepliesNoAuth(
+            @PathVariable long postId,
+            @RequestParam String cursor,
+            @RequestParam(value = "limit", defaultValue = "" + ReplyService.DEFAULT_TREE_PAGE_SIZE) int limit,
+            @RequestParam(value = "children", defaultValue = "" + ReplyService.DEFAULT_TREE_CHILDREN) int children,
+            @RequestParam(value = "depth", defaultValue = "" + ReplyService.DEFAULT_TREE_DEPTH) int depth
+    ) {
+        try {
+            return buildPageResponse(replyService.getMoreReplies(postId, cursor, null, limit, children, depth));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
+    }
+
     /**
      * Creates a new reply to a post.
      *
@@ -112,13 +163,12 @@ public class ReplyController {
      *
      * @param token the authentication token for the user casting the vote
      * @param voteDTO the VoteDTO containing the reply ID and vote type
-     * @return the VoteDTO representing the cast vote
+     * @return the VoteDTO representing the cast vote, with the reply's counts after it
      */
     @PostMapping("/vote")
     public VoteDTO voteOnReply(@RequestHeader("Authorization") String token, @RequestBody VoteDTO voteDTO) {
         long userId = jwtUtil.checkJwtAuthAndGetUserId(token);
-        replyService.userVoteOnReply(voteDTO.getVotableId(), userId, voteDTO.getVoteType());
-        return voteDTO;
+        return replyService.userVoteOnReply(voteDTO.getVotableId(), userId, voteDTO.getVoteType());
     }
 
     /**
@@ -152,6 +202,40 @@ public class ReplyController {
                 .orElse(ResponseEntity.noContent().build());
     }
 
+    /**
+     * Retrieves the user's votes on a batch of replies, e.g. all replies shown for a post, in one request.
+     *
+     * @param token the authentication token for the user
+     * @param votableIds the IDs of the replies to check (at most VotingService.MAX_BULK_VOTES)
+     * @return a map of reply ID to vote type for the replies the user has voted on, or a bad request
+     * response if too many IDs are given
+     */
+    @PostMapping("/votes")
+    public ResponseEntity<Map<Long, UserVote.VoteType>> checkUserVotes(@RequestHeader("Authorization") String token,
+                                                                       @RequestBody List<Long> votableIds) {
+        long userId = jwtUtil.checkJwtAuthAndGetUserId(token);
+        try {
+            return ResponseEntity.ok(replyService.getUserVotesOnReplies(votableIds, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    /**
+     * Builds the response of a comment tree page: the replies as the body, and the next page's cursor
+     * (if any) in the X-Next-Cursor header, as for post listings.
+     *
+     * @param page the page of replies
+     * @return the response entity
+     */
+    private ResponseEntity<List<ReplyDTO>> buildPageResponse(CursorPageDTO<ReplyDTO> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(PostController.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getContent());
+    }
+
     /**
      * Builds a ReplyDTO from a Reply entity and the ApplicationUser who authored the reply.
      *
@@ -2,6 +2,7 @@ package com.vision.middleware.controller;
 
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.relations.UserFollows;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.service.FollowerService;
 import com.vision.middleware.service.UserService;
@@ -24,7 +25,7 @@ import java.util.Date;
  */
 @RestController
 @RequestMapping("/user")
-@CrossOrigin("*") // todo: change this later
+@CrossOrigin(value = "*", exposedHeaders = PostController.NEXT_CURSOR_HEADER) // todo: change this later
 @RequiredArgsConstructor
 public class UserController {
 
@@ -162,23 +163,54 @@ public class UserController {
     }
 
     /**
-     * Searches for users by username (case-insensitive).
+     * Fuzzy searches for users by username, display name and full name, best match first.
+     * The cursor of the next page, if any, is returned in the X-Next-Cursor header.
      *
-     * @param query the search query (username or part of username)
-     * @return a list of {@link UserDTO} objects representing the matching users
+     * @param query  the search query (a name or part of a name, typos tolerated)
+     * @param cursor cursor from the X-Next-Cursor header of the previous page (omit for the first page)
+     * @param size   number of results per page
+     * @return a list of {@link UserDTO} summaries of the matching users, or 400 if the query or cursor is invalid
      */
     @GetMapping("/search")
-    public ResponseEntity<List<UserDTO>> searchUsers(@RequestParam String query) {
+    public ResponseEntity<List<UserDTO>> searchUsers(@RequestParam String query,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "size", defaultValue = "20") int size) {
         // query valid?
         if (query == null || query.trim().isEmpty()) {
             return ResponseEntity.badRequest().body(null);
         }
 
         // perform search.
-        return ResponseEntity.ok(
-                userService.searchUsers(query).stream()
-                        .map(this::buildSimpleUserDTO).toList()
-        );
+        CursorPageDTO<UserDTO> results;
+        try {
+            results = userService.searchUsers(query, cursor, size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null); // bad cursor
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (results.getNextCursor() != null) {
+            response.header(PostController.NEXT_CURSOR_HEADER, results.getNextCursor());
+        }
+        return response.body(results.getContent());
+    }
+
+    /**
+     * Suggests users whose username or display name starts with the typed prefix, most followed first.
+     * Meant to be called on every keystroke; answered from memory without querying the database.
+     *
+     * @param prefix the typed prefix (case-insensitive)
+     * @param limit  maximum number of suggestions (at most 10)
+     * @return a list of {@link UserDTO} summaries of the suggested users, or 400 if the prefix is blank
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<UserDTO>> autocompleteUsers(@RequestParam String prefix,
+                                                           @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(null);
+        }
+
+        return ResponseEntity.ok(userService.autocompleteUsers(prefix, limit));
     }
 
     // Profile customization updates
@@ -153,6 +153,24 @@ public class ApplicationUser implements UserDetails {
     @Column(nullable = false)
     private long followingCount = 0;
 
+    /**
+     * Number of notifications the user has not acknowledged yet. Maintained by the statements storing and
+     * acknowledging notifications, never written through the entity; null until counted by
+     * db/notification-unread.sql for users stored before the column existed.
+     */
+    @Builder.Default
+    @Column(name = "unread_notification_count", updatable = false)
+    private Long unreadNotificationCount = 0L;
+
+    /**
+     * Whether the user's home timeline holds the posts of the users they follow. Users start with an empty
+     * timeline that is filled as they follow others; null for users stored before timelines existed, whose
+     * timeline is filled on its first read (see TimelineService). Never written through the entity.
+     */
+    @Builder.Default
+    @Column(name = "timeline_filled", updatable = false)
+    private Boolean timelineFilled = true;
+
     /**
      * Set of users who are following this user.
      */
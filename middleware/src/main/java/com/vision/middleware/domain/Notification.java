@@ -1,6 +1,7 @@
 package com.vision.middleware.domain;
 
 import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.domain.enums.VotableType;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,7 +15,10 @@ import java.time.Instant;
 @Getter
 @Setter
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        // a user's unread notifications, newest first
+        @Index(name = "idx_notifications_user_acknowledged_id", columnList = "user_id, acknowledged, notification_id DESC")
+})
 @Builder
 public class Notification {
     /**
@@ -45,6 +49,19 @@ public class Notification {
     @Column(length = 255)
     private String notificationBody;
 
+    /**
+     * Whether the notification is about a post or a reply, or null if it is about neither.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "target_type")
+    private VotableType targetType;
+
+    /**
+     * The ID of the post or reply the notification is about, or null if it is about neither.
+     */
+    @Column(name = "target_id")
+    private Long targetId;
+
     /**
      * The timestamp when the notification was created.
      */
@@ -7,6 +7,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.Date;
 
@@ -20,10 +21,16 @@ import java.util.Date;
 @Setter
 @SuperBuilder
 @Entity(name = "posts")
+@Table(name = "posts", indexes = {
+        // backs keyset pagination by date: (datePosted, id) descending
+        @Index(name = "idx_posts_date_posted_id", columnList = "date_posted DESC, id DESC"),
+        @Index(name = "idx_posts_user_date_posted_id", columnList = "user_id, date_posted DESC, id DESC"),
+        // backs the "active" sort: (lastActivityAt, id) descending
+        @Index(name = "idx_posts_last_activity_at_id", columnList = "last_activity_at DESC, id DESC")
+})
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "dtype", discriminatorType = DiscriminatorType.STRING)
 @DiscriminatorValue("TEXT")
-@SequenceGenerator(name = "id_generator", sequenceName = "post_sequence", allocationSize = 1)
 public class Post extends VotableEntity {
 
     /**
@@ -47,4 +54,31 @@ public class Post extends VotableEntity {
      * The date when the post was posted.
      */
     private Date datePosted;
+
+    /**
+     * The number of replies to this post that have not been deleted. Only changed in the database, with
+     * the reply (see PostRepository.addReplyActivity), so saving a stale post cannot overwrite it.
+     */
+    @Column(name = "reply_count", nullable = false, updatable = false)
+    @ColumnDefault("0") // lets ddl-auto add the column to existing rows
+    private long replyCount;
+
+    /**
+     * The date of the latest reply to this post, or the post's own date if it has none. Maintained like
+     * replyCount. Filled in for posts stored before the column existed by db/post-activity.sql.
+     */
+    @Column(name = "last_activity_at", updatable = false)
+    private Date lastActivityAt;
+
+    /**
+     * Starts the post's activity at its own date before it is persisted.
+     * Calls the superclass's onPrePersist method to ensure proper initialization.
+     */
+    @PrePersist
+    protected void onPrePersist() {
+        super.onPrePersist();
+        if (lastActivityAt == null) {
+            lastActivityAt = datePosted;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import com.vision.middleware.domain.baseentities.VotableEntity;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.Date;
 import java.util.HashSet;
@@ -14,13 +15,14 @@ import java.util.Set;
  * Each reply is associated with a post and an author, and can have parent and child replies.
  */
 @Entity
-@Table(name = "reply")
+@Table(name = "reply", indexes = {
+        @Index(name = "idx_reply_post_id", columnList = "post_id")
+})
 @Getter
 @Setter
 @SuperBuilder
 @NoArgsConstructor
 @AllArgsConstructor
-@SequenceGenerator(name = "id_generator", sequenceName = "reply_sequence", allocationSize = 1)
 public class Reply extends VotableEntity {
     /**
      * The post to which this reply belongs.
@@ -71,6 +73,24 @@ public class Reply extends VotableEntity {
     @Builder.Default
     private Set<Reply> childReplies = new HashSet<>();
 
+    /**
+     * Materialized path of this reply's ancestors: their IDs from the top-level reply down to the parent,
+     * each followed by a slash, e.g. "/10/20/" for a child of reply 20, which is a child of reply 10.
+     * Top-level replies have the path "/". The replies in the subtree of a reply are exactly those whose
+     * path starts with {@link #getChildPath()}, which an index on the path serves as one range scan.
+     */
+    @Column(name = "path", nullable = false, length = 2000)
+    @ColumnDefault("'/'") // lets ddl-auto add the column to existing rows, see db/reply-paths.sql
+    @Builder.Default
+    private String path = "/";
+
+    /**
+     * Number of ancestors of this reply: 0 for top-level replies.
+     */
+    @Column(name = "depth", nullable = false)
+    @ColumnDefault("0") // lets ddl-auto add the column to existing rows, see db/reply-paths.sql
+    private int depth;
+
     /**
      * Indicates whether this reply has been soft-deleted.
      * When true, the reply's text is replaced with "[deleted]".
@@ -86,6 +106,26 @@ public class Reply extends VotableEntity {
     protected void onPrePersist() {
         super.onPrePersist();
         this.datePosted = new Date();
+        placeUnder(parentReply);
+    }
+
+    /**
+     * Sets the path and depth of this reply for the given parent. Does not change its descendants.
+     *
+     * @param parent the parent reply, or null for a top-level reply
+     */
+    public void placeUnder(Reply parent) {
+        this.path = parent == null ? "/" : parent.getChildPath();
+        this.depth = parent == null ? 0 : parent.getDepth() + 1;
+    }
+
+    /**
+     * Returns the path of this reply's children, which every reply in its subtree starts with.
+     *
+     * @return this reply's path followed by its ID and a slash
+     */
+    public String getChildPath() {
+        return path + getId() + "/";
     }
 
     /**
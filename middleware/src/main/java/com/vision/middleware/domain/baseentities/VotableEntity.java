@@ -2,6 +2,7 @@ package com.vision.middleware.domain.baseentities;
 
 import com.vision.middleware.domain.interfaces.Votable;
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -12,6 +13,9 @@ import lombok.experimental.SuperBuilder;
  * All entities that extend this class can be voted on, with like and dislike counts.
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_votable_hot_score_id", columnList = "hot_score DESC, id DESC")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -20,11 +24,12 @@ import lombok.experimental.SuperBuilder;
 public abstract class VotableEntity implements Votable {
 
     /**
-     * Unique identifier for the votable entity.
-     * Each subclass should specify its own @SequenceGenerator.
+     * Unique identifier for the votable entity, shared by posts and replies.
+     * Ids are handed out in blocks of 50 per sequence call (pooled-lo), so inserts can be batched.
      */
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "id_generator")
+    @SequenceGenerator(name = "id_generator", sequenceName = "id_generator", allocationSize = 50)
     private long id;
 
     /**
@@ -44,6 +49,14 @@ public abstract class VotableEntity implements Votable {
     @Column(name = "vote_score")
     private long voteScore;
 
+    /**
+     * Time-decayed rank score used by the "hot" sort (see HotScoreUtility).
+     * Recomputed on every vote and periodically re-decayed for recent posts.
+     */
+    @Column(name = "hot_score", nullable = false)
+    @ColumnDefault("0") // lets ddl-auto add the column to existing rows
+    private double hotScore;
+
     /**
      * Callback method invoked before the entity is persisted.
      * Updates derived fields before persisting.
@@ -0,0 +1,65 @@
+package com.vision.middleware.domain.relations;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Represents a post delivered to a user's home timeline (the "inbox" of posts from users they follow).
+ * Entries are written once per follower when a post is created, so reading a timeline is a single
+ * indexed range scan instead of a query over every followed user's posts.
+ */
+@Entity
+@Table(name = "timeline_entries",
+        uniqueConstraints = {
+                @UniqueConstraint(columnNames = {"owner_id", "post_id"})
+        },
+        indexes = {
+                @Index(name = "idx_timeline_owner_date_post", columnList = "owner_id, date_posted DESC, post_id DESC"),
+                @Index(name = "idx_timeline_owner_author", columnList = "owner_id, author_id")
+        })
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class TimelineEntry {
+    /**
+     * Unique identifier for the timeline entry.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "timeline_entry_id")
+    private long id;
+
+    /**
+     * The user whose timeline this entry belongs to.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id", nullable = false)
+    private ApplicationUser owner;
+
+    /**
+     * The post delivered to the timeline.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "post_id", nullable = false)
+    private Post post;
+
+    /**
+     * The author of the post. Copied from the post so that entries can be removed on unfollow.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id", nullable = false)
+    private ApplicationUser author;
+
+    /**
+     * The date the post was posted. Copied from the post so that timelines can be ordered from the index alone.
+     */
+    @Column(name = "date_posted", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date datePosted;
+}
@@ -17,6 +17,9 @@ import lombok.*;
 @Builder
 @Table(name = "user_votes", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"user_id", "votable_id", "votable_type"})
+}, indexes = {
+        // serves counting the votes of a range of votables (see VoteReconciliationRepository)
+        @Index(name = "idx_user_votes_votable_vote_type", columnList = "votable_id, vote_type")
 })
 public class UserVote {
     /**
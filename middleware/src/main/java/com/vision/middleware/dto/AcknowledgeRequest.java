@@ -0,0 +1,22 @@
+package com.vision.middleware.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Represents a request to acknowledge several notifications of the caller at once.
+ * Exactly one of the two fields is set: either the IDs of the notifications, or an ID up to which
+ * (inclusive) all of the caller's notifications are acknowledged, e.g. the newest one the client has seen.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AcknowledgeRequest {
+    private List<Long> ids;
+    private Long upToId;
+}
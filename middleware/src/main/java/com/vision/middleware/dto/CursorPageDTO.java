@@ -0,0 +1,24 @@
+package com.vision.middleware.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object representing one page of a cursor-paginated listing.
+ * Unlike a page-number response, it carries no total count; the client asks for the
+ * next page by passing {@code nextCursor} back, until {@code hasNext} is false.
+ *
+ * @param <T> the type of the items in the page
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor; // null when there is no next page.
+}
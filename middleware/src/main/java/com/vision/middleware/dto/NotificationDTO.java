@@ -1,6 +1,7 @@
 package com.vision.middleware.dto;
 
 import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.domain.enums.VotableType;
 import lombok.*;
 
 import java.time.Instant;
@@ -19,6 +20,8 @@ public class NotificationDTO {
     private long notificationId;
     private NotificationType notificationType;
     private String notificationBody;
+    private VotableType targetType;
+    private Long targetId;
     private Instant timeCreated;
     private long toUserId;
 }
@@ -1,5 +1,6 @@
 package com.vision.middleware.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 import java.util.Date;
@@ -24,4 +25,9 @@ public class PostDTO {
     private long dislikeCount;
     private Date datePosted;
     private String mediaFileName; // if not present, then it is implied that it is a text post.
+    private long replyCount; // replies not deleted, so lists can show it without loading the comment tree.
+    private Date lastActivityAt; // date of the latest reply, or of the post itself if it has none.
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String snippet; // highlighted excerpt of the matching text, only set on search results.
 }
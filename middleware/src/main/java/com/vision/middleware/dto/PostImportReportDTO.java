@@ -0,0 +1,19 @@
+package com.vision.middleware.dto;
+
+import lombok.*;
+
+/**
+ * Data Transfer Object summarizing a bulk post import.
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PostImportReportDTO {
+    private long imported; // posts written
+    private long rejected; // posts skipped because their author does not exist
+    private int chunks; // transactions committed
+    private long elapsedMillis;
+    private double postsPerSecond;
+}
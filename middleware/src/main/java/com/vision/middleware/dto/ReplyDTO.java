@@ -1,6 +1,7 @@
 package com.vision.middleware.dto;
 
 import com.vision.middleware.domain.relations.UserVote;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 import java.util.Date;
@@ -18,6 +19,8 @@ import com.vision.middleware.dto.UserDTO;
  * Data Transfer Object representing a reply in the system.
  * It includes details such as the reply's text, author, date of posting,
  * vote counts, vote score, user vote type, deletion status, and nested replies.
+ * In a paged comment tree, replies may hold only the first of a reply's children; childCount then
+ * tells how many there are, and moreCursor fetches the rest.
  */
 @Getter
 @Setter
@@ -36,4 +39,8 @@ public class ReplyDTO {
     private UserVote.VoteType userVoteType;
     private boolean isDeleted;
     private List<ReplyDTO> replies;
+    private int childCount; // number of direct replies, including those not in replies.
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String moreCursor; // null when replies holds all direct replies.
 }
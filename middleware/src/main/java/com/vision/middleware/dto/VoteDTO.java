@@ -1,5 +1,6 @@
 package com.vision.middleware.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.vision.middleware.domain.relations.UserVote;
 import lombok.Builder;
 import lombok.Getter;
@@ -7,10 +8,14 @@ import lombok.Getter;
 /**
  * Data Transfer Object for representing a vote.
  * It encapsulates the identifier of the votable item and the type of vote.
+ * Responses to a vote also carry the votable's like and dislike counts after it.
  */
 @Builder
 @Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class VoteDTO {
     private long votableId;
     private UserVote.VoteType voteType;
+    private Long likeCount;
+    private Long dislikeCount;
 }
@@ -0,0 +1,25 @@
+package com.vision.middleware.dto;
+
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Data Transfer Object reporting the progress of a vote count reconciliation run.
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteReconciliationReportDTO {
+    private boolean running;
+    private Date startedAt;
+    private Date finishedAt; // null while running
+    private long partitions; // id ranges to check
+    private long partitionsDone;
+    private long drifted; // votables whose counts differed when first checked
+    private long corrected; // votables whose counts were corrected
+    private long unsettled; // votables skipped because their counts were still changing
+    private long elapsedMillis;
+}
@@ -0,0 +1,39 @@
+package com.vision.middleware.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Application event published when a new post has been created.
+ * Listeners that react after commit can rely on the post being visible to other transactions.
+ */
+@Getter
+@AllArgsConstructor
+public class PostCreatedEvent {
+    /**
+     * ID of the newly created post.
+     */
+    private final long postId;
+
+    /**
+     * ID of the user who created the post.
+     */
+    private final long authorId;
+
+    /**
+     * Date the post was posted.
+     */
+    private final Date datePosted;
+
+    /**
+     * Title of the post.
+     */
+    private final String title;
+
+    /**
+     * Text content of the post.
+     */
+    private final String text;
+}
@@ -0,0 +1,108 @@
+package com.vision.middleware.repo;
+
+import com.vision.middleware.domain.Notification;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Repository inserting notifications in batches.
+ * <p>
+ * Notification ids are generated by an identity column, which keeps Hibernate from batching their inserts,
+ * since it has to read back each row's id. Here the ids of a whole batch are taken from the column's
+ * sequence with one query first, and the rows are then sent as one JDBC batch with their ids set.
+ * <p>
+ * The unread counts of the recipients are raised in the same batch, once per recipient.
+ */
+@Repository
+@RequiredArgsConstructor
+public class NotificationBatchRepository {
+
+    /**
+     * Takes the next {@code ?} ids of the notifications' identity column.
+     */
+    private static final String NEXT_IDS = "SELECT nextval(pg_get_serial_sequence('notifications', 'notification_id')) " +
+            "FROM generate_series(1, ?)";
+
+    /**
+     * Inserts one notification with its id already set.
+     */
+    private static final String INSERT = "INSERT INTO notifications " +
+            "(notification_id, user_id, notification_type, notification_body, target_type, target_id, time_created, acknowledged) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Adds to the unread notification count of one user.
+     */
+    private static final String ADD_UNREAD = "UPDATE application_users SET unread_notification_count = unread_notification_count + ? " +
+            "WHERE user_id = ?";
+
+    /**
+     * JDBC access used to send the inserts as one batch.
+     */
+    @Autowired
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Assigns ids to notifications that do not have one yet, with one query.
+     *
+     * @param notifications the notifications; those with an id of 0 are given one
+     */
+    public void assignIds(List<Notification> notifications) {
+        List<Notification> unassigned = notifications.stream().filter(notification -> notification.getId() == 0).toList();
+        if (unassigned.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS, Long.class, unassigned.size());
+        for (int i = 0; i < unassigned.size(); i++) {
+            unassigned.get(i).setId(ids.get(i));
+        }
+    }
+
+    /**
+     * Inserts notifications in a single JDBC batch, giving them ids first if they have none, and adds the
+     * unacknowledged ones to their users' unread counts. Should run in a transaction, so the counts cannot
+     * diverge from the rows.
+     *
+     * @param notifications the notifications to insert
+     */
+    public void insertAll(List<Notification> notifications) {
+        assignIds(notifications);
+
+        List<Object[]> args = new ArrayList<>(notifications.size());
+        for (Notification notification : notifications) {
+            args.add(new Object[]{
+                    notification.getId(),
+                    notification.getAssociatedUser().getId(),
+                    notification.getNotificationType() == null ? null : notification.getNotificationType().name(),
+                    notification.getNotificationBody(),
+                    notification.getTargetType() == null ? null : notification.getTargetType().name(),
+                    notification.getTargetId(),
+                    Timestamp.from(notification.getTimeCreated()),
+                    notification.isAcknowledged()
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT, args);
+
+        // by user id, so concurrent batches lock the users' rows in the same order
+        Map<Long, Long> unread = new TreeMap<>();
+        for (Notification notification : notifications) {
+            if (!notification.isAcknowledged()) {
+                unread.merge(notification.getAssociatedUser().getId(), 1L, Long::sum);
+            }
+        }
+        if (!unread.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADD_UNREAD, unread.entrySet().stream()
+                    .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                    .toList());
+        }
+    }
+}
@@ -2,9 +2,13 @@ package com.vision.middleware.repo;
 
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Notification;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,6 +18,14 @@ import java.util.Optional;
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
 
+    /**
+     * Takes the notifications acknowledged by an {@code acked} CTE off the user's unread count. Shared by
+     * {@link #acknowledgeAll} and {@link #acknowledgeUpTo}; the user's row is left alone if none were.
+     */
+    String SUBTRACT_ACKNOWLEDGED = "UPDATE application_users SET unread_notification_count = " +
+            "unread_notification_count - (SELECT count(*) FROM acked) " +
+            "WHERE user_id = :userId AND EXISTS (SELECT 1 FROM acked)";
+
     /**
      * Retrieves a Notification by its unique identifier.
      *
@@ -37,4 +49,52 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
      * @return a list of unacknowledged Notifications (where acknowledged = false) associated with the given ApplicationUser
      */
     List<Notification> findByAssociatedUserAndAcknowledgedFalse(ApplicationUser user);
+
+    /**
+     * Retrieves one page of a user's unacknowledged notifications, newest first, starting after a keyset
+     * position. Served by the (user, acknowledged, id) index.
+     *
+     * @param userId   ID of the user
+     * @param beforeId only notifications with a lower ID are returned (Long.MAX_VALUE for the first page)
+     * @param limit    maximum number of notifications to return
+     * @return the unacknowledged notifications, by ID descending
+     */
+    @Query("SELECT n FROM Notification n WHERE n.associatedUser.id = :userId AND n.acknowledged = false " +
+            "AND n.id < :beforeId ORDER BY n.id DESC")
+    List<Notification> findUnreadPage(long userId, long beforeId, Limit limit);
+
+    /**
+     * Marks a user's notifications with the given IDs as acknowledged and decrements the user's unread count by
+     * the number that were not acknowledged yet, in one statement. IDs of other users' notifications are
+     * ignored.
+     *
+     * @param userId ID of the user whose notifications are acknowledged
+     * @param ids    IDs of the notifications (not empty)
+     * @return the number of notifications acknowledged now
+     */
+    @Transactional
+    @Query(value = "WITH acked AS (" +
+            "  UPDATE notifications SET acknowledged = true " +
+            "  WHERE user_id = :userId AND notification_id IN (:ids) AND NOT acknowledged " +
+            "  RETURNING notification_id" +
+            "), counted AS (" + SUBTRACT_ACKNOWLEDGED + ") " +
+            "SELECT count(*) FROM acked", nativeQuery = true)
+    int acknowledgeAll(long userId, Collection<Long> ids);
+
+    /**
+     * Marks all of a user's notifications up to an ID as acknowledged and decrements the user's unread count
+     * by the number that were not acknowledged yet, in one statement.
+     *
+     * @param userId ID of the user whose notifications are acknowledged
+     * @param maxId  the highest ID acknowledged (inclusive)
+     * @return the number of notifications acknowledged now
+     */
+    @Transactional
+    @Query(value = "WITH acked AS (" +
+            "  UPDATE notifications SET acknowledged = true " +
+            "  WHERE user_id = :userId AND notification_id <= :maxId AND NOT acknowledged " +
+            "  RETURNING notification_id" +
+            "), counted AS (" + SUBTRACT_ACKNOWLEDGED + ") " +
+            "SELECT count(*) FROM acked", nativeQuery = true)
+    int acknowledgeUpTo(long userId, long maxId);
 }
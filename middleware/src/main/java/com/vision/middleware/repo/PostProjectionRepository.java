@@ -0,0 +1,39 @@
+package com.vision.middleware.repo;
+
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.PostDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Repository fragment for reading Posts directly as PostDTO projections.
+ * <p>
+ * Each call selects only the columns a post listing needs, together with its author's summary,
+ * in a single SQL statement. No entities are loaded, so there are no lazy author lookups afterwards.
+ */
+public interface PostProjectionRepository {
+
+    /**
+     * Retrieves a page of PostDTOs matching the given specification.
+     *
+     * @param spec     the filters to apply (e.g. from PostSearchSpecification), or null for all Posts
+     * @param pageable pagination and sort information; sort properties refer to Post attributes
+     * @return a Page of PostDTOs, each with a summary UserDTO of its author
+     */
+    Page<PostDTO> findPostDTOs(Specification<Post> spec, Pageable pageable);
+
+    /**
+     * Retrieves the first PostDTOs matching the given specification, without counting all matches.
+     * Intended for keyset pagination, where the specification already positions the result.
+     *
+     * @param spec  the filters to apply (e.g. from PostSearchSpecification), or null for all Posts
+     * @param sort  the ordering; sort properties refer to Post attributes
+     * @param limit the maximum number of PostDTOs to return
+     * @return the matching PostDTOs, each with a summary UserDTO of its author
+     */
+    List<PostDTO> findPostDTOs(Specification<Post> spec, Sort sort, int limit);
+}
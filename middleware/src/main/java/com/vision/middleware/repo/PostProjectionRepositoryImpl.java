@@ -0,0 +1,129 @@
+package com.vision.middleware.repo;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.MediaPost;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.UserDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Criteria API implementation of {@link PostProjectionRepository}.
+ */
+public class PostProjectionRepositoryImpl implements PostProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<PostDTO> findPostDTOs(Specification<Post> spec, Pageable pageable) {
+        List<PostDTO> content = selectPostDTOs(spec, pageable.getSort(), (int) pageable.getOffset(), pageable.getPageSize());
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    @Override
+    public List<PostDTO> findPostDTOs(Specification<Post> spec, Sort sort, int limit) {
+        return selectPostDTOs(spec, sort, 0, limit);
+    }
+
+    /**
+     * Selects PostDTOs and their authors' summaries in one statement.
+     *
+     * @param spec   the filters to apply, or null for all Posts
+     * @param sort   the ordering
+     * @param offset the number of rows to skip
+     * @param limit  the maximum number of rows to return
+     * @return the matching PostDTOs
+     */
+    private List<PostDTO> selectPostDTOs(Specification<Post> spec, Sort sort, int offset, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Post> post = query.from(Post.class);
+        Join<Post, ApplicationUser> author = post.join("postedBy", JoinType.INNER);
+
+        query.multiselect(
+                post.get("id").alias("postId"),
+                post.get("title").alias("title"),
+                post.get("text").alias("text"),
+                post.get("likeCount").alias("likeCount"),
+                post.get("dislikeCount").alias("dislikeCount"),
+                post.get("datePosted").alias("datePosted"),
+                post.get("replyCount").alias("replyCount"),
+                post.get("lastActivityAt").alias("lastActivityAt"),
+                builder.treat(post, MediaPost.class).get("mediaFileName").alias("mediaFileName"),
+                author.get("id").alias("userId"),
+                author.get("username").alias("username"),
+                author.get("displayName").alias("displayName"),
+                author.get("profilePictureFileName").alias("profilePictureFileName")
+        );
+        applySpecification(spec, post, query, builder);
+        query.orderBy(QueryUtils.toOrders(sort, post, builder));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList()
+                .stream().map(this::toPostDTO).toList();
+    }
+
+    /**
+     * Counts the Posts matching the given specification.
+     *
+     * @param spec the filters to apply, or null for all Posts
+     * @return the number of matching Posts
+     */
+    private long count(Specification<Post> spec) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<Post> post = query.from(Post.class);
+
+        query.select(builder.count(post));
+        applySpecification(spec, post, query, builder);
+
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private void applySpecification(Specification<Post> spec, Root<Post> post, CriteriaQuery<?> query, CriteriaBuilder builder) {
+        if (spec == null) {
+            return;
+        }
+        Predicate predicate = spec.toPredicate(post, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+    }
+
+    private PostDTO toPostDTO(Tuple row) {
+        return PostDTO.builder()
+                .postId(row.get("postId", Long.class))
+                .title(row.get("title", String.class))
+                .text(row.get("text", String.class))
+                .likeCount(row.get("likeCount", Long.class))
+                .dislikeCount(row.get("dislikeCount", Long.class))
+                .datePosted(row.get("datePosted", Date.class))
+                .replyCount(row.get("replyCount", Long.class))
+                .lastActivityAt(row.get("lastActivityAt", Date.class))
+                .mediaFileName(row.get("mediaFileName", String.class))
+                .postedBy(
+                        UserDTO.builder()
+                                .userId(row.get("userId", Long.class))
+                                .username(row.get("username", String.class))
+                                .displayName(row.get("displayName", String.class))
+                                .profilePictureFileName(row.get("profilePictureFileName", String.class))
+                                .build()
+                )
+                .build();
+    }
+}
@@ -2,26 +2,42 @@ package com.vision.middleware.repo;
 
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import com.vision.middleware.repo.searchspec.PostIndexRow;
+import com.vision.middleware.repo.searchspec.PostSearchHit;
 import com.vision.middleware.repo.searchspec.PostSearchSpecification;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for managing Post entities, providing basic CRUD operations
  * and custom query methods with filtering and pagination capabilities.
  */
 @Repository
-public interface PostRepository extends JpaRepository<Post, Long>, JpaSpecificationExecutor<Post> {
+public interface PostRepository extends JpaRepository<Post, Long>, JpaSpecificationExecutor<Post>, PostProjectionRepository {
 
     /**
      * Retrieves a Post by its unique identifier.
@@ -87,6 +103,89 @@ public interface PostRepository extends JpaRepository<Post, Long>, JpaSpecificat
         return findAll(spec, pageable);
     }
 
+    /**
+     * Retrieves a paged list of PostDTOs, optionally scoped to a user and a date range.
+     * Posts and their authors are read in a single statement (see PostProjectionRepository).
+     *
+     * @param user        the ApplicationUser who posted the Posts, or null for no user constraint
+     * @param pageable    pagination information; sort properties refer to Post attributes
+     * @param beforeDate  filter Posts with dates before this value (inclusive), or null for no constraint
+     * @param afterDate   filter Posts with dates after this value (inclusive), or null for no constraint
+     * @return a Page of PostDTOs matching the applied filters
+     */
+    default Page<PostDTO> findPostDTOsWithFilters(ApplicationUser user, Pageable pageable, Date beforeDate, Date afterDate) {
+        Specification<Post> spec = Specification.where(null);
+
+        if (user != null) {
+            spec = spec.and(PostSearchSpecification.filterByUser(user));
+        }
+        if (beforeDate != null) {
+            spec = spec.and(PostSearchSpecification.filterByBeforeDate(beforeDate));
+        }
+        if (afterDate != null) {
+            spec = spec.and(PostSearchSpecification.filterByAfterDate(afterDate));
+        }
+
+        return findPostDTOs(spec, pageable);
+    }
+
+    /**
+     * Fetches a slice of Posts using keyset pagination, optionally scoped to a user and a date range.
+     * <p>
+     * Instead of an OFFSET, the slice starts right after the given cursor, and one extra row is read
+     * to find out whether a next slice exists, so no count query is issued.
+     *
+     * @param user        the ApplicationUser who posted the Posts, or null for no user constraint
+     * @param sortKey     the ordering of the slice
+     * @param cursor      the position to start after, or null to start from the beginning
+     * @param size        the maximum number of Posts in the slice
+     * @param beforeDate  filter Posts with dates before this value (inclusive), or null for no constraint
+     * @param afterDate   filter Posts with dates after this value (inclusive), or null for no constraint
+     * @return a Slice of Posts matching the applied filters
+     */
+    default Slice<Post> findPostSliceWithFilters(ApplicationUser user, PostCursor.SortKey sortKey, PostCursor cursor,
+                                                 int size, Date beforeDate, Date afterDate) {
+        Specification<Post> spec = Specification.where(null);
+
+        if (user != null) {
+            spec = spec.and(PostSearchSpecification.filterByUser(user));
+        }
+        if (beforeDate != null) {
+            spec = spec.and(PostSearchSpecification.filterByBeforeDate(beforeDate));
+        }
+        if (afterDate != null) {
+            spec = spec.and(PostSearchSpecification.filterByAfterDate(afterDate));
+        }
+        if (cursor != null) {
+            spec = spec.and(PostSearchSpecification.filterAfterCursor(cursor));
+        }
+        spec = spec.and(PostSearchSpecification.fetchAuthor());
+
+        Sort sort = sortKey.toSort();
+        List<Post> posts = findBy(spec, query -> query.sortBy(sort).limit(size + 1).all());
+
+        boolean hasNext = posts.size() > size;
+        List<Post> content = hasNext ? posts.subList(0, size) : posts;
+        return new SliceImpl<>(content, PageRequest.of(0, size, sort), hasNext);
+    }
+
+    /**
+     * Retrieves the Posts of a set of authors that come strictly before the given (datePosted, id) position,
+     * newest first, together with their authors.
+     *
+     * @param authorIds the IDs of the authors
+     * @param date      the date of the last Post already seen
+     * @param postId    the ID of the last Post already seen
+     * @param limit     the maximum number of Posts to return
+     * @return the matching Posts
+     */
+    @Query("SELECT p FROM posts p JOIN FETCH p.postedBy u " +
+            "WHERE u.id IN :authorIds " +
+            "AND (p.datePosted < :date OR (p.datePosted = :date AND p.id < :postId)) " +
+            "ORDER BY p.datePosted DESC, p.id DESC")
+    List<Post> findByAuthorIdsBefore(@Param("authorIds") Collection<Long> authorIds, @Param("date") Date date,
+                                     @Param("postId") long postId, Limit limit);
+
     /**
      * Searches for Posts based on a query string, scoped to a specific ApplicationUser.
      *
@@ -95,7 +194,7 @@ public interface PostRepository extends JpaRepository<Post, Long>, JpaSpecificat
      * @return a List of Posts matching the search query
      */
     default List<Post> searchPosts(String query, ApplicationUser user) {
-        return findAll(PostSearchSpecification.searchPosts(query, user));
+        return findAll(PostSearchSpecification.searchPosts(query, user).and(PostSearchSpecification.fetchAuthor()));
     }
 
     /**
@@ -117,7 +216,112 @@ public interface PostRepository extends JpaRepository<Post, Long>, JpaSpecificat
                 Specification.where(
                         PostSearchSpecification.searchPosts(query, user)
                                 .and(PostSearchSpecification.searchByDateRange(startDate, endDate))
+                                .and(PostSearchSpecification.fetchAuthor())
                 )
         );
     }
+
+    /**
+     * Re-applies time decay to the hot scores of recent posts, as computed by HotScoreUtility.
+     * Posts in the active window get a freshly decayed score; posts that have left the window
+     * since the last run (posted between sweepStart and windowStart) are reset to 0.
+     * Only touches posts posted after sweepStart, so the cost tracks recent activity, not table size.
+     *
+     * @param now         the point in time to compute scores for
+     * @param windowStart posts before this date are outside the active window
+     * @param sweepStart  posts before this date are not touched at all
+     * @param gravity     HotScoreUtility.GRAVITY
+     * @param ageOffset   HotScoreUtility.AGE_OFFSET_HOURS
+     * @return the number of posts updated
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE votable_entity v SET hot_score = CASE " +
+            "WHEN p.date_posted < :windowStart THEN 0 " +
+            "ELSE v.vote_score / power(GREATEST(EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - p.date_posted)), 0) / 3600.0 + :ageOffset, :gravity) " +
+            "END " +
+            "FROM posts p WHERE p.id = v.id AND p.date_posted >= :sweepStart", nativeQuery = true)
+    int decayHotScores(@Param("now") Date now, @Param("windowStart") Date windowStart, @Param("sweepStart") Date sweepStart,
+                       @Param("gravity") double gravity, @Param("ageOffset") double ageOffset);
+
+    /**
+     * Changes a post's reply count and moves its last activity forward, in one statement, so concurrent
+     * replies do not overwrite each other's changes.
+     *
+     * @param postId     the ID of the post
+     * @param delta      the change to the reply count
+     * @param activityAt the date of the reply, or null to leave the last activity as it is
+     * @return the number of posts updated, 0 if there is no such post
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE posts SET reply_count = reply_count + :delta, " +
+            "last_activity_at = GREATEST(last_activity_at, CAST(:activityAt AS timestamp)) " +
+            "WHERE id = :postId", nativeQuery = true)
+    int addReplyActivity(@Param("postId") long postId, @Param("delta") long delta, @Param("activityAt") Date activityAt);
+
+    /**
+     * Full-text search over post titles and texts, using the GIN-indexed {@code search_vector} column
+     * (see db/post-search.sql). Results are ordered by ts_rank, then id, and paginated by keyset:
+     * only results strictly after (afterRank, afterId) are returned. The snippet is only computed
+     * for the rows of the returned page.
+     *
+     * @param query     the user's search text, parsed with websearch_to_tsquery (supports "quotes", or, -not)
+     * @param userId    restrict to posts by this user, or a negative value for all users
+     * @param startDate posts on or after this date
+     * @param endDate   posts on or before this date
+     * @param afterRank rank of the last result already seen, or Float.MAX_VALUE for the first page
+     * @param afterId   id of the last result already seen, or Long.MAX_VALUE for the first page
+     * @param limit     maximum number of results
+     * @return the matching posts with rank and snippet, best match first
+     */
+    @Query(value = "SELECT page.id AS \"postId\", page.title AS \"title\", page.text AS \"text\", " +
+            "v.like_count AS \"likeCount\", v.dislike_count AS \"dislikeCount\", page.date_posted AS \"datePosted\", " +
+            "m.media_file_name AS \"mediaFileName\", u.user_id AS \"userId\", u.username AS \"username\", " +
+            "u.display_name AS \"displayName\", u.profile_picture_file_name AS \"profilePictureFileName\", " +
+            "page.reply_count AS \"replyCount\", page.last_activity_at AS \"lastActivityAt\", page.rank AS \"rank\", " +
+            "ts_headline('english', coalesce(page.title, '') || ' ' || coalesce(page.text, ''), page.query, " +
+            "'MaxFragments=2, MinWords=5, MaxWords=20, StartSel=<b>, StopSel=</b>') AS \"snippet\" " +
+            "FROM (" +
+            "  SELECT ranked.* FROM (" +
+            "    SELECT p.id, p.title, p.text, p.date_posted, p.user_id, p.reply_count, p.last_activity_at, q.query, ts_rank(p.search_vector, q.query) AS rank " +
+            "    FROM posts p CROSS JOIN websearch_to_tsquery('english', :query) AS q(query) " +
+            "    WHERE p.search_vector @@ q.query " +
+            "      AND (:userId < 0 OR p.user_id = :userId) " +
+            "      AND p.date_posted >= :startDate AND p.date_posted <= :endDate" +
+            "  ) ranked " +
+            "  WHERE ranked.rank < :afterRank OR (ranked.rank = :afterRank AND ranked.id < :afterId) " +
+            "  ORDER BY ranked.rank DESC, ranked.id DESC " +
+            "  LIMIT :limit" +
+            ") page " +
+            "JOIN votable_entity v ON v.id = page.id " +
+            "JOIN application_users u ON u.user_id = page.user_id " +
+            "LEFT JOIN media_post m ON m.id = page.id " +
+            "ORDER BY page.rank DESC, page.id DESC", nativeQuery = true)
+    List<PostSearchHit> searchFullText(@Param("query") String query, @Param("userId") long userId,
+                                       @Param("startDate") Date startDate, @Param("endDate") Date endDate,
+                                       @Param("afterRank") float afterRank, @Param("afterId") long afterId,
+                                       @Param("limit") int limit);
+
+    /**
+     * Streams the indexable columns of every post in id order, for (re)building the in-memory search index.
+     * Rows are fetched from the database in batches as the stream is consumed instead of all at once;
+     * the stream must be consumed, and closed, inside a transaction.
+     *
+     * @return a stream of every post's id, author, date, title and text, lowest id first
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT p.id AS id, p.postedBy.id AS authorId, p.datePosted AS datePosted, p.title AS title, p.text AS text " +
+            "FROM posts p ORDER BY p.id")
+    Stream<PostIndexRow> streamAllForIndex();
+
+    /**
+     * Retrieves the indexable columns of some posts, for adding them to the in-memory search index.
+     *
+     * @param ids the IDs of the posts
+     * @return the id, author, date, title and text of the posts that exist, lowest id first
+     */
+    @Query("SELECT p.id AS id, p.postedBy.id AS authorId, p.datePosted AS datePosted, p.title AS title, p.text AS text " +
+            "FROM posts p WHERE p.id IN :ids ORDER BY p.id")
+    List<PostIndexRow> findAllForIndexByIdIn(Collection<Long> ids);
 }
@@ -1,10 +1,13 @@
 package com.vision.middleware.repo;
 
 import com.vision.middleware.domain.Reply;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -26,6 +29,77 @@ public interface ReplyRepository extends JpaRepository<Reply, Long> {
             "ORDER BY r.voteScore DESC, r.datePosted ASC")
     List<Reply> findTopLevelRepliesByPostId(@Param("postId") Long postId);
 
+    /**
+     * Retrieves every reply of a post with its author's summary, in one query. Siblings come out in the
+     * order they are shown in (vote score descending, then oldest first), so a tree assembled by appending
+     * each reply to its parent in this order needs no further sorting.
+     *
+     * @param postId the ID of the post
+     * @return the post's replies at all depths, each with the ID of its parent (null for top-level replies)
+     */
+    @Query(value = "SELECT r.id AS \"id\", r.parent_reply_id_junction AS \"parentId\", r.text AS \"text\", " +
+            "r.date_posted AS \"datePosted\", v.like_count AS \"likeCount\", v.dislike_count AS \"dislikeCount\", " +
+            "v.vote_score AS \"voteScore\", r.deleted AS \"deleted\", u.user_id AS \"userId\", " +
+            "u.username AS \"username\", u.display_name AS \"displayName\", " +
+            "u.profile_picture_file_name AS \"profilePictureFileName\" " +
+            "FROM reply r " +
+            "JOIN votable_entity v ON v.id = r.id " +
+            "JOIN application_users u ON u.user_id = r.user_id " +
+            "WHERE r.post_id = :postId " +
+            "ORDER BY v.vote_score DESC, r.date_posted ASC, r.id ASC", nativeQuery = true)
+    List<ReplyTreeRow> findCommentTreeRows(@Param("postId") long postId);
+
+    /**
+     * Retrieves the replies below a reply (not the reply itself), at all depths, with their authors'
+     * summaries, in the same order as {@link #findCommentTreeRows}. The subtree is selected as one range of
+     * the path index (see {@link Reply#getPath()}).
+     *
+     * @param postId   the ID of the post the reply belongs to
+     * @param parentId the ID of the reply
+     * @return the replies below it, each with the ID of its parent; empty if there is no such reply in the post
+     */
+    @Query(value = "SELECT r.id AS \"id\", r.parent_reply_id_junction AS \"parentId\", r.text AS \"text\", " +
+            "r.date_posted AS \"datePosted\", v.like_count AS \"likeCount\", v.dislike_count AS \"dislikeCount\", " +
+            "v.vote_score AS \"voteScore\", r.deleted AS \"deleted\", u.user_id AS \"userId\", " +
+            "u.username AS \"username\", u.display_name AS \"displayName\", " +
+            "u.profile_picture_file_name AS \"profilePictureFileName\" " +
+            "FROM reply r " +
+            "JOIN votable_entity v ON v.id = r.id " +
+            "JOIN application_users u ON u.user_id = r.user_id " +
+            "WHERE (r.path COLLATE \"C\") >= (SELECT p.path || p.id || '/' FROM reply p WHERE p.id = :parentId AND p.post_id = :postId) " +
+            "AND (r.path COLLATE \"C\") < (SELECT p.path || p.id || '0' FROM reply p WHERE p.id = :parentId AND p.post_id = :postId) " +
+            "ORDER BY v.vote_score DESC, r.date_posted ASC, r.id ASC", nativeQuery = true)
+    List<ReplyTreeRow> findSubtreeRows(@Param("postId") long postId, @Param("parentId") long parentId);
+
+    /**
+     * Finds the greatest depth of the replies whose path starts with a prefix, i.e. of a subtree.
+     *
+     * @param pathPrefix the child path of the subtree's root (see {@link Reply#getChildPath()})
+     * @return the greatest depth, or -1 if there are no such replies
+     */
+    @Query(value = "SELECT COALESCE(MAX(r.depth), -1) FROM reply r " +
+            "WHERE (r.path COLLATE \"C\") >= CAST(:pathPrefix AS varchar) " +
+            "AND (r.path COLLATE \"C\") < left(CAST(:pathPrefix AS varchar), -1) || '0'", nativeQuery = true)
+    int findMaxDepthUnder(@Param("pathPrefix") String pathPrefix);
+
+    /**
+     * Moves the replies whose path starts with a prefix, i.e. a subtree, below another path, in one
+     * statement: the prefix of their paths is replaced and their depths are shifted.
+     *
+     * @param oldPrefix  the subtree's current path prefix
+     * @param newPrefix  the path prefix it is moved to
+     * @param depthShift the change in depth of every reply of the subtree
+     * @return the number of replies moved
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE reply SET path = CAST(:newPrefix AS varchar) || substr(path, length(CAST(:oldPrefix AS varchar)) + 1), " +
+            "depth = depth + :depthShift " +
+            "WHERE (path COLLATE \"C\") >= CAST(:oldPrefix AS varchar) " +
+            "AND (path COLLATE \"C\") < left(CAST(:oldPrefix AS varchar), -1) || '0'", nativeQuery = true)
+    int movePaths(@Param("oldPrefix") String oldPrefix, @Param("newPrefix") String newPrefix,
+                  @Param("depthShift") int depthShift);
+
     /**
      * Attempts to retrieve a Reply by its ID.
      *
@@ -0,0 +1,116 @@
+package com.vision.middleware.repo;
+
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.relations.TimelineEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository for managing the materialized home timelines of users.
+ */
+@Repository
+public interface TimelineEntryRepository extends JpaRepository<TimelineEntry, Long> {
+
+    /**
+     * Delivers a post to the timeline of every follower of its author in a single statement.
+     * Entries that already exist are left untouched.
+     *
+     * @param postId     the ID of the post to deliver
+     * @param authorId   the ID of the post's author
+     * @param datePosted the date the post was posted
+     * @return the number of timeline entries created
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entries (owner_id, post_id, author_id, date_posted) " +
+            "SELECT DISTINCT uf.follower_id, CAST(:postId AS bigint), CAST(:authorId AS bigint), CAST(:datePosted AS timestamp) " +
+            "FROM user_follows uf " +
+            "WHERE uf.followee_id = :authorId " +
+            "ON CONFLICT (owner_id, post_id) DO NOTHING", nativeQuery = true)
+    int fanOutToFollowers(@Param("postId") long postId, @Param("authorId") long authorId, @Param("datePosted") Date datePosted);
+
+    /**
+     * Delivers a post to a single user's timeline, if it is not there already.
+     *
+     * @param ownerId    the ID of the user whose timeline receives the post
+     * @param postId     the ID of the post to deliver
+     * @param authorId   the ID of the post's author
+     * @param datePosted the date the post was posted
+     * @return the number of timeline entries created (0 or 1)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entries (owner_id, post_id, author_id, date_posted) " +
+            "VALUES (:ownerId, :postId, :authorId, :datePosted) " +
+            "ON CONFLICT (owner_id, post_id) DO NOTHING", nativeQuery = true)
+    int deliverToOwner(@Param("ownerId") long ownerId, @Param("postId") long postId,
+                       @Param("authorId") long authorId, @Param("datePosted") Date datePosted);
+
+    /**
+     * Copies the most recent posts of an author into a user's timeline, e.g. right after the user follows them.
+     *
+     * @param ownerId  the ID of the user whose timeline receives the posts
+     * @param authorId the ID of the author whose posts are copied
+     * @param limit    the maximum number of posts to copy
+     * @return the number of timeline entries created
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entries (owner_id, post_id, author_id, date_posted) " +
+            "SELECT :ownerId, p.id, p.user_id, p.date_posted FROM posts p WHERE p.user_id = :authorId " +
+            "ORDER BY p.date_posted DESC, p.id DESC LIMIT :limit " +
+            "ON CONFLICT (owner_id, post_id) DO NOTHING", nativeQuery = true)
+    int backfillFromAuthor(@Param("ownerId") long ownerId, @Param("authorId") long authorId, @Param("limit") int limit);
+
+    /**
+     * Copies the most recent posts of the user and of every user they follow into their timeline, in a single
+     * statement, e.g. for a timeline that was never filled. Followees with more followers than the fan-out limit
+     * are skipped, as their posts are merged in on read.
+     *
+     * @param ownerId      the ID of the user whose timeline receives the posts
+     * @param maxFollowers the fan-out limit
+     * @param limit        the maximum number of posts to copy per author
+     * @return the number of timeline entries created
+     */
+    @Modifying
+    @Query(value = "INSERT INTO timeline_entries (owner_id, post_id, author_id, date_posted) " +
+            "SELECT :ownerId, p.id, p.user_id, p.date_posted FROM application_users a " +
+            "CROSS JOIN LATERAL (SELECT p.id, p.user_id, p.date_posted FROM posts p WHERE p.user_id = a.user_id " +
+            "ORDER BY p.date_posted DESC, p.id DESC LIMIT :limit) p " +
+            "WHERE a.user_id = :ownerId OR (a.follower_count <= :maxFollowers " +
+            "AND a.user_id IN (SELECT uf.followee_id FROM user_follows uf WHERE uf.follower_id = :ownerId)) " +
+            "ON CONFLICT (owner_id, post_id) DO NOTHING", nativeQuery = true)
+    int backfillFromFollowees(@Param("ownerId") long ownerId, @Param("maxFollowers") long maxFollowers,
+                              @Param("limit") int limit);
+
+    /**
+     * Removes all posts by an author from a user's timeline, e.g. after the user unfollows them.
+     *
+     * @param ownerId  the ID of the user whose timeline is cleaned up
+     * @param authorId the ID of the author whose posts are removed
+     */
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.owner.id = :ownerId AND t.author.id = :authorId")
+    void deleteByOwnerIdAndAuthorId(@Param("ownerId") long ownerId, @Param("authorId") long authorId);
+
+    /**
+     * Retrieves the posts of a user's timeline that come strictly before the given position,
+     * newest first, together with their authors.
+     *
+     * @param ownerId the ID of the user whose timeline is read
+     * @param date    the date of the last post already seen
+     * @param postId  the ID of the last post already seen
+     * @param limit   the maximum number of posts to return
+     * @return the timeline posts after the position
+     */
+    @Query("SELECT p FROM TimelineEntry t JOIN t.post p JOIN FETCH p.postedBy " +
+            "WHERE t.owner.id = :ownerId " +
+            "AND (t.datePosted < :date OR (t.datePosted = :date AND t.post.id < :postId)) " +
+            "ORDER BY t.datePosted DESC, t.post.id DESC")
+    List<Post> findTimelinePostsBefore(@Param("ownerId") long ownerId, @Param("date") Date date,
+                                       @Param("postId") long postId, Limit limit);
+}
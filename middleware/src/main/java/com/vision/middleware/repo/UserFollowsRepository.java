@@ -3,6 +3,8 @@ package com.vision.middleware.repo;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.relations.UserFollows;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -45,6 +47,17 @@ public interface UserFollowsRepository extends JpaRepository<UserFollows, Long>
      *
      * @param follower The ApplicationUser object representing the follower
      * @param followee The ApplicationUser object representing the followee
+     * @return The number of relationships deleted (0 if none existed)
      */
-    void deleteByFollowerAndFollowee(ApplicationUser follower, ApplicationUser followee);
+    long deleteByFollowerAndFollowee(ApplicationUser follower, ApplicationUser followee);
+
+    /**
+     * Retrieves the IDs of the users followed by the specified user that have more than the given number of followers.
+     *
+     * @param followerId   The ID of the follower
+     * @param minFollowers The follower count a followee must exceed to be included
+     * @return A list of IDs of the matching followees
+     */
+    @Query("SELECT uf.followee.id FROM UserFollows uf WHERE uf.follower.id = :followerId AND uf.followee.followerCount > :minFollowers")
+    List<Long> findFolloweeIdsWithFollowerCountAbove(@Param("followerId") long followerId, @Param("minFollowers") long minFollowers);
 }
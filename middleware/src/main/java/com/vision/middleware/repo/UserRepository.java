@@ -1,15 +1,23 @@
 package com.vision.middleware.repo;
 
 import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.repo.searchspec.UserAutocompleteRow;
+import com.vision.middleware.repo.searchspec.UserSearchHit;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Date;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -36,12 +44,36 @@ public interface UserRepository extends JpaRepository<ApplicationUser, Long> {
     Optional<ApplicationUser> findById(long id);
 
     /**
-     * Finds all ApplicationUsers whose usernames contain the specified query (case-insensitive).
+     * Fuzzy searches users by username, display name and full name, best match first.
+     * <p>
+     * A user matches if the query is similar to a word in their names (pg_trgm word similarity),
+     * or if their names match the given LIKE pattern. Both conditions are served by the trigram
+     * and prefix indexes on the generated {@code search_name} column (see db/user-search.sql).
+     * Results are ranked by strict word similarity, which favors matching whole words
+     * (so "johny" ranks "johnny" above "johnathan"), and keyset-paginated on (rank, id).
      *
-     * @param query the substring to search for in usernames
-     * @return a List of ApplicationUsers whose usernames contain the specified query
+     * @param query     the lowercased search text
+     * @param pattern   LIKE pattern over the lowercased names, with wildcards escaped in the query part
+     * @param afterRank rank of the last result already seen, or Float.MAX_VALUE for the first page
+     * @param afterId   id of the last result already seen, or Long.MAX_VALUE for the first page
+     * @param limit     maximum number of results
+     * @return the matching users' summaries with their rank, best match first
      */
-    List<ApplicationUser> findAllByUsernameContainingIgnoreCase(String query);
+    @Query(value = "SELECT ranked.user_id AS \"userId\", ranked.username AS \"username\", " +
+            "ranked.display_name AS \"displayName\", ranked.profile_picture_file_name AS \"profilePictureFileName\", " +
+            "ranked.rank AS \"rank\" " +
+            "FROM (" +
+            "  SELECT u.user_id, u.username, u.display_name, u.profile_picture_file_name, " +
+            "         strict_word_similarity(:query, u.search_name) AS rank " +
+            "  FROM application_users u " +
+            "  WHERE :query <% u.search_name OR u.search_name LIKE :pattern" +
+            ") ranked " +
+            "WHERE ranked.rank < :afterRank OR (ranked.rank = :afterRank AND ranked.user_id < :afterId) " +
+            "ORDER BY ranked.rank DESC, ranked.user_id DESC " +
+            "LIMIT :limit", nativeQuery = true)
+    List<UserSearchHit> searchByName(@Param("query") String query, @Param("pattern") String pattern,
+                                     @Param("afterRank") float afterRank, @Param("afterId") long afterId,
+                                     @Param("limit") int limit);
 
     /**
      * Updates the profile picture file name for the ApplicationUser with the specified ID.
@@ -119,4 +151,96 @@ public interface UserRepository extends JpaRepository<ApplicationUser, Long> {
     @Transactional
     @Query("UPDATE ApplicationUser u SET u.birthdate = :birthdate WHERE u.id = :id")
     void updateBirthdateById(Long id, Date birthdate);
+
+    /**
+     * Finds which of the given user IDs belong to existing users.
+     *
+     * @param ids the IDs to check
+     * @return the IDs of the given users that exist
+     */
+    @Query("SELECT u.id FROM ApplicationUser u WHERE u.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    /**
+     * Retrieves the follower count of the ApplicationUser with the specified ID.
+     *
+     * @param id the ID of the ApplicationUser
+     * @return the follower count, or empty if the user does not exist
+     */
+    @Query("SELECT u.followerCount FROM ApplicationUser u WHERE u.id = :id")
+    Optional<Long> findFollowerCountById(Long id);
+
+    /**
+     * Retrieves the number of unread notifications of the ApplicationUser with the specified ID.
+     *
+     * @param id the ID of the ApplicationUser
+     * @return the unread notification count, or empty if the user does not exist
+     */
+    @Query("SELECT u.unreadNotificationCount FROM ApplicationUser u WHERE u.id = :id")
+    Optional<Long> findUnreadNotificationCountById(long id);
+
+    /**
+     * Checks whether the home timeline of the ApplicationUser with the specified ID has been filled.
+     *
+     * @param id the ID of the ApplicationUser
+     * @return true if the timeline has been filled, or empty if it has not or the user does not exist
+     */
+    @Query("SELECT u.timelineFilled FROM ApplicationUser u WHERE u.id = :id")
+    Optional<Boolean> findTimelineFilledById(long id);
+
+    /**
+     * Marks the home timeline of the ApplicationUser with the specified ID as filled.
+     *
+     * @param id the ID of the ApplicationUser to update
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ApplicationUser u SET u.timelineFilled = true WHERE u.id = :id")
+    void markTimelineFilledById(long id);
+
+    /**
+     * Atomically adds a delta to the follower count of the ApplicationUser with the specified ID.
+     *
+     * @param id the ID of the ApplicationUser to update
+     * @param delta the amount to add (negative to subtract)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ApplicationUser u SET u.followerCount = u.followerCount + :delta WHERE u.id = :id")
+    void adjustFollowerCountById(Long id, long delta);
+
+    /**
+     * Atomically adds a delta to the following count of the ApplicationUser with the specified ID.
+     *
+     * @param id the ID of the ApplicationUser to update
+     * @param delta the amount to add (negative to subtract)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ApplicationUser u SET u.followingCount = u.followingCount + :delta WHERE u.id = :id")
+    void adjustFollowingCountById(Long id, long delta);
+
+    /**
+     * Streams the names, profile picture and follower count of every user, for loading the
+     * in-memory autocomplete index. Rows are fetched from the database in batches as the stream is
+     * consumed; the stream must be consumed, and closed, inside a transaction.
+     *
+     * @return a stream of every user's autocomplete data
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT u.id AS id, u.username AS username, u.displayName AS displayName, " +
+            "u.profilePictureFileName AS profilePictureFileName, u.followerCount AS followerCount FROM ApplicationUser u")
+    Stream<UserAutocompleteRow> streamAllForAutocomplete();
+
+    /**
+     * Retrieves the names, profile picture and follower count of one user, for updating the in-memory
+     * autocomplete index.
+     *
+     * @param id the ID of the user
+     * @return the user's autocomplete data, or an empty Optional if there is no such user
+     */
+    @Query("SELECT u.id AS id, u.username AS username, u.displayName AS displayName, " +
+            "u.profilePictureFileName AS profilePictureFileName, u.followerCount AS followerCount " +
+            "FROM ApplicationUser u WHERE u.id = :id")
+    Optional<UserAutocompleteRow> findAutocompleteRowById(long id);
 }
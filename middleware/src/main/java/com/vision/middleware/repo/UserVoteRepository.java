@@ -4,8 +4,14 @@ import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.interfaces.Votable;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.repo.searchspec.VotableVoteRow;
+import com.vision.middleware.repo.searchspec.VoteOutcome;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -13,6 +19,26 @@ import java.util.Optional;
  */
 public interface UserVoteRepository extends JpaRepository<UserVote, Long> {
 
+    /**
+     * Adjusts the target's counts by the delta and recomputes its scores, with the same hot score formula
+     * as HotScoreUtility. Shared by {@link #castVote} and {@link #removeVote}.
+     */
+    String APPLY_DELTA = "UPDATE votable_entity v SET " +
+            "like_count = v.like_count + d.likes, " +
+            "dislike_count = v.dislike_count + d.dislikes, " +
+            "vote_score = v.vote_score + d.likes - d.dislikes, " +
+            "hot_score = CASE WHEN t.date_posted < :windowStart THEN 0 " +
+            "ELSE (v.vote_score + d.likes - d.dislikes) / power(GREATEST(EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - t.date_posted)), 0) / 3600.0 + :ageOffset, :gravity) " +
+            "END " +
+            "FROM delta d, target t WHERE v.id = t.id AND :applyCounts " +
+            "RETURNING v.like_count, v.dislike_count";
+
+    /**
+     * The counts after the statement: the adjusted ones if they were updated, else the stored ones.
+     */
+    String COUNTS_AFTER = "COALESCE((SELECT like_count FROM counts), (SELECT like_count FROM votable_entity WHERE id = :votableId)) AS \"likeCount\", " +
+            "COALESCE((SELECT dislike_count FROM counts), (SELECT dislike_count FROM votable_entity WHERE id = :votableId)) AS \"dislikeCount\"";
+
     /**
      * Finds a {@link UserVote} by the specified user, votable, and votable type.
      *
@@ -23,6 +49,16 @@ public interface UserVoteRepository extends JpaRepository<UserVote, Long> {
      */
     Optional<UserVote> findByUserAndVotableAndVotableType(ApplicationUser user, Votable votable, VotableType votableType);
 
+    /**
+     * Finds all votes of a user in one query, served by the (user, votable, votable type) unique index.
+     *
+     * @param userId ID of the user who voted
+     * @return the user's vote on each post and reply they have voted on
+     */
+    @Query("SELECT v.votable.id AS votableId, v.votableType AS votableType, v.voteType AS voteType " +
+            "FROM UserVote v WHERE v.user.id = :userId")
+    List<VotableVoteRow> findVoteTypesByUser(long userId);
+
     /**
      * Deletes a {@link UserVote} by the specified votable ID and user ID.
      *
@@ -30,4 +66,83 @@ public interface UserVoteRepository extends JpaRepository<UserVote, Long> {
      * @param userId    the ID of the user who voted
      */
     void deleteByVotableIdAndUserId(long votableId, long userId);
+
+    /**
+     * Casts a vote on a post or reply in one statement, identified by IDs only.
+     * <p>
+     * The vote is upserted on the (user, votable, votable type) unique constraint: a new vote is inserted,
+     * a vote of the other type is flipped, and a vote of the same type is left alone. Whether the row was
+     * inserted or flipped is read from {@code xmax} (0 for a fresh row), so the previous vote type is known
+     * without reading it first, and two concurrent requests of the same user cannot both count.
+     * If {@code applyCounts} is true, the votable's counts, vote score and hot score are adjusted in place in
+     * the same statement; otherwise the caller is responsible for applying the change.
+     *
+     * @param userId      ID of the voting user
+     * @param votableId   ID of the post or reply
+     * @param votableType POST or REPLY; a votable of the other type is treated as not found
+     * @param voteType    LIKE or DISLIKE
+     * @param applyCounts whether to update the votable's counts in the same statement
+     * @param now         the time to compute the hot score for
+     * @param windowStart content posted before this has a hot score of 0
+     * @param ageOffset   see HotScoreUtility.AGE_OFFSET_HOURS
+     * @param gravity     see HotScoreUtility.GRAVITY
+     * @return the outcome of the vote and the resulting counts
+     */
+    @Transactional
+    @Query(value = "WITH target AS (" +
+            "  SELECT id, date_posted, id AS post_id, user_id FROM posts WHERE id = :votableId AND :votableType = 'POST' " +
+            "  UNION ALL SELECT id, date_posted, post_id, user_id FROM reply WHERE id = :votableId AND :votableType = 'REPLY'" +
+            "), vote AS (" +
+            "  INSERT INTO user_votes (user_id, votable_id, votable_type, vote_type) " +
+            "  SELECT :userId, id, :votableType, :voteType FROM target " +
+            "  ON CONFLICT (user_id, votable_id, votable_type) DO UPDATE SET vote_type = EXCLUDED.vote_type " +
+            "  WHERE user_votes.vote_type <> EXCLUDED.vote_type " +
+            "  RETURNING (xmax = 0) AS inserted" +
+            "), delta AS (" +
+            "  SELECT CASE WHEN :voteType = 'LIKE' THEN 1 WHEN inserted THEN 0 ELSE -1 END AS likes, " +
+            "         CASE WHEN :voteType = 'DISLIKE' THEN 1 WHEN inserted THEN 0 ELSE -1 END AS dislikes " +
+            "  FROM vote" +
+            "), counts AS (" + APPLY_DELTA + ") " +
+            "SELECT EXISTS (SELECT 1 FROM target) AS \"found\", (SELECT post_id FROM target) AS \"postId\", " +
+            "(SELECT user_id FROM target) AS \"authorId\", " +
+            "EXISTS (SELECT 1 FROM vote) AS \"changed\", " +
+            "(SELECT CASE WHEN inserted THEN NULL WHEN :voteType = 'LIKE' THEN 'DISLIKE' ELSE 'LIKE' END FROM vote) AS \"previousVoteType\", " +
+            COUNTS_AFTER, nativeQuery = true)
+    VoteOutcome castVote(long userId, long votableId, String votableType, String voteType, boolean applyCounts,
+                         Date now, Date windowStart, double ageOffset, double gravity);
+
+    /**
+     * Removes a user's vote from a post or reply in one statement, identified by IDs only.
+     * If {@code applyCounts} is true, the votable's counts are adjusted in the same statement, as in
+     * {@link #castVote}.
+     *
+     * @param userId      ID of the user
+     * @param votableId   ID of the post or reply
+     * @param votableType POST or REPLY; a votable of the other type is treated as not found
+     * @param applyCounts whether to update the votable's counts in the same statement
+     * @param now         the time to compute the hot score for
+     * @param windowStart content posted before this has a hot score of 0
+     * @param ageOffset   see HotScoreUtility.AGE_OFFSET_HOURS
+     * @param gravity     see HotScoreUtility.GRAVITY
+     * @return the outcome, with the removed vote type as the previous vote type, and the resulting counts
+     */
+    @Transactional
+    @Query(value = "WITH target AS (" +
+            "  SELECT id, date_posted, id AS post_id, user_id FROM posts WHERE id = :votableId AND :votableType = 'POST' " +
+            "  UNION ALL SELECT id, date_posted, post_id, user_id FROM reply WHERE id = :votableId AND :votableType = 'REPLY'" +
+            "), vote AS (" +
+            "  DELETE FROM user_votes WHERE user_id = :userId AND votable_id = :votableId AND votable_type = :votableType " +
+            "  RETURNING vote_type" +
+            "), delta AS (" +
+            "  SELECT CASE WHEN vote_type = 'LIKE' THEN -1 ELSE 0 END AS likes, " +
+            "         CASE WHEN vote_type = 'DISLIKE' THEN -1 ELSE 0 END AS dislikes " +
+            "  FROM vote" +
+            "), counts AS (" + APPLY_DELTA + ") " +
+            "SELECT EXISTS (SELECT 1 FROM target) AS \"found\", (SELECT post_id FROM target) AS \"postId\", " +
+            "(SELECT user_id FROM target) AS \"authorId\", " +
+            "EXISTS (SELECT 1 FROM vote) AS \"changed\", " +
+            "(SELECT vote_type FROM vote) AS \"previousVoteType\", " +
+            COUNTS_AFTER, nativeQuery = true)
+    VoteOutcome removeVote(long userId, long votableId, String votableType, boolean applyCounts,
+                           Date now, Date windowStart, double ageOffset, double gravity);
 }
@@ -0,0 +1,97 @@
+package com.vision.middleware.repo;
+
+import com.vision.middleware.utils.HotScoreUtility;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository applying accumulated vote count changes to posts and replies.
+ * <p>
+ * Counts are incremented in place ({@code like_count = like_count + ?}) rather than written from a value
+ * read earlier, so concurrent writers never overwrite each other's votes. The vote score and hot score
+ * are recomputed from the new counts in the same statement.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VoteCounterRepository {
+
+    /**
+     * Adds the deltas to a votable's counts and recomputes its hot score with the same formula as
+     * {@link HotScoreUtility} (posts and replies keep their date in their own tables).
+     */
+    private static final String ADD_TO_COUNTS = "UPDATE votable_entity v SET " +
+            "like_count = v.like_count + ?, " +
+            "dislike_count = v.dislike_count + ?, " +
+            "vote_score = v.vote_score + ?, " +
+            "hot_score = CASE WHEN d.date_posted < ? THEN 0 " +
+            "ELSE (v.vote_score + ?) / power(GREATEST(EXTRACT(EPOCH FROM (CAST(? AS timestamp) - d.date_posted)), 0) / 3600.0 + ?, ?) " +
+            "END " +
+            "FROM (SELECT id, date_posted FROM posts WHERE id = ? " +
+            "      UNION ALL SELECT id, date_posted FROM reply WHERE id = ?) d " +
+            "WHERE v.id = d.id";
+
+    /**
+     * JDBC access used to send the updates as one batch.
+     */
+    @Autowired
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * A pending change to the counts of one post or reply.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CounterDelta {
+        /**
+         * ID of the post or reply.
+         */
+        private final long votableId;
+
+        /**
+         * Change to the like count.
+         */
+        private final long likes;
+
+        /**
+         * Change to the dislike count.
+         */
+        private final long dislikes;
+    }
+
+    /**
+     * Applies count changes in a single JDBC batch. Rows are updated in id order so that concurrent
+     * batches lock them in the same order. Deltas of posts or replies that no longer exist are ignored.
+     *
+     * @param deltas the changes to apply
+     * @param now    the time to compute hot scores for
+     */
+    public void addToCounts(List<CounterDelta> deltas, Date now) {
+        Timestamp nowTs = new Timestamp(now.getTime());
+        Timestamp windowStart = new Timestamp(now.getTime() - TimeUnit.HOURS.toMillis(HotScoreUtility.ACTIVE_WINDOW_HOURS));
+
+        List<CounterDelta> ordered = new ArrayList<>(deltas);
+        ordered.sort(Comparator.comparingLong(CounterDelta::getVotableId));
+
+        List<Object[]> args = new ArrayList<>(ordered.size());
+        for (CounterDelta delta : ordered) {
+            long scoreDelta = delta.getLikes() - delta.getDislikes();
+            args.add(new Object[]{
+                    delta.getLikes(), delta.getDislikes(), scoreDelta,
+                    windowStart, scoreDelta, nowTs, HotScoreUtility.AGE_OFFSET_HOURS, HotScoreUtility.GRAVITY,
+                    delta.getVotableId(), delta.getVotableId()
+            });
+        }
+        jdbcTemplate.batchUpdate(ADD_TO_COUNTS, args);
+    }
+}
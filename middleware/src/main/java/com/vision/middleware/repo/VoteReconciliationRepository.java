@@ -0,0 +1,169 @@
+package com.vision.middleware.repo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository comparing the stored like and dislike counts of posts and replies with the votes in
+ * {@code user_votes}.
+ * <p>
+ * Votes are counted per range of votable ids, so each range is aggregated from the
+ * {@code (votable_id, vote_type)} index alone and ranges can be checked independently and in parallel.
+ * <p>
+ * A run holds a Postgres advisory lock, so only one node of a cluster reconciles at a time.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VoteReconciliationRepository {
+
+    /**
+     * Stored and actual counts of the votables whose stored counts differ from their votes.
+     * The votable id bounds appear twice, once for the votes and once for the votables.
+     */
+    private static final String FIND_DRIFT_IN_RANGE = "SELECT v.id, v.like_count, v.dislike_count, " +
+            "COALESCE(a.likes, 0) AS actual_likes, COALESCE(a.dislikes, 0) AS actual_dislikes " +
+            "FROM votable_entity v LEFT JOIN (" +
+            "  SELECT votable_id, count(*) FILTER (WHERE vote_type = 'LIKE') AS likes, " +
+            "         count(*) FILTER (WHERE vote_type = 'DISLIKE') AS dislikes " +
+            "  FROM user_votes WHERE votable_id >= ? AND votable_id < ? GROUP BY votable_id" +
+            ") a ON a.votable_id = v.id " +
+            "WHERE v.id >= ? AND v.id < ? " +
+            "AND (v.like_count <> COALESCE(a.likes, 0) OR v.dislike_count <> COALESCE(a.dislikes, 0))";
+
+    /**
+     * Stored and actual counts of the given votables.
+     */
+    private static final String FIND_COUNTS_OF_IDS = "SELECT v.id, v.like_count, v.dislike_count, " +
+            "(SELECT count(*) FROM user_votes u WHERE u.votable_id = v.id AND u.vote_type = 'LIKE') AS actual_likes, " +
+            "(SELECT count(*) FROM user_votes u WHERE u.votable_id = v.id AND u.vote_type = 'DISLIKE') AS actual_dislikes " +
+            "FROM votable_entity v WHERE v.id = ANY (?)";
+
+    /**
+     * Key of the advisory lock held while reconciling, the same on every node.
+     */
+    private static final long RUN_LOCK_KEY = 0x766f746573L; // "votes"
+
+    private static final RowMapper<CountDrift> COUNT_DRIFT_MAPPER = (rs, rowNum) -> new CountDrift(
+            rs.getLong("id"),
+            rs.getLong("like_count"),
+            rs.getLong("dislike_count"),
+            rs.getLong("actual_likes"),
+            rs.getLong("actual_dislikes"));
+
+    /**
+     * JDBC access used for the aggregate queries.
+     */
+    @Autowired
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * The stored and actual counts of one post or reply.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CountDrift {
+        /**
+         * ID of the post or reply.
+         */
+        private final long votableId;
+
+        /**
+         * Like count stored on the votable.
+         */
+        private final long likeCount;
+
+        /**
+         * Dislike count stored on the votable.
+         */
+        private final long dislikeCount;
+
+        /**
+         * Number of LIKE votes on the votable.
+         */
+        private final long actualLikes;
+
+        /**
+         * Number of DISLIKE votes on the votable.
+         */
+        private final long actualDislikes;
+    }
+
+    /**
+     * Runs a reconciliation while holding the cluster-wide reconciliation lock, unless another node holds it.
+     * The lock is held by a connection of its own for the whole run, and released when the run ends or the
+     * connection is lost.
+     *
+     * @param run the reconciliation
+     * @return true if the run was made, false if the lock was held elsewhere
+     */
+    public boolean runExclusively(Runnable run) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            try (PreparedStatement lock = con.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, RUN_LOCK_KEY);
+                try (ResultSet rs = lock.executeQuery()) {
+                    rs.next();
+                    if (!rs.getBoolean(1)) {
+                        return false;
+                    }
+                }
+            }
+            try {
+                run.run();
+                return true;
+            } finally {
+                try (PreparedStatement unlock = con.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, RUN_LOCK_KEY);
+                    unlock.executeQuery().close();
+                }
+            }
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    /**
+     * @return the lowest and highest votable id, or null if there are no posts or replies
+     */
+    public long[] findIdRange() {
+        return jdbcTemplate.query("SELECT min(id), max(id) FROM votable_entity", rs -> {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        });
+    }
+
+    /**
+     * Finds the votables in an id range whose stored counts differ from their votes.
+     *
+     * @param fromId lowest id of the range (inclusive)
+     * @param toId   end of the range (exclusive)
+     * @return the stored and actual counts of each votable that differs
+     */
+    public List<CountDrift> findDrift(long fromId, long toId) {
+        return jdbcTemplate.query(FIND_DRIFT_IN_RANGE, COUNT_DRIFT_MAPPER, fromId, toId, fromId, toId);
+    }
+
+    /**
+     * Reads the stored and actual counts of the given votables, whether they differ or not.
+     *
+     * @param votableIds IDs of the posts or replies
+     * @return the stored and actual counts of each votable that still exists
+     */
+    public List<CountDrift> findCounts(Collection<Long> votableIds) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(FIND_COUNTS_OF_IDS);
+            statement.setArray(1, con.createArrayOf("bigint", votableIds.toArray()));
+            return statement;
+        }, COUNT_DRIFT_MAPPER);
+    }
+}
@@ -0,0 +1,67 @@
+package com.vision.middleware.repo.searchspec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position within a user's unread notifications, which are replayed newest first, i.e. by
+ * id descending.
+ */
+@Getter
+@AllArgsConstructor
+public class NotificationCursor {
+
+    /**
+     * Marks an encoded value as a notification cursor, so other cursors are rejected and vice versa.
+     */
+    private static final String PREFIX = "NOTIFICATION";
+
+    /**
+     * Separator between the encoded key values.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * ID of the last notification seen.
+     */
+    private final long id;
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, PREFIX, String.valueOf(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param encoded the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static NotificationCursor decode(String encoded) throws IllegalArgumentException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+
+        if (parts.length != 2 || !PREFIX.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        try {
+            return new NotificationCursor(Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.vision.middleware.repo.searchspec;
+
+import com.vision.middleware.domain.Post;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque keyset position within a sorted list of Posts.
+ * <p>
+ * A cursor holds the sort key values of the last Post of a page, so the next page can resume
+ * directly after that Post with a range predicate instead of skipping rows with an OFFSET.
+ * The id is always included as the final tie-breaker so that the ordering is total.
+ */
+@Getter
+@AllArgsConstructor
+public class PostCursor {
+
+    /**
+     * Separator between the encoded key values.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * The ordering that this cursor is a position in.
+     */
+    private final SortKey sortKey;
+
+    /**
+     * Like count of the last Post seen. Only meaningful for {@link SortKey#POPULARITY}.
+     */
+    private final long likeCount;
+
+    /**
+     * Date the last Post seen was posted.
+     */
+    private final Date datePosted;
+
+    /**
+     * ID of the last Post seen.
+     */
+    private final long id;
+
+    /**
+     * Last activity of the last Post seen. Only set for {@link SortKey#ACTIVE}.
+     */
+    private final Date lastActivityAt;
+
+    /**
+     * Creates a cursor for an ordering that does not use the last activity.
+     *
+     * @param sortKey    the ordering that the cursor is a position in
+     * @param likeCount  like count of the last Post seen
+     * @param datePosted date the last Post seen was posted
+     * @param id         ID of the last Post seen
+     */
+    public PostCursor(SortKey sortKey, long likeCount, Date datePosted, long id) {
+        this(sortKey, likeCount, datePosted, id, null);
+    }
+
+    /**
+     * Orderings supported by keyset pagination.
+     */
+    public enum SortKey {
+        /**
+         * Newest first: (datePosted, id) descending.
+         */
+        DATE,
+
+        /**
+         * Most liked first: (likeCount, datePosted, id) descending.
+         */
+        POPULARITY,
+
+        /**
+         * Most recently active first: (lastActivityAt, id) descending.
+         */
+        ACTIVE;
+
+        /**
+         * Maps the "sort-by" request parameter to a sort key. Anything unrecognized sorts by date,
+         * matching the behaviour of the page-number API, except "hot": hot scores decay between
+         * requests, so a position within them cannot be resumed.
+         *
+         * @param sortBy the requested sort criteria
+         * @return the matching SortKey
+         * @throws IllegalArgumentException if the sort cannot be paged with a cursor
+         */
+        public static SortKey fromSortBy(String sortBy) throws IllegalArgumentException {
+            return switch (sortBy == null ? "" : sortBy) {
+                case "popularity" -> POPULARITY;
+                case "active" -> ACTIVE;
+                case "hot" -> throw new IllegalArgumentException("Sort hot is not supported with cursors");
+                default -> DATE;
+            };
+        }
+
+        /**
+         * Builds the Sort that a keyset query over this key must use.
+         *
+         * @return the Sort for this key, always ending with the id tie-breaker
+         */
+        public Sort toSort() {
+            if (this == POPULARITY) {
+                return Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted"), Sort.Order.desc("id"));
+            }
+            if (this == ACTIVE) {
+                return Sort.by(Sort.Order.desc("lastActivityAt"), Sort.Order.desc("id"));
+            }
+            return Sort.by(Sort.Order.desc("datePosted"), Sort.Order.desc("id"));
+        }
+    }
+
+    /**
+     * Creates a cursor pointing at the given Post.
+     *
+     * @param post    the last Post of a page
+     * @param sortKey the ordering the page was fetched with
+     * @return a cursor positioned right after the Post
+     */
+    public static PostCursor fromPost(Post post, SortKey sortKey) {
+        return new PostCursor(sortKey, post.getLikeCount(), post.getDatePosted(), post.getId(),
+                sortKey == SortKey.ACTIVE ? post.getLastActivityAt() : null);
+    }
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR,
+                sortKey.name(),
+                String.valueOf(likeCount),
+                String.valueOf(datePosted.getTime()),
+                String.valueOf(id));
+        if (lastActivityAt != null) {
+            raw += SEPARATOR + lastActivityAt.getTime();
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param encoded the opaque cursor string
+     * @param sortKey the ordering the caller is requesting
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for a different ordering
+     */
+    public static PostCursor decode(String encoded, SortKey sortKey) throws IllegalArgumentException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+
+        // the last activity is only encoded for the ACTIVE sort
+        if (parts.length != (sortKey == SortKey.ACTIVE ? 5 : 4)) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        try {
+            SortKey encodedKey = SortKey.valueOf(parts[0]);
+            if (encodedKey != sortKey) {
+                throw new IllegalArgumentException("Cursor was issued for sort " + encodedKey + ", not " + sortKey);
+            }
+            return new PostCursor(
+                    encodedKey,
+                    Long.parseLong(parts[1]),
+                    new Date(Long.parseLong(parts[2])),
+                    Long.parseLong(parts[3]),
+                    parts.length > 4 ? new Date(Long.parseLong(parts[4])) : null
+            );
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
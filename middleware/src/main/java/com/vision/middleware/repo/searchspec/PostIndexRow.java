@@ -0,0 +1,14 @@
+package com.vision.middleware.repo.searchspec;
+
+import java.util.Date;
+
+/**
+ * Projection of the columns of a post that the in-memory search index needs to index it.
+ */
+public interface PostIndexRow {
+    Long getId();
+    Long getAuthorId();
+    Date getDatePosted();
+    String getTitle();
+    String getText();
+}
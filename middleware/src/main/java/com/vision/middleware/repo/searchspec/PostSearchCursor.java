@@ -0,0 +1,112 @@
+package com.vision.middleware.repo.searchspec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.StringJoiner;
+
+/**
+ * Opaque keyset position within a list of full-text search results, which are ordered by
+ * (rank, id) descending. See {@link PostCursor} for the equivalent for plain post listings.
+ * <p>
+ * Engines whose ranks depend on the rest of the corpus, like the BM25 scores of the in-memory index, also carry
+ * the corpus statistics the first page was ranked with, so later pages rank the same posts the same way.
+ */
+@Getter
+@AllArgsConstructor
+public class PostSearchCursor {
+
+    /**
+     * Marks an encoded value as a search cursor, so listing cursors are rejected and vice versa.
+     */
+    private static final String PREFIX = "SEARCH";
+
+    /**
+     * Separator between the encoded key values.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Separator between the corpus statistics.
+     */
+    private static final String STATISTICS_SEPARATOR = ",";
+
+    /**
+     * Rank of the last result seen. Kept as the database's single precision value so that
+     * equality comparisons against it are exact.
+     */
+    private final float rank;
+
+    /**
+     * ID of the last Post seen.
+     */
+    private final long id;
+
+    /**
+     * Corpus statistics the results were ranked with, or null if the rank does not depend on them.
+     */
+    private final float[] statistics;
+
+    /**
+     * Creates a cursor for ranks that do not depend on corpus statistics.
+     *
+     * @param rank rank of the last result seen
+     * @param id   ID of the last Post seen
+     */
+    public PostSearchCursor(float rank, long id) {
+        this(rank, id, null);
+    }
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, PREFIX, Float.toString(rank), String.valueOf(id));
+        if (statistics != null) {
+            StringJoiner values = new StringJoiner(STATISTICS_SEPARATOR);
+            for (float value : statistics) {
+                values.add(Float.toString(value));
+            }
+            raw += SEPARATOR + values;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param encoded the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static PostSearchCursor decode(String encoded) throws IllegalArgumentException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+
+        if (parts.length < 3 || parts.length > 4 || !PREFIX.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        try {
+            float[] statistics = null;
+            if (parts.length == 4) {
+                String[] values = parts[3].split(STATISTICS_SEPARATOR);
+                statistics = new float[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    statistics[i] = Float.parseFloat(values[i]);
+                }
+            }
+            return new PostSearchCursor(Float.parseFloat(parts[1]), Long.parseLong(parts[2]), statistics);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.vision.middleware.repo.searchspec;
+
+import java.util.Date;
+
+/**
+ * Projection of a single full-text search result: the columns of a post listing,
+ * its author's summary, the result's rank and a highlighted snippet of the matching text.
+ */
+public interface PostSearchHit {
+    Long getPostId();
+    String getTitle();
+    String getText();
+    Long getLikeCount();
+    Long getDislikeCount();
+    Date getDatePosted();
+    String getMediaFileName();
+    Long getUserId();
+    String getUsername();
+    String getDisplayName();
+    String getProfilePictureFileName();
+    Long getReplyCount();
+    Date getLastActivityAt();
+    Float getRank();
+    String getSnippet();
+}
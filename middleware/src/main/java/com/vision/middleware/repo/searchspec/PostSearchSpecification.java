@@ -6,6 +6,7 @@ import jakarta.persistence.criteria.*;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.util.StringUtils;
 
+import java.util.Collection;
 import java.util.Date;
 
 /**
@@ -46,6 +47,76 @@ public class PostSearchSpecification {
             criteriaBuilder.equal(root.get("postedBy"), user);
     }
 
+    /**
+     * Creates a Specification that matches the Posts with the given IDs.
+     *
+     * @param ids the IDs of the Posts to match
+     * @return a Specification matching Posts whose ID is in the given collection
+     */
+    public static Specification<Post> filterByIds(Collection<Long> ids) {
+        return (root, query, builder) -> root.get("id").in(ids);
+    }
+
+    /**
+     * Creates a Specification that loads each Post's author in the same query (fetch join),
+     * so reading {@code post.getPostedBy()} afterwards does not issue one query per author.
+     * Matches every Post; combine it with the actual filters.
+     *
+     * @return a Specification that fetches the author of each Post
+     */
+    public static Specification<Post> fetchAuthor() {
+        return (root, query, builder) -> {
+            // count queries (e.g. for Page totals) must not fetch.
+            if (!Long.class.equals(query.getResultType()) && !long.class.equals(query.getResultType())) {
+                root.fetch("postedBy", JoinType.INNER);
+            }
+            return builder.conjunction();
+        };
+    }
+
+    /**
+     * Creates a Specification that only matches Posts positioned strictly after the given cursor
+     * in the cursor's ordering. This is the keyset equivalent of skipping the rows of previous pages.
+     *
+     * @param cursor the position of the last Post of the previous page
+     * @return a Specification matching the Posts that come after the cursor
+     */
+    public static Specification<Post> filterAfterCursor(PostCursor cursor) {
+        return (root, query, builder) -> {
+            if (cursor.getSortKey() == PostCursor.SortKey.ACTIVE) {
+                // (lastActivityAt, id) < (cursor.lastActivityAt, cursor.id)
+                return builder.or(
+                        builder.lessThan(root.get("lastActivityAt"), cursor.getLastActivityAt()),
+                        builder.and(
+                                builder.equal(root.get("lastActivityAt"), cursor.getLastActivityAt()),
+                                builder.lessThan(root.get("id"), cursor.getId())
+                        )
+                );
+            }
+
+            // (datePosted, id) < (cursor.datePosted, cursor.id), spelled out for the criteria API
+            Predicate afterDateAndId = builder.or(
+                    builder.lessThan(root.get("datePosted"), cursor.getDatePosted()),
+                    builder.and(
+                            builder.equal(root.get("datePosted"), cursor.getDatePosted()),
+                            builder.lessThan(root.get("id"), cursor.getId())
+                    )
+            );
+
+            if (cursor.getSortKey() == PostCursor.SortKey.POPULARITY) {
+                return builder.or(
+                        builder.lessThan(root.get("likeCount"), cursor.getLikeCount()),
+                        builder.and(
+                                builder.equal(root.get("likeCount"), cursor.getLikeCount()),
+                                afterDateAndId
+                        )
+                );
+            }
+
+            return afterDateAndId;
+        };
+    }
+
     /**
      * Creates a Specification to search for Posts based on a query string and optionally,
      * an ApplicationUser. Searching is performed on the Post's title and text fields.
@@ -0,0 +1,126 @@
+package com.vision.middleware.repo.searchspec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position within the replies of one parent in a comment tree: either the top-level replies of a
+ * post, or the children of one reply. Siblings are ordered by vote score descending, then oldest first,
+ * then by id; the cursor holds those values of the last reply already returned, or none to start with the
+ * first reply.
+ */
+@Getter
+@AllArgsConstructor
+public class ReplyTreeCursor {
+
+    /**
+     * Parent ID of top-level replies, which have no parent reply.
+     */
+    public static final long TOP_LEVEL = 0;
+
+    /**
+     * Marks an encoded value as a reply tree cursor, so other cursors are rejected.
+     */
+    private static final String PREFIX = "REPLIES";
+
+    /**
+     * Separator between the encoded key values.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * ID of the post the replies belong to.
+     */
+    private final long postId;
+
+    /**
+     * ID of the reply whose children are listed, or {@link #TOP_LEVEL}.
+     */
+    private final long parentId;
+
+    /**
+     * Vote score of the last reply seen.
+     */
+    private final long voteScore;
+
+    /**
+     * Date the last reply seen was posted, in milliseconds.
+     */
+    private final long datePosted;
+
+    /**
+     * ID of the last reply seen, or 0 to start with the first reply.
+     */
+    private final long id;
+
+    /**
+     * Creates a cursor at the first reply of a parent.
+     *
+     * @param postId   ID of the post
+     * @param parentId ID of the parent reply, or {@link #TOP_LEVEL}
+     * @return the cursor
+     */
+    public static ReplyTreeCursor start(long postId, long parentId) {
+        return new ReplyTreeCursor(postId, parentId, 0, 0, 0);
+    }
+
+    /**
+     * Creates a cursor directly after a reply.
+     *
+     * @param postId   ID of the post
+     * @param parentId ID of the reply's parent, or {@link #TOP_LEVEL}
+     * @param last     the last reply returned
+     * @return the cursor
+     */
+    public static ReplyTreeCursor after(long postId, long parentId, ReplyTreeRow last) {
+        return new ReplyTreeCursor(postId, parentId, last.getVoteScore(), last.getDatePosted().getTime(), last.getId());
+    }
+
+    /**
+     * @return true if the cursor starts with the first reply
+     */
+    public boolean isAtStart() {
+        return id == 0;
+    }
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, PREFIX, String.valueOf(postId), String.valueOf(parentId),
+                String.valueOf(voteScore), String.valueOf(datePosted), String.valueOf(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param encoded the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static ReplyTreeCursor decode(String encoded) throws IllegalArgumentException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+
+        if (parts.length != 6 || !PREFIX.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        try {
+            return new ReplyTreeCursor(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                    Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
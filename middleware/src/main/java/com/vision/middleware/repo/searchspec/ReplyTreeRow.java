@@ -0,0 +1,21 @@
+package com.vision.middleware.repo.searchspec;
+
+import java.util.Date;
+
+/**
+ * Projection of one reply of a comment tree: its columns, its parent's id and its author's summary.
+ */
+public interface ReplyTreeRow {
+    Long getId();
+    Long getParentId();
+    String getText();
+    Date getDatePosted();
+    Long getLikeCount();
+    Long getDislikeCount();
+    Long getVoteScore();
+    Boolean getDeleted();
+    Long getUserId();
+    String getUsername();
+    String getDisplayName();
+    String getProfilePictureFileName();
+}
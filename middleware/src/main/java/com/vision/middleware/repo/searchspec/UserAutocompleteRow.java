@@ -0,0 +1,12 @@
+package com.vision.middleware.repo.searchspec;
+
+/**
+ * Projection of the columns of a user that the in-memory autocomplete index needs to index it.
+ */
+public interface UserAutocompleteRow {
+    Long getId();
+    String getUsername();
+    String getDisplayName();
+    String getProfilePictureFileName();
+    Long getFollowerCount();
+}
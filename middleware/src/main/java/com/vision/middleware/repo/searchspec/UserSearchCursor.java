@@ -0,0 +1,73 @@
+package com.vision.middleware.repo.searchspec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position within a list of user search results, which are ordered by
+ * (rank, id) descending. See {@link PostSearchCursor} for the equivalent for post search results.
+ */
+@Getter
+@AllArgsConstructor
+public class UserSearchCursor {
+
+    /**
+     * Marks an encoded value as a search cursor, so listing cursors are rejected and vice versa.
+     */
+    private static final String PREFIX = "USERSEARCH";
+
+    /**
+     * Separator between the encoded key values.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Rank of the last result seen. Kept as the database's single precision value so that
+     * equality comparisons against it are exact.
+     */
+    private final float rank;
+
+    /**
+     * ID of the last user seen.
+     */
+    private final long id;
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, PREFIX, Float.toString(rank), String.valueOf(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param encoded the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static UserSearchCursor decode(String encoded) throws IllegalArgumentException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+
+        if (parts.length != 3 || !PREFIX.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        try {
+            return new UserSearchCursor(Float.parseFloat(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
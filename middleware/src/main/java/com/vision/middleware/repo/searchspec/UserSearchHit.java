@@ -0,0 +1,12 @@
+package com.vision.middleware.repo.searchspec;
+
+/**
+ * Projection of a single user search result: the user's public summary and the result's rank.
+ */
+public interface UserSearchHit {
+    Long getUserId();
+    String getUsername();
+    String getDisplayName();
+    String getProfilePictureFileName();
+    Float getRank();
+}
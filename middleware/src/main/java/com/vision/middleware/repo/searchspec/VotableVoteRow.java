@@ -0,0 +1,13 @@
+package com.vision.middleware.repo.searchspec;
+
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.domain.relations.UserVote;
+
+/**
+ * Projection of a user's vote on one post or reply, as loaded into the {@code UserVoteCache}.
+ */
+public interface VotableVoteRow {
+    Long getVotableId();
+    VotableType getVotableType();
+    UserVote.VoteType getVoteType();
+}
@@ -0,0 +1,20 @@
+package com.vision.middleware.repo.searchspec;
+
+/**
+ * Projection of the result of casting or removing a vote in a single statement.
+ * <p>
+ * {@code found} is false if the post or reply does not exist. {@code changed} is false if the vote was
+ * already cast (or, when removing, did not exist). {@code previousVoteType} is the vote that was replaced
+ * or removed, if any. The counts are those of the votable after the statement. {@code postId} is the ID
+ * of the post the votable belongs to (the post itself for posts), or null if not found.
+ * {@code authorId} is the ID of the votable's author, or null if not found.
+ */
+public interface VoteOutcome {
+    Boolean getFound();
+    Long getPostId();
+    Long getAuthorId();
+    Boolean getChanged();
+    String getPreviousVoteType();
+    Long getLikeCount();
+    Long getDislikeCount();
+}
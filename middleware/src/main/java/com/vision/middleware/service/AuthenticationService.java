@@ -60,6 +60,11 @@ public class AuthenticationService {
      */
     private final TokenService tokenService;
 
+    /**
+     * In-memory index used for user autocomplete, updated with newly registered users.
+     */
+    private final UserAutocompleteIndex userAutocompleteIndex;
+
     /**
      * Registers a new user with the provided details.
      *
@@ -98,7 +103,9 @@ public class AuthenticationService {
                 .followerCount(0)
                 .build();
 
-        return userRepository.save(newUser);
+        ApplicationUser saved = userRepository.save(newUser);
+        userAutocompleteIndex.put(saved);
+        return saved;
     }
 
     /**
@@ -0,0 +1,124 @@
+package com.vision.middleware.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Shares the changes behind the in-memory caches between the nodes of a cluster, so a cache is not left stale by a
+ * change made on another node.
+ * <p>
+ * Each cache registers a handler per kind of change under a name of its own, and publishes its changes under that
+ * name once they are committed, e.g. the ID of a post whose comment tree changed. The other nodes hand the IDs to
+ * the cache's handler, which drops or reloads what it holds of them; the publishing node ignores its own messages.
+ * Changes are shared on one broadcast channel of the {@link ClusterTransport}. As the transport may lose messages,
+ * the caches still bound how long they keep data, see e.g. {@code replies.tree-cache.ttl-ms}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterCacheInvalidator {
+
+    /**
+     * Channel on which the nodes share their changes.
+     */
+    public static final String CHANNEL = "cache_cluster";
+
+    /**
+     * Transport the changes are sent over.
+     */
+    @Autowired
+    private final ClusterTransport clusterTransport;
+
+    /**
+     * Source of this node's id.
+     */
+    @Autowired
+    private final ClusterRoutingTable routingTable;
+
+    /**
+     * Mapper the changes are serialized with.
+     */
+    @Autowired
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Handlers of the changes made on other nodes, by name.
+     */
+    private final Map<String, Consumer<List<Long>>> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * A change made on one node.
+     *
+     * @param origin id of the node the change was made on
+     * @param name   the cache and kind of change
+     * @param ids    the IDs of what changed
+     */
+    public record Invalidation(String origin, String name, List<Long> ids) {
+    }
+
+    /**
+     * Subscribes to the changes of the other nodes.
+     */
+    @PostConstruct
+    public void start() {
+        clusterTransport.subscribe(CHANNEL, this::onInvalidation);
+    }
+
+    /**
+     * Registers the handler of a kind of change made on other nodes. Handlers are called on the transport's thread.
+     *
+     * @param name    the cache and kind of change
+     * @param handler called with the IDs of each change of that kind made on another node
+     */
+    public void register(String name, Consumer<List<Long>> handler) {
+        handlers.put(name, handler);
+    }
+
+    /**
+     * Tells the other nodes about a change. Must be called once the change is committed, so the other nodes read
+     * it when they reload.
+     *
+     * @param name the cache and kind of change
+     * @param ids  the IDs of what changed
+     */
+    public void publish(String name, List<Long> ids) {
+        try {
+            clusterTransport.publish(CHANNEL, objectMapper.writeValueAsString(
+                    new Invalidation(routingTable.getNodeId(), name, List.copyOf(ids))));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize a cache invalidation", e);
+        }
+    }
+
+    /**
+     * Hands a change made on another node to its handler.
+     */
+    private void onInvalidation(String json) {
+        Invalidation invalidation;
+        try {
+            invalidation = objectMapper.readValue(json, Invalidation.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed cache invalidation", e);
+            return;
+        }
+        if (invalidation.origin() == null || routingTable.getNodeId().equals(invalidation.origin())
+                || invalidation.ids() == null) {
+            return;
+        }
+
+        Consumer<List<Long>> handler = handlers.get(invalidation.name());
+        if (handler != null) {
+            handler.accept(invalidation.ids());
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.vision.middleware.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Routing table of the WebSocket cluster: which nodes have sessions of which user, or subscriptions to which topic.
+ * <p>
+ * Routes are identified by keys, {@link #userKey} and {@link #topicKey}. This node's own routes are counted, since a
+ * user may have several sessions and a topic several subscribers; the {@link WebSocketClusterBridge} announces a
+ * route when its count rises from 0 and when it drops back. Other nodes' routes are learned from their announcements
+ * and expire when a node stops sending heartbeats, so a message for a user is only sent to the nodes the user is
+ * connected to instead of to every node.
+ * <p>
+ * Each node numbers the changes of its routes with a version, so the table can tell when it missed a node's update,
+ * or when its routes of a node disagree with the node's heartbeat, and the node's routes should be asked for again.
+ */
+@Component
+public class ClusterRoutingTable {
+
+    /**
+     * This node's id, from {@code cluster.node-id}; a random one if not set.
+     */
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId = "";
+
+    private volatile String nodeId;
+
+    /**
+     * Number of sessions or subscriptions of this node per route. Guarded by {@link #lock}.
+     */
+    private final Map<String, Integer> localCounts = new HashMap<>();
+
+    /**
+     * Routes of the other nodes, by node id. Guarded by {@link #lock}.
+     */
+    private final Map<String, NodeRoutes> nodes = new HashMap<>();
+
+    /**
+     * The other nodes by route, the inverse of {@link #nodes}. Guarded by {@link #lock}.
+     */
+    private final Map<String, Set<String>> nodesByKey = new HashMap<>();
+
+    private final Object lock = new Object();
+
+    /**
+     * Version of a node whose routes may be incomplete.
+     */
+    private static final long UNKNOWN_VERSION = -1;
+
+    /**
+     * Routes of one other node.
+     */
+    private static class NodeRoutes {
+        private final Set<String> keys = new HashSet<>();
+        private long lastSeen;
+        private long version = UNKNOWN_VERSION;
+    }
+
+    /**
+     * @param userId name of the user, i.e. their ID
+     * @return the route key of a user's sessions
+     */
+    public static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * @param destination a /topic destination
+     * @return the route key of the subscriptions to a topic
+     */
+    public static String topicKey(String destination) {
+        return "topic:" + destination;
+    }
+
+    /**
+     * @return this node's id; lowercase letters, digits and underscores, so it can be part of a channel name
+     */
+    public String getNodeId() {
+        String id = nodeId;
+        if (id == null) {
+            synchronized (lock) {
+                if (nodeId == null) {
+                    nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                            ? UUID.randomUUID().toString().replace("-", "").substring(0, 12)
+                            : configuredNodeId.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_]", "_");
+                }
+                id = nodeId;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Counts a session or subscription of this node.
+     *
+     * @param key the route key
+     * @return true if it is the route's first, so the route is new
+     */
+    public boolean addLocal(String key) {
+        synchronized (lock) {
+            return localCounts.merge(key, 1, Integer::sum) == 1;
+        }
+    }
+
+    /**
+     * Stops counting a session or subscription of this node.
+     *
+     * @param key the route key
+     * @return true if it was the route's last, so the route is gone
+     */
+    public boolean removeLocal(String key) {
+        synchronized (lock) {
+            Integer count = localCounts.get(key);
+            if (count == null) {
+                return false;
+            }
+            if (count > 1) {
+                localCounts.put(key, count - 1);
+                return false;
+            }
+            localCounts.remove(key);
+            return true;
+        }
+    }
+
+    /**
+     * @return the routes of this node
+     */
+    public Set<String> localKeys() {
+        synchronized (lock) {
+            return new HashSet<>(localCounts.keySet());
+        }
+    }
+
+    /**
+     * @param key the route key
+     * @return true if this node has the route
+     */
+    public boolean hasLocal(String key) {
+        synchronized (lock) {
+            return localCounts.containsKey(key);
+        }
+    }
+
+    /**
+     * @param key the route key
+     * @return the other nodes that have the route
+     */
+    public Set<String> nodesFor(String key) {
+        synchronized (lock) {
+            Set<String> found = nodesByKey.get(key);
+            return found == null ? Set.of() : new HashSet<>(found);
+        }
+    }
+
+    /**
+     * @return the number of routes of this node
+     */
+    public int localCount() {
+        synchronized (lock) {
+            return localCounts.size();
+        }
+    }
+
+    /**
+     * @return the number of other nodes known
+     */
+    public int nodeCount() {
+        synchronized (lock) {
+            return nodes.size();
+        }
+    }
+
+    /**
+     * Records that another node gained routes.
+     *
+     * @param node    ID of the node
+     * @param keys    the new routes
+     * @param version the node's version after the change
+     * @param now     the current time, when the node was last heard from
+     * @return true if the node was not known or an update of it was missed, so its routes should be asked for; only
+     * once until they are replaced
+     */
+    public boolean added(String node, Collection<String> keys, long version, long now) {
+        synchronized (lock) {
+            NodeRoutes routes = nodes.get(node);
+            boolean missed = advance(routes, version);
+            routes = seen(node, now);
+            for (String key : keys) {
+                index(node, routes, key);
+            }
+            return missed;
+        }
+    }
+
+    /**
+     * Records that another node lost routes.
+     *
+     * @param node    ID of the node
+     * @param keys    the routes lost
+     * @param version the node's version after the change
+     * @param now     the current time, when the node was last heard from
+     * @return true if the node was not known or an update of it was missed, so its routes should be asked for; only
+     * once until they are replaced
+     */
+    public boolean removed(String node, Collection<String> keys, long version, long now) {
+        synchronized (lock) {
+            NodeRoutes routes = nodes.get(node);
+            boolean missed = advance(routes, version);
+            routes = seen(node, now);
+            for (String key : keys) {
+                if (routes.keys.remove(key)) {
+                    unindex(node, key);
+                }
+            }
+            return missed;
+        }
+    }
+
+    /**
+     * Replaces all routes of another node, e.g. from the snapshot it sent when asked.
+     *
+     * @param node    ID of the node
+     * @param keys    all routes of the node
+     * @param version the node's version of these routes
+     * @param now     the current time, when the node was last heard from
+     */
+    public void replaced(String node, Collection<String> keys, long version, long now) {
+        synchronized (lock) {
+            Set<String> current = new HashSet<>(keys);
+            NodeRoutes routes = seen(node, now);
+            for (String key : List.copyOf(routes.keys)) {
+                if (!current.contains(key)) {
+                    routes.keys.remove(key);
+                    unindex(node, key);
+                }
+            }
+            for (String key : current) {
+                index(node, routes, key);
+            }
+            routes.version = version;
+        }
+    }
+
+    /**
+     * Records another node's heartbeat.
+     *
+     * @param node    ID of the node
+     * @param version the node's current version
+     * @param count   the node's current number of routes
+     * @param now     the current time, when the node was last heard from
+     * @return true if the node's routes here are not those of that version, so they should be asked for
+     */
+    public boolean heartbeat(String node, long version, int count, long now) {
+        synchronized (lock) {
+            boolean known = nodes.containsKey(node);
+            NodeRoutes routes = seen(node, now);
+            return !known || routes.version != version || routes.keys.size() != count;
+        }
+    }
+
+    /**
+     * Forgets another node and its routes, e.g. once it has shut down.
+     *
+     * @param node ID of the node
+     */
+    public void left(String node) {
+        synchronized (lock) {
+            NodeRoutes routes = nodes.remove(node);
+            if (routes != null) {
+                routes.keys.forEach(key -> unindex(node, key));
+            }
+        }
+    }
+
+    /**
+     * Forgets the nodes not heard from since a point in time, e.g. ones that stopped without saying so.
+     *
+     * @param lastSeenBefore nodes last heard from before this time are forgotten
+     * @return the number of nodes forgotten
+     */
+    public int expire(long lastSeenBefore) {
+        synchronized (lock) {
+            List<String> stale = nodes.entrySet().stream()
+                    .filter(entry -> entry.getValue().lastSeen < lastSeenBefore)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            stale.forEach(this::left);
+            return stale.size();
+        }
+    }
+
+    /**
+     * Moves a node to the version of an update, or marks its routes as incomplete if updates were missed.
+     *
+     * @return true if the routes were not known to be incomplete before
+     */
+    private boolean advance(NodeRoutes routes, long version) {
+        if (routes == null) {
+            return true;
+        }
+        if (routes.version != UNKNOWN_VERSION && version == routes.version + 1) {
+            routes.version = version;
+            return false;
+        }
+        boolean wasComplete = routes.version != UNKNOWN_VERSION;
+        routes.version = UNKNOWN_VERSION;
+        return wasComplete;
+    }
+
+    private NodeRoutes seen(String node, long now) {
+        NodeRoutes routes = nodes.computeIfAbsent(node, n -> new NodeRoutes());
+        routes.lastSeen = Math.max(routes.lastSeen, now);
+        return routes;
+    }
+
+    private void index(String node, NodeRoutes routes, String key) {
+        if (routes.keys.add(key)) {
+            nodesByKey.computeIfAbsent(key, k -> new HashSet<>()).add(node);
+        }
+    }
+
+    private void unindex(String node, String key) {
+        Set<String> found = nodesByKey.get(key);
+        if (found != null && found.remove(node) && found.isEmpty()) {
+            nodesByKey.remove(key);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.vision.middleware.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Transport carrying text messages between the nodes of a cluster, on named channels.
+ * <p>
+ * A message published on a channel is delivered to every listener of that channel on every node, including the
+ * publishing one, in the order the node published it. Delivery is best effort: a message may be lost, e.g. while a
+ * node reconnects, so users of a transport must be able to recover from that.
+ * <p>
+ * Selected with {@code cluster.transport}, see {@link com.vision.middleware.config.ClusterConfig}.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Publishes a message on a channel.
+     *
+     * @param channel the channel name; lowercase letters, digits and underscores
+     * @param payload the message, of any length
+     */
+    void publish(String channel, String payload);
+
+    /**
+     * Registers a listener for the messages of a channel. Listeners are called on the transport's own thread, one
+     * message at a time.
+     *
+     * @param channel  the channel name; lowercase letters, digits and underscores
+     * @param listener called with each message published on the channel
+     */
+    void subscribe(String channel, Consumer<String> listener);
+
+    /**
+     * Stops delivering messages and releases the transport's resources.
+     */
+    default void close() {
+    }
+}
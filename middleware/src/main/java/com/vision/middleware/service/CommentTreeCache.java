@@ -0,0 +1,740 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.Reply;
+import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.searchspec.ReplyTreeCursor;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of the comment trees of posts, so popular threads are not reloaded on every read.
+ * <p>
+ * A cached tree holds the replies of one post with their authors, each list of children sorted as shown
+ * (vote score descending, then oldest first, then ID). It holds nothing specific to a user; the reader's
+ * votes are overlaid by {@link ReplyService}. Counts include the changes still in the
+ * {@link VoteCounterBuffer}, so they are read as they are.
+ * <p>
+ * Trees are kept current by patching them as replies are created, deleted, moved and voted on, and as their
+ * authors change their display names and profile pictures, rather than by reloading them. Each patch is applied
+ * once its transaction commits. A tree that was being loaded while its post or one of the authors was changed,
+ * or while buffered counts were written, is not cached, since it may have missed the change or counted it
+ * twice; it is loaded again on the next read.
+ * <p>
+ * Changes committed on other nodes of a cluster arrive through the {@link ClusterCacheInvalidator}: the post's tree
+ * is dropped, or for a vote its counts are patched, since votes are frequent and reloading would miss the counts
+ * still buffered on the voter's node. A changed author's trees are dropped.
+ * <p>
+ * At most {@code replies.tree-cache.max-posts} trees, holding {@code replies.tree-cache.max-replies}
+ * replies in total, are cached; the least recently read are evicted beyond either. A tree is reloaded once it
+ * is {@code replies.tree-cache.ttl-ms} old, so a change that was not patched in, e.g. one made directly in the
+ * database, is not shown stale for longer than that.
+ */
+@Component
+@RequiredArgsConstructor
+public class CommentTreeCache {
+
+    /**
+     * Names under which changes to trees are shared with the other nodes of the cluster.
+     */
+    public static final String CLUSTER_POSTS = "comment_tree_posts";
+    public static final String CLUSTER_VOTES = "comment_tree_votes";
+    public static final String CLUSTER_AUTHORS = "comment_tree_authors";
+    public static final String CLUSTER_ALL = "comment_tree_all";
+
+    /**
+     * Repository the trees are loaded with.
+     */
+    @Autowired
+    private final ReplyRepository replyRepository;
+
+    /**
+     * Buffer of count changes not yet written, added to the loaded counts.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    /**
+     * Tells the other nodes of the cluster about committed changes.
+     */
+    @Autowired
+    private final ClusterCacheInvalidator clusterCacheInvalidator;
+
+    /**
+     * Maximum number of posts whose trees are kept.
+     */
+    @Value("${replies.tree-cache.max-posts:1000}")
+    private int maxPosts = 1000;
+
+    /**
+     * Maximum number of replies kept over all trees.
+     */
+    @Value("${replies.tree-cache.max-replies:200000}")
+    private long maxReplies = 200000;
+
+    /**
+     * Time after its load after which a tree is reloaded.
+     */
+    @Value("${replies.tree-cache.ttl-ms:600000}")
+    private long ttlMs = 600000;
+
+    /**
+     * Cached trees by post ID, in access order. Guarded by itself, as are the fields below.
+     */
+    private final LinkedHashMap<Long, CommentTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of replies in all cached trees.
+     */
+    private long cachedReplies;
+
+    /**
+     * Number of uncommitted changes per post.
+     */
+    private final Map<Long, Integer> changing = new HashMap<>();
+
+    /**
+     * Loads in progress per post.
+     */
+    private final Map<Long, List<Load>> loading = new HashMap<>();
+
+    /**
+     * A load of one post's tree, which must not be cached if the post changed while it ran.
+     */
+    private static class Load {
+        private boolean stale;
+    }
+
+    /**
+     * Registers what to do with the trees when another node changes a post, a vote or an author.
+     */
+    @PostConstruct
+    public void listenToCluster() {
+        clusterCacheInvalidator.register(CLUSTER_POSTS, postIds -> postIds.forEach(this::evict));
+        clusterCacheInvalidator.register(CLUSTER_VOTES, vote -> patch(vote.get(0),
+                tree -> tree.addVotes(vote.get(1), vote.get(2), vote.get(3)), () -> {}));
+        clusterCacheInvalidator.register(CLUSTER_AUTHORS, userIds -> userIds.forEach(this::evictAuthor));
+        clusterCacheInvalidator.register(CLUSTER_ALL, ignored -> clearLocally());
+    }
+
+    /**
+     * Reads the comment tree of a post, loading it if it is not cached. The tree is only valid inside the
+     * reader, which must not keep references to it or its replies.
+     *
+     * @param postId ID of the post
+     * @param reader function reading the tree
+     * @return the reader's result
+     */
+    public <T> T read(long postId, Function<CommentTree, T> reader) {
+        CommentTree tree = cached(postId);
+        if (tree == null) {
+            tree = load(postId);
+        }
+
+        synchronized (tree) {
+            return reader.apply(tree);
+        }
+    }
+
+    /**
+     * Reads the comment tree of a post if it is cached.
+     *
+     * @param postId ID of the post
+     * @param reader function reading the tree, see {@link #read}
+     * @return the reader's result, or an empty Optional if the tree is not cached
+     */
+    public <T> Optional<T> readIfCached(long postId, Function<CommentTree, T> reader) {
+        CommentTree tree = cached(postId);
+        if (tree == null) {
+            return Optional.empty();
+        }
+
+        synchronized (tree) {
+            return Optional.ofNullable(reader.apply(tree));
+        }
+    }
+
+    /**
+     * Adds a newly created reply to its post's tree.
+     *
+     * @param reply the reply, with its ID, post, author and parent set
+     */
+    public void replyCreated(Reply reply) {
+        Node node = new Node();
+        node.id = reply.getId();
+        node.parentId = reply.getParentReply() == null ? null : reply.getParentReply().getId();
+        node.text = reply.getText();
+        node.datePosted = reply.getDatePosted();
+        node.likeCount = reply.getLikeCount();
+        node.dislikeCount = reply.getDislikeCount();
+        node.voteScore = reply.getVoteScore();
+        node.deleted = reply.isDeleted();
+        node.userId = reply.getAuthor().getId();
+        node.username = reply.getAuthor().getUsername();
+        node.displayName = reply.getAuthor().getDisplayName();
+        node.profilePictureFileName = reply.getAuthor().getProfilePictureFileName();
+
+        long postId = reply.getPost().getId();
+        patch(postId, tree -> tree.add(node), () -> publishPost(postId));
+    }
+
+    /**
+     * Marks a reply of a post's tree as deleted, keeping its place and children.
+     *
+     * @param postId  ID of the post
+     * @param replyId ID of the reply
+     * @param text    the text it is shown with now
+     */
+    public void replySoftDeleted(long postId, long replyId, String text) {
+        patch(postId, tree -> tree.softDelete(replyId, text), () -> publishPost(postId));
+    }
+
+    /**
+     * Removes a reply without children from its post's tree.
+     *
+     * @param postId  ID of the post
+     * @param replyId ID of the reply
+     */
+    public void replyRemoved(long postId, long replyId) {
+        patch(postId, tree -> tree.remove(replyId), () -> publishPost(postId));
+    }
+
+    /**
+     * Moves a reply, with its children, under another parent in its post's tree.
+     *
+     * @param postId      ID of the post
+     * @param replyId     ID of the reply
+     * @param newParentId ID of the new parent, or null for the top level
+     */
+    public void replyMoved(long postId, long replyId, Long newParentId) {
+        patch(postId, tree -> tree.move(replyId, newParentId), () -> publishPost(postId));
+    }
+
+    /**
+     * Changes the counts of a reply in its post's tree, moving it among its siblings by its new score.
+     *
+     * @param postId   ID of the post
+     * @param replyId  ID of the reply
+     * @param likes    change to the like count
+     * @param dislikes change to the dislike count
+     */
+    public void replyVoteChanged(long postId, long replyId, long likes, long dislikes) {
+        if (likes == 0 && dislikes == 0) {
+            return;
+        }
+        patch(postId, tree -> tree.addVotes(replyId, likes, dislikes),
+                () -> clusterCacheInvalidator.publish(CLUSTER_VOTES, List.of(postId, replyId, likes, dislikes)));
+    }
+
+    /**
+     * Changes the display name shown with an author's replies in all cached trees.
+     *
+     * @param userId      ID of the author
+     * @param displayName the new display name
+     */
+    public void authorDisplayNameChanged(long userId, String displayName) {
+        patchAuthor(userId, node -> node.displayName = displayName);
+    }
+
+    /**
+     * Changes the profile picture shown with an author's replies in all cached trees.
+     *
+     * @param userId                 ID of the author
+     * @param profilePictureFileName the new profile picture file name
+     */
+    public void authorProfilePictureChanged(long userId, String profilePictureFileName) {
+        patchAuthor(userId, node -> node.profilePictureFileName = profilePictureFileName);
+    }
+
+    /**
+     * Drops a post's tree; it is reloaded on next read. Loads running meanwhile are not cached.
+     *
+     * @param postId ID of the post
+     */
+    public void evict(long postId) {
+        synchronized (trees) {
+            CommentTree tree = trees.remove(postId);
+            if (tree != null) {
+                cachedReplies -= tree.weight;
+            }
+            markLoadsStale(postId);
+        }
+    }
+
+    /**
+     * Drops all trees on every node, e.g. after counts were corrected in the database.
+     */
+    public void clear() {
+        clearLocally();
+        clusterCacheInvalidator.publish(CLUSTER_ALL, List.of());
+    }
+
+    /**
+     * @return the number of cached trees
+     */
+    public int size() {
+        synchronized (trees) {
+            return trees.size();
+        }
+    }
+
+    /**
+     * @return the number of replies in all cached trees
+     */
+    public long weight() {
+        synchronized (trees) {
+            return cachedReplies;
+        }
+    }
+
+    private void clearLocally() {
+        synchronized (trees) {
+            trees.clear();
+            cachedReplies = 0;
+            loading.values().forEach(loads -> loads.forEach(load -> load.stale = true));
+        }
+    }
+
+    /**
+     * Drops the trees holding replies of an author, e.g. after another node changed the author's display name.
+     * Loads running meanwhile are not cached.
+     */
+    private void evictAuthor(long userId) {
+        Map<Long, CommentTree> cached;
+        synchronized (trees) {
+            cached = new HashMap<>(trees);
+            loading.values().forEach(loads -> loads.forEach(load -> load.stale = true));
+        }
+        for (Map.Entry<Long, CommentTree> entry : cached.entrySet()) {
+            boolean byAuthor;
+            synchronized (entry.getValue()) {
+                byAuthor = entry.getValue().nodes.values().stream()
+                        .anyMatch(node -> node.userId != null && node.userId == userId);
+            }
+            if (byAuthor) {
+                synchronized (trees) {
+                    if (trees.get(entry.getKey()) == entry.getValue()) {
+                        trees.remove(entry.getKey());
+                        cachedReplies -= entry.getValue().weight;
+                    }
+                }
+            }
+        }
+    }
+
+    private void publishPost(long postId) {
+        clusterCacheInvalidator.publish(CLUSTER_POSTS, List.of(postId));
+    }
+
+    /**
+     * @return the cached tree of a post, or null if it is not cached or too old, in which case it is dropped
+     */
+    private CommentTree cached(long postId) {
+        synchronized (trees) {
+            CommentTree tree = trees.get(postId);
+            if (tree != null && System.currentTimeMillis() - tree.loadedAt >= ttlMs) {
+                trees.remove(postId);
+                cachedReplies -= tree.weight;
+                return null;
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Loads a post's tree and caches it, unless the post changed or buffered counts were written meanwhile.
+     */
+    private CommentTree load(long postId) {
+        long loadedAt = System.currentTimeMillis();
+        Load load = new Load();
+        synchronized (trees) {
+            load.stale = changing.containsKey(postId);
+            loading.computeIfAbsent(postId, id -> new ArrayList<>()).add(load);
+        }
+
+        CommentTree tree;
+        try {
+            long flushWrites = voteCounterBuffer.getFlushWrites();
+            tree = CommentTree.of(replyRepository.findCommentTreeRows(postId));
+            tree.loadedAt = loadedAt;
+            for (Node node : tree.nodes.values()) {
+                long likes = voteCounterBuffer.pendingLikes(node.id);
+                long dislikes = voteCounterBuffer.pendingDislikes(node.id);
+                node.likeCount += likes;
+                node.dislikeCount += dislikes;
+                node.voteScore += likes - dislikes;
+            }
+            tree.sortAll(); // pending changes can reorder siblings
+            if (flushWrites % 2 != 0 || voteCounterBuffer.getFlushWrites() != flushWrites) {
+                load.stale = true;
+            }
+        } finally {
+            synchronized (trees) {
+                List<Load> loads = loading.get(postId);
+                loads.remove(load);
+                if (loads.isEmpty()) {
+                    loading.remove(postId);
+                }
+            }
+        }
+
+        synchronized (trees) {
+            if (!load.stale && !trees.containsKey(postId) && tree.weight <= maxReplies) {
+                trees.put(postId, tree);
+                cachedReplies += tree.weight;
+                evictBeyondLimits();
+            }
+        }
+        return tree;
+    }
+
+    private void evictBeyondLimits() {
+        Iterator<CommentTree> eldest = trees.values().iterator();
+        while (trees.size() > maxPosts || cachedReplies > maxReplies) {
+            cachedReplies -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Applies a change to a post's tree once the current transaction commits, then runs the given action, e.g.
+     * telling the other nodes. Until the transaction ends, loads of the post's tree are not cached.
+     */
+    private void patch(long postId, Consumer<CommentTree> change, Runnable committed) {
+        synchronized (trees) {
+            changing.merge(postId, 1, Integer::sum);
+            markLoadsStale(postId);
+        }
+
+        AfterCommit.run(() -> {
+            apply(postId, change);
+            committed.run();
+        }, () -> endChange(postId));
+    }
+
+    /**
+     * Applies a change to every cached reply of an author once the current transaction commits, and has the other
+     * nodes drop the author's trees. Loads running at that time are not cached, since they may have read the
+     * author as they were before.
+     */
+    private void patchAuthor(long userId, Consumer<Node> change) {
+        AfterCommit.run(() -> {
+            List<CommentTree> cached;
+            synchronized (trees) {
+                cached = new ArrayList<>(trees.values());
+                loading.values().forEach(loads -> loads.forEach(load -> load.stale = true));
+            }
+            for (CommentTree tree : cached) {
+                synchronized (tree) {
+                    for (Node node : tree.nodes.values()) {
+                        if (node.userId != null && node.userId == userId) {
+                            change.accept(node);
+                        }
+                    }
+                }
+            }
+            clusterCacheInvalidator.publish(CLUSTER_AUTHORS, List.of(userId));
+        });
+    }
+
+    private void apply(long postId, Consumer<CommentTree> change) {
+        CommentTree tree;
+        synchronized (trees) {
+            tree = trees.get(postId);
+        }
+        if (tree == null) {
+            return;
+        }
+
+        boolean consistent;
+        int weightBefore;
+        synchronized (tree) {
+            weightBefore = tree.weight;
+            consistent = tree.tryApply(change);
+        }
+
+        synchronized (trees) {
+            if (trees.get(postId) != tree) {
+                return; // evicted meanwhile
+            }
+            if (!consistent) {
+                // the change does not fit the cached tree, e.g. its parent is not in it, so the tree is reloaded
+                trees.remove(postId);
+                cachedReplies -= weightBefore;
+                return;
+            }
+            cachedReplies += tree.weight - weightBefore;
+            evictBeyondLimits();
+        }
+    }
+
+    private void endChange(long postId) {
+        synchronized (trees) {
+            changing.computeIfPresent(postId, (id, count) -> count == 1 ? null : count - 1);
+            markLoadsStale(postId);
+        }
+    }
+
+    private void markLoadsStale(long postId) {
+        List<Load> loads = loading.get(postId);
+        if (loads != null) {
+            loads.forEach(load -> load.stale = true);
+        }
+    }
+
+    /**
+     * The replies of one post, by parent, each list of children in display order. Guarded by itself.
+     */
+    public static class CommentTree {
+
+        /**
+         * Orders siblings as they are shown: vote score descending, then oldest first, then by ID.
+         */
+        private static final Comparator<Node> DISPLAY_ORDER = Comparator
+                .comparingLong((Node node) -> -node.voteScore)
+                .thenComparingLong(node -> node.datePosted.getTime())
+                .thenComparingLong(node -> node.id);
+
+        private final Map<Long, Node> nodes = new HashMap<>();
+        private final Map<Long, List<Node>> children = new HashMap<>();
+        private int weight;
+        private long loadedAt;
+
+        /**
+         * Builds a tree from the rows of a post's replies.
+         *
+         * @param rows the replies, siblings in display order
+         * @return the tree
+         */
+        public static CommentTree of(List<? extends ReplyTreeRow> rows) {
+            CommentTree tree = new CommentTree();
+            for (ReplyTreeRow row : rows) {
+                Node node = Node.of(row);
+                tree.nodes.put(node.id, node);
+                tree.children.computeIfAbsent(tree.parentKey(node), id -> new ArrayList<>()).add(node);
+            }
+            tree.weight = tree.nodes.size();
+            return tree;
+        }
+
+        /**
+         * Returns the children of a reply, or the top-level replies, in display order.
+         *
+         * @param parentId ID of the reply, or {@link ReplyTreeCursor#TOP_LEVEL}
+         * @return the children; empty if there are none or there is no such reply
+         */
+        public List<? extends ReplyTreeRow> children(long parentId) {
+            return Collections.unmodifiableList(children.getOrDefault(parentId, List.of()));
+        }
+
+        /**
+         * @param replyId ID of a reply
+         * @return true if the reply is in this tree
+         */
+        public boolean contains(long replyId) {
+            return nodes.containsKey(replyId);
+        }
+
+        /**
+         * @return the number of replies in this tree
+         */
+        public int size() {
+            return nodes.size();
+        }
+
+        /**
+         * Applies a change, reporting whether it fit the tree.
+         */
+        private boolean tryApply(Consumer<CommentTree> change) {
+            try {
+                change.accept(this);
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }
+
+        private long parentKey(Node node) {
+            return node.parentId == null ? ReplyTreeCursor.TOP_LEVEL : node.parentId;
+        }
+
+        private void sortAll() {
+            children.values().forEach(siblings -> siblings.sort(DISPLAY_ORDER));
+        }
+
+        private void insert(Node node) {
+            List<Node> siblings = children.computeIfAbsent(parentKey(node), id -> new ArrayList<>());
+            int at = Collections.binarySearch(siblings, node, DISPLAY_ORDER);
+            siblings.add(at < 0 ? -at - 1 : at, node);
+        }
+
+        private void unlink(Node node) {
+            List<Node> siblings = children.get(parentKey(node));
+            siblings.remove(node);
+            if (siblings.isEmpty()) {
+                children.remove(parentKey(node));
+            }
+        }
+
+        private Node get(long replyId) {
+            Node node = nodes.get(replyId);
+            if (node == null) {
+                throw new IllegalStateException("Reply " + replyId + " is not in the tree");
+            }
+            return node;
+        }
+
+        private void add(Node node) {
+            if (nodes.containsKey(node.id)) {
+                return; // loaded after the reply was committed
+            }
+            if (node.parentId != null) {
+                get(node.parentId);
+            }
+            nodes.put(node.id, node);
+            insert(node);
+            weight++;
+        }
+
+        private void softDelete(long replyId, String text) {
+            Node node = get(replyId);
+            node.deleted = true;
+            node.text = text;
+        }
+
+        private void remove(long replyId) {
+            Node node = nodes.get(replyId);
+            if (node == null) {
+                return;
+            }
+            if (children.containsKey(replyId)) {
+                throw new IllegalStateException("Reply " + replyId + " still has children");
+            }
+            unlink(node);
+            nodes.remove(replyId);
+            weight--;
+        }
+
+        private void move(long replyId, Long newParentId) {
+            Node node = get(replyId);
+            if (newParentId != null) {
+                get(newParentId);
+            }
+            unlink(node);
+            node.parentId = newParentId;
+            insert(node);
+        }
+
+        private void addVotes(long replyId, long likes, long dislikes) {
+            Node node = get(replyId);
+            unlink(node);
+            node.likeCount += likes;
+            node.dislikeCount += dislikes;
+            node.voteScore += likes - dislikes;
+            insert(node);
+        }
+    }
+
+    /**
+     * One cached reply.
+     */
+    private static class Node implements ReplyTreeRow {
+        private long id;
+        private Long parentId;
+        private String text;
+        private Date datePosted;
+        private long likeCount;
+        private long dislikeCount;
+        private long voteScore;
+        private boolean deleted;
+        private Long userId;
+        private String username;
+        private String displayName;
+        private String profilePictureFileName;
+
+        private static Node of(ReplyTreeRow row) {
+            Node node = new Node();
+            node.id = row.getId();
+            node.parentId = row.getParentId();
+            node.text = row.getText();
+            node.datePosted = row.getDatePosted();
+            node.likeCount = row.getLikeCount();
+            node.dislikeCount = row.getDislikeCount();
+            node.voteScore = row.getVoteScore();
+            node.deleted = Boolean.TRUE.equals(row.getDeleted());
+            node.userId = row.getUserId();
+            node.username = row.getUsername();
+            node.displayName = row.getDisplayName();
+            node.profilePictureFileName = row.getProfilePictureFileName();
+            return node;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getParentId() {
+            return parentId;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public Date getDatePosted() {
+            return datePosted;
+        }
+
+        @Override
+        public Long getLikeCount() {
+            return likeCount;
+        }
+
+        @Override
+        public Long getDislikeCount() {
+            return dislikeCount;
+        }
+
+        @Override
+        public Long getVoteScore() {
+            return voteScore;
+        }
+
+        @Override
+        public Boolean getDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public Long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public String getUsername() {
+            return username;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String getProfilePictureFileName() {
+            return profilePictureFileName;
+        }
+    }
+}
@@ -33,6 +33,18 @@ public class FollowerService {
     @Autowired
     private UserService userService;
 
+    /**
+     * Service for users' home timelines.
+     */
+    @Autowired
+    private TimelineService timelineService;
+
+    /**
+     * Aggregator notifying users of their new followers.
+     */
+    @Autowired
+    private NotificationAggregator notificationAggregator;
+
     /**
      * Establishes a follow relationship between two users.
      *
@@ -59,6 +71,10 @@ public class FollowerService {
         /*Design Pattern: Builder*/
         // persist the relationship
         followsRepository.save(follow);
+
+        userService.adjustFollowCounts(followerId, followeeId, 1);
+        timelineService.onFollow(followerId, followeeId);
+        notificationAggregator.followed(followeeId, followerId);
     }
 
     /**
@@ -72,7 +88,12 @@ public class FollowerService {
         ApplicationUser follower = userService.loadUserById(followerId);
         ApplicationUser followee = userService.loadUserById(followeeId);
 
-        followsRepository.deleteByFollowerAndFollowee(follower, followee);
+        if (followsRepository.deleteByFollowerAndFollowee(follower, followee) == 0) {
+            return; // was not following, nothing else to undo.
+        }
+
+        userService.adjustFollowCounts(followerId, followeeId, -1);
+        timelineService.onUnfollow(followerId, followeeId);
     }
 
     /**
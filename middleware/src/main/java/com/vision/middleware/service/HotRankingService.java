@@ -0,0 +1,53 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.utils.HotScoreUtility;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service that keeps the stored hot scores of posts decaying over time.
+ * <p>
+ * Votes update a post's hot score when its counts are flushed (see VoteCounterBuffer), but a post that
+ * stops receiving votes would otherwise keep its score forever. This job periodically recomputes the
+ * score of every post in the active window, so the "hot" sort can read posts straight from the hot score index.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HotRankingService {
+
+    /**
+     * Posts that left the active window less than this long ago are still swept once more,
+     * so their score is reset to 0 even if a run was missed.
+     */
+    private static final long SWEEP_MARGIN_HOURS = 24;
+
+    /**
+     * Repository for post data access.
+     */
+    @Autowired
+    private final PostRepository postRepository;
+
+    /**
+     * Re-decays the hot scores of recent posts.
+     * Runs every {@code ranking.hot.decay-interval-ms} milliseconds (default 5 minutes).
+     */
+    @Scheduled(fixedDelayString = "${ranking.hot.decay-interval-ms:300000}",
+            initialDelayString = "${ranking.hot.decay-interval-ms:300000}")
+    public void decayHotScores() {
+        Date now = new Date();
+        Date windowStart = new Date(now.getTime() - TimeUnit.HOURS.toMillis(HotScoreUtility.ACTIVE_WINDOW_HOURS));
+        Date sweepStart = new Date(windowStart.getTime() - TimeUnit.HOURS.toMillis(SWEEP_MARGIN_HOURS));
+
+        int updated = postRepository.decayHotScores(now, windowStart, sweepStart,
+                HotScoreUtility.GRAVITY, HotScoreUtility.AGE_OFFSET_HOURS);
+        log.debug("Re-decayed hot scores of {} posts", updated);
+    }
+}
@@ -0,0 +1,39 @@
+package com.vision.middleware.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link ClusterTransport} within one JVM: messages are delivered to the listeners of this instance directly, on the
+ * publishing thread. Used when the application runs as a single node, where the only listener of a channel is the
+ * node itself.
+ */
+@Slf4j
+public class LocalClusterTransport implements ClusterTransport {
+
+    /**
+     * Listeners by channel.
+     */
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String channel, String payload) {
+        for (Consumer<String> listener : listeners.getOrDefault(channel, List.of())) {
+            try {
+                listener.accept(payload);
+            } catch (RuntimeException e) {
+                log.error("Cluster listener of {} failed", channel, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+}
@@ -0,0 +1,281 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Notification;
+import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregator turning likes and follows into coalesced notifications, e.g. "alice and 41 others liked your post".
+ * <p>
+ * Events are collected per recipient, notification type and target (the post or reply liked, or the
+ * recipient themselves for follows). A group is sent as one notification once no event has joined it for
+ * {@code notifications.aggregate.window-ms} milliseconds, or at the latest
+ * {@code notifications.aggregate.max-delay-ms} after its first event, so a post liked without pause still
+ * notifies its author. Due groups are sent every {@code notifications.aggregate.flush-interval-ms}
+ * milliseconds, and all remaining ones at shutdown.
+ * <p>
+ * Memory is bounded: at most {@code notifications.aggregate.max-groups} groups are collected, and beyond that
+ * the oldest is sent early. Each group remembers up to {@code notifications.aggregate.max-actors} distinct
+ * users, so the same user liking twice counts once; further events are only counted.
+ * <p>
+ * Events are only collected once the transaction that caused them commits, so a rolled back like is not sent.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationAggregator {
+
+    /**
+     * Service the coalesced notifications are sent with.
+     */
+    @Autowired
+    private final NotificationService notificationService;
+
+    /**
+     * Repository the recipients and actors are loaded from when a notification is sent.
+     */
+    @Autowired
+    private final UserRepository userRepository;
+
+    /**
+     * Time without new events after which a group is sent.
+     */
+    @Value("${notifications.aggregate.window-ms:60000}")
+    private long windowMs = 60000;
+
+    /**
+     * Time after a group's first event after which it is sent, even if events keep joining it.
+     */
+    @Value("${notifications.aggregate.max-delay-ms:600000}")
+    private long maxDelayMs = 600000;
+
+    /**
+     * Maximum number of groups collected at once.
+     */
+    @Value("${notifications.aggregate.max-groups:10000}")
+    private int maxGroups = 10000;
+
+    /**
+     * Maximum number of distinct users remembered per group.
+     */
+    @Value("${notifications.aggregate.max-actors:1000}")
+    private int maxActors = 1000;
+
+    /**
+     * Groups being collected, oldest first. Guarded by itself.
+     */
+    private final LinkedHashMap<Key, Group> groups = new LinkedHashMap<>();
+
+    /**
+     * What events are coalesced by: who is notified, of what, and about which post or reply.
+     *
+     * @param recipientId ID of the user notified
+     * @param type        LIKE or FOLLOW
+     * @param targetType  whether the target is a post or a reply, or null for follows
+     * @param targetId    ID of the post or reply, or the recipient's ID for follows
+     */
+    public record Key(long recipientId, NotificationType type, VotableType targetType, long targetId) {
+    }
+
+    /**
+     * Events of one key collected so far.
+     */
+    private static class Group {
+        private final long firstAt;
+        private long lastAt;
+        private long latestActorId;
+        private final Set<Long> actorIds = new HashSet<>();
+        private long uncountedEvents;
+
+        private Group(long firstAt) {
+            this.firstAt = firstAt;
+        }
+
+        private long actors() {
+            return actorIds.size() + uncountedEvents;
+        }
+    }
+
+    /**
+     * Records that a user liked a post or reply.
+     *
+     * @param authorId   ID of the author of the post or reply, who is notified
+     * @param likerId    ID of the user who liked it
+     * @param targetType whether a post or a reply was liked
+     * @param targetId   ID of the post or reply
+     */
+    public void liked(long authorId, long likerId, VotableType targetType, long targetId) {
+        record(new Key(authorId, NotificationType.LIKE, targetType, targetId), likerId);
+    }
+
+    /**
+     * Records that a user followed another.
+     *
+     * @param followeeId ID of the user followed, who is notified
+     * @param followerId ID of the user who followed them
+     */
+    public void followed(long followeeId, long followerId) {
+        record(new Key(followeeId, NotificationType.FOLLOW, null, followeeId), followerId);
+    }
+
+    /**
+     * @return the number of groups not sent yet
+     */
+    public int pending() {
+        synchronized (groups) {
+            return groups.size();
+        }
+    }
+
+    private void record(Key key, long actorId) {
+        if (key.recipientId() == actorId) {
+            return; // no notifications of one's own actions
+        }
+
+        AfterCommit.run(() -> recordNow(key, actorId));
+    }
+
+    private void recordNow(Key key, long actorId) {
+        long now = System.currentTimeMillis();
+        Map<Key, Group> overflow = new LinkedHashMap<>();
+        synchronized (groups) {
+            Group group = groups.computeIfAbsent(key, k -> new Group(now));
+            group.lastAt = now;
+            group.latestActorId = actorId;
+            if (!group.actorIds.contains(actorId)) {
+                if (group.actorIds.size() < maxActors) {
+                    group.actorIds.add(actorId);
+                } else {
+                    group.uncountedEvents++;
+                }
+            }
+
+            Iterator<Map.Entry<Key, Group>> oldest = groups.entrySet().iterator();
+            while (groups.size() > maxGroups) {
+                Map.Entry<Key, Group> entry = oldest.next();
+                overflow.put(entry.getKey(), entry.getValue());
+                oldest.remove();
+            }
+        }
+
+        if (!overflow.isEmpty()) {
+            log.debug("Notification groups full, sending {} early", overflow.size());
+            send(overflow);
+        }
+    }
+
+    /**
+     * Sends the groups that are due: those without new events for {@code notifications.aggregate.window-ms},
+     * or collected for {@code notifications.aggregate.max-delay-ms}.
+     * Runs every {@code notifications.aggregate.flush-interval-ms} milliseconds (default 5 seconds).
+     *
+     * @return the number of notifications sent
+     */
+    @Scheduled(fixedDelayString = "${notifications.aggregate.flush-interval-ms:5000}")
+    public int flushDue() {
+        long now = System.currentTimeMillis();
+        Map<Key, Group> due = new LinkedHashMap<>();
+        synchronized (groups) {
+            Iterator<Map.Entry<Key, Group>> entries = groups.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, Group> entry = entries.next();
+                Group group = entry.getValue();
+                if (now - group.lastAt >= windowMs || now - group.firstAt >= maxDelayMs) {
+                    due.put(entry.getKey(), group);
+                    entries.remove();
+                }
+            }
+        }
+        return send(due);
+    }
+
+    /**
+     * Sends all remaining groups when the application shuts down.
+     *
+     * @return the number of notifications sent
+     */
+    @PreDestroy
+    public int flushAll() {
+        Map<Key, Group> all;
+        synchronized (groups) {
+            all = new LinkedHashMap<>(groups);
+            groups.clear();
+        }
+        return send(all);
+    }
+
+    /**
+     * Sends one notification per group, loading the recipients and latest actors with one query.
+     * Groups whose recipient or latest actor no longer exists are dropped.
+     */
+    private int send(Map<Key, Group> due) {
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        due.forEach((key, group) -> {
+            userIds.add(key.recipientId());
+            userIds.add(group.latestActorId);
+        });
+        Map<Long, ApplicationUser> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(ApplicationUser::getId, Function.identity()));
+
+        Instant now = Instant.now();
+        int sent = 0;
+        for (Map.Entry<Key, Group> entry : due.entrySet()) {
+            Key key = entry.getKey();
+            Group group = entry.getValue();
+            ApplicationUser recipient = users.get(key.recipientId());
+            ApplicationUser actor = users.get(group.latestActorId);
+            if (recipient == null || actor == null) {
+                continue;
+            }
+
+            notificationService.sendNotification(Notification.builder()
+                    .associatedUser(recipient)
+                    .notificationType(key.type())
+                    .notificationBody(describe(key, actor.getUsername(), group.actors() - 1))
+                    .targetType(key.targetType())
+                    .targetId(key.targetType() == null ? null : key.targetId()) // follows are about the recipient
+                    .timeCreated(now)
+                    .build());
+            sent++;
+        }
+        log.debug("Sent {} coalesced notifications", sent);
+        return sent;
+    }
+
+    /**
+     * Builds the text of a coalesced notification.
+     *
+     * @param key    the group's key
+     * @param actor  username of the latest user in the group
+     * @param others number of other users in the group
+     * @return e.g. "alice liked your post" or "alice and 41 others followed you"
+     */
+    static String describe(Key key, String actor, long others) {
+        String who = others <= 0 ? actor
+                : others == 1 ? actor + " and 1 other"
+                : actor + " and " + others + " others";
+        if (key.type() == NotificationType.FOLLOW) {
+            return who + " followed you";
+        }
+        return who + " liked your " + (key.targetType() == VotableType.REPLY ? "reply" : "post");
+    }
+}
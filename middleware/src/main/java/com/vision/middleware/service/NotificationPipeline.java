@@ -0,0 +1,230 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.Notification;
+import com.vision.middleware.dto.NotificationDTO;
+import com.vision.middleware.repo.NotificationBatchRepository;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline persisting notifications and delivering them over WebSocket, off the thread that sends them.
+ * <p>
+ * Senders put notifications into a bounded queue of {@code notifications.pipeline.capacity} entries without
+ * waiting. A single consumer thread takes them in batches of up to {@code notifications.pipeline.batch-size},
+ * inserts each batch with one JDBC batch in one transaction, and pushes the notifications to their users
+ * once that transaction has committed. A burst of notifications then costs a few batched inserts instead of
+ * one flush each, and the batches grow with the load.
+ * <p>
+ * A user acknowledges a notification by its id, so it must be stored before the user sees it. Every
+ * notification is still pushed only after the transaction that stored it committed, and in the order it
+ * was sent.
+ * <p>
+ * If the queue is full, the notification is stored and pushed on the sender's thread instead, so none is
+ * lost; it may then overtake notifications still in the queue.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationPipeline {
+
+    /**
+     * Repository the batches are inserted with.
+     */
+    @Autowired
+    private final NotificationBatchRepository notificationBatchRepository;
+
+    /**
+     * Template for sending messages to specific users via WebSocket.
+     */
+    @Autowired
+    private final SimpMessagingTemplate messagingTemplate;
+
+    /**
+     * Transaction manager used to insert each batch atomically.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Maximum number of notifications waiting to be stored.
+     */
+    @Value("${notifications.pipeline.capacity:10000}")
+    private int capacity = 10000;
+
+    /**
+     * Maximum number of notifications stored in one batch.
+     */
+    @Value("${notifications.pipeline.batch-size:200}")
+    private int batchSize = 200;
+
+    /**
+     * Notifications waiting to be stored, oldest first. Created on first use, once the capacity is known.
+     */
+    private volatile BlockingQueue<Notification> queue;
+
+    /**
+     * The consumer thread, while running.
+     */
+    private volatile Thread consumer;
+
+    /**
+     * Starts the consumer thread.
+     */
+    @PostConstruct
+    public void start() {
+        Thread thread = new Thread(this::consume, "notification-pipeline");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the consumer thread and stores and pushes the notifications still waiting.
+     */
+    @PreDestroy
+    public void stop() {
+        Thread thread = consumer;
+        consumer = null;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        while (drain() > 0) {
+            // until the queue is empty
+        }
+    }
+
+    /**
+     * Queues a notification to be stored and pushed to its user once the current transaction commits, so a
+     * notification of a change that is rolled back is not sent.
+     *
+     * @param notification the notification, without an id
+     */
+    public void submit(Notification notification) {
+        AfterCommit.run(() -> enqueue(notification));
+    }
+
+    /**
+     * @return the number of notifications waiting to be stored
+     */
+    public int pending() {
+        return queue().size();
+    }
+
+    private void enqueue(Notification notification) {
+        if (!queue().offer(notification)) {
+            log.warn("Notification queue full ({} waiting), delivering on the sending thread", capacity);
+            deliver(List.of(notification));
+        }
+    }
+
+    private BlockingQueue<Notification> queue() {
+        BlockingQueue<Notification> current = queue;
+        if (current == null) {
+            synchronized (this) {
+                if (queue == null) {
+                    queue = new ArrayBlockingQueue<>(capacity);
+                }
+                current = queue;
+            }
+        }
+        return current;
+    }
+
+    private void consume() {
+        while (consumer == Thread.currentThread()) {
+            try {
+                Notification first = queue().poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    List<Notification> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    queue().drainTo(batch, batchSize - 1);
+                    deliver(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Notification pipeline failed to deliver a batch", e);
+            }
+        }
+    }
+
+    /**
+     * Stores and pushes the notifications waiting, up to one batch, on the calling thread.
+     *
+     * @return the number of notifications taken from the queue
+     */
+    public int drain() {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        queue().drainTo(batch, batchSize);
+        if (!batch.isEmpty()) {
+            deliver(batch);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Stores a batch in one transaction, then pushes it. If the batch cannot be stored, its notifications
+     * are stored one at a time, so one that cannot be stored (e.g. of a user deleted meanwhile) does not
+     * hold back the others; it is logged and dropped.
+     */
+    private synchronized void deliver(List<Notification> batch) {
+        List<Notification> stored;
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    notificationBatchRepository.insertAll(batch));
+            stored = batch;
+        } catch (RuntimeException e) {
+            log.warn("Failed to store a batch of {} notifications, storing them one at a time", batch.size(), e);
+            stored = new ArrayList<>(batch.size());
+            for (Notification notification : batch) {
+                try {
+                    new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                            notificationBatchRepository.insertAll(List.of(notification)));
+                    stored.add(notification);
+                } catch (RuntimeException single) {
+                    log.error("Dropping notification for user {} that could not be stored",
+                            notification.getAssociatedUser().getId(), single);
+                }
+            }
+        }
+
+        // committed, so the users can acknowledge them. sent to /user/queue/notifications
+        for (Notification notification : stored) {
+            long userId = notification.getAssociatedUser().getId();
+            messagingTemplate.convertAndSendToUser(String.valueOf(userId), "/queue/notifications", toDTO(notification));
+        }
+        log.debug("Delivered {} notifications", stored.size());
+    }
+
+    private static NotificationDTO toDTO(Notification notification) {
+        return NotificationDTO.builder()
+                .notificationId(notification.getId())
+                .notificationBody(notification.getNotificationBody())
+                .targetType(notification.getTargetType())
+                .targetId(notification.getTargetId())
+                .notificationType(notification.getNotificationType())
+                .toUserId(notification.getAssociatedUser().getId())
+                .timeCreated(notification.getTimeCreated())
+                .build();
+    }
+}
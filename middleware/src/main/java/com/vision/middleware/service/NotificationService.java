@@ -2,15 +2,24 @@ package com.vision.middleware.service;
 
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Notification;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.NotificationDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.NotificationRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.NotificationCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Service layer component responsible for managing notifications,
  * including sending, acknowledging, and verifying ownership.
@@ -20,6 +29,21 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class NotificationService {
 
+    /**
+     * Number of unread notifications replayed per WebSocket frame.
+     */
+    public static final int UNREAD_PAGE_SIZE = 50;
+
+    /**
+     * Upper bound on the page size of unread notification listings.
+     */
+    public static final int MAX_UNREAD_PAGE_SIZE = 100;
+
+    /**
+     * Upper bound on the number of notification IDs acknowledged at once.
+     */
+    public static final int MAX_BULK_ACKNOWLEDGE = 500;
+
     /**
      * Template for sending messages to specific users via WebSocket.
      */
@@ -32,79 +56,124 @@ public class NotificationService {
     @Autowired
     private final NotificationRepository notificationRepository;
 
+    /**
+     * Pipeline storing and pushing sent notifications in batches.
+     */
+    @Autowired
+    private final NotificationPipeline notificationPipeline;
+
+    /**
+     * Repository the users' unread notification counts are read from.
+     */
+    @Autowired
+    private final UserRepository userRepository;
+
     /**
      * Sends a notification to the associated user and persists it in the repository.
-     * The notification is first saved to ensure it can be retrieved by the user's acknowledgment response.
+     * Returns without waiting: the notification is handed to the {@link NotificationPipeline}, which saves it
+     * together with others and pushes it once it is committed, as the user acknowledges it by its id.
      *
      * @param notification The notification to be sent and persisted.
      */
     public void sendNotification(Notification notification) {
-        log.info("In notification service: sending notification");
-
-        // save to repository to persist. Flush is a blocking method which is desired here.
-        // Notifications should be saved to the repository before we send a message, as the user will
-        // send their own message to acknowledge it through a websocket. This must be done before that.
-        notificationRepository.saveAndFlush(notification);
-
-        long userId = notification.getAssociatedUser().getId();
-        /*Design Pattern: Builder*/
-        NotificationDTO notificationDTO = NotificationDTO.builder()
-                .notificationId(notification.getId())
-                .notificationBody(notification.getNotificationBody())
-                .notificationType(notification.getNotificationType())
-                .toUserId(notification.getAssociatedUser().getId())
-                .timeCreated(notification.getTimeCreated())
-                .build();
-
-        // send notification to user. sent to /user/queue/notifications
-        messagingTemplate.convertAndSendToUser(String.valueOf(userId), "/queue/notifications", notificationDTO);
+        log.debug("In notification service: sending notification");
+        notificationPipeline.submit(notification);
     }
 
     /**
-     * Verifies if a notification belongs to the specified user by matching user IDs.
+     * Marks several of a user's notifications as acknowledged with one statement, which only touches the
+     * user's own notifications, so their ownership need not be checked first. IDs of notifications that do
+     * not exist, belong to another user or are already acknowledged are skipped.
      *
-     * @param notificationId The ID of the notification to verify.
-     * @param user The user to check ownership against.
-     * @return True if the notification belongs to the user, false otherwise.
-     * @throws IdNotFoundException if the notification ID does not exist.
+     * @param userId ID of the user acknowledging
+     * @param ids    IDs of the notifications (at most MAX_BULK_ACKNOWLEDGE)
+     * @return the number of notifications acknowledged now
+     * @throws IllegalArgumentException if more than MAX_BULK_ACKNOWLEDGE IDs are given
      */
-    public boolean doesNotificationBelongToUser(long notificationId, ApplicationUser user) {
-        Notification notification = notificationRepository.findById(notificationId).orElseThrow(
-                () -> new IdNotFoundException("Notification ID %d does not exist.".formatted(notificationId))
-        );
-        return notification.getAssociatedUser().getId() == user.getId();
+    public int acknowledgeNotifications(long userId, Collection<Long> ids) {
+        Set<Long> distinct = new HashSet<>(ids);
+        distinct.remove(null);
+        if (distinct.size() > MAX_BULK_ACKNOWLEDGE) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_ACKNOWLEDGE + " notifications can be acknowledged at once.");
+        }
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+        return notificationRepository.acknowledgeAll(userId, distinct);
     }
 
     /**
-     * Marks a notification as acknowledged by the user.
+     * Marks all of a user's notifications up to an ID as acknowledged with one statement, e.g. everything the
+     * user has seen so far.
      *
-     * @param notificationId The ID of the notification to acknowledge.
-     * @throws IdNotFoundException if the notification ID does not exist.
+     * @param userId ID of the user acknowledging
+     * @param maxId  the highest notification ID acknowledged (inclusive)
+     * @return the number of notifications acknowledged now
      */
-    public void acknowledgeNotification(long notificationId) {
-        Notification notification = notificationRepository.findById(notificationId).orElseThrow(
-                () -> new IdNotFoundException("Notification id not found")
-        );
-
-        notification.setAcknowledged(true);
-        notificationRepository.save(notification);
+    public int acknowledgeNotificationsUpTo(long userId, long maxId) {
+        return notificationRepository.acknowledgeUpTo(userId, maxId);
     }
 
     /**
-     * Retrieves all unread notifications for a user and sends them via WebSocket.
+     * Retrieves one page of a user's unread notifications, newest first.
      *
-     * @param user The user for whom to retrieve and send unread notifications.
+     * @param userId ID of the user
+     * @param cursor cursor of the previous page's last notification, or null/blank for the first page
+     * @param size   maximum number of notifications (clamped to 1..MAX_UNREAD_PAGE_SIZE)
+     * @return the page of unread notifications
+     * @throws IllegalArgumentException if the cursor is malformed
      */
-    public void sendUnreadNotifications(ApplicationUser user) {
-        notificationRepository.findByAssociatedUserAndAcknowledgedFalse(user).stream().map(
-                notification -> NotificationDTO.builder()
+    public CursorPageDTO<NotificationDTO> getUnreadNotifications(long userId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_UNREAD_PAGE_SIZE));
+        NotificationCursor after = cursor == null || cursor.isBlank() ? null : NotificationCursor.decode(cursor);
+
+        // one extra row tells us whether there is a next page.
+        List<Notification> rows = notificationRepository.findUnreadPage(
+                userId, after == null ? Long.MAX_VALUE : after.getId(), Limit.of(pageSize + 1));
+
+        boolean hasNext = rows.size() > pageSize;
+        List<Notification> page = hasNext ? rows.subList(0, pageSize) : rows;
+
+        return CursorPageDTO.<NotificationDTO>builder()
+                .content(page.stream().map(notification -> NotificationDTO.builder()
                         .notificationType(notification.getNotificationType())
                         .notificationBody(notification.getNotificationBody())
+                        .targetType(notification.getTargetType())
+                        .targetId(notification.getTargetId())
                         .notificationId(notification.getId())
                         .timeCreated(notification.getTimeCreated())
-                        .build()
-        ).forEach(
-                dto -> messagingTemplate.convertAndSendToUser(String.valueOf(user.getId()), "/queue/notifications", dto)
+                        .toUserId(userId)
+                        .build()).toList())
+                .size(pageSize)
+                .hasNext(hasNext)
+                .nextCursor(hasNext ? new NotificationCursor(page.get(page.size() - 1).getId()).encode() : null)
+                .build();
+    }
+
+    /**
+     * Sends one page of a user's unread notifications via WebSocket, as a single frame to
+     * /user/queue/notifications/unread. The client asks for the next page by sending the page's
+     * {@code nextCursor} back, until {@code hasNext} is false.
+     *
+     * @param user   The user for whom to retrieve and send unread notifications.
+     * @param cursor cursor from the previous page, or null/blank for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public void sendUnreadNotifications(ApplicationUser user, String cursor) {
+        CursorPageDTO<NotificationDTO> page = getUnreadNotifications(user.getId(), cursor, UNREAD_PAGE_SIZE);
+        messagingTemplate.convertAndSendToUser(String.valueOf(user.getId()), "/queue/notifications/unread", page);
+    }
+
+    /**
+     * Retrieves the number of notifications a user has not acknowledged, from the count kept on the user.
+     *
+     * @param userId ID of the user
+     * @return the unread notification count
+     * @throws IdNotFoundException if the user does not exist
+     */
+    public long getUnreadCount(long userId) {
+        return userRepository.findUnreadNotificationCountById(userId).orElseThrow(
+                () -> new IdNotFoundException("User id " + userId + " not found")
         );
     }
 }
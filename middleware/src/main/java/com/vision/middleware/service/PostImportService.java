@@ -0,0 +1,206 @@
+package com.vision.middleware.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.MediaPost;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.PostImportReportDTO;
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.UserRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Service for bulk-loading posts, e.g. when migrating content or seeding an instance.
+ * <p>
+ * The JSON array of posts is streamed rather than read into memory, and posts are written in chunks of
+ * {@code post.import.chunk-size}, each chunk in its own transaction. Within a chunk, ids come from the
+ * pooled sequence without a round trip per post, and Hibernate sends the inserts as JDBC batches
+ * ({@code hibernate.jdbc.batch_size}), which the driver rewrites into multi-row inserts. The persistence
+ * context is cleared after every chunk so memory stays flat however large the import is.
+ * <p>
+ * Imported posts are added to the in-memory search index, but no {@link PostCreatedEvent} is published:
+ * a backfill should not be fanned out to followers' timelines or notify anyone.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PostImportService {
+
+    /**
+     * Entity manager used to persist posts and flush them in batches.
+     */
+    @Autowired
+    private final EntityManager entityManager;
+
+    /**
+     * Repository for user data access.
+     */
+    @Autowired
+    private final UserRepository userRepository;
+
+    /**
+     * In-memory search index, updated after each chunk commits.
+     */
+    @Autowired
+    private final PostSearchIndex postSearchIndex;
+
+    /**
+     * Transaction manager used to commit each chunk separately.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Mapper used to read posts from the request body.
+     */
+    @Autowired
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Number of posts written per transaction.
+     */
+    @Value("${post.import.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    /**
+     * Imports posts from a JSON array of {@link PostDTO}s. Posts whose {@code postedBy.userId} is set are
+     * attributed to that user, all others to {@code defaultAuthorId}; posts of unknown users are rejected.
+     * Chunks committed before a malformed element is reached stay imported.
+     *
+     * @param json            the JSON array of posts
+     * @param defaultAuthorId ID of the user posts without an author are attributed to
+     * @return a summary of the import
+     * @throws IllegalArgumentException if the input is not a well-formed JSON array of posts
+     */
+    public PostImportReportDTO importPosts(InputStream json, long defaultAuthorId) {
+        long start = System.currentTimeMillis();
+        long imported = 0;
+        long rejected = 0;
+        int chunks = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of posts.");
+            }
+
+            List<PostDTO> chunk = new ArrayList<>(chunkSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                chunk.add(objectMapper.readValue(parser, PostDTO.class));
+                if (chunk.size() == chunkSize) {
+                    int written = writeChunk(chunk, defaultAuthorId);
+                    imported += written;
+                    rejected += chunk.size() - written;
+                    chunks++;
+                    chunk.clear();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of posts.");
+            }
+            if (!chunk.isEmpty()) {
+                int written = writeChunk(chunk, defaultAuthorId);
+                imported += written;
+                rejected += chunk.size() - written;
+                chunks++;
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Post import aborted after {} posts: {}", imported, e.getOriginalMessage());
+            throw new IllegalArgumentException("Malformed post import: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read post import.", e);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        double perSecond = imported * 1000.0 / Math.max(elapsed, 1);
+        log.info("Imported {} posts ({} rejected) in {} chunks, {} ms ({} posts/s)",
+                imported, rejected, chunks, elapsed, Math.round(perSecond));
+
+        return PostImportReportDTO.builder()
+                .imported(imported)
+                .rejected(rejected)
+                .chunks(chunks)
+                .elapsedMillis(elapsed)
+                .postsPerSecond(perSecond)
+                .build();
+    }
+
+    /**
+     * Writes one chunk of posts in its own transaction and indexes them once it has committed.
+     *
+     * @return the number of posts written
+     */
+    private int writeChunk(List<PostDTO> chunk, long defaultAuthorId) {
+        List<PostCreatedEvent> created = new ArrayList<>(chunk.size());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Set<Long> authorIds = new HashSet<>();
+            for (PostDTO dto : chunk) {
+                authorIds.add(authorOf(dto, defaultAuthorId));
+            }
+            Set<Long> existing = new HashSet<>(userRepository.findExistingIds(authorIds));
+
+            List<Post> posts = new ArrayList<>(chunk.size());
+            for (PostDTO dto : chunk) {
+                long authorId = authorOf(dto, defaultAuthorId);
+                if (!existing.contains(authorId)) {
+                    continue;
+                }
+                Post post = buildPost(dto, entityManager.getReference(ApplicationUser.class, authorId));
+                entityManager.persist(post);
+                posts.add(post);
+            }
+            entityManager.flush();
+            entityManager.clear();
+
+            for (Post post : posts) {
+                created.add(new PostCreatedEvent(post.getId(), post.getPostedBy().getId(), post.getDatePosted(),
+                        post.getTitle(), post.getText()));
+            }
+        });
+
+        postSearchIndex.addAll(created);
+        return created.size();
+    }
+
+    private static long authorOf(PostDTO dto, long defaultAuthorId) {
+        if (dto.getPostedBy() != null && dto.getPostedBy().getUserId() > 0) {
+            return dto.getPostedBy().getUserId();
+        }
+        return defaultAuthorId;
+    }
+
+    private static Post buildPost(PostDTO dto, ApplicationUser author) {
+        Date datePosted = dto.getDatePosted() != null ? dto.getDatePosted() : new Date();
+
+        if (dto.getMediaFileName() == null) {
+            return Post.builder()
+                    .postedBy(author)
+                    .datePosted(datePosted)
+                    .title(dto.getTitle())
+                    .text(dto.getText())
+                    .build();
+        }
+        return MediaPost.builder()
+                .postedBy(author)
+                .datePosted(datePosted)
+                .title(dto.getTitle())
+                .text(dto.getText())
+                .mediaFileName(dto.getMediaFileName())
+                .build();
+    }
+}
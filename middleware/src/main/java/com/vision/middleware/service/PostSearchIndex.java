@@ -0,0 +1,658 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostIndexRow;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-process inverted index over post titles and text, used by {@link PostSearchService}
+ * when {@code search.posts.engine} is {@code memory}.
+ * <p>
+ * Indexed posts are numbered with dense document ordinals in the order they are added. Each term's
+ * postings list stores the ordinals of the posts containing it, delta-encoded as variable-length
+ * integers together with the term's frequency in the post, so a posting typically takes 2 bytes and
+ * adding a newer post is an append. Per-post data (id, author, date, length) lives in parallel
+ * primitive arrays indexed by ordinal.
+ * <p>
+ * Queries match posts containing any of the query terms and are scored with BM25 (title terms count
+ * {@link #TITLE_WEIGHT} times). The postings lists of the query terms are walked side by side and only
+ * the best matches are kept in a bounded heap, so finding the top-k post ids never touches the database.
+ * BM25 scores also depend on the corpus (the number of posts, their average length and how many contain each
+ * term), which changes with every added post; the {@link Statistics} a search is scored with are taken separately,
+ * so the pages of one search can all be scored as the corpus stood when the first page was taken.
+ * <p>
+ * The index is not persisted: it is rebuilt in the background at startup by streaming every post, and
+ * new posts are added as soon as they are committed. Posts created on other nodes of a cluster are read from the
+ * database and added once those nodes report them through the {@link ClusterCacheInvalidator}. Until the first
+ * build completes, {@link #isReady()} is false and callers should fall back to another engine.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PostSearchIndex {
+
+    /**
+     * Name under which created posts are shared with the other nodes.
+     */
+    public static final String CLUSTER_POSTS = "post_search_posts";
+
+    /**
+     * BM25 term frequency saturation.
+     */
+    public static final float K1 = 1.2f;
+
+    /**
+     * BM25 document length normalization.
+     */
+    public static final float B = 0.75f;
+
+    /**
+     * How many times a term in the title counts compared to a term in the text.
+     */
+    public static final int TITLE_WEIGHT = 2;
+
+    /**
+     * Tokens shorter or longer than these bounds are not indexed.
+     */
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Repository for post data access.
+     */
+    @Autowired
+    private final PostRepository postRepository;
+
+    /**
+     * Transaction manager used to stream posts during a rebuild.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Shares the created posts with the other nodes of the cluster.
+     */
+    @Autowired
+    private final ClusterCacheInvalidator clusterCacheInvalidator;
+
+    /**
+     * The configured search engine; the index is only maintained when it is {@code memory}.
+     */
+    @Value("${search.posts.engine:" + PostSearchService.ENGINE_FULLTEXT + "}")
+    private String engine;
+
+    /**
+     * Guards {@link #segment}, {@link #rebuilding} and {@link #pendingDuringRebuild}.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Segment segment = new Segment();
+
+    private boolean rebuilding;
+
+    /**
+     * Posts added while a rebuild is streaming, replayed into the rebuilt segment if it missed them.
+     */
+    private List<PostCreatedEvent> pendingDuringRebuild = new ArrayList<>();
+
+    private volatile boolean ready;
+
+    /**
+     * A scored search result.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        /**
+         * ID of the matching post.
+         */
+        private final long postId;
+
+        /**
+         * BM25 score of the post for the query; higher is better.
+         */
+        private final float score;
+    }
+
+    /**
+     * The corpus statistics a query is scored with.
+     *
+     * @param averageLength the average length of the indexed posts
+     * @param idfs          the inverse document frequency of each distinct term of the query, in order of appearance
+     */
+    public record Statistics(float averageLength, float[] idfs) {
+
+        /**
+         * @return the statistics as a flat array, the average length first, e.g. for a cursor.
+         */
+        public float[] toArray() {
+            float[] values = new float[idfs.length + 1];
+            values[0] = averageLength;
+            System.arraycopy(idfs, 0, values, 1, idfs.length);
+            return values;
+        }
+
+        /**
+         * @param values statistics produced by {@link #toArray()}
+         * @return the statistics
+         * @throws IllegalArgumentException if the array is empty
+         */
+        public static Statistics fromArray(float[] values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("Malformed statistics");
+            }
+            return new Statistics(values[0], Arrays.copyOfRange(values, 1, values.length));
+        }
+    }
+
+    /**
+     * @return true if the index is maintained, i.e. the configured engine is {@code memory}.
+     */
+    public boolean isEnabled() {
+        return PostSearchService.ENGINE_MEMORY.equals(engine);
+    }
+
+    /**
+     * @return true once the index holds every post and can answer queries.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the number of indexed posts.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return segment.docCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registers the handler of the posts created on other nodes.
+     */
+    @PostConstruct
+    public void listenToCluster() {
+        clusterCacheInvalidator.register(CLUSTER_POSTS, postIds -> {
+            if (isEnabled()) {
+                addLocally(postRepository.findAllForIndexByIdIn(postIds).stream()
+                        .map(row -> new PostCreatedEvent(row.getId(), row.getAuthorId(), row.getDatePosted(),
+                                row.getTitle(), row.getText()))
+                        .toList());
+            }
+        });
+    }
+
+    /**
+     * Builds the index in the background once the application has started.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Adds a post to the index once the transaction that created it has committed.
+     *
+     * @param event the post creation event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPostCreated(PostCreatedEvent event) {
+        addAll(List.of(event));
+    }
+
+    /**
+     * Adds committed posts to the index, e.g. a chunk of a bulk import, and has the other nodes add them too.
+     *
+     * @param events the creation events of the posts
+     */
+    public void addAll(Collection<PostCreatedEvent> events) {
+        if (!isEnabled() || events.isEmpty()) {
+            return;
+        }
+
+        addLocally(events);
+        clusterCacheInvalidator.publish(CLUSTER_POSTS, events.stream().map(PostCreatedEvent::getPostId).toList());
+    }
+
+    private void addLocally(Collection<PostCreatedEvent> events) {
+        lock.writeLock().lock();
+        try {
+            for (PostCreatedEvent event : events) {
+                segment.add(event.getPostId(), event.getAuthorId(), event.getDatePosted(), event.getTitle(), event.getText());
+                if (rebuilding) {
+                    pendingDuringRebuild.add(event);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the database, streaming posts instead of loading them all at once.
+     * The current index keeps answering queries until the new one is swapped in.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                return;
+            }
+            rebuilding = true;
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.currentTimeMillis();
+        Segment fresh = new Segment();
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> {
+                try (Stream<PostIndexRow> rows = postRepository.streamAllForIndex()) {
+                    rows.forEach(row -> fresh.add(row.getId(), row.getAuthorId(), row.getDatePosted(),
+                            row.getTitle(), row.getText()));
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                pendingDuringRebuild = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Failed to build the post search index", e);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // the streamed posts are in id order, so they can be binary searched until anything else is added.
+            List<PostCreatedEvent> missed = pendingDuringRebuild.stream()
+                    .filter(event -> !fresh.containsSortedPostId(event.getPostId()))
+                    .toList();
+            for (PostCreatedEvent event : missed) {
+                fresh.add(event.getPostId(), event.getAuthorId(), event.getDatePosted(), event.getTitle(), event.getText());
+            }
+            segment = fresh;
+            rebuilding = false;
+            pendingDuringRebuild = new ArrayList<>();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Built post search index of {} posts and {} terms in {} ms",
+                fresh.docCount, fresh.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Takes the current corpus statistics for a query, to score each page of its results with.
+     *
+     * @param query the search text
+     * @return the statistics of the query's terms in the indexed posts
+     */
+    public Statistics statistics(String query) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        lock.readLock().lock();
+        try {
+            return segment.statistics(terms);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the best matching posts for a query, best first.
+     * Ties are broken by post id, highest first, so results can be paged with (afterScore, afterId) as long as
+     * every page is scored with the same statistics.
+     *
+     * @param query      the search text; posts matching any of its terms are returned
+     * @param statistics the statistics to score with, as taken by {@link #statistics(String)} for the same query
+     * @param userId     restrict to posts by this user, or a negative value for all users
+     * @param startDate  posts on or after this time, in epoch milliseconds
+     * @param endDate    posts on or before this time, in epoch milliseconds
+     * @param afterScore score of the last result already seen, or Float.MAX_VALUE for the first page
+     * @param afterId    id of the last result already seen, or Long.MAX_VALUE for the first page
+     * @param limit      maximum number of results
+     * @return the matching posts with their scores, best first
+     * @throws IllegalArgumentException if the statistics were taken for a different query
+     */
+    public List<Hit> search(String query, Statistics statistics, long userId, long startDate, long endDate,
+                            float afterScore, long afterId, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (statistics.idfs().length != terms.size()) {
+            throw new IllegalArgumentException("Statistics were taken for a different query");
+        }
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            return segment.search(terms, statistics, userId, startDate, endDate, afterScore, afterId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lowercase terms of letters and digits.
+     *
+     * @param text the text to split, may be null
+     * @return the terms in order of appearance, including repeats
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() >= MIN_TOKEN_LENGTH && token.length() <= MAX_TOKEN_LENGTH) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The indexed posts: postings lists per term plus per-post data, all addressed by document ordinal.
+     */
+    private static final class Segment {
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private long[] postIds = new long[1024];
+        private long[] authorIds = new long[1024];
+        private long[] datesPosted = new long[1024];
+        private int[] lengths = new int[1024];
+        private int docCount;
+        private long totalLength;
+
+        void add(long postId, long authorId, Date datePosted, String title, String text) {
+            Map<String, int[]> frequencies = new HashMap<>();
+            int length = 0;
+            for (String token : tokenize(title)) {
+                frequencies.computeIfAbsent(token, t -> new int[1])[0] += TITLE_WEIGHT;
+                length += TITLE_WEIGHT;
+            }
+            for (String token : tokenize(text)) {
+                frequencies.computeIfAbsent(token, t -> new int[1])[0]++;
+                length++;
+            }
+
+            if (docCount == postIds.length) {
+                int capacity = docCount * 2;
+                postIds = Arrays.copyOf(postIds, capacity);
+                authorIds = Arrays.copyOf(authorIds, capacity);
+                datesPosted = Arrays.copyOf(datesPosted, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            int doc = docCount++;
+            postIds[doc] = postId;
+            authorIds[doc] = authorId;
+            datesPosted[doc] = datePosted == null ? 0 : datePosted.getTime();
+            lengths[doc] = length;
+            totalLength += length;
+
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, t -> new PostingList()).add(doc, frequency[0]));
+        }
+
+        /**
+         * Only valid while the posts were added in ascending id order.
+         */
+        boolean containsSortedPostId(long postId) {
+            return Arrays.binarySearch(postIds, 0, docCount, postId) >= 0;
+        }
+
+        Statistics statistics(Set<String> terms) {
+            float[] idfs = new float[terms.size()];
+            int i = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                int docFrequency = list == null ? 0 : list.docFrequency;
+                idfs[i++] = (float) Math.log(1 + (docCount - docFrequency + 0.5) / (docFrequency + 0.5));
+            }
+            return new Statistics(docCount == 0 ? 1f : Math.max(1f, (float) totalLength / docCount), idfs);
+        }
+
+        List<Hit> search(Set<String> terms, Statistics statistics, long userId, long startDate, long endDate,
+                         float afterScore, long afterId, int limit) {
+            List<PostingList.Cursor> cursors = new ArrayList<>();
+            List<Float> idfs = new ArrayList<>();
+            int position = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list != null) {
+                    PostingList.Cursor cursor = list.cursor();
+                    cursor.next();
+                    cursors.add(cursor);
+                    idfs.add(statistics.idfs()[position]);
+                }
+                position++;
+            }
+            if (cursors.isEmpty()) {
+                return List.of();
+            }
+
+            float averageLength = statistics.averageLength();
+            TopHits top = new TopHits(limit);
+
+            // walk all postings lists in ordinal order, scoring each document once.
+            while (true) {
+                int doc = Integer.MAX_VALUE;
+                for (PostingList.Cursor cursor : cursors) {
+                    doc = Math.min(doc, cursor.doc);
+                }
+                if (doc == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                float score = 0;
+                float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                for (int i = 0; i < cursors.size(); i++) {
+                    PostingList.Cursor cursor = cursors.get(i);
+                    if (cursor.doc == doc) {
+                        score += idfs.get(i) * cursor.frequency * (K1 + 1) / (cursor.frequency + norm);
+                        cursor.next();
+                    }
+                }
+
+                if ((userId < 0 || authorIds[doc] == userId)
+                        && datesPosted[doc] >= startDate && datesPosted[doc] <= endDate
+                        && (score < afterScore || (score == afterScore && postIds[doc] < afterId))) {
+                    top.offer(score, postIds[doc]);
+                }
+            }
+            return top.toList();
+        }
+    }
+
+    /**
+     * Append-only postings list: (ordinal delta, frequency) pairs encoded as variable-length integers,
+     * 7 bits per byte with the high bit marking that more bytes follow.
+     */
+    private static final class PostingList {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int lastDoc;
+        private int docFrequency;
+
+        void add(int doc, int frequency) {
+            writeVarInt(doc - lastDoc);
+            writeVarInt(frequency);
+            lastDoc = doc;
+            docFrequency++;
+        }
+
+        private void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        Cursor cursor() {
+            return new Cursor(bytes, size, docFrequency);
+        }
+
+        /**
+         * Decodes the postings in order. {@link #doc} is Integer.MAX_VALUE once exhausted.
+         * Holds on to the arrays it was created with, so it is unaffected by later appends.
+         */
+        static final class Cursor {
+            private final byte[] bytes;
+            private final int end;
+            private int remaining;
+            private int position;
+            int doc;
+            int frequency;
+
+            Cursor(byte[] bytes, int end, int count) {
+                this.bytes = bytes;
+                this.end = end;
+                this.remaining = count;
+            }
+
+            void next() {
+                if (remaining == 0 || position >= end) {
+                    doc = Integer.MAX_VALUE;
+                    return;
+                }
+                doc += readVarInt();
+                frequency = readVarInt();
+                remaining--;
+            }
+
+            private int readVarInt() {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Bounded min-heap keeping the best (score, postId) pairs seen.
+     */
+    private static final class TopHits {
+        private final float[] scores;
+        private final long[] ids;
+        private int size;
+
+        TopHits(int capacity) {
+            scores = new float[capacity];
+            ids = new long[capacity];
+        }
+
+        void offer(float score, long id) {
+            if (size < scores.length) {
+                scores[size] = score;
+                ids[size] = id;
+                siftUp(size++);
+            } else if (worse(0, score, id)) {
+                scores[0] = score;
+                ids[0] = id;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return true if the entry at index i ranks below (score, id)
+         */
+        private boolean worse(int i, float score, long id) {
+            return scores[i] < score || (scores[i] == score && ids[i] < id);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(i, scores[parent], ids[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && worse(left, scores[smallest], ids[smallest])) {
+                    smallest = left;
+                }
+                if (right < size && worse(right, scores[smallest], ids[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+        }
+
+        List<Hit> toList() {
+            Hit[] hits = new Hit[size];
+            // popping the min-heap yields the worst first.
+            for (int i = size - 1; i >= 0; i--) {
+                hits[i] = new Hit(ids[0], scores[0]);
+                size--;
+                scores[0] = scores[size];
+                ids[0] = ids[size];
+                siftDown(0);
+            }
+            return Arrays.asList(hits);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.CursorPageDTO;
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.UserDTO;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import com.vision.middleware.repo.searchspec.PostSearchCursor;
+import com.vision.middleware.repo.searchspec.PostSearchHit;
+import com.vision.middleware.repo.searchspec.PostSearchSpecification;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service responsible for searching posts.
+ * <p>
+ * The engine is selected with {@code search.posts.engine}:
+ * <ul>
+ *     <li>{@code fulltext} (default): Postgres full-text search over a GIN-indexed tsvector column,
+ *     ranked by relevance, with highlighted snippets.</li>
+ *     <li>{@code like}: the original case-insensitive substring match on title and text, newest first.
+ *     Cannot use an index, but matches partial words.</li>
+ *     <li>{@code memory}: the in-process {@link PostSearchIndex}, ranked by BM25. Only the page of matching
+ *     posts is read from the database. Falls back to {@code fulltext} until the index has been built.</li>
+ * </ul>
+ * All engines return bounded, keyset-paginated results.
+ */
+@Service
+@RequiredArgsConstructor
+public class PostSearchService {
+
+    /**
+     * Engine name for Postgres full-text search.
+     */
+    public static final String ENGINE_FULLTEXT = "fulltext";
+
+    /**
+     * Engine name for the substring match fallback.
+     */
+    public static final String ENGINE_LIKE = "like";
+
+    /**
+     * Engine name for the in-memory inverted index.
+     */
+    public static final String ENGINE_MEMORY = "memory";
+
+    /**
+     * Upper bound on the number of results returned at once.
+     */
+    public static final int MAX_PAGE_SIZE = 50;
+
+    /**
+     * Date range bounds used when a search is not restricted by date.
+     */
+    private static final Date MIN_DATE = new Date(0);
+    private static final Date MAX_DATE = new Date(253402300799000L); // 9999-12-31
+
+    /**
+     * Repository for post data access.
+     */
+    @Autowired
+    private final PostRepository postRepository;
+
+    /**
+     * In-memory index used by the memory engine.
+     */
+    @Autowired
+    private final PostSearchIndex postSearchIndex;
+
+    /**
+     * Vote counts not yet written to the database, added to the counts that are read.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    /**
+     * The configured search engine.
+     */
+    @Value("${search.posts.engine:" + ENGINE_FULLTEXT + "}")
+    private String engine;
+
+    /**
+     * Searches posts by title and text.
+     *
+     * @param query     Search query string.
+     * @param user      Restrict to this user's posts, or null for all users.
+     * @param startDate Restrict to posts on or after this date, or null for no lower bound.
+     * @param endDate   Restrict to posts on or before this date, or null for no upper bound.
+     * @param cursor    Opaque cursor returned with the previous page of results, or null for the first page.
+     * @param size      Number of results per page (capped at MAX_PAGE_SIZE).
+     * @return          Page of matching posts with the cursor of the next page.
+     * @throws IllegalArgumentException if the cursor is malformed or was issued by a different engine.
+     */
+    public CursorPageDTO<PostDTO> searchPosts(String query, ApplicationUser user, Date startDate, Date endDate,
+                                              String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        boolean hasCursor = cursor != null && !cursor.isBlank();
+
+        if (ENGINE_LIKE.equals(engine)) {
+            return searchLike(query, user, startDate, endDate, hasCursor ? cursor : null, pageSize);
+        }
+        if (ENGINE_MEMORY.equals(engine) && postSearchIndex.isReady()) {
+            return searchMemory(query, user, startDate, endDate, hasCursor ? cursor : null, pageSize);
+        }
+        return searchFullText(query, user, startDate, endDate, hasCursor ? cursor : null, pageSize);
+    }
+
+    /**
+     * Runs a ranked full-text search.
+     */
+    private CursorPageDTO<PostDTO> searchFullText(String query, ApplicationUser user, Date startDate, Date endDate,
+                                                  String cursor, int size) {
+        PostSearchCursor after = cursor == null ? null : PostSearchCursor.decode(cursor);
+
+        // one extra row tells us whether there is a next page.
+        List<PostSearchHit> hits = postRepository.searchFullText(
+                query,
+                user == null ? -1 : user.getId(),
+                startDate == null ? MIN_DATE : startDate,
+                endDate == null ? MAX_DATE : endDate,
+                after == null ? Float.MAX_VALUE : after.getRank(),
+                after == null ? Long.MAX_VALUE : after.getId(),
+                size + 1
+        );
+
+        boolean hasNext = hits.size() > size;
+        List<PostSearchHit> page = hasNext ? hits.subList(0, size) : hits;
+
+        String nextCursor = null;
+        if (hasNext) {
+            PostSearchHit last = page.get(page.size() - 1);
+            nextCursor = new PostSearchCursor(last.getRank(), last.getPostId()).encode();
+        }
+
+        return buildPage(page.stream().map(this::buildDTOFromHit).toList(), size, hasNext, nextCursor);
+    }
+
+    /**
+     * Runs a ranked search against the in-memory index, then loads the page of posts it found.
+     * Every page is scored with the corpus statistics of the first, which its cursor carries on, so posts added
+     * in between do not shift the scores the cursor resumes from.
+     */
+    private CursorPageDTO<PostDTO> searchMemory(String query, ApplicationUser user, Date startDate, Date endDate,
+                                                String cursor, int size) {
+        PostSearchCursor after = cursor == null ? null : PostSearchCursor.decode(cursor);
+        // a cursor without statistics was issued by full-text search while the index was being built.
+        PostSearchIndex.Statistics statistics = after == null || after.getStatistics() == null
+                ? postSearchIndex.statistics(query)
+                : PostSearchIndex.Statistics.fromArray(after.getStatistics());
+
+        List<PostSearchIndex.Hit> hits = postSearchIndex.search(
+                query,
+                statistics,
+                user == null ? -1 : user.getId(),
+                startDate == null ? MIN_DATE.getTime() : startDate.getTime(),
+                endDate == null ? MAX_DATE.getTime() : endDate.getTime(),
+                after == null ? Float.MAX_VALUE : after.getRank(),
+                after == null ? Long.MAX_VALUE : after.getId(),
+                size + 1
+        );
+
+        boolean hasNext = hits.size() > size;
+        List<PostSearchIndex.Hit> page = hasNext ? hits.subList(0, size) : hits;
+        if (page.isEmpty()) {
+            return buildPage(List.of(), size, false, null);
+        }
+
+        List<Long> ids = page.stream().map(PostSearchIndex.Hit::getPostId).toList();
+        Map<Long, PostDTO> postsById = postRepository.findPostDTOs(PostSearchSpecification.filterByIds(ids), Sort.unsorted(), ids.size())
+                .stream()
+                .collect(Collectors.toMap(PostDTO::getPostId, Function.identity()));
+
+        String nextCursor = null;
+        if (hasNext) {
+            PostSearchIndex.Hit last = page.get(page.size() - 1);
+            nextCursor = new PostSearchCursor(last.getScore(), last.getPostId(), statistics.toArray()).encode();
+        }
+
+        // keep the index's ranking; skip posts that no longer exist.
+        List<PostDTO> content = ids.stream().map(postsById::get).filter(Objects::nonNull).toList();
+        return buildPage(content, size, hasNext, nextCursor);
+    }
+
+    /**
+     * Runs a substring match search, newest first.
+     */
+    private CursorPageDTO<PostDTO> searchLike(String query, ApplicationUser user, Date startDate, Date endDate,
+                                              String cursor, int size) {
+        Specification<Post> spec = PostSearchSpecification.searchPosts(query, user)
+                .and(PostSearchSpecification.searchByDateRange(startDate, endDate));
+        if (cursor != null) {
+            spec = spec.and(PostSearchSpecification.filterAfterCursor(PostCursor.decode(cursor, PostCursor.SortKey.DATE)));
+        }
+
+        List<PostDTO> posts = postRepository.findPostDTOs(spec, PostCursor.SortKey.DATE.toSort(), size + 1);
+
+        boolean hasNext = posts.size() > size;
+        List<PostDTO> page = hasNext ? posts.subList(0, size) : posts;
+
+        String nextCursor = null;
+        if (hasNext) {
+            PostDTO last = page.get(page.size() - 1);
+            nextCursor = new PostCursor(PostCursor.SortKey.DATE, last.getLikeCount(), last.getDatePosted(), last.getPostId()).encode();
+        }
+
+        return buildPage(page, size, hasNext, nextCursor);
+    }
+
+    private CursorPageDTO<PostDTO> buildPage(List<PostDTO> content, int size, boolean hasNext, String nextCursor) {
+        content.forEach(voteCounterBuffer::mergeInto);
+        return CursorPageDTO.<PostDTO>builder()
+                .content(content)
+                .size(size)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private PostDTO buildDTOFromHit(PostSearchHit hit) {
+        return PostDTO.builder()
+                .postId(hit.getPostId())
+                .title(hit.getTitle())
+                .text(hit.getText())
+                .likeCount(hit.getLikeCount())
+                .dislikeCount(hit.getDislikeCount())
+                .datePosted(hit.getDatePosted())
+                .replyCount(hit.getReplyCount() == null ? 0 : hit.getReplyCount())
+                .lastActivityAt(hit.getLastActivityAt())
+                .mediaFileName(hit.getMediaFileName())
+                .snippet(hit.getSnippet())
+                .postedBy(
+                        UserDTO.builder()
+                                .userId(hit.getUserId())
+                                .username(hit.getUsername())
+                                .displayName(hit.getDisplayName())
+                                .profilePictureFileName(hit.getProfilePictureFileName())
+                                .build()
+                )
+                .build();
+    }
+}
@@ -3,21 +3,28 @@ package com.vision.middleware.service;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.MediaPost;
 import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
 import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.VoteDTO;
+import com.vision.middleware.events.PostCreatedEvent;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Date;
-import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
@@ -49,6 +56,18 @@ public class PostService {
     @Autowired
     private final VotingService votingService;
 
+    /**
+     * Vote counts not yet written to the database, added to the counts that are read.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    /**
+     * Publisher for post lifecycle events (e.g. timeline fan-out).
+     */
+    @Autowired
+    private final ApplicationEventPublisher eventPublisher;
+
     /**
      * Creates a new post based on the provided PostDTO and user ID.
      *
@@ -81,23 +100,21 @@ public class PostService {
                     .mediaFileName(postDTO.getMediaFileName())
                     .build();
         }
-        return postRepository.save(newPost);
+        Post saved = postRepository.save(newPost);
+        eventPublisher.publishEvent(new PostCreatedEvent(saved.getId(), userId, date, saved.getTitle(), saved.getText()));
+        return saved;
     }
 
     /**
-     * Allows a user to vote on a post.
+     * Allows a user to vote on a post. The vote is written by IDs alone, without loading the post or user.
      *
      * @param postId   ID of the post being voted on.
      * @param userId   ID of the user casting the vote.
      * @param voteType Type of vote (e.g., like, dislike).
+     * @return the vote with the post's like and dislike counts after it.
      */
-    public void userVoteOnPost(long postId, long userId, UserVote.VoteType voteType) {
-        Post post = postRepository.findById(postId).orElseThrow(
-                () -> new IdNotFoundException("Post id " + postId + " not found.")
-        );
-        ApplicationUser user = userService.loadUserById(userId);
-
-        votingService.voteOnVotable(user, post, voteType);
+    public VoteDTO userVoteOnPost(long postId, long userId, UserVote.VoteType voteType) {
+        return votingService.castVote(userId, postId, VotableType.POST, voteType);
     }
 
     /**
@@ -107,12 +124,7 @@ public class PostService {
      * @param userId   ID of the user whose vote is being removed.
      */
     public void removeUserVote(long postId, long userId) {
-        Post post = postRepository.findById(postId).orElseThrow(
-                () -> new IdNotFoundException("Post id " + postId + " not found.")
-        );
-        ApplicationUser user = userService.loadUserById(userId);
-
-        votingService.deleteVote(user, post);
+        votingService.removeVote(userId, postId, VotableType.POST);
     }
 
     /**
@@ -132,89 +144,147 @@ public class PostService {
     }
 
     /**
-     * Retrieves a paginated list of all posts, sorted by the specified criteria.
+     * Retrieves the types of vote a user has cast on a batch of posts, in one query.
+     *
+     * @param postIds  IDs of the posts.
+     * @param userId   ID of the user.
+     * @return          Map of post ID to vote type, for the posts the user has voted on.
+     * @throws IllegalArgumentException if more than VotingService.MAX_BULK_VOTES IDs are given.
+     */
+    public Map<Long, UserVote.VoteType> getUserVotes(Collection<Long> postIds, long userId) {
+        return votingService.getUserVotes(userId, VotableType.POST, postIds);
+    }
+
+    /**
+     * Retrieves a paginated list of all posts as DTOs, sorted by the specified criteria.
+     * Posts and their authors are read in a single query.
      *
      * @param page       Page number (0-indexed).
      * @param size       Number of posts per page.
-     * @param sortBy     Sorting criteria ("new" or "popularity").
+     * @param sortBy     Sorting criteria ("new", "popularity", "hot" or "active").
      * @param beforeDate Date before which posts should be retrieved (inclusive).
      * @param afterDate  Date after which posts should be retrieved (inclusive).
-     * @return          Paginated list of Post entities.
+     * @return          Paginated list of PostDTOs.
      */
-    public Page<Post> getAllPosts(int page, int size, String sortBy, Date beforeDate, Date afterDate) {
-        Pageable pageable;
-        if ("popularity".equals(sortBy)) {
-            pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
-        } else {
-            pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("datePosted")));
-        }
-
-        return postRepository.findAllPostsWithFilters(pageable, beforeDate, afterDate);
+    public Page<PostDTO> getAllPostDTOs(int page, int size, String sortBy, Date beforeDate, Date afterDate) {
+        Page<PostDTO> posts = postRepository.findPostDTOsWithFilters(null, pageRequest(page, size, sortBy), beforeDate, afterDate);
+        posts.getContent().forEach(voteCounterBuffer::mergeInto);
+        return posts;
     }
 
     /**
-     * Retrieves a paginated list of posts from a specific user, sorted by the specified criteria.
+     * Retrieves a paginated list of posts from a specific user as DTOs, sorted by the specified criteria.
+     * Posts and their authors are read in a single query.
      *
      * @param username   Username of the post's author.
      * @param page       Page number (0-indexed).
      * @param size       Number of posts per page.
-     * @param sortBy     Sorting criteria ("new" or "popularity").
+     * @param sortBy     Sorting criteria ("new", "popularity", "hot" or "active").
      * @param beforeDate Date before which posts should be retrieved (inclusive).
      * @param afterDate  Date after which posts should be retrieved (inclusive).
-     * @return          Paginated list of Post entities.
+     * @return          Paginated list of PostDTOs.
      */
-    public Page<Post> getAllPostsByUsername(String username, int page, int size, String sortBy, Date beforeDate, Date afterDate) {
-        ApplicationUser user = userService.loadUserByUsername(username); 
+    public Page<PostDTO> getAllPostDTOsByUsername(String username, int page, int size, String sortBy, Date beforeDate, Date afterDate) {
+        ApplicationUser user = userService.loadUserByUsername(username);
+        Page<PostDTO> posts = postRepository.findPostDTOsWithFilters(user, pageRequest(page, size, sortBy), beforeDate, afterDate);
+        posts.getContent().forEach(voteCounterBuffer::mergeInto);
+        return posts;
+    }
 
-        Pageable pageable;
-        if ("popularity".equals(sortBy)) {
-            pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
-        } else {
-            pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("datePosted")));
-        }
-        
-        return postRepository.findAllPostsByUserWithFilters(user, pageable, beforeDate, afterDate);
+    /**
+     * Retrieves a slice of all posts using keyset (cursor) pagination, sorted by the specified criteria.
+     * No count query is run, and the cost of a slice does not grow with how deep the client has scrolled.
+     *
+     * @param cursor     Opaque cursor returned with the previous slice, or null for the first slice.
+     * @param size       Number of posts per slice.
+     * @param sortBy     Sorting criteria ("new", "popularity" or "active").
+     * @param beforeDate Date before which posts should be retrieved (inclusive).
+     * @param afterDate  Date after which posts should be retrieved (inclusive).
+     * @return          Slice of Post entities.
+     * @throws IllegalArgumentException if the sort cannot be paged with a cursor, or the cursor is malformed
+     *                                  or was issued for a different sort.
+     */
+    public Slice<Post> getPostSlice(String cursor, int size, String sortBy, Date beforeDate, Date afterDate) {
+        PostCursor.SortKey sortKey = PostCursor.SortKey.fromSortBy(sortBy);
+        return postRepository.findPostSliceWithFilters(null, sortKey, decodeCursor(cursor, sortKey), size, beforeDate, afterDate);
     }
 
     /**
-     * Retrieves a post by its ID.
+     * Retrieves a slice of posts from a specific user using keyset (cursor) pagination,
+     * sorted by the specified criteria.
      *
-     * @param postId ID of the post to retrieve.
-     * @return       The Post entity, or throws an exception if not found.
+     * @param username   Username of the post's author.
+     * @param cursor     Opaque cursor returned with the previous slice, or null for the first slice.
+     * @param size       Number of posts per slice.
+     * @param sortBy     Sorting criteria ("new", "popularity" or "active").
+     * @param beforeDate Date before which posts should be retrieved (inclusive).
+     * @param afterDate  Date after which posts should be retrieved (inclusive).
+     * @return          Slice of Post entities.
+     * @throws IllegalArgumentException if the sort cannot be paged with a cursor, or the cursor is malformed
+     *                                  or was issued for a different sort.
      */
-    public Post loadPostById(long postId) {
-        return postRepository.findById(postId)
-                .orElseThrow(() -> new NoSuchElementException("Post with ID " + postId + " not found."));
+    public Slice<Post> getPostSliceByUsername(String username, String cursor, int size, String sortBy, Date beforeDate, Date afterDate) {
+        ApplicationUser user = userService.loadUserByUsername(username);
+        PostCursor.SortKey sortKey = PostCursor.SortKey.fromSortBy(sortBy);
+        return postRepository.findPostSliceWithFilters(user, sortKey, decodeCursor(cursor, sortKey), size, beforeDate, afterDate);
     }
 
     /**
-     * Searches for posts containing the specified query string (case-insensitive).
+     * Builds the cursor that continues after the given slice.
      *
-     * @param query Search query string.
-     * @return       List of matching Post entities.
+     * @param slice  Slice returned by one of the keyset pagination methods.
+     * @param sortBy Sorting criteria the slice was fetched with.
+     * @return       Opaque cursor for the next slice, or null if there is none.
      */
-    public List<Post> searchPosts(String query) {
-        return postRepository.searchPosts(query, null);
+    public String nextCursor(Slice<Post> slice, String sortBy) {
+        if (!slice.hasNext() || slice.getContent().isEmpty()) {
+            return null;
+        }
+        Post last = slice.getContent().get(slice.getContent().size() - 1);
+        return PostCursor.fromPost(last, PostCursor.SortKey.fromSortBy(sortBy)).encode();
     }
 
     /**
-     * Searches for posts containing the specified query string (case-insensitive),
-     * restricted to a specific user's posts.
+     * Builds the page request for an offset-paginated listing.
      *
-     * @param query  Search query string.
-     * @param user   User whose posts are being searched.
-     * @return       List of matching Post entities.
+     * @param page   Page number (0-indexed).
+     * @param size   Number of posts per page.
+     * @param sortBy Sorting criteria ("new", "popularity", "hot" or "active").
+     * @return       Page request with the matching sort.
      */
-    public List<Post> searchPostsByUser(String query, ApplicationUser user) {
-        return postRepository.searchPosts(query, user);
+    private Pageable pageRequest(int page, int size, String sortBy) {
+        if ("popularity".equals(sortBy)) {
+            return PageRequest.of(page, size, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
+        } else if ("hot".equals(sortBy)) {
+            return PageRequest.of(page, size, Sort.by(Sort.Order.desc("hotScore"), Sort.Order.desc("id")));
+        } else if ("active".equals(sortBy)) {
+            return PageRequest.of(page, size, Sort.by(Sort.Order.desc("lastActivityAt"), Sort.Order.desc("id")));
+        }
+        return PageRequest.of(page, size, Sort.by(Sort.Order.desc("datePosted")));
     }
 
-    public List<Post> searchPostsByDateRange(
-            String query,
-            ApplicationUser user,
-            Date startDate,
-            Date endDate
-    ) {
-        return postRepository.searchPostsByDateAndQuery(query, user, startDate, endDate);
+    /**
+     * Decodes a client-supplied cursor, treating a missing cursor as the start of the listing.
+     *
+     * @param cursor  Opaque cursor, may be null or blank.
+     * @param sortKey Ordering the cursor must have been issued for.
+     * @return        Decoded cursor, or null if none was given.
+     */
+    private PostCursor decodeCursor(String cursor, PostCursor.SortKey sortKey) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        return PostCursor.decode(cursor, sortKey);
+    }
+
+    /**
+     * Retrieves a post by its ID.
+     *
+     * @param postId ID of the post to retrieve.
+     * @return       The Post entity, or throws an exception if not found.
+     */
+    public Post loadPostById(long postId) {
+        return postRepository.findById(postId)
+                .orElseThrow(() -> new NoSuchElementException("Post with ID " + postId + " not found."));
     }
 }
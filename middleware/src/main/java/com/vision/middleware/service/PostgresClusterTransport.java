@@ -0,0 +1,344 @@
+package com.vision.middleware.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * {@link ClusterTransport} over Postgres {@code LISTEN}/{@code NOTIFY}, so the nodes of a cluster need nothing but the
+ * database they already share.
+ * <p>
+ * Published messages are queued, and sent in order by a sender thread with {@code pg_notify} on a connection of the
+ * pool it holds, so publishing never waits for a connection or the database, and works the same from within a
+ * transaction or its {@code afterCommit} callbacks. At most {@link #MAX_QUEUED} messages wait to be sent; beyond that,
+ * and when sending fails, messages are dropped. A {@code NOTIFY} payload is limited to 8000 bytes, so longer messages are sent
+ * in chunks of {@link #MAX_CHUNK_CHARS} characters, tagged with a message id, and put back together by the receivers;
+ * a message missing chunks for {@link #PARTS_TIMEOUT_MS} is dropped.
+ * <p>
+ * Another connection of the pool is held by a listener thread, which {@code LISTEN}s on the subscribed channels and
+ * polls for notifications. If either connection fails, it is replaced, and the channels listened to again; messages
+ * published in between are lost.
+ */
+@Slf4j
+public class PostgresClusterTransport implements ClusterTransport {
+
+    /**
+     * Characters of a message per notification; at most 4 bytes each, which leaves room for the chunk header.
+     */
+    public static final int MAX_CHUNK_CHARS = 1900;
+
+    /**
+     * Time after which a message whose chunks did not all arrive is dropped.
+     */
+    public static final long PARTS_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Maximum number of messages waiting to be sent.
+     */
+    public static final int MAX_QUEUED = 10000;
+
+    /**
+     * Time the listener thread waits for notifications before checking for new channels, and the sender thread waits
+     * for messages before checking whether the transport was closed.
+     */
+    private static final int POLL_MS = 500;
+
+    /**
+     * Time the threads wait before replacing a failed connection.
+     */
+    private static final long RECONNECT_MS = TimeUnit.SECONDS.toMillis(1);
+
+    private final DataSource dataSource;
+
+    /**
+     * Listeners by channel.
+     */
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Prefix of the ids of the messages published here, unique per instance.
+     */
+    private final String senderId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Chunks of messages received in part, by message id. Only used by the listener thread.
+     */
+    private final Map<String, Parts> partial = new HashMap<>();
+
+    /**
+     * Messages waiting for the sender thread.
+     */
+    private final BlockingQueue<Outgoing> outbox = new LinkedBlockingQueue<>(MAX_QUEUED);
+
+    private volatile boolean running = true;
+
+    private Thread listener;
+
+    private Thread sender;
+
+    /**
+     * A message waiting to be sent.
+     */
+    private record Outgoing(String channel, String payload) {
+    }
+
+    /**
+     * Chunks received so far of one message.
+     */
+    private static class Parts {
+        private final String[] chunks;
+        private final long firstAt;
+        private int received;
+
+        private Parts(int total, long firstAt) {
+            this.chunks = new String[total];
+            this.firstAt = firstAt;
+        }
+    }
+
+    public PostgresClusterTransport(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void publish(String channel, String payload) {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            if (sender == null) {
+                Thread thread = new Thread(this::send, "cluster-sender");
+                thread.setDaemon(true);
+                sender = thread;
+                thread.start();
+            }
+        }
+        if (!outbox.offer(new Outgoing(channel, payload))) {
+            log.warn("Cluster message queue full, dropping a message on {}", channel);
+        }
+    }
+
+    /**
+     * Sends the queued messages until the transport is closed and the queue is empty.
+     */
+    private void send() {
+        Connection connection = null;
+        while (running || !outbox.isEmpty()) {
+            Outgoing message;
+            try {
+                message = outbox.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (message == null) {
+                continue;
+            }
+
+            try {
+                if (connection == null) {
+                    connection = dataSource.getConnection();
+                    connection.setAutoCommit(true);
+                }
+                notify(connection, message);
+            } catch (SQLException e) {
+                log.warn("Failed to publish a cluster message on {}", message.channel(), e);
+                closeQuietly(connection);
+                connection = null;
+                if (!running) {
+                    break; // closed while the database is unreachable, drop the rest
+                }
+                try {
+                    Thread.sleep(RECONNECT_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Sends one message, in as many notifications as it has chunks.
+     */
+    private void notify(Connection connection, Outgoing message) throws SQLException {
+        String id = senderId + "-" + sequence.incrementAndGet();
+        List<String> chunks = chunks(message.payload());
+        int total = chunks.size();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            for (int i = 0; i < total; i++) {
+                statement.setString(1, message.channel());
+                statement.setString(2, id + ":" + i + ":" + total + ":" + chunks.get(i));
+                statement.executeQuery().close();
+            }
+        }
+    }
+
+    /**
+     * Splits a message into chunks of at most {@link #MAX_CHUNK_CHARS} characters. A chunk never ends between the
+     * two halves of a surrogate pair, which could not be encoded on their own and would be replaced in transit.
+     *
+     * @param payload the message
+     * @return the chunks in order, at least one
+     */
+    private static List<String> chunks(String payload) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        do {
+            int end = Math.min(payload.length(), start + MAX_CHUNK_CHARS);
+            if (end < payload.length() && Character.isHighSurrogate(payload.charAt(end - 1))) {
+                end--;
+            }
+            chunks.add(payload.substring(start, end));
+            start = end;
+        } while (start < payload.length());
+        return chunks;
+    }
+
+    @Override
+    public synchronized void subscribe(String channel, Consumer<String> listener) {
+        listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+        if (this.listener == null && running) {
+            Thread thread = new Thread(this::listen, "cluster-listener");
+            thread.setDaemon(true);
+            this.listener = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops listening, and lets the sender thread send the messages still queued.
+     */
+    @Override
+    public void close() {
+        Thread listenerThread;
+        Thread senderThread;
+        synchronized (this) {
+            running = false;
+            listenerThread = listener;
+            senderThread = sender;
+        }
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        try {
+            if (senderThread != null) {
+                senderThread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            if (listenerThread != null) {
+                listenerThread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listen() {
+        Connection connection = null;
+        Set<String> listening = new HashSet<>();
+        while (running) {
+            try {
+                if (connection == null) {
+                    connection = dataSource.getConnection();
+                    connection.setAutoCommit(true);
+                    listening.clear();
+                }
+                for (String channel : listeners.keySet()) {
+                    if (listening.add(channel)) {
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("LISTEN \"" + channel + "\"");
+                        }
+                    }
+                }
+
+                PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(POLL_MS);
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getName(), notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("Cluster listener connection failed, reconnecting", e);
+                }
+                closeQuietly(connection);
+                connection = null;
+                try {
+                    Thread.sleep(RECONNECT_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Handles one notification: a whole message, or a chunk of one.
+     */
+    private void receive(String channel, String raw) {
+        String[] header = raw.split(":", 4);
+        if (header.length != 4) {
+            log.warn("Ignoring malformed cluster message on {}", channel);
+            return;
+        }
+
+        String message;
+        try {
+            int index = Integer.parseInt(header[1]);
+            int total = Integer.parseInt(header[2]);
+            if (total == 1) {
+                message = header[3];
+            } else {
+                long now = System.currentTimeMillis();
+                partial.values().removeIf(parts -> now - parts.firstAt > PARTS_TIMEOUT_MS);
+                Parts parts = partial.computeIfAbsent(header[0], id -> new Parts(total, now));
+                if (parts.chunks[index] == null) {
+                    parts.chunks[index] = header[3];
+                    parts.received++;
+                }
+                if (parts.received < total) {
+                    return;
+                }
+                partial.remove(header[0]);
+                message = String.join("", parts.chunks);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed cluster message on {}", channel);
+            return;
+        }
+
+        for (Consumer<String> listener : listeners.getOrDefault(channel, List.of())) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                log.error("Cluster listener of {} failed", channel, e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // already broken
+            }
+        }
+    }
+}
@@ -3,25 +3,37 @@ package com.vision.middleware.service;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.Reply;
+import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.ReplyDTO;
 import com.vision.middleware.dto.UserDTO;
+import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
+import com.vision.middleware.repo.PostRepository;
 import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.searchspec.ReplyTreeCursor;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * Service class responsible for managing replies, including creation, deletion, voting, and retrieval.
  * Provides functionality for constructing a comment tree for a given post.
+ * <p>
+ * Comment trees are read from the {@link CommentTreeCache}, which this service keeps current as replies
+ * are created, deleted and moved.
  */
 @Service
 @RequiredArgsConstructor
@@ -37,12 +49,43 @@ public class ReplyService {
      */
     private static final int MAX_NESTING_DEPTH = 100;
 
+    /**
+     * Default number of replies in one page of a comment tree.
+     */
+    public static final int DEFAULT_TREE_PAGE_SIZE = 20;
+
+    /**
+     * Maximum number of replies in one page of a comment tree.
+     */
+    public static final int MAX_TREE_PAGE_SIZE = 100;
+
+    /**
+     * Default number of children included per reply in a page of a comment tree.
+     */
+    public static final int DEFAULT_TREE_CHILDREN = 5;
+
+    /**
+     * Maximum number of children included per reply in a page of a comment tree.
+     */
+    public static final int MAX_TREE_CHILDREN = 50;
+
+    /**
+     * Default number of levels included in a page of a comment tree.
+     */
+    public static final int DEFAULT_TREE_DEPTH = 3;
+
     /**
      * Repository for interacting with the reply data storage.
      */
     @Autowired
     private final ReplyRepository replyRepository;
 
+    /**
+     * Repository maintaining the reply counts and last activity of posts.
+     */
+    @Autowired
+    private final PostRepository postRepository;
+
     /**
      * Service for user-related operations.
      */
@@ -55,8 +98,21 @@ public class ReplyService {
     @Autowired
     private final VotingService votingService;
 
+    /**
+     * Vote counts not yet written to the database, added to the counts that are read.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    /**
+     * Cache of the comment trees of posts.
+     */
+    @Autowired
+    private final CommentTreeCache commentTreeCache;
+
     /**
      * Creates a new reply for a given post. The reply can be a root reply (with no parent) or a child reply.
+     * The post's reply count and last activity are updated in the same transaction.
      *
      * @param post        the post to which the reply belongs
      * @param author      the author of the reply
@@ -84,7 +140,10 @@ public class ReplyService {
             parentReply.addChildReply(reply);
         }
 
-        return replyRepository.save(reply);
+        Reply created = replyRepository.save(reply);
+        postRepository.addReplyActivity(post.getId(), 1, created.getDatePosted());
+        commentTreeCache.replyCreated(created);
+        return created;
     }
 
     /**
@@ -112,34 +171,25 @@ public class ReplyService {
     }
 
     /**
-     * Casts a vote on a reply, retrieving the reply and user by their IDs.
+     * Casts a vote on a reply by IDs alone, without loading the reply or user.
      *
      * @param replyId  the ID of the reply being voted on
      * @param userId   the ID of the user casting the vote
      * @param voteType the type of vote (like/dislike)
+     * @return the vote with the reply's like and dislike counts after it
      */
-    public void userVoteOnReply(long replyId, long userId, UserVote.VoteType voteType) {
-        Reply reply = replyRepository.findById(replyId).orElseThrow(
-                () -> new IdNotFoundException("Reply id " + replyId + " not found.")
-        );
-        ApplicationUser user = userService.loadUserById(userId);
-
-        votingService.voteOnVotable(user, reply, voteType);
+    public VoteDTO userVoteOnReply(long replyId, long userId, UserVote.VoteType voteType) {
+        return votingService.castVote(userId, replyId, VotableType.REPLY, voteType);
     }
 
     /**
-     * Removes a user's vote from a reply, retrieving the reply and user by their IDs.
+     * Removes a user's vote from a reply by IDs alone.
      *
      * @param replyId the ID of the reply
      * @param userId  the ID of the user
      */
     public void removeUserVoteOnReply(long replyId, long userId) {
-        Reply reply = replyRepository.findById(replyId).orElseThrow(
-                () -> new IdNotFoundException("Reply id " + replyId + " not found.")
-        );
-        ApplicationUser user = userService.loadUserById(userId);
-
-        votingService.deleteVote(user, reply);
+        votingService.removeVote(userId, replyId, VotableType.REPLY);
     }
 
     /**
@@ -158,81 +208,317 @@ public class ReplyService {
         return votingService.getUserVoteOnVotable(user, reply);
     }
 
+    /**
+     * Retrieves the types of vote a user has cast on a batch of replies, in one query.
+     *
+     * @param replyIds the IDs of the replies
+     * @param userId   the ID of the user
+     * @return the vote type by reply ID, for the replies the user has voted on
+     * @throws IllegalArgumentException if more than VotingService.MAX_BULK_VOTES IDs are given
+     */
+    public Map<Long, UserVote.VoteType> getUserVotesOnReplies(Collection<Long> replyIds, long userId) {
+        return votingService.getUserVotes(userId, VotableType.REPLY, replyIds);
+    }
+
     /**
      * Deletes a reply, either by soft-deletion (if it has child replies) or hard-deletion (if it does not).
+     * The post's reply count is decremented in the same transaction, once per reply: hard-deleting a reply
+     * that was soft-deleted before does not count it again.
      *
      * @param reply the reply to delete
      */
     @Transactional
     public void deleteReply(Reply reply) {
+        if (!reply.isDeleted()) {
+            postRepository.addReplyActivity(reply.getPost().getId(), -1, null);
+        }
+
         if (!reply.getChildReplies().isEmpty()) {
             // preserve tree structure
             reply.softDelete();
             replyRepository.save(reply);
+            commentTreeCache.replySoftDeleted(reply.getPost().getId(), reply.getId(), reply.getText());
         } else {
             // delete that thing. Update parent that we are removing one of its children as well.
             Reply parentReply = reply.getParentReply();
-            parentReply.removeChildReply(reply);
-            replyRepository.save(parentReply);
+            if (parentReply != null) { // top-level replies have no parent to update
+                parentReply.removeChildReply(reply);
+                replyRepository.save(parentReply);
+            }
 
             replyRepository.delete(reply);
+            commentTreeCache.replyRemoved(reply.getPost().getId(), reply.getId());
         }
     }
 
+    /**
+     * Moves a reply, with all replies below it, under another reply of the same post or to the top level.
+     * The paths and depths of the whole subtree are updated with one statement.
+     *
+     * @param reply     the reply to move
+     * @param newParent the reply to move it under, or null to make it a top-level reply
+     * @return the moved reply
+     * @throws IllegalArgumentException if the new parent belongs to another post or is in the reply's own
+     *                                  subtree, or if the move would exceed the maximum nesting depth
+     */
+    @Transactional
+    public Reply moveReply(Reply reply, Reply newParent) {
+        if (newParent != null) {
+            if (newParent.getPost().getId() != reply.getPost().getId()) {
+                throw new IllegalArgumentException("Reply can only be moved within its post");
+            }
+            if (newParent.getId() == reply.getId() || newParent.getPath().startsWith(reply.getChildPath())) {
+                throw new IllegalArgumentException("Reply cannot be moved below itself");
+            }
+        }
+
+        String oldChildPath = reply.getChildPath();
+        int depthShift = (newParent == null ? 0 : newParent.getDepth() + 1) - reply.getDepth();
+        int deepest = Math.max(reply.getDepth(), replyRepository.findMaxDepthUnder(oldChildPath));
+        if (deepest + depthShift > MAX_NESTING_DEPTH) {
+            throw new IllegalArgumentException(
+                    String.format("Maximum nesting depth of %d exceeded", MAX_NESTING_DEPTH)
+            );
+        }
+
+        if (reply.getParentReply() != null) {
+            reply.getParentReply().removeChildReply(reply);
+        }
+        if (newParent != null) {
+            newParent.addChildReply(reply);
+        }
+        reply.placeUnder(newParent);
+
+        Reply moved = replyRepository.saveAndFlush(reply);
+        replyRepository.movePaths(oldChildPath, moved.getChildPath(), depthShift);
+        commentTreeCache.replyMoved(moved.getPost().getId(), moved.getId(), newParent == null ? null : newParent.getId());
+        return moved;
+    }
+
     /**
      * Constructs a comment tree for a given post, including the replies and their authors.
+     * The tree is read from the {@link CommentTreeCache}, which loads all replies of the post with one
+     * query on a miss. The current user's votes on them are looked up together and overlaid afterwards;
+     * for anonymous callers the lookup is skipped.
      *
      * @param postId     the ID of the post
-     * @param currentUser the currently logged-in user (for determining vote status)
+     * @param currentUser the currently logged-in user (for determining vote status), or null if anonymous
      * @return a list of ReplyDTOs representing the comment tree
      */
     public List<ReplyDTO> getCommentTreeForPost(Long postId, ApplicationUser currentUser) {
-        List<Reply> topLevelReplies = replyRepository.findTopLevelRepliesByPostId(postId);
-        return topLevelReplies.stream()
-                .map(reply -> convertToCommentTree(reply, currentUser))
-                .collect(Collectors.toList());
+        Map<Long, ReplyDTO> repliesById = new HashMap<>();
+        List<ReplyDTO> topLevelReplies = commentTreeCache.read(postId, tree -> {
+            List<ReplyDTO> replies = new ArrayList<>();
+            for (ReplyTreeRow row : tree.children(ReplyTreeCursor.TOP_LEVEL)) {
+                replies.add(buildSubtree(postId, row, tree::children, Integer.MAX_VALUE, MAX_NESTING_DEPTH + 1, false, repliesById));
+            }
+            return replies;
+        });
+        overlayUserVotes(repliesById, currentUser);
+        return topLevelReplies;
+    }
+
+    /**
+     * Retrieves the first page of a post's comment tree: the first top-level replies, each with at most
+     * {@code children} of its children, down to {@code depth} levels. Every reply whose children are not
+     * all included carries a cursor for the rest, which {@link #getMoreReplies} accepts.
+     *
+     * @param postId      the ID of the post
+     * @param currentUser the currently logged-in user (for determining vote status), or null if anonymous
+     * @param limit       number of top-level replies (capped at MAX_TREE_PAGE_SIZE)
+     * @param children    number of children per reply (capped at MAX_TREE_CHILDREN)
+     * @param depth       number of levels, 1 for the top-level replies only (capped at the nesting limit)
+     * @return the page, with the cursor of the next top-level replies if there are more
+     */
+    public CursorPageDTO<ReplyDTO> getCommentTreePage(long postId, ApplicationUser currentUser,
+                                                      int limit, int children, int depth) {
+        return buildTreePage(ReplyTreeCursor.start(postId, ReplyTreeCursor.TOP_LEVEL), currentUser, limit, children, depth);
+    }
+
+    /**
+     * Retrieves the next page of the replies a cursor points into: more top-level replies of a post, or
+     * more children of a reply. Each reply of the page includes its own children as in
+     * {@link #getCommentTreePage}.
+     *
+     * @param postId      the ID of the post
+     * @param cursor      a cursor returned with an earlier page
+     * @param currentUser the currently logged-in user (for determining vote status), or null if anonymous
+     * @param limit       number of replies (capped at MAX_TREE_PAGE_SIZE)
+     * @param children    number of children per reply (capped at MAX_TREE_CHILDREN)
+     * @param depth       number of levels, 1 for the page's replies only (capped at the nesting limit)
+     * @return the page, with the cursor of the next replies if there are more
+     * @throws IllegalArgumentException if the cursor is malformed or belongs to another post
+     */
+    public CursorPageDTO<ReplyDTO> getMoreReplies(long postId, String cursor, ApplicationUser currentUser,
+                                                  int limit, int children, int depth) {
+        ReplyTreeCursor after = ReplyTreeCursor.decode(cursor);
+        if (after.getPostId() != postId) {
+            throw new IllegalArgumentException("Cursor belongs to another post");
+        }
+        return buildTreePage(after, currentUser, limit, children, depth);
+    }
+
+    /**
+     * Builds one page of the replies of the cursor's parent, starting after the cursor's position.
+     * Top-level pages are read from the post's cached tree. Pages of a reply's children are too if the tree
+     * is cached; otherwise only the reply's subtree is loaded, rather than the whole tree.
+     */
+    private CursorPageDTO<ReplyDTO> buildTreePage(ReplyTreeCursor after, ApplicationUser currentUser,
+                                                  int limit, int children, int depth) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_TREE_PAGE_SIZE));
+        int childrenPerReply = Math.max(0, Math.min(children, MAX_TREE_CHILDREN));
+        int levels = Math.max(1, Math.min(depth, MAX_NESTING_DEPTH + 1));
+
+        Map<Long, ReplyDTO> repliesById = new HashMap<>();
+        CursorPageDTO<ReplyDTO> page;
+        if (after.getParentId() == ReplyTreeCursor.TOP_LEVEL) {
+            page = commentTreeCache.read(after.getPostId(), tree ->
+                    assemblePage(after, tree::children, pageSize, childrenPerReply, levels, false, repliesById));
+        } else {
+            page = commentTreeCache.readIfCached(after.getPostId(), tree -> tree.contains(after.getParentId())
+                    ? assemblePage(after, tree::children, pageSize, childrenPerReply, levels, false, repliesById)
+                    : null).orElse(null);
+        }
+
+        if (page == null) {
+            // rows are in display order, so every list of children comes out sorted
+            Map<Long, List<ReplyTreeRow>> childrenByParent = new HashMap<>();
+            for (ReplyTreeRow row : replyRepository.findSubtreeRows(after.getPostId(), after.getParentId())) {
+                long parentId = row.getParentId() == null ? ReplyTreeCursor.TOP_LEVEL : row.getParentId();
+                childrenByParent.computeIfAbsent(parentId, id -> new ArrayList<>()).add(row);
+            }
+            page = assemblePage(after, parentId -> childrenByParent.getOrDefault(parentId, List.of()),
+                    pageSize, childrenPerReply, levels, true, repliesById);
+        }
+        overlayUserVotes(repliesById, currentUser);
+        return page;
+    }
+
+    /**
+     * Converts one page of the replies of the cursor's parent, as looked up with {@code childrenOf}.
+     */
+    private CursorPageDTO<ReplyDTO> assemblePage(ReplyTreeCursor after, Function<Long, List<? extends ReplyTreeRow>> childrenOf,
+                                                 int pageSize, int children, int levels, boolean mergePending,
+                                                 Map<Long, ReplyDTO> repliesById) {
+        List<? extends ReplyTreeRow> siblings = childrenOf.apply(after.getParentId());
+        int from = after.isAtStart() ? 0 : positionAfter(siblings, after);
+        int to = Math.min(from + pageSize, siblings.size());
+
+        List<ReplyDTO> page = new ArrayList<>(to - from);
+        for (ReplyTreeRow row : siblings.subList(from, to)) {
+            page.add(buildSubtree(after.getPostId(), row, childrenOf, children, levels - 1, mergePending, repliesById));
+        }
+
+        boolean hasNext = to < siblings.size();
+        return CursorPageDTO.<ReplyDTO>builder()
+                .content(page)
+                .size(pageSize)
+                .hasNext(hasNext)
+                .nextCursor(hasNext ? ReplyTreeCursor.after(after.getPostId(), after.getParentId(), siblings.get(to - 1)).encode() : null)
+                .build();
     }
 
     /**
-     * Recursively converts a reply and its children into a ReplyDTO, including the author and vote information.
+     * Converts a reply and at most {@code children} of its children, down to {@code levels} more levels.
+     * Every reply converted is also put into {@code repliesById}. Rows read from the database rather than
+     * the cache lack buffered count changes, which {@code mergePending} adds.
+     */
+    private ReplyDTO buildSubtree(long postId, ReplyTreeRow row, Function<Long, List<? extends ReplyTreeRow>> childrenOf,
+                                  int children, int levels, boolean mergePending, Map<Long, ReplyDTO> repliesById) {
+        ReplyDTO reply = convertToReplyDTO(row);
+        if (mergePending) {
+            voteCounterBuffer.mergeInto(reply);
+        }
+        repliesById.put(row.getId(), reply);
+
+        List<? extends ReplyTreeRow> childRows = childrenOf.apply(row.getId());
+        int shown = levels > 0 ? Math.min(children, childRows.size()) : 0;
+        for (ReplyTreeRow childRow : childRows.subList(0, shown)) {
+            reply.getReplies().add(buildSubtree(postId, childRow, childrenOf, children, levels - 1, mergePending, repliesById));
+        }
+
+        reply.setChildCount(childRows.size());
+        if (shown < childRows.size()) {
+            ReplyTreeCursor more = shown == 0
+                    ? ReplyTreeCursor.start(postId, row.getId())
+                    : ReplyTreeCursor.after(postId, row.getId(), childRows.get(shown - 1));
+            reply.setMoreCursor(more.encode());
+        }
+        return reply;
+    }
+
+    /**
+     * Finds where the replies after a cursor start among its siblings. The reply the cursor was taken at
+     * is looked up by ID; if it has been deleted since, the position is found by its sort values.
      *
-     * @param reply      the reply to convert
-     * @param currentUser the currently logged-in user (for determining vote status)
-     * @return a ReplyDTO representing the reply and its children
-     */
-    private ReplyDTO convertToCommentTree(Reply reply, ApplicationUser currentUser) {
-        // Get the user's vote on this reply if it exists
-        Optional<UserVote.VoteType> userVoteType = votingService.getUserVoteOnVotable(currentUser, reply);
-
-        // Convert child replies recursively
-        List<ReplyDTO> childComments = reply.getChildReplies().stream()
-                .sorted(Comparator
-                        .comparingLong(Reply::getVoteScore).reversed()
-                        .thenComparing(Reply::getDatePosted).reversed()) // Note the reversed() for date
-                .map(childReply -> convertToCommentTree(childReply, currentUser))
-                .collect(Collectors.toList());
+     * @return the index of the first sibling after the cursor
+     */
+    private static int positionAfter(List<? extends ReplyTreeRow> siblings, ReplyTreeCursor after) {
+        for (int i = 0; i < siblings.size(); i++) {
+            if (siblings.get(i).getId() == after.getId()) {
+                return i + 1;
+            }
+        }
+
+        for (int i = 0; i < siblings.size(); i++) {
+            ReplyTreeRow row = siblings.get(i);
+            int order = Long.compare(after.getVoteScore(), row.getVoteScore()); // score descending
+            if (order == 0) {
+                order = Long.compare(row.getDatePosted().getTime(), after.getDatePosted());
+            }
+            if (order == 0) {
+                order = Long.compare(row.getId(), after.getId());
+            }
+            if (order > 0) {
+                return i;
+            }
+        }
+        return siblings.size();
+    }
 
+    /**
+     * Sets the current user's votes on the given replies, with one lookup. Skipped for anonymous callers.
+     *
+     * @param repliesById the replies, by ID
+     * @param currentUser the currently logged-in user, or null if anonymous
+     */
+    private void overlayUserVotes(Map<Long, ReplyDTO> repliesById, ApplicationUser currentUser) {
+        if (currentUser == null || repliesById.isEmpty()) {
+            return;
+        }
+        Map<Long, UserVote.VoteType> userVotes =
+                votingService.getUserVotesOnAll(currentUser.getId(), VotableType.REPLY, repliesById.keySet());
+        userVotes.forEach((replyId, voteType) -> repliesById.get(replyId).setUserVoteType(voteType));
+    }
+
+    /**
+     * Converts one row of a comment tree into a ReplyDTO without children or user vote, including the author.
+     *
+     * @param row the reply's row
+     * @return a ReplyDTO representing the reply, with an empty list of children
+     */
+    private ReplyDTO convertToReplyDTO(ReplyTreeRow row) {
         // Build author DTO
         UserDTO author = UserDTO.builder()
-                .userId(reply.getAuthor().getId())
-                .username(reply.getAuthor().getUsername())
-                .displayName(reply.getAuthor().getDisplayName())
-                .profilePictureFileName(reply.getAuthor().getProfilePictureFileName())
+                .userId(row.getUserId())
+                .username(row.getUsername())
+                .displayName(row.getDisplayName())
+                .profilePictureFileName(row.getProfilePictureFileName())
                 .build();
 
-        // Build the comment tree DTO
-        return ReplyDTO.builder()
-                .id(reply.getId())
-                .text(reply.getText())
+        // Build the reply DTO
+        ReplyDTO replyDTO = ReplyDTO.builder()
+                .id(row.getId())
+                .text(row.getText())
                 .author(author)
-                .datePosted(reply.getDatePosted())
-                .likeCount(reply.getLikeCount())
-                .dislikeCount(reply.getDislikeCount())
-                .voteScore(reply.getVoteScore())
-                .userVoteType(userVoteType.orElse(null))
-                .isDeleted(reply.isDeleted())
-                .replies(childComments)
+                .datePosted(row.getDatePosted())
+                .likeCount(row.getLikeCount())
+                .dislikeCount(row.getDislikeCount())
+                .voteScore(row.getVoteScore())
+                .isDeleted(Boolean.TRUE.equals(row.getDeleted()))
+                .replies(new ArrayList<>())
                 .build();
+        return replyDTO;
     }
 
     /**
@@ -273,27 +559,10 @@ public class ReplyService {
      * @throws IllegalArgumentException if the nesting depth exceeds the maximum
      */
     private void validateNestingDepth(Reply parentReply) {
-        int depth = calculateDepth(parentReply);
-        if (depth >= MAX_NESTING_DEPTH) {
+        if (parentReply.getDepth() >= MAX_NESTING_DEPTH) {
             throw new IllegalArgumentException(
                     String.format("Maximum nesting depth of %d exceeded", MAX_NESTING_DEPTH)
             );
         }
     }
-
-    /**
-     * Calculates the nesting depth of a reply.
-     *
-     * @param reply the reply
-     * @return the nesting depth
-     */
-    private int calculateDepth(Reply reply) {
-        int depth = 0;
-        Reply current = reply;
-        while (current.getParentReply() != null) {
-            depth++;
-            current = current.getParentReply();
-        }
-        return depth;
-    }
 }
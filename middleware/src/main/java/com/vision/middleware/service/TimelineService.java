@@ -0,0 +1,206 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.TimelineEntryRepository;
+import com.vision.middleware.repo.UserFollowsRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * Service responsible for users' home timelines (posts from the users they follow).
+ * <p>
+ * Timelines are built with a hybrid strategy. A new post is written into the timeline of every follower
+ * of its author (fan-out on write), so reading a timeline is a single indexed range scan. Authors with
+ * more than {@code timeline.fan-out.max-followers} followers are skipped at write time, and their posts are
+ * merged into the timeline when it is read instead (fan-out on read).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TimelineService {
+
+    /**
+     * Position before the first post of any timeline.
+     * 9999-12-31, which is after every real post date but still a valid database timestamp.
+     */
+    private static final Date TIMELINE_START = new Date(253402300799000L);
+
+    /**
+     * Repository for timeline entries.
+     */
+    @Autowired
+    private final TimelineEntryRepository timelineEntryRepository;
+
+    /**
+     * Repository for post data access.
+     */
+    @Autowired
+    private final PostRepository postRepository;
+
+    /**
+     * Repository for user data access.
+     */
+    @Autowired
+    private final UserRepository userRepository;
+
+    /**
+     * Repository for user follow relationships.
+     */
+    @Autowired
+    private final UserFollowsRepository followsRepository;
+
+    /**
+     * Authors with more followers than this are not fanned out on write; their posts are merged in on read.
+     */
+    @Value("${timeline.fan-out.max-followers:10000}")
+    private long maxFanOutFollowers;
+
+    /**
+     * Number of recent posts copied into a user's timeline when they follow someone.
+     */
+    @Value("${timeline.backfill-size:50}")
+    private int backfillSize;
+
+    /**
+     * Delivers a newly created post to the timelines of its author and the author's followers.
+     * Runs asynchronously once the transaction that created the post has committed, so post creation
+     * does not wait for the fan-out.
+     *
+     * @param event the event describing the created post
+     */
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onPostCreated(PostCreatedEvent event) {
+        long authorId = event.getAuthorId();
+
+        // authors always see their own posts.
+        timelineEntryRepository.deliverToOwner(authorId, event.getPostId(), authorId, event.getDatePosted());
+
+        if (isFannedOutOnRead(authorId)) {
+            return; // followers pick this post up when they read their timeline.
+        }
+
+        int delivered = timelineEntryRepository.fanOutToFollowers(event.getPostId(), authorId, event.getDatePosted());
+        log.debug("Post {} delivered to {} timelines", event.getPostId(), delivered);
+    }
+
+    /**
+     * Copies the recent posts of a followee into the follower's timeline.
+     *
+     * @param followerId the ID of the user who started following
+     * @param followeeId the ID of the user being followed
+     */
+    @Transactional
+    public void onFollow(long followerId, long followeeId) {
+        if (!isFannedOutOnRead(followeeId)) {
+            timelineEntryRepository.backfillFromAuthor(followerId, followeeId, backfillSize);
+        }
+    }
+
+    /**
+     * Removes a former followee's posts from the follower's timeline.
+     *
+     * @param followerId the ID of the user who stopped following
+     * @param followeeId the ID of the user no longer followed
+     */
+    @Transactional
+    public void onUnfollow(long followerId, long followeeId) {
+        timelineEntryRepository.deleteByOwnerIdAndAuthorId(followerId, followeeId);
+    }
+
+    /**
+     * Retrieves a slice of a user's home timeline, newest first, using keyset (cursor) pagination.
+     *
+     * @param userId ID of the user whose timeline is read.
+     * @param cursor Opaque cursor returned with the previous slice, or null for the first slice.
+     * @param size   Number of posts per slice.
+     * @return       Slice of Post entities, with their authors loaded.
+     * @throws IllegalArgumentException if the cursor is malformed or was not issued for a date-ordered listing.
+     */
+    @Transactional // not read-only: fills the timeline on its first read, see fillTimeline.
+    public Slice<Post> getTimeline(long userId, String cursor, int size) {
+        Date date = TIMELINE_START;
+        long postId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            PostCursor position = PostCursor.decode(cursor, PostCursor.SortKey.DATE);
+            date = position.getDatePosted();
+            postId = position.getId();
+        }
+
+        if (!userRepository.findTimelineFilledById(userId).orElse(false)) {
+            fillTimeline(userId);
+        }
+
+        // one extra row tells us whether there is a next slice.
+        Limit limit = Limit.of(size + 1);
+        List<Post> posts = new ArrayList<>(timelineEntryRepository.findTimelinePostsBefore(userId, date, postId, limit));
+
+        List<Long> fannedOutOnRead = followsRepository.findFolloweeIdsWithFollowerCountAbove(userId, maxFanOutFollowers);
+        if (!fannedOutOnRead.isEmpty()) {
+            posts.addAll(postRepository.findByAuthorIdsBefore(fannedOutOnRead, date, postId, limit));
+            posts = mergeNewestFirst(posts);
+        }
+
+        boolean hasNext = posts.size() > size;
+        List<Post> content = hasNext ? posts.subList(0, size) : posts;
+        return new SliceImpl<>(content, PageRequest.of(0, size, PostCursor.SortKey.DATE.toSort()), hasNext);
+    }
+
+    /**
+     * Fills the timeline of a user stored before timelines existed, whose follows never delivered any posts, with
+     * what following each of their followees and posting would have delivered. Concurrent fills deliver each post
+     * once.
+     *
+     * @param userId the ID of the user whose timeline is filled
+     */
+    private void fillTimeline(long userId) {
+        int delivered = timelineEntryRepository.backfillFromFollowees(userId, maxFanOutFollowers, backfillSize);
+        userRepository.markTimelineFilledById(userId);
+        log.debug("Timeline of user {} filled with {} posts", userId, delivered);
+    }
+
+    /**
+     * Checks whether an author's posts are merged into timelines on read rather than fanned out on write.
+     *
+     * @param authorId the ID of the author
+     * @return true if the author has more followers than the fan-out limit
+     */
+    private boolean isFannedOutOnRead(long authorId) {
+        return userRepository.findFollowerCountById(authorId).orElse(0L) > maxFanOutFollowers;
+    }
+
+    /**
+     * Sorts posts newest first by (datePosted, id) and drops duplicates, which occur when an author
+     * crossed the fan-out limit and has posts both in the timeline table and in the read-time merge.
+     *
+     * @param posts the posts to merge
+     * @return the merged posts
+     */
+    private List<Post> mergeNewestFirst(List<Post> posts) {
+        Map<Long, Post> unique = new LinkedHashMap<>();
+        posts.forEach(post -> unique.putIfAbsent(post.getId(), post));
+
+        List<Post> merged = new ArrayList<>(unique.values());
+        merged.sort(Comparator.comparing(Post::getDatePosted).thenComparingLong(Post::getId).reversed());
+        return merged;
+    }
+}
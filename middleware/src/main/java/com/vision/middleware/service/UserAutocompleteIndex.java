@@ -0,0 +1,582 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.dto.UserDTO;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.UserAutocompleteRow;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index of usernames and display names, answering autocomplete lookups
+ * without touching the database.
+ * <p>
+ * Names are stored lowercased in a radix trie (edges labelled with whole substrings, so chains of
+ * single-child nodes are collapsed). Every node keeps the {@link #TOP_K} users with the most followers
+ * among all names below it, so a lookup is a walk down the prefix followed by a copy of one precomputed
+ * list. A node's list is always the best of its own users and its children's lists, which lets inserts
+ * and removals fix up only the nodes on the changed name's path.
+ * <p>
+ * The index is loaded in the background at startup and kept current by the services that change
+ * users' names, profile pictures and follower counts. Changes made inside a transaction only take effect
+ * once it commits, so a rolled back registration or follow leaves the index untouched. The other nodes of
+ * a cluster then reload the changed user from the database, through the {@link ClusterCacheInvalidator}.
+ * Lookups made before loading completes only see the users indexed so far.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserAutocompleteIndex {
+
+    /**
+     * Name under which changed users are shared with the other nodes.
+     */
+    public static final String CLUSTER_USERS = "user_autocomplete";
+
+    /**
+     * Number of users kept per trie node, and so the most results a lookup can return.
+     */
+    public static final int TOP_K = 10;
+
+    private static final long[] NO_USERS = new long[0];
+
+    /**
+     * Repository for user data access.
+     */
+    @Autowired
+    private final UserRepository userRepository;
+
+    /**
+     * Transaction manager used to stream users while loading.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Has the other nodes reload the changed users.
+     */
+    @Autowired
+    private final ClusterCacheInvalidator clusterCacheInvalidator;
+
+    /**
+     * Guards {@link #root} and {@link #users}.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Node root = new Node("");
+
+    private final Map<Long, Entry> users = new HashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * @return true once every user has been loaded.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Reloads the users changed on other nodes.
+     */
+    @PostConstruct
+    public void listenToCluster() {
+        clusterCacheInvalidator.register(CLUSTER_USERS, userIds -> userIds.forEach(this::reload));
+    }
+
+    /**
+     * Loads every user in the background once the application has started.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        load();
+    }
+
+    /**
+     * Loads every user from the database, streaming them instead of loading them all at once.
+     * Users that are already indexed are skipped, since changes made while loading are newer
+     * than the streamed rows.
+     */
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> {
+                try (Stream<UserAutocompleteRow> rows = userRepository.streamAllForAutocomplete()) {
+                    rows.forEach(row -> {
+                        lock.writeLock().lock();
+                        try {
+                            if (!users.containsKey(row.getId())) {
+                                insert(new Entry(row.getId(), row.getUsername(), row.getDisplayName(),
+                                        row.getProfilePictureFileName(), row.getFollowerCount()));
+                            }
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to load the user autocomplete index", e);
+            return;
+        }
+        ready = true;
+        log.info("Loaded user autocomplete index of {} users in {} ms", users.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Adds a user, or replaces everything indexed about them.
+     *
+     * @param user the user to index
+     */
+    public void put(ApplicationUser user) {
+        Entry entry = new Entry(user.getId(), user.getUsername(), user.getDisplayName(),
+                user.getProfilePictureFileName(), user.getFollowerCount());
+        afterCommit(entry.userId, () -> {
+            lock.writeLock().lock();
+            try {
+                Entry old = users.get(entry.userId);
+                if (old != null) {
+                    remove(old);
+                }
+                insert(entry);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Changes the display name a user can be found by. Does nothing if the user is not indexed.
+     *
+     * @param userId      the ID of the user
+     * @param displayName the new display name
+     */
+    public void updateDisplayName(long userId, String displayName) {
+        afterCommit(userId, () -> {
+            lock.writeLock().lock();
+            try {
+                Entry old = users.get(userId);
+                if (old != null) {
+                    remove(old);
+                    insert(new Entry(userId, old.username, displayName, old.profilePictureFileName, old.followerCount));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Changes the profile picture returned for a user. Does nothing if the user is not indexed.
+     *
+     * @param userId                 the ID of the user
+     * @param profilePictureFileName the new profile picture file name
+     */
+    public void updateProfilePicture(long userId, String profilePictureFileName) {
+        afterCommit(userId, () -> {
+            lock.writeLock().lock();
+            try {
+                Entry entry = users.get(userId);
+                if (entry != null) {
+                    entry.profilePictureFileName = profilePictureFileName;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Adds a delta to a user's follower count and re-ranks them. Does nothing if the user is not indexed.
+     *
+     * @param userId the ID of the user
+     * @param delta  the amount to add (negative to subtract)
+     */
+    public void adjustFollowerCount(long userId, long delta) {
+        afterCommit(userId, () -> {
+            lock.writeLock().lock();
+            try {
+                Entry entry = users.get(userId);
+                if (entry != null) {
+                    entry.followerCount += delta;
+                    for (String key : entry.keys()) {
+                        recomputePath(pathTo(key));
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Finds the users with the most followers whose username or display name starts with a prefix.
+     *
+     * @param prefix the typed prefix, matched case-insensitively
+     * @param limit  maximum number of results (at most {@link #TOP_K})
+     * @return summaries of the matching users, most followed first
+     */
+    public List<UserDTO> complete(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key == null || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                node = node.child(key.charAt(i));
+                if (node == null) {
+                    return List.of();
+                }
+                // the prefix may end part way along the edge.
+                int length = Math.min(node.label.length(), key.length() - i);
+                if (!node.label.regionMatches(0, key, i, length)) {
+                    return List.of();
+                }
+                i += length;
+            }
+
+            int count = Math.min(limit, node.top.length);
+            List<UserDTO> results = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                Entry entry = users.get(node.top[j]);
+                results.add(UserDTO.builder()
+                        .userId(entry.userId)
+                        .username(entry.username)
+                        .displayName(entry.displayName)
+                        .profilePictureFileName(entry.profilePictureFileName)
+                        .followerCount(entry.followerCount)
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a change of a user once the current transaction commits, or right away outside of a transaction,
+     * and has the other nodes reload the user.
+     */
+    private void afterCommit(long userId, Runnable change) {
+        AfterCommit.run(() -> {
+            change.run();
+            clusterCacheInvalidator.publish(CLUSTER_USERS, List.of(userId));
+        });
+    }
+
+    /**
+     * Replaces what is indexed about a user with their row in the database, e.g. after another node changed them.
+     */
+    private void reload(long userId) {
+        userRepository.findAutocompleteRowById(userId).ifPresent(row -> {
+            lock.writeLock().lock();
+            try {
+                Entry old = users.get(row.getId());
+                if (old != null) {
+                    remove(old);
+                }
+                insert(new Entry(row.getId(), row.getUsername(), row.getDisplayName(),
+                        row.getProfilePictureFileName(), row.getFollowerCount()));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private static String normalize(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // the methods below must be called with the write lock held.
+
+    private void insert(Entry entry) {
+        users.put(entry.userId, entry);
+        for (String key : entry.keys()) {
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            path.add(node);
+            int i = 0;
+            while (i < key.length()) {
+                Node child = node.child(key.charAt(i));
+                if (child == null) {
+                    child = new Node(key.substring(i));
+                    node.addChild(child);
+                } else {
+                    int common = commonPrefixLength(child.label, key, i);
+                    if (common < child.label.length()) {
+                        child = node.split(child, common);
+                    }
+                }
+                node = child;
+                path.add(node);
+                i += node.label.length();
+            }
+            node.userIds = append(node.userIds, entry.userId);
+
+            for (Node onPath : path) {
+                offer(onPath, entry);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        for (String key : entry.keys()) {
+            List<Node> path = pathTo(key);
+            Node last = path.get(path.size() - 1);
+            last.userIds = without(last.userIds, entry.userId);
+
+            // drop nodes that no longer lead to any name.
+            for (int i = path.size() - 1; i > 0; i--) {
+                Node node = path.get(i);
+                if (node.userIds.length == 0 && node.children.length == 0) {
+                    path.get(i - 1).removeChild(node);
+                    path.remove(i);
+                }
+            }
+            recomputePath(path);
+        }
+        users.remove(entry.userId);
+    }
+
+    /**
+     * @return the nodes from the root to the node where the (indexed) key ends
+     */
+    private List<Node> pathTo(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            path.add(node);
+            i += node.label.length();
+        }
+        return path;
+    }
+
+    /**
+     * Rebuilds the top lists of the nodes on a path, deepest first, from their own users and children.
+     */
+    private void recomputePath(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            long[] candidates = node.userIds.clone();
+            for (Node child : node.children) {
+                for (long userId : child.top) {
+                    candidates = append(candidates, userId);
+                }
+            }
+            sort(candidates);
+            node.top = candidates.length > TOP_K ? Arrays.copyOf(candidates, TOP_K) : candidates;
+        }
+    }
+
+    /**
+     * Adds a user to a node's top list if they rank high enough.
+     */
+    private void offer(Node node, Entry entry) {
+        long[] top = node.top;
+        for (long userId : top) {
+            if (userId == entry.userId) {
+                return;
+            }
+        }
+        if (top.length < TOP_K) {
+            top = Arrays.copyOf(top, top.length + 1);
+        } else if (ranksAbove(entry, users.get(top[top.length - 1]))) {
+            top = top.clone();
+        } else {
+            return;
+        }
+        top[top.length - 1] = entry.userId;
+        sort(top);
+        node.top = top;
+    }
+
+    /**
+     * Sorts user ids most followed first, ties broken by lowest id. The lists are at most a few
+     * times TOP_K long, so insertion sort is fine.
+     */
+    private void sort(long[] userIds) {
+        for (int i = 1; i < userIds.length; i++) {
+            long userId = userIds[i];
+            Entry entry = users.get(userId);
+            int j = i - 1;
+            while (j >= 0 && ranksAbove(entry, users.get(userIds[j]))) {
+                userIds[j + 1] = userIds[j];
+                j--;
+            }
+            userIds[j + 1] = userId;
+        }
+    }
+
+    private static boolean ranksAbove(Entry a, Entry b) {
+        return a.followerCount > b.followerCount || (a.followerCount == b.followerCount && a.userId < b.userId);
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the ids with the id appended, unless it is already present
+     */
+    private static long[] append(long[] userIds, long userId) {
+        for (long id : userIds) {
+            if (id == userId) {
+                return userIds;
+            }
+        }
+        long[] result = Arrays.copyOf(userIds, userIds.length + 1);
+        result[userIds.length] = userId;
+        return result;
+    }
+
+    private static long[] without(long[] userIds, long userId) {
+        long[] result = new long[userIds.length];
+        int size = 0;
+        for (long id : userIds) {
+            if (id != userId) {
+                result[size++] = id;
+            }
+        }
+        return size == 0 ? NO_USERS : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * What the index knows about a user.
+     */
+    private static final class Entry {
+        private final long userId;
+        private final String username;
+        private final String displayName;
+        private String profilePictureFileName;
+        private long followerCount;
+
+        Entry(long userId, String username, String displayName, String profilePictureFileName, long followerCount) {
+            this.userId = userId;
+            this.username = username;
+            this.displayName = displayName;
+            this.profilePictureFileName = profilePictureFileName;
+            this.followerCount = followerCount;
+        }
+
+        /**
+         * @return the distinct normalized names the user can be found by
+         */
+        Set<String> keys() {
+            Set<String> keys = new LinkedHashSet<>(2);
+            String username = normalize(this.username);
+            String displayName = normalize(this.displayName);
+            if (username != null) {
+                keys.add(username);
+            }
+            if (displayName != null) {
+                keys.add(displayName);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Radix trie node. Children are kept sorted by the first character of their label,
+     * which is unique among siblings.
+     */
+    private static final class Node {
+        private String label;
+        private Node[] children = new Node[0];
+        private long[] userIds = NO_USERS;
+        private long[] top = NO_USERS;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char c = children[mid].label.charAt(0);
+                if (c < first) {
+                    low = mid + 1;
+                } else if (c > first) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        void addChild(Node child) {
+            char first = child.label.charAt(0);
+            int i = 0;
+            while (i < children.length && children[i].label.charAt(0) < first) {
+                i++;
+            }
+            Node[] result = new Node[children.length + 1];
+            System.arraycopy(children, 0, result, 0, i);
+            result[i] = child;
+            System.arraycopy(children, i, result, i + 1, children.length - i);
+            children = result;
+        }
+
+        void removeChild(Node child) {
+            Node[] result = new Node[children.length - 1];
+            int size = 0;
+            for (Node node : children) {
+                if (node != child) {
+                    result[size++] = node;
+                }
+            }
+            children = result;
+        }
+
+        /**
+         * Splits a child's edge after {@code length} characters.
+         *
+         * @return the new intermediate node, which has the same subtree and so the same top list
+         */
+        Node split(Node child, int length) {
+            Node middle = new Node(child.label.substring(0, length));
+            child.label = child.label.substring(length);
+            middle.children = new Node[]{child};
+            middle.top = child.top;
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    children[i] = middle;
+                }
+            }
+            return middle;
+        }
+    }
+}
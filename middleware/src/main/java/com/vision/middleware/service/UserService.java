@@ -1,8 +1,12 @@
 package com.vision.middleware.service;
 
 import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.dto.CursorPageDTO;
+import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.UserSearchCursor;
+import com.vision.middleware.repo.searchspec.UserSearchHit;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.GrantedAuthority;
@@ -16,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Service class responsible for managing user-related operations.
@@ -26,12 +31,34 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserService implements UserDetailsService {
 
+    /**
+     * Upper bound on the number of user search results returned at once.
+     */
+    public static final int MAX_SEARCH_PAGE_SIZE = 50;
+
+    /**
+     * Queries shorter than this only match username prefixes.
+     */
+    public static final int MIN_TRIGRAM_QUERY_LENGTH = 3;
+
     /**
      * Repository instance for user data access.
      */
     @Autowired
     private final UserRepository userRepository;
 
+    /**
+     * In-memory index answering autocomplete lookups.
+     */
+    @Autowired
+    private final UserAutocompleteIndex userAutocompleteIndex;
+
+    /**
+     * Cache of comment trees, which show authors' display names and profile pictures.
+     */
+    @Autowired
+    private final CommentTreeCache commentTreeCache;
+
     /**
      * Loads a user by their username, throwing an exception if not found.
      *
@@ -81,6 +108,20 @@ public class UserService implements UserDetailsService {
         return user.getFollowing().size();
     }
 
+    /**
+     * Adjusts the stored follower count of the followee and following count of the follower
+     * after a follow relationship has been created or removed.
+     *
+     * @param followerId the ID of the user who follows
+     * @param followeeId the ID of the user being followed
+     * @param delta      +1 when a relationship was created, -1 when it was removed
+     */
+    public void adjustFollowCounts(long followerId, long followeeId, long delta) {
+        userRepository.adjustFollowingCountById(followerId, delta);
+        userRepository.adjustFollowerCountById(followeeId, delta);
+        userAutocompleteIndex.adjustFollowerCount(followeeId, delta);
+    }
+
     /**
      * Updates the profile picture file name for a user by their ID.
      *
@@ -89,6 +130,8 @@ public class UserService implements UserDetailsService {
      */
     public void updateProfilePictureById(long id, String profilePictureFileName) {
         userRepository.updateProfilePictureFileNameById(id, profilePictureFileName);
+        userAutocompleteIndex.updateProfilePicture(id, profilePictureFileName);
+        commentTreeCache.authorProfilePictureChanged(id, profilePictureFileName);
     }
 
     /**
@@ -109,6 +152,8 @@ public class UserService implements UserDetailsService {
      */
     public void updateDisplayNameById(Long id, String displayName){
         userRepository.updateDisplayNameById(id, displayName);
+        userAutocompleteIndex.updateDisplayName(id, displayName);
+        commentTreeCache.authorDisplayNameChanged(id, displayName);
     }
 
     /**
@@ -152,13 +197,65 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * Searches for users by a query string (username contains ignore case).
+     * Fuzzy searches users by username, display name and full name, best match first.
+     * Queries shorter than {@link #MIN_TRIGRAM_QUERY_LENGTH} characters only match username prefixes,
+     * since they have too few trigrams to match substrings selectively.
+     *
+     * @param query  the search query string
+     * @param cursor opaque cursor returned with the previous page of results, or null for the first page
+     * @param size   number of results per page (capped at MAX_SEARCH_PAGE_SIZE)
+     * @return a page of matching users' summaries with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public CursorPageDTO<UserDTO> searchUsers(String query, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE));
+        UserSearchCursor after = cursor == null || cursor.isBlank() ? null : UserSearchCursor.decode(cursor);
+
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        String escaped = normalized.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        String pattern = normalized.length() < MIN_TRIGRAM_QUERY_LENGTH ? escaped + "%" : "%" + escaped + "%";
+
+        // one extra row tells us whether there is a next page.
+        List<UserSearchHit> hits = userRepository.searchByName(
+                normalized,
+                pattern,
+                after == null ? Float.MAX_VALUE : after.getRank(),
+                after == null ? Long.MAX_VALUE : after.getId(),
+                pageSize + 1
+        );
+
+        boolean hasNext = hits.size() > pageSize;
+        List<UserSearchHit> page = hasNext ? hits.subList(0, pageSize) : hits;
+
+        String nextCursor = null;
+        if (hasNext) {
+            UserSearchHit last = page.get(page.size() - 1);
+            nextCursor = new UserSearchCursor(last.getRank(), last.getUserId()).encode();
+        }
+
+        return CursorPageDTO.<UserDTO>builder()
+                .content(page.stream().map(hit -> UserDTO.builder()
+                        .userId(hit.getUserId())
+                        .username(hit.getUsername())
+                        .displayName(hit.getDisplayName())
+                        .profilePictureFileName(hit.getProfilePictureFileName())
+                        .build()).toList())
+                .size(pageSize)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Suggests users whose username or display name starts with a prefix, most followed first.
+     * Answered from memory, without querying the database.
      *
-     * @param query the search query string
-     * @return a list of ApplicationUser instances matching the query
+     * @param prefix the typed prefix (case-insensitive)
+     * @param limit  maximum number of suggestions (capped at UserAutocompleteIndex.TOP_K)
+     * @return summaries of the suggested users
      */
-    public List<ApplicationUser> searchUsers(String query) {
-        return userRepository.findAllByUsernameContainingIgnoreCase(query);
+    public List<UserDTO> autocompleteUsers(String prefix, int limit) {
+        return userAutocompleteIndex.complete(prefix, Math.min(limit, UserAutocompleteIndex.TOP_K));
     }
 
     /**
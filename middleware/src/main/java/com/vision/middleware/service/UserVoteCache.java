@@ -0,0 +1,310 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.searchspec.VotableVoteRow;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * In-memory cache of users' votes, answering "did this user vote on X" without the database.
+ * <p>
+ * Each cached user has a pair of compressed bitmaps (liked, disliked) per votable type, keyed by votable id.
+ * A user's votes are loaded with one query the first time they are needed, and kept current by
+ * {@link VotingService} as votes are cast and removed. At most {@code votes.cache.max-users} users are
+ * cached; the least recently used are evicted beyond that.
+ * <p>
+ * Changes are applied once the vote's transaction commits. A change is only applied if the cached vote is
+ * still the one the change replaced; otherwise (e.g. two votes of the same user committed out of order)
+ * the user is evicted and reloaded on next access. The other nodes of a cluster evict the user once the change
+ * is committed, through the {@link ClusterCacheInvalidator}.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserVoteCache {
+
+    /**
+     * Name under which users whose votes changed are shared with the other nodes.
+     */
+    public static final String CLUSTER_USERS = "user_votes";
+
+    /**
+     * Repository the votes of a user are loaded with.
+     */
+    @Autowired
+    private final UserVoteRepository userVoteRepository;
+
+    /**
+     * Has the other nodes evict the users whose votes changed.
+     */
+    @Autowired
+    private final ClusterCacheInvalidator clusterCacheInvalidator;
+
+    /**
+     * Maximum number of users whose votes are kept.
+     */
+    @Value("${votes.cache.max-users:10000}")
+    private int maxUsers = 10000;
+
+    /**
+     * Cached users, in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<Long, UserVotes> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserVotes> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    /**
+     * Evicts the users whose votes changed on other nodes.
+     */
+    @PostConstruct
+    public void listenToCluster() {
+        clusterCacheInvalidator.register(CLUSTER_USERS, userIds -> userIds.forEach(this::evict));
+    }
+
+    /**
+     * Retrieves a user's vote on a post or reply.
+     *
+     * @param userId      ID of the user
+     * @param votableType whether the votable is a post or a reply
+     * @param votableId   ID of the post or reply
+     * @return the vote type, or an empty Optional if the user has not voted on it
+     */
+    public Optional<UserVote.VoteType> getVote(long userId, VotableType votableType, long votableId) {
+        UserVotes votes = votesOf(userId);
+        synchronized (votes) {
+            return Optional.ofNullable(votes.get(votableType, votableId));
+        }
+    }
+
+    /**
+     * Retrieves a user's votes on several posts or replies.
+     *
+     * @param userId      ID of the user
+     * @param votableType whether the IDs are of posts or replies
+     * @param votableIds  IDs of the posts or replies
+     * @return the vote type by votable ID, for the items the user has voted on
+     */
+    public Map<Long, UserVote.VoteType> getVotes(long userId, VotableType votableType, Collection<Long> votableIds) {
+        UserVotes votes = votesOf(userId);
+        Map<Long, UserVote.VoteType> result = new HashMap<>();
+        synchronized (votes) {
+            for (Long votableId : votableIds) {
+                UserVote.VoteType voteType = votes.get(votableType, votableId);
+                if (voteType != null) {
+                    result.put(votableId, voteType);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records a change of a user's vote, and has the other nodes evict the user.
+     *
+     * @param userId      ID of the user
+     * @param votableType whether the votable is a post or a reply
+     * @param votableId   ID of the post or reply
+     * @param previous    the vote type before the change, or null if there was no vote
+     * @param updated     the vote type after the change, or null if the vote was removed
+     */
+    public void update(long userId, VotableType votableType, long votableId,
+                       UserVote.VoteType previous, UserVote.VoteType updated) {
+        AfterCommit.run(() -> {
+            updateNow(userId, votableType, votableId, previous, updated);
+            clusterCacheInvalidator.publish(CLUSTER_USERS, List.of(userId));
+        });
+    }
+
+    /**
+     * Drops a user's cached votes; they are reloaded on next access.
+     *
+     * @param userId ID of the user
+     */
+    public void evict(long userId) {
+        synchronized (users) {
+            users.remove(userId);
+        }
+    }
+
+    /**
+     * @return the number of users whose votes are cached
+     */
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private void updateNow(long userId, VotableType votableType, long votableId,
+                           UserVote.VoteType previous, UserVote.VoteType updated) {
+        UserVotes votes;
+        synchronized (users) {
+            votes = users.get(userId);
+        }
+        if (votes == null) {
+            return;
+        }
+
+        synchronized (votes) {
+            if (!votes.loaded) {
+                return; // whoever loads it will read the committed vote
+            }
+            UserVote.VoteType cached = votes.get(votableType, votableId);
+            if (cached == updated) {
+                return; // loaded after the commit
+            }
+            if (cached != previous) {
+                // another change of this vote was applied out of order, so the cached vote can't be trusted
+                synchronized (users) {
+                    if (users.get(userId) == votes) {
+                        users.remove(userId);
+                    }
+                }
+                return;
+            }
+            votes.set(votableType, votableId, updated);
+        }
+    }
+
+    /**
+     * Returns the cached votes of a user, loading them if they are not cached yet.
+     * Loading holds only that user's lock, so lookups of other users are not blocked.
+     */
+    private UserVotes votesOf(long userId) {
+        UserVotes votes;
+        synchronized (users) {
+            votes = users.computeIfAbsent(userId, id -> new UserVotes());
+        }
+
+        synchronized (votes) {
+            if (!votes.loaded) {
+                List<VotableVoteRow> rows = new ArrayList<>(userVoteRepository.findVoteTypesByUser(userId));
+                rows.sort(Comparator.comparingLong(VotableVoteRow::getVotableId)); // so the bitmaps are built by appending
+                for (VotableVoteRow row : rows) {
+                    votes.set(row.getVotableType(), row.getVotableId(), row.getVoteType());
+                }
+                votes.loaded = true;
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * The votes of one user. Guarded by itself.
+     */
+    private static class UserVotes {
+        private final VoteBitmap[] liked = newBitmaps();
+        private final VoteBitmap[] disliked = newBitmaps();
+        private boolean loaded;
+
+        private static VoteBitmap[] newBitmaps() {
+            VoteBitmap[] bitmaps = new VoteBitmap[VotableType.values().length];
+            Arrays.setAll(bitmaps, i -> new VoteBitmap());
+            return bitmaps;
+        }
+
+        UserVote.VoteType get(VotableType votableType, long votableId) {
+            if (liked[votableType.ordinal()].contains(votableId)) {
+                return UserVote.VoteType.LIKE;
+            }
+            if (disliked[votableType.ordinal()].contains(votableId)) {
+                return UserVote.VoteType.DISLIKE;
+            }
+            return null;
+        }
+
+        void set(VotableType votableType, long votableId, UserVote.VoteType voteType) {
+            if (voteType == UserVote.VoteType.LIKE) {
+                liked[votableType.ordinal()].add(votableId);
+            } else {
+                liked[votableType.ordinal()].remove(votableId);
+            }
+            if (voteType == UserVote.VoteType.DISLIKE) {
+                disliked[votableType.ordinal()].add(votableId);
+            } else {
+                disliked[votableType.ordinal()].remove(votableId);
+            }
+        }
+    }
+
+    /**
+     * Set of ids stored as a sorted array of 64-bit words, each covering 64 consecutive ids. Only words with
+     * at least one id set are stored, so sparse sets cost 16 bytes per id at most, and ids allocated close
+     * together (as the pooled id sequence does) share words.
+     */
+    private static class VoteBitmap {
+        private static final long[] EMPTY = new long[0];
+
+        /**
+         * Word index ({@code id >>> 6}) of each stored word, ascending.
+         */
+        private long[] keys = EMPTY;
+
+        /**
+         * Bits of the ids in each stored word.
+         */
+        private long[] words = EMPTY;
+
+        private int size;
+
+        boolean contains(long id) {
+            int i = indexOf(id >>> 6);
+            return i >= 0 && (words[i] & bit(id)) != 0;
+        }
+
+        void add(long id) {
+            long key = id >>> 6;
+            int i = indexOf(key);
+            if (i >= 0) {
+                words[i] |= bit(id);
+                return;
+            }
+
+            int at = -i - 1;
+            if (size == keys.length) {
+                int capacity = Math.max(4, size + (size >> 1));
+                keys = Arrays.copyOf(keys, capacity);
+                words = Arrays.copyOf(words, capacity);
+            }
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(words, at, words, at + 1, size - at);
+            keys[at] = key;
+            words[at] = bit(id);
+            size++;
+        }
+
+        void remove(long id) {
+            int i = indexOf(id >>> 6);
+            if (i < 0) {
+                return;
+            }
+            words[i] &= ~bit(id);
+            if (words[i] == 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(words, i + 1, words, i, size - i - 1);
+                size--;
+            }
+        }
+
+        private int indexOf(long key) {
+            if (size > 0 && key > keys[size - 1]) {
+                return -size - 1; // appending, the common case while loading
+            }
+            return Arrays.binarySearch(keys, 0, size, key);
+        }
+
+        private static long bit(long id) {
+            return 1L << (id & 63);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.ReplyDTO;
+import com.vision.middleware.repo.VoteCounterRepository;
+import com.vision.middleware.repo.VoteCounterRepository.CounterDelta;
+import com.vision.middleware.utils.AfterCommit;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for the like and dislike counts of posts and replies.
+ * <p>
+ * Votes do not update the votable's row themselves. Each vote adds to in-memory counters for the
+ * votable, and the accumulated changes are written every {@code votes.flush-interval-ms} milliseconds
+ * (and at shutdown) as one batch of atomic increments. A popular post then costs one row update per
+ * flush instead of one contended read-modify-write per vote, and no vote is lost to a concurrent one.
+ * <p>
+ * The counters are {@link LongAdder}s, which spread concurrent increments over several cells, so
+ * votes on the same post do not contend with each other either. Until a change is flushed, the counts
+ * stored in the database lag behind; {@link #mergeInto(PostDTO)} and {@link #mergeInto(ReplyDTO)} add
+ * the pending changes to counts read from the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VoteCounterBuffer {
+
+    /**
+     * Repository the accumulated changes are written with.
+     */
+    @Autowired
+    private final VoteCounterRepository voteCounterRepository;
+
+    /**
+     * Transaction manager used to write each flush atomically.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Changes not yet written, by votable id. A flush removes each entry before draining it.
+     */
+    private final ConcurrentHashMap<Long, Counters> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Changes taken by the flush in progress but not yet committed, so reads still see them.
+     */
+    private volatile Map<Long, CounterDelta> flushing = Map.of();
+
+    /**
+     * Incremented when a flush starts taking changes and again once it is done, so it is odd from the
+     * first change taken until the write committed or the changes were put back. See {@link #getFlushWrites()}.
+     */
+    private final AtomicLong flushWrites = new AtomicLong();
+
+    /**
+     * Striped like and dislike counters of one votable.
+     */
+    private static class Counters {
+        private final LongAdder likes = new LongAdder();
+        private final LongAdder dislikes = new LongAdder();
+    }
+
+    /**
+     * Records a change to a votable's counts once the current transaction commits, so a vote that is rolled back
+     * is not counted.
+     *
+     * @param votableId ID of the post or reply
+     * @param likes     change to the like count
+     * @param dislikes  change to the dislike count
+     */
+    public void add(long votableId, long likes, long dislikes) {
+        if (likes == 0 && dislikes == 0) {
+            return;
+        }
+
+        AfterCommit.run(() -> addNow(votableId, likes, dislikes));
+    }
+
+    private void addNow(long votableId, long likes, long dislikes) {
+        Counters counters = pending.computeIfAbsent(votableId, id -> new Counters());
+        counters.likes.add(likes);
+        counters.dislikes.add(dislikes);
+
+        if (pending.get(votableId) != counters) {
+            // a flush removed the counters before or while we added to them. Whatever it did not drain
+            // would be lost, so move it to the current counters. Draining is atomic per cell, so each
+            // unit is taken either by the flush or here, never both.
+            long leftLikes = counters.likes.sumThenReset();
+            long leftDislikes = counters.dislikes.sumThenReset();
+            if (leftLikes != 0 || leftDislikes != 0) {
+                addNow(votableId, leftLikes, leftDislikes);
+            }
+        }
+    }
+
+    /**
+     * @param votableId ID of the post or reply
+     * @return the change to the like count that has not been written yet
+     */
+    public long pendingLikes(long votableId) {
+        Counters counters = pending.get(votableId);
+        CounterDelta inFlight = flushing.get(votableId);
+        return (counters == null ? 0 : counters.likes.sum()) + (inFlight == null ? 0 : inFlight.getLikes());
+    }
+
+    /**
+     * @param votableId ID of the post or reply
+     * @return the change to the dislike count that has not been written yet
+     */
+    public long pendingDislikes(long votableId) {
+        Counters counters = pending.get(votableId);
+        CounterDelta inFlight = flushing.get(votableId);
+        return (counters == null ? 0 : counters.dislikes.sum()) + (inFlight == null ? 0 : inFlight.getDislikes());
+    }
+
+    /**
+     * Lets a reader that combines stored counts with the pending changes detect that a flush wrote some of
+     * those changes in between, so they may have been counted twice or not at all. The combination is
+     * consistent if this returns the same even number before the stored counts are read and after the
+     * pending changes are read.
+     *
+     * @return a number that changes when a flush starts taking changes and when it is done, odd in between
+     */
+    public long getFlushWrites() {
+        return flushWrites.get();
+    }
+
+    /**
+     * Adds the changes not yet written to the counts of a post read from the database.
+     *
+     * @param post the post DTO to update
+     */
+    public void mergeInto(PostDTO post) {
+        post.setLikeCount(post.getLikeCount() + pendingLikes(post.getPostId()));
+        post.setDislikeCount(post.getDislikeCount() + pendingDislikes(post.getPostId()));
+    }
+
+    /**
+     * Adds the changes not yet written to the counts and vote score of a reply read from the database.
+     *
+     * @param reply the reply DTO to update
+     */
+    public void mergeInto(ReplyDTO reply) {
+        long likes = pendingLikes(reply.getId());
+        long dislikes = pendingDislikes(reply.getId());
+        reply.setLikeCount(reply.getLikeCount() + likes);
+        reply.setDislikeCount(reply.getDislikeCount() + dislikes);
+        reply.setVoteScore(reply.getVoteScore() + likes - dislikes);
+    }
+
+    /**
+     * Writes all pending changes in one batch.
+     * Runs every {@code votes.flush-interval-ms} milliseconds (default 1 second).
+     * If the write fails, the changes are put back and retried with the next flush.
+     *
+     * @return the number of votables whose counts were written
+     */
+    @Scheduled(fixedDelayString = "${votes.flush-interval-ms:1000}")
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        // odd before the first change leaves pending, since a change is briefly in neither map while it
+        // moves to taken, and until it is written or back in pending.
+        flushWrites.incrementAndGet();
+        Map<Long, CounterDelta> taken = new ConcurrentHashMap<>();
+        flushing = taken;
+        try {
+            for (Long votableId : pending.keySet()) {
+                Counters counters = pending.remove(votableId);
+                if (counters == null) {
+                    continue;
+                }
+                long likes = counters.likes.sumThenReset();
+                long dislikes = counters.dislikes.sumThenReset();
+                if (likes != 0 || dislikes != 0) {
+                    taken.put(votableId, new CounterDelta(votableId, likes, dislikes));
+                }
+            }
+            if (taken.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                        voteCounterRepository.addToCounts(new ArrayList<>(taken.values()), new Date()));
+                log.debug("Flushed vote counts of {} votables", taken.size());
+                return taken.size();
+            } catch (RuntimeException e) {
+                log.error("Failed to flush vote counts of {} votables, will retry", taken.size(), e);
+                // back into pending before they leave flushing, so reads count them twice rather than not at all
+                taken.values().forEach(delta -> addNow(delta.getVotableId(), delta.getLikes(), delta.getDislikes()));
+                return 0;
+            }
+        } finally {
+            flushing = Map.of();
+            flushWrites.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the remaining changes when the application shuts down.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
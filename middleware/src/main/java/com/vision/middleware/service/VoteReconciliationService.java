@@ -0,0 +1,336 @@
+package com.vision.middleware.service;
+
+import com.vision.middleware.dto.VoteReconciliationReportDTO;
+import com.vision.middleware.repo.VoteCounterRepository;
+import com.vision.middleware.repo.VoteCounterRepository.CounterDelta;
+import com.vision.middleware.repo.VoteReconciliationRepository;
+import com.vision.middleware.repo.VoteReconciliationRepository.CountDrift;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that corrects the like and dislike counts of posts and replies that have drifted from the votes
+ * in {@code user_votes}, e.g. because buffered count changes were lost when a node crashed.
+ * <p>
+ * A run splits the votable id space into ranges of {@code votes.reconcile.partition-size} ids and counts the
+ * votes of each range on a fork-join pool of {@code votes.reconcile.parallelism} threads, pausing
+ * {@code votes.reconcile.pause-ms} after each range so the job does not compete with requests for the
+ * database. Only votables whose counts differ are kept.
+ * <p>
+ * Votes keep arriving while the job runs, and a vote's count change reaches the votable a little after the
+ * vote itself (see {@link VoteCounterBuffer}). Changes still in the buffer are taken into account, and a
+ * difference is only corrected if it is still the same after {@code votes.reconcile.settle-ms}. Corrections
+ * are applied as increments, in batches of {@code votes.reconcile.batch-size}, so they never overwrite a
+ * concurrent vote.
+ * <p>
+ * Every node runs the schedule, but a run holds a database-wide lock (see
+ * {@link VoteReconciliationRepository#runExclusively}), so a run started while another node's is in progress is
+ * skipped instead of applying the same corrections twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VoteReconciliationService {
+
+    /**
+     * Repository counting votes per votable id range.
+     */
+    @Autowired
+    private final VoteReconciliationRepository voteReconciliationRepository;
+
+    /**
+     * Repository the corrections are applied with.
+     */
+    @Autowired
+    private final VoteCounterRepository voteCounterRepository;
+
+    /**
+     * Buffer of count changes not yet written.
+     */
+    @Autowired
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    /**
+     * Cache of comment trees, whose reply counts are dropped once corrected.
+     */
+    @Autowired
+    private final CommentTreeCache commentTreeCache;
+
+    /**
+     * Transaction manager used to apply each batch of corrections atomically.
+     */
+    @Autowired
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Number of id ranges counted at the same time.
+     */
+    @Value("${votes.reconcile.parallelism:2}")
+    private int parallelism = 2;
+
+    /**
+     * Number of votable ids per range.
+     */
+    @Value("${votes.reconcile.partition-size:10000}")
+    private long partitionSize = 10000;
+
+    /**
+     * Pause after each range and each batch of corrections.
+     */
+    @Value("${votes.reconcile.pause-ms:50}")
+    private long pauseMillis = 50;
+
+    /**
+     * Time a difference has to persist before it is corrected.
+     */
+    @Value("${votes.reconcile.settle-ms:5000}")
+    private long settleMillis = 5000;
+
+    /**
+     * Number of votables re-checked and corrected at once.
+     */
+    @Value("${votes.reconcile.batch-size:500}")
+    private int batchSize = 500;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong partitions = new AtomicLong();
+    private final AtomicLong partitionsDone = new AtomicLong();
+    private final AtomicLong drifted = new AtomicLong();
+    private final AtomicLong corrected = new AtomicLong();
+    private final AtomicLong unsettled = new AtomicLong();
+    private volatile Date startedAt;
+    private volatile Date finishedAt;
+
+    /**
+     * Reconciles the counts of all posts and replies.
+     * Runs on the {@code votes.reconcile.cron} schedule (default 3:30 every night).
+     */
+    @Scheduled(cron = "${votes.reconcile.cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    /**
+     * Reconciles the counts of all posts and replies in the background.
+     */
+    @Async
+    public void reconcileAsync() {
+        reconcile();
+    }
+
+    /**
+     * @return true while a run is in progress
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return the progress of the current run, or the result of the last one
+     */
+    public VoteReconciliationReportDTO getProgress() {
+        Date started = startedAt;
+        Date finished = finishedAt;
+        long elapsed = started == null ? 0
+                : (finished != null ? finished.getTime() : System.currentTimeMillis()) - started.getTime();
+
+        return VoteReconciliationReportDTO.builder()
+                .running(running.get())
+                .startedAt(started)
+                .finishedAt(finished)
+                .partitions(partitions.get())
+                .partitionsDone(partitionsDone.get())
+                .drifted(drifted.get())
+                .corrected(corrected.get())
+                .unsettled(unsettled.get())
+                .elapsedMillis(elapsed)
+                .build();
+    }
+
+    /**
+     * Reconciles the counts of all posts and replies. If a run is already in progress, returns its
+     * progress without starting another.
+     *
+     * @return the result of the run
+     */
+    public VoteReconciliationReportDTO reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Vote count reconciliation already running");
+            return getProgress();
+        }
+
+        startedAt = new Date();
+        finishedAt = null;
+        partitions.set(0);
+        partitionsDone.set(0);
+        drifted.set(0);
+        corrected.set(0);
+        unsettled.set(0);
+
+        try {
+            if (!voteReconciliationRepository.runExclusively(this::run)) {
+                log.info("Vote count reconciliation already running on another node");
+            }
+        } catch (RuntimeException e) {
+            log.error("Vote count reconciliation failed", e);
+        } finally {
+            finishedAt = new Date();
+            running.set(false);
+        }
+
+        VoteReconciliationReportDTO report = getProgress();
+        log.info("Reconciled vote counts in {} ranges: {} differed, {} corrected, {} still changing, {} ms",
+                report.getPartitionsDone(), report.getDrifted(), report.getCorrected(), report.getUnsettled(),
+                report.getElapsedMillis());
+        return report;
+    }
+
+    /**
+     * Finds the votables whose counts differ, waits for the differences to settle and corrects them.
+     */
+    private void run() {
+        long[] idRange = voteReconciliationRepository.findIdRange();
+        if (idRange != null) {
+            Map<Long, CounterDelta> candidates = scan(idRange[0], idRange[1]);
+            if (!candidates.isEmpty()) {
+                pause(settleMillis);
+                correct(candidates);
+            }
+        }
+    }
+
+    /**
+     * Counts the votes of every id range in parallel.
+     *
+     * @return the correction each differing votable needs, by votable id
+     */
+    private Map<Long, CounterDelta> scan(long firstId, long lastId) {
+        long count = (lastId - firstId) / partitionSize + 1;
+        partitions.set(count);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ScanTask(firstId, lastId, 0, count));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the votes of the id ranges {@code [fromPartition, toPartition)}, splitting them in halves
+     * until each task counts one range.
+     */
+    private class ScanTask extends RecursiveTask<Map<Long, CounterDelta>> {
+        private final long firstId;
+        private final long lastId;
+        private final long fromPartition;
+        private final long toPartition;
+
+        ScanTask(long firstId, long lastId, long fromPartition, long toPartition) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.fromPartition = fromPartition;
+            this.toPartition = toPartition;
+        }
+
+        @Override
+        protected Map<Long, CounterDelta> compute() {
+            if (toPartition - fromPartition == 1) {
+                long fromId = firstId + fromPartition * partitionSize;
+                long toId = Math.min(fromId + partitionSize, lastId + 1);
+                return scanPartition(fromId, toId);
+            }
+
+            long middle = (fromPartition + toPartition) >>> 1;
+            ScanTask left = new ScanTask(firstId, lastId, fromPartition, middle);
+            left.fork();
+            Map<Long, CounterDelta> result = new ScanTask(firstId, lastId, middle, toPartition).compute();
+            result.putAll(left.join());
+            return result;
+        }
+    }
+
+    private Map<Long, CounterDelta> scanPartition(long fromId, long toId) {
+        Map<Long, CounterDelta> candidates = new HashMap<>();
+        for (CountDrift drift : voteReconciliationRepository.findDrift(fromId, toId)) {
+            CounterDelta correction = correctionOf(drift);
+            if (correction != null) {
+                candidates.put(drift.getVotableId(), correction);
+            }
+        }
+
+        drifted.addAndGet(candidates.size());
+        partitionsDone.incrementAndGet();
+        log.debug("Checked vote counts of ids {} to {}: {} differ", fromId, toId - 1, candidates.size());
+        pause(pauseMillis);
+        return candidates;
+    }
+
+    /**
+     * Re-checks the differing votables in batches and corrects those whose difference has not changed.
+     */
+    private void correct(Map<Long, CounterDelta> candidates) {
+        List<Long> ids = new ArrayList<>(candidates.keySet());
+        Collections.sort(ids);
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+
+            List<CounterDelta> corrections = new ArrayList<>();
+            for (CountDrift drift : voteReconciliationRepository.findCounts(batch)) {
+                CounterDelta correction = correctionOf(drift);
+                CounterDelta first = candidates.get(drift.getVotableId());
+                if (correction == null) {
+                    continue; // caught up on its own
+                }
+                if (correction.getLikes() == first.getLikes() && correction.getDislikes() == first.getDislikes()) {
+                    corrections.add(correction);
+                } else {
+                    unsettled.incrementAndGet(); // checked again on the next run
+                }
+            }
+
+            if (!corrections.isEmpty()) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                        voteCounterRepository.addToCounts(corrections, new Date()));
+                corrected.addAndGet(corrections.size());
+                commentTreeCache.clear();
+            }
+            pause(pauseMillis);
+        }
+    }
+
+    /**
+     * @return the change that brings the votable's counts, including changes not yet written, in line with
+     * its votes, or null if they already are
+     */
+    private CounterDelta correctionOf(CountDrift drift) {
+        long likes = drift.getActualLikes() - drift.getLikeCount() - voteCounterBuffer.pendingLikes(drift.getVotableId());
+        long dislikes = drift.getActualDislikes() - drift.getDislikeCount() - voteCounterBuffer.pendingDislikes(drift.getVotableId());
+        return likes == 0 && dislikes == 0 ? null : new CounterDelta(drift.getVotableId(), likes, dislikes);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
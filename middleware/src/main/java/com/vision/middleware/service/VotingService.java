@@ -6,32 +6,142 @@ import com.vision.middleware.domain.Reply;
 import com.vision.middleware.domain.baseentities.VotableEntity;
 import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.exceptions.DuplicateVoteException;
-import com.vision.middleware.repo.PostRepository;
-import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.searchspec.VoteOutcome;
+import com.vision.middleware.utils.HotScoreUtility;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service responsible for handling voting operations on votable entities (e.g., Posts, Replies).
+ * <p>
+ * Casting or removing a vote is a single statement that works on IDs only: the user's vote is upserted
+ * (or deleted) and, depending on {@code votes.count-mode}, the votable's counts are adjusted as well:
+ * <ul>
+ *     <li>{@code buffered} (default): the count change is handed to the {@link VoteCounterBuffer} and
+ *     written in batches, so votes on a popular post do not contend for its row.</li>
+ *     <li>{@code sync}: the counts are incremented in the same statement, so they are stored as soon as
+ *     the vote commits.</li>
+ * </ul>
+ * Either way, the counts returned to the caller include the vote.
+ * <p>
+ * Users' votes are read from the {@link UserVoteCache}, which this service keeps current, as it does the
+ * counts of replies in the {@link CommentTreeCache}. Likes are reported to the {@link NotificationAggregator},
+ * which notifies the author once per burst of likes.
  */
 @Service
 @RequiredArgsConstructor
 public class VotingService {
 
+    /**
+     * Count mode writing count changes through the {@link VoteCounterBuffer}.
+     */
+    public static final String COUNT_MODE_BUFFERED = "buffered";
+
+    /**
+     * Count mode updating the counts in the vote's own statement.
+     */
+    public static final String COUNT_MODE_SYNC = "sync";
+
+    /**
+     * Upper bound on the number of votables whose votes are looked up at once.
+     */
+    public static final int MAX_BULK_VOTES = 200;
+
     @Autowired
     private final UserVoteRepository userVoteRepository;
 
     @Autowired
-    private final PostRepository postRepository;
+    private final VoteCounterBuffer voteCounterBuffer;
+
+    @Autowired
+    private final UserVoteCache userVoteCache;
+
+    @Autowired
+    private final CommentTreeCache commentTreeCache;
 
     @Autowired
-    private final ReplyRepository replyRepository;
+    private final NotificationAggregator notificationAggregator;
+
+    /**
+     * The configured count mode.
+     */
+    @Value("${votes.count-mode:" + COUNT_MODE_BUFFERED + "}")
+    private String countMode;
+
+    /**
+     * Casts a vote on a post or reply. If the user has already voted the other way, the vote is flipped.
+     *
+     * @param userId      ID of the user casting the vote
+     * @param votableId   ID of the post or reply
+     * @param votableType whether the votable is a post or a reply
+     * @param voteType    the type of vote (LIKE or DISLIKE)
+     * @return the vote with the votable's like and dislike counts after it
+     *
+     * @throws IdNotFoundException    if there is no votable of the given type with the given ID, or no such user
+     * @throws DuplicateVoteException if the user's vote type is the same as the existing vote
+     */
+    @Transactional
+    public VoteDTO castVote(long userId, long votableId, VotableType votableType, UserVote.VoteType voteType) {
+        Date now = new Date();
+        VoteOutcome outcome;
+        try {
+            outcome = userVoteRepository.castVote(userId, votableId, votableType.name(), voteType.name(),
+                    isSync(), now, activeWindowStart(now), HotScoreUtility.AGE_OFFSET_HOURS, HotScoreUtility.GRAVITY);
+        } catch (DataIntegrityViolationException e) {
+            // the only foreign key not checked by the statement itself is the user's
+            throw new IdNotFoundException("id " + userId + " not found");
+        }
+
+        checkFound(outcome, votableId, votableType);
+        if (!outcome.getChanged()) {
+            throw new DuplicateVoteException("User vote for votable already exists.");
+        }
+
+        UserVote.VoteType previous = outcome.getPreviousVoteType() == null
+                ? null : UserVote.VoteType.valueOf(outcome.getPreviousVoteType());
+        userVoteCache.update(userId, votableType, votableId, previous, voteType);
+        if (voteType == UserVote.VoteType.LIKE && outcome.getAuthorId() != null) {
+            notificationAggregator.liked(outcome.getAuthorId(), userId, votableType, votableId);
+        }
+        return buildVoteDTO(votableId, votableType, voteType, outcome, previous, voteType);
+    }
+
+    /**
+     * Removes a user's vote from a post or reply, if there is one.
+     *
+     * @param userId      ID of the user whose vote is being removed
+     * @param votableId   ID of the post or reply
+     * @param votableType whether the votable is a post or a reply
+     * @return the removed vote type (null if there was none) with the votable's counts after the removal
+     *
+     * @throws IdNotFoundException if there is no votable of the given type with the given ID
+     */
+    @Transactional
+    public VoteDTO removeVote(long userId, long votableId, VotableType votableType) {
+        Date now = new Date();
+        VoteOutcome outcome = userVoteRepository.removeVote(userId, votableId, votableType.name(),
+                isSync(), now, activeWindowStart(now), HotScoreUtility.AGE_OFFSET_HOURS, HotScoreUtility.GRAVITY);
+
+        checkFound(outcome, votableId, votableType);
+
+        UserVote.VoteType removed = outcome.getPreviousVoteType() == null
+                ? null : UserVote.VoteType.valueOf(outcome.getPreviousVoteType());
+        if (removed != null) {
+            userVoteCache.update(userId, votableType, votableId, removed, null);
+        }
+        return buildVoteDTO(votableId, votableType, removed, outcome, removed, null);
+    }
 
     /**
      * Casts a vote on a votable entity. If the user has already voted, updates the existing vote.
@@ -42,14 +152,8 @@ public class VotingService {
      *
      * @throws DuplicateVoteException if the user's vote type is the same as the existing vote
      */
-    @Transactional
     public void voteOnVotable(ApplicationUser user, VotableEntity votable, UserVote.VoteType voteType) {
-        VotableType votableType = getVotableType(votable);
-        Optional<UserVote> optionalVote = userVoteRepository.findByUserAndVotableAndVotableType(user, votable, votableType);
-        optionalVote.ifPresentOrElse(
-                vote -> updateVote(vote, voteType, votable),
-                () -> createVote(user, votable, votableType, voteType)
-        );
+        castVote(user.getId(), votable.getId(), getVotableType(votable), voteType);
     }
 
     /**
@@ -58,31 +162,8 @@ public class VotingService {
      * @param user     the user whose vote is being deleted
      * @param votable  the entity from which the vote is being deleted
      */
-    @Transactional
     public void deleteVote(ApplicationUser user, VotableEntity votable){
-        VotableType votableType = getVotableType(votable);
-        Optional<UserVote> optionalVote = userVoteRepository.findByUserAndVotableAndVotableType(user, votable, votableType);
-        optionalVote.ifPresent(
-            vote -> {
-                if (votable instanceof Post post){
-                    if (vote.getVoteType() ==  UserVote.VoteType.LIKE){
-                        post.setLikeCount(post.getLikeCount()-1);
-                    } else if (vote.getVoteType() == UserVote.VoteType.DISLIKE){
-                        post.setDislikeCount(post.getDislikeCount()-1);
-                    }
-                    postRepository.save(post);
-                } else if (votable instanceof Reply reply) {
-                    if (vote.getVoteType() ==  UserVote.VoteType.LIKE){
-                        reply.setLikeCount(reply.getLikeCount()-1);
-                    } else if (vote.getVoteType() == UserVote.VoteType.DISLIKE){
-                        reply.setDislikeCount(reply.getDislikeCount()-1);
-                    }
-                    replyRepository.save(reply);
-                }
-            }
-        );
-        
-        userVoteRepository.deleteByVotableIdAndUserId(votable.getId(), user.getId());
+        removeVote(user.getId(), votable.getId(), getVotableType(votable));
     }
 
     /**
@@ -93,9 +174,43 @@ public class VotingService {
      * @return          an Optional containing the vote type, or an empty Optional if no vote exists
      */
     public Optional<UserVote.VoteType> getUserVoteOnVotable(ApplicationUser user, VotableEntity votable) {
-        VotableType type = getVotableType(votable);
-        Optional<UserVote> optionalVote = userVoteRepository.findByUserAndVotableAndVotableType(user, votable, type);
-        return optionalVote.map(UserVote::getVoteType);
+        return userVoteCache.getVote(user.getId(), getVotableType(votable), votable.getId());
+    }
+
+    /**
+     * Retrieves a user's votes on a batch of posts or replies, e.g. the items of a page.
+     *
+     * @param userId      ID of the user whose votes are being retrieved
+     * @param votableType whether the IDs are of posts or replies
+     * @param votableIds  IDs of the posts or replies (at most MAX_BULK_VOTES)
+     * @return the vote type by votable ID; items the user has not voted on, or that do not exist, are left out
+     * @throws IllegalArgumentException if more than MAX_BULK_VOTES IDs are given
+     */
+    public Map<Long, UserVote.VoteType> getUserVotes(long userId, VotableType votableType, Collection<Long> votableIds) {
+        Set<Long> ids = new HashSet<>(votableIds);
+        ids.remove(null);
+        if (ids.size() > MAX_BULK_VOTES) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_VOTES + " votes can be looked up at once.");
+        }
+        return getUserVotesOnAll(userId, votableType, ids);
+    }
+
+    /**
+     * Retrieves a user's votes on any number of posts or replies, e.g. all replies of a comment tree being
+     * assembled. Unlike {@link #getUserVotes}, the number of IDs is not limited, so this is meant for IDs the
+     * server has read itself rather than IDs sent by a client. Costs at most one query, to load the user's
+     * votes into the {@link UserVoteCache}.
+     *
+     * @param userId      ID of the user whose votes are being retrieved
+     * @param votableType whether the IDs are of posts or replies
+     * @param votableIds  IDs of the posts or replies
+     * @return the vote type by votable ID, for the items the user has voted on
+     */
+    public Map<Long, UserVote.VoteType> getUserVotesOnAll(long userId, VotableType votableType, Collection<Long> votableIds) {
+        if (votableIds.isEmpty()) {
+            return Map.of();
+        }
+        return userVoteCache.getVotes(userId, votableType, votableIds);
     }
 
     /**
@@ -115,81 +230,60 @@ public class VotingService {
         }
     }
 
-    /**
-     * Updates an existing user vote with a new vote type and updates the votable entity's vote counts.
-     *
-     * @param vote      the existing user vote to be updated
-     * @param voteType  the new vote type
-     * @param votable   the entity whose vote counts are being updated
-     *
-     * @throws DuplicateVoteException if the new vote type is the same as the existing vote type
-     */
-    private void updateVote(UserVote vote, UserVote.VoteType voteType, VotableEntity votable) {
-        if (vote.getVoteType() != voteType) {
-            updateVotableCounts(votable, vote.getVoteType(), voteType);
-            vote.setVoteType(voteType);
-            userVoteRepository.save(vote);
-        } else {
-            throw new DuplicateVoteException("User vote for votable already exists.");
-        }
+    private boolean isSync() {
+        return COUNT_MODE_SYNC.equals(countMode);
     }
 
-    /**
-     * Creates a new user vote for a votable entity and updates the entity's vote counts.
-     *
-     * @param user       the user casting the vote
-     * @param votable    the entity being voted on
-     * @param votableType the type of votable entity
-     * @param voteType   the type of vote (LIKE or DISLIKE)
-     */
-    private void createVote(ApplicationUser user, VotableEntity votable, VotableType votableType, UserVote.VoteType voteType) {
-        updateVotableCounts(votable, null, voteType);
-        UserVote vote = UserVote.builder()
-                .user(user)
-                .votable(votable)
-                .votableType(votableType)
-                .voteType(voteType)
-                .build();
-        userVoteRepository.save(vote);
+    private static Date activeWindowStart(Date now) {
+        return new Date(now.getTime() - TimeUnit.HOURS.toMillis(HotScoreUtility.ACTIVE_WINDOW_HOURS));
     }
 
-    /**
-     * Updates the vote counts of a votable entity based on the old and new vote types.
-     *
-     * @param votable    the entity whose vote counts are being updated
-     * @param oldVoteType the previous vote type (or null if creating a new vote)
-     * @param newVoteType the new vote type
-     */
-    private void updateVotableCounts(VotableEntity votable, UserVote.VoteType oldVoteType, UserVote.VoteType newVoteType) {
-        if (votable instanceof Post post) {
-            updateCounts(post, oldVoteType, newVoteType);
-            postRepository.save(post);
-        } else if (votable instanceof Reply reply) {
-            updateCounts(reply, oldVoteType, newVoteType);
-            replyRepository.save(reply);
+    private static void checkFound(VoteOutcome outcome, long votableId, VotableType votableType) {
+        if (!outcome.getFound()) {
+            String name = votableType == VotableType.POST ? "Post" : "Reply";
+            throw new IdNotFoundException(name + " id " + votableId + " not found.");
         }
     }
 
     /**
-     * Updates the like and dislike counts of a votable entity based on the old and new vote types.
+     * Builds the response of a vote change. In buffered mode the change is recorded in the buffer, and the
+     * returned counts add it and any other unflushed changes to the stored counts. A change to a reply's
+     * counts is also applied to its post's cached comment tree.
      *
-     * @param votable    the entity whose counts are being updated
-     * @param oldVoteType the previous vote type (or null if creating a new vote)
-     * @param newVoteType the new vote type
+     * @param votableId   ID of the post or reply
+     * @param votableType whether the votable is a post or a reply
+     * @param voteType    the vote type to report
+     * @param outcome     the result of the vote statement
+     * @param oldVoteType the vote type before the change, or null
+     * @param newVoteType the vote type after the change, or null
      */
-    private void updateCounts(VotableEntity votable, UserVote.VoteType oldVoteType, UserVote.VoteType newVoteType) {
-        if (oldVoteType != null) {
-            if (oldVoteType == UserVote.VoteType.LIKE) {
-                votable.setLikeCount(votable.getLikeCount() - 1);
-            } else if (oldVoteType == UserVote.VoteType.DISLIKE) {
-                votable.setDislikeCount(votable.getDislikeCount() - 1);
+    private VoteDTO buildVoteDTO(long votableId, VotableType votableType, UserVote.VoteType voteType,
+                                 VoteOutcome outcome, UserVote.VoteType oldVoteType, UserVote.VoteType newVoteType) {
+        long likeCount = outcome.getLikeCount() + voteCounterBuffer.pendingLikes(votableId);
+        long dislikeCount = outcome.getDislikeCount() + voteCounterBuffer.pendingDislikes(votableId);
+
+        if (Boolean.TRUE.equals(outcome.getChanged())) {
+            long likes = countChange(UserVote.VoteType.LIKE, oldVoteType, newVoteType);
+            long dislikes = countChange(UserVote.VoteType.DISLIKE, oldVoteType, newVoteType);
+            if (!isSync()) {
+                voteCounterBuffer.add(votableId, likes, dislikes); // applied once this transaction commits
+                likeCount += likes;
+                dislikeCount += dislikes;
+            }
+            if (votableType == VotableType.REPLY && outcome.getPostId() != null) {
+                commentTreeCache.replyVoteChanged(outcome.getPostId(), votableId, likes, dislikes);
             }
         }
 
-        if (newVoteType == UserVote.VoteType.LIKE) {
-            votable.setLikeCount(votable.getLikeCount() + 1);
-        } else if (newVoteType == UserVote.VoteType.DISLIKE) {
-            votable.setDislikeCount(votable.getDislikeCount() + 1);
-        }
+        return VoteDTO.builder()
+                .votableId(votableId)
+                .voteType(voteType)
+                .likeCount(likeCount)
+                .dislikeCount(dislikeCount)
+                .build();
+    }
+
+    private static long countChange(UserVote.VoteType counted, UserVote.VoteType oldVoteType, UserVote.VoteType newVoteType) {
+        return (newVoteType == counted ? 1 : 0) - (oldVoteType == counted ? 1 : 0);
     }
 }
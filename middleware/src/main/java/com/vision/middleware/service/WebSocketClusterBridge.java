@@ -0,0 +1,509 @@
+package com.vision.middleware.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.*;
+
+/**
+ * Bridge fanning out WebSocket messages across the nodes of a cluster, so a notification or chat message reaches its
+ * users whichever node they are connected to.
+ * <p>
+ * Each node keeps its simple broker, which delivers only to the node's own sessions. As an interceptor of the broker
+ * channel, the bridge sees every message sent to a {@code /user/{user}/...} or {@code /topic/...} destination, lets
+ * the local broker deliver it, and publishes it over the {@link ClusterTransport} to the nodes that have sessions of
+ * that user or subscriptions to that topic, according to the {@link ClusterRoutingTable}. Each node listens on its
+ * own channel and hands the messages it receives to its broker, so a message is sent only where it is needed instead
+ * of to every node.
+ * <p>
+ * Routes are shared on a broadcast channel: a node announces a user's first session and a topic's first subscription,
+ * and their end, numbering these changes with a route version. Every {@code cluster.heartbeat-interval-ms} each node
+ * also publishes a digest of its routes, its version and number of routes, and forgets nodes that missed
+ * {@link #MISSED_HEARTBEATS} heartbeats. A node that missed an announcement, or whose routes of another node disagree
+ * with its digest, asks that node for all its routes, which are sent to it alone on its own routes channel; so does
+ * a node that starts. All routes of a node are thus only sent where they are needed, instead of to every node on
+ * every heartbeat.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebSocketClusterBridge implements ChannelInterceptor {
+
+    /**
+     * Channel on which the nodes share their routes.
+     */
+    public static final String ROUTES_CHANNEL = "ws_cluster";
+
+    /**
+     * Prefix of the channel each node receives the routes it asked for on, followed by the node id.
+     */
+    public static final String NODE_ROUTES_CHANNEL_PREFIX = "ws_cluster_";
+
+    /**
+     * Prefix of the channel each node receives its messages on, followed by the node id.
+     */
+    public static final String NODE_CHANNEL_PREFIX = "ws_node_";
+
+    /**
+     * Header marking a message received from another node, with that node's id, so it is not relayed again.
+     */
+    public static final String RELAYED_HEADER = "clusterRelayedFrom";
+
+    /**
+     * Number of heartbeats a node may miss before it is forgotten.
+     */
+    public static final int MISSED_HEARTBEATS = 3;
+
+    private static final String USER_PREFIX = "/user/";
+
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    /**
+     * Transport the messages and routes are sent over.
+     */
+    @Autowired
+    private final ClusterTransport clusterTransport;
+
+    /**
+     * Routes of this node and the others.
+     */
+    @Autowired
+    private final ClusterRoutingTable routingTable;
+
+    /**
+     * Mapper the messages and routes are serialized with.
+     */
+    @Autowired
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Template handing received messages to the local broker; looked up lazily, since it is built from the broker
+     * channel this bridge intercepts.
+     */
+    @Autowired
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+
+    /**
+     * Time between two heartbeats.
+     */
+    @Value("${cluster.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs = 15000;
+
+    /**
+     * Routes of the sessions of this node, by session id. Guarded by itself, which also orders the announcements.
+     */
+    private final Map<String, SessionRoutes> sessions = new HashMap<>();
+
+    /**
+     * Version of this node's routes, raised by each change. Starts at the time the node started, so a restarted node
+     * does not reuse the versions of its previous run. Guarded by {@link #sessions}.
+     */
+    private long routeVersion = System.currentTimeMillis();
+
+    /**
+     * A message relayed to another node.
+     *
+     * @param origin      id of the node the message was sent on
+     * @param destination the {@code /user} or {@code /topic} destination
+     * @param contentType the message's content type, or null
+     * @param payload     the serialized message
+     */
+    public record Envelope(String origin, String destination, String contentType, byte[] payload) {
+    }
+
+    /**
+     * A change of a node's routes, or a message about them.
+     *
+     * @param node    id of the node
+     * @param kind    what changed
+     * @param keys    the routes added or removed, or all routes of the node
+     * @param version the node's route version after the change
+     * @param count   the node's number of routes after the change
+     */
+    public record RouteUpdate(String node, Kind kind, List<String> keys, long version, int count) {
+    }
+
+    /**
+     * Kinds of route updates.
+     */
+    public enum Kind {
+        /**
+         * The node started, with these routes; the others send it a {@link #SNAPSHOT}.
+         */
+        HELLO,
+        /**
+         * The node gained these routes.
+         */
+        ADD,
+        /**
+         * The node lost these routes.
+         */
+        REMOVE,
+        /**
+         * These are all the node's routes; sent only to the node that asked for them.
+         */
+        SNAPSHOT,
+        /**
+         * The heartbeat, with the node's version and number of routes but not the routes themselves.
+         */
+        DIGEST,
+        /**
+         * The node asks the receiving node for a {@link #SNAPSHOT}.
+         */
+        SYNC,
+        /**
+         * The node is shutting down.
+         */
+        BYE
+    }
+
+    /**
+     * Routes of one session: its user, and its subscriptions to topics by subscription id.
+     */
+    private static class SessionRoutes {
+        private String userKey;
+        private final Map<String, String> topicKeys = new HashMap<>();
+    }
+
+    /**
+     * Subscribes to the routes channel and this node's channel, and announces this node once the application is
+     * ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        clusterTransport.subscribe(ROUTES_CHANNEL, this::onRouteUpdate);
+        clusterTransport.subscribe(nodeRoutesChannel(routingTable.getNodeId()), this::onRouteUpdate);
+        clusterTransport.subscribe(nodeChannel(routingTable.getNodeId()), this::onEnvelope);
+        synchronized (sessions) {
+            announce(Kind.HELLO, routingTable.localKeys());
+        }
+        log.info("WebSocket cluster node {} started", routingTable.getNodeId());
+    }
+
+    /**
+     * Announces that this node is shutting down, so the others stop sending to it.
+     */
+    @PreDestroy
+    public void stop() {
+        synchronized (sessions) {
+            announce(Kind.BYE, List.of());
+        }
+    }
+
+    /**
+     * Publishes the digest of this node's routes and forgets the nodes that missed their heartbeats.
+     * Runs every {@code cluster.heartbeat-interval-ms} milliseconds (default 15 seconds).
+     */
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        synchronized (sessions) {
+            announce(Kind.DIGEST, List.of());
+        }
+        int expired = routingTable.expire(System.currentTimeMillis() - MISSED_HEARTBEATS * heartbeatIntervalMs);
+        if (expired > 0) {
+            log.info("Forgot {} WebSocket cluster nodes that stopped sending heartbeats", expired);
+        }
+    }
+
+    /**
+     * Relays messages sent to a {@code /user} or {@code /topic} destination to the other nodes that need them.
+     * The message itself continues to the local broker.
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (headers.containsKey(RELAYED_HEADER) || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String key = routeKey(destination);
+        if (key == null) {
+            return message;
+        }
+
+        Set<String> nodes = routingTable.nodesFor(key);
+        if (nodes.isEmpty()) {
+            return message;
+        }
+
+        byte[] payload;
+        if (message.getPayload() instanceof byte[] bytes) {
+            payload = bytes;
+        } else if (message.getPayload() instanceof String text) {
+            payload = text.getBytes(StandardCharsets.UTF_8);
+        } else {
+            log.warn("Not relaying a message to {} with a {} payload", destination, message.getPayload().getClass().getName());
+            return message;
+        }
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        String envelope = write(new Envelope(routingTable.getNodeId(), destination,
+                contentType == null ? null : contentType.toString(), payload));
+        if (envelope != null) {
+            nodes.forEach(node -> clusterTransport.publish(nodeChannel(node), envelope));
+        }
+        return message;
+    }
+
+    /**
+     * Counts a new session's user as a route of this node.
+     */
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        Principal user = event.getUser();
+        if (sessionId == null || user == null) {
+            return;
+        }
+
+        synchronized (sessions) {
+            SessionRoutes routes = sessions.computeIfAbsent(sessionId, id -> new SessionRoutes());
+            if (routes.userKey == null) {
+                routes.userKey = ClusterRoutingTable.userKey(user.getName());
+                addLocal(routes.userKey);
+            }
+        }
+    }
+
+    /**
+     * Counts a subscription to a topic as a route of this node.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (sessionId == null || subscriptionId == null || destination == null || !destination.startsWith(TOPIC_PREFIX)) {
+            return; // user destinations are routed by the session's user
+        }
+
+        synchronized (sessions) {
+            SessionRoutes routes = sessions.computeIfAbsent(sessionId, id -> new SessionRoutes());
+            String key = ClusterRoutingTable.topicKey(destination);
+            String previous = routes.topicKeys.put(subscriptionId, key);
+            if (previous != null) {
+                removeLocal(previous);
+            }
+            addLocal(key);
+        }
+    }
+
+    /**
+     * Stops counting a subscription to a topic.
+     */
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+
+        synchronized (sessions) {
+            SessionRoutes routes = sessions.get(sessionId);
+            String key = routes == null ? null : routes.topicKeys.remove(subscriptionId);
+            if (key != null) {
+                removeLocal(key);
+            }
+        }
+    }
+
+    /**
+     * Stops counting a closed session's user and subscriptions. A session may be reported closed more than once.
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        synchronized (sessions) {
+            SessionRoutes routes = sessions.remove(event.getSessionId());
+            if (routes == null) {
+                return;
+            }
+            if (routes.userKey != null) {
+                removeLocal(routes.userKey);
+            }
+            routes.topicKeys.values().forEach(this::removeLocal);
+        }
+    }
+
+    /**
+     * @param destination a message's destination
+     * @return the route of a {@code /user/{user}/...} or {@code /topic/...} destination, or null for others
+     */
+    static String routeKey(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        if (destination.startsWith(TOPIC_PREFIX)) {
+            return ClusterRoutingTable.topicKey(destination);
+        }
+        if (destination.startsWith(USER_PREFIX)) {
+            int end = destination.indexOf('/', USER_PREFIX.length());
+            return end > USER_PREFIX.length() ? ClusterRoutingTable.userKey(destination.substring(USER_PREFIX.length(), end)) : null;
+        }
+        return null;
+    }
+
+    /**
+     * @param node id of a node
+     * @return the channel the node receives its messages on
+     */
+    static String nodeChannel(String node) {
+        return NODE_CHANNEL_PREFIX + node;
+    }
+
+    /**
+     * @param node id of a node
+     * @return the channel the node receives the routes it asked for on
+     */
+    static String nodeRoutesChannel(String node) {
+        return NODE_ROUTES_CHANNEL_PREFIX + node;
+    }
+
+    /**
+     * Hands a message relayed by another node to the local broker.
+     */
+    private void onEnvelope(String json) {
+        Envelope envelope = read(json, Envelope.class);
+        if (envelope == null || routingTable.getNodeId().equals(envelope.origin()) || routeKey(envelope.destination()) == null) {
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setHeader(RELAYED_HEADER, envelope.origin());
+        if (envelope.contentType() != null) {
+            accessor.setContentType(MimeType.valueOf(envelope.contentType()));
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.getObject().send(envelope.destination(),
+                MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+    }
+
+    /**
+     * Applies another node's route update, and asks the node for all its routes if updates of it were missed.
+     */
+    private void onRouteUpdate(String json) {
+        RouteUpdate update = read(json, RouteUpdate.class);
+        if (update == null || update.node() == null || update.kind() == null || routingTable.getNodeId().equals(update.node())) {
+            return;
+        }
+
+        List<String> keys = update.keys() == null ? List.of() : update.keys();
+        long now = System.currentTimeMillis();
+        boolean missed = switch (update.kind()) {
+            case HELLO -> {
+                routingTable.replaced(update.node(), keys, update.version(), now);
+                sendSnapshot(update.node()); // so the new node learns this node's routes now
+                yield false;
+            }
+            case ADD -> routingTable.added(update.node(), keys, update.version(), now);
+            case REMOVE -> routingTable.removed(update.node(), keys, update.version(), now);
+            case SNAPSHOT -> {
+                routingTable.replaced(update.node(), keys, update.version(), now);
+                yield false;
+            }
+            case DIGEST -> routingTable.heartbeat(update.node(), update.version(), update.count(), now);
+            case SYNC -> {
+                sendSnapshot(update.node());
+                yield false;
+            }
+            case BYE -> {
+                routingTable.left(update.node());
+                yield false;
+            }
+        };
+        if (missed) {
+            synchronized (sessions) {
+                publish(nodeRoutesChannel(update.node()), Kind.SYNC, List.of(), routingTable.localCount());
+            }
+        }
+    }
+
+    /**
+     * Sends all routes of this node to another node that asked for them.
+     */
+    private void sendSnapshot(String node) {
+        synchronized (sessions) {
+            Set<String> keys = routingTable.localKeys();
+            publish(nodeRoutesChannel(node), Kind.SNAPSHOT, keys, keys.size());
+        }
+    }
+
+    private void addLocal(String key) {
+        if (routingTable.addLocal(key)) {
+            routeVersion++;
+            announce(Kind.ADD, List.of(key));
+        }
+    }
+
+    private void removeLocal(String key) {
+        if (routingTable.removeLocal(key)) {
+            routeVersion++;
+            announce(Kind.REMOVE, List.of(key));
+        }
+    }
+
+    /**
+     * Publishes a change of this node's routes. Called while holding {@link #sessions}, so changes are published in
+     * the order they were made.
+     */
+    private void announce(Kind kind, Collection<String> keys) {
+        publish(ROUTES_CHANNEL, kind, keys, routingTable.localCount());
+    }
+
+    /**
+     * Publishes a message about this node's routes, with their current version. Called while holding
+     * {@link #sessions}, so the version matches the routes.
+     */
+    private void publish(String channel, Kind kind, Collection<String> keys, int count) {
+        String update = write(new RouteUpdate(routingTable.getNodeId(), kind, List.copyOf(keys), routeVersion, count));
+        if (update != null) {
+            clusterTransport.publish(channel, update);
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize a cluster message", e);
+            return null;
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed cluster message", e);
+            return null;
+        }
+    }
+}
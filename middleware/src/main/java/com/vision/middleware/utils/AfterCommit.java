@@ -0,0 +1,61 @@
+package com.vision.middleware.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utility class for deferring in-memory side effects of a change, such as updating a cache or queueing a
+ * notification, until the transaction making the change has committed, so a change that is rolled back leaves
+ * no trace. Outside of a transaction the side effects run right away.
+ * <p>
+ * This is the programmatic counterpart of {@code @TransactionalEventListener(phase = AFTER_COMMIT)}, for callers
+ * that are not event listeners. Actions run on the committing thread after the commit, so they must not start
+ * a transaction that relies on running after the current one: a synchronization registered from within an
+ * {@code afterCommit} callback is never invoked.
+ */
+public class AfterCommit {
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private AfterCommit() {}
+
+    /**
+     * Runs an action once the current transaction commits, or right away if there is none.
+     *
+     * @param action the action to run; not run if the transaction rolls back
+     */
+    public static void run(Runnable action) {
+        run(action, () -> {});
+    }
+
+    /**
+     * Runs an action once the current transaction commits and a cleanup once it has ended either way,
+     * or both right away if there is none.
+     *
+     * @param action     the action to run; not run if the transaction rolls back
+     * @param completion the cleanup, run after the action on commit and on its own on rollback
+     */
+    public static void run(Runnable action, Runnable completion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                action.run();
+            } finally {
+                completion.run();
+            }
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                completion.run();
+            }
+        });
+    }
+}
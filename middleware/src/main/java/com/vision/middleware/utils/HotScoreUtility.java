@@ -0,0 +1,52 @@
+package com.vision.middleware.utils;
+
+import java.util.Date;
+
+/**
+ * Utility class for computing the time-decayed "hot" rank score of votable content.
+ * <p>
+ * The score is {@code voteScore / (ageHours + AGE_OFFSET_HOURS) ^ GRAVITY}, so new content with a few
+ * votes can outrank old content with many. Content older than {@link #ACTIVE_WINDOW_HOURS} is no longer
+ * considered hot and scores 0. The same formula is applied in SQL by the periodic decay job
+ * (see {@code PostRepository.decayHotScores}); keep both in sync.
+ */
+public class HotScoreUtility {
+
+    /**
+     * How strongly age pulls the score down. Higher values make content cool off faster.
+     */
+    public static final double GRAVITY = 1.8;
+
+    /**
+     * Added to the age so brand-new content does not divide by (nearly) zero.
+     */
+    public static final double AGE_OFFSET_HOURS = 2;
+
+    /**
+     * Content older than this many hours has a hot score of 0.
+     */
+    public static final long ACTIVE_WINDOW_HOURS = 72;
+
+    private static final double MILLIS_PER_HOUR = 3_600_000d;
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private HotScoreUtility() {}
+
+    /**
+     * Computes the hot score of content at a given point in time.
+     *
+     * @param voteScore  likes minus dislikes
+     * @param datePosted when the content was posted; null is treated as "just now"
+     * @param now        the point in time to compute the score for
+     * @return the hot score, or 0 if the content is outside the active window
+     */
+    public static double compute(long voteScore, Date datePosted, Date now) {
+        double ageHours = datePosted == null ? 0 : Math.max(0, (now.getTime() - datePosted.getTime()) / MILLIS_PER_HOUR);
+        if (ageHours > ACTIVE_WINDOW_HOURS) {
+            return 0;
+        }
+        return voteScore / Math.pow(ageHours + AGE_OFFSET_HOURS, GRAVITY);
+    }
+}
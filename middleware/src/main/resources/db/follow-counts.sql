@@ -0,0 +1,22 @@
+-- Follower and following counts of users (see ApplicationUser.followerCount). Runs after Hibernate has
+-- created/updated the schema (spring.jpa.defer-datasource-initialization), and is safe to run on every startup.
+
+-- Counts the users whose follows were stored before the counts were kept, which left them at 0, or below 0
+-- once such a follow was removed. Every follow and unfollow since adjusts both counts in its own transaction,
+-- so a follow between users counted at 0 or less is a state no follow is saved in: once the counts are filled
+-- in, the check below finds none and later startups write nothing.
+UPDATE application_users u
+SET follower_count = coalesce(followers.n, 0),
+    following_count = coalesce(following.n, 0)
+FROM application_users a
+LEFT JOIN (SELECT uf.followee_id, count(*) AS n FROM user_follows uf GROUP BY uf.followee_id) followers
+    ON followers.followee_id = a.user_id
+LEFT JOIN (SELECT uf.follower_id, count(*) AS n FROM user_follows uf GROUP BY uf.follower_id) following
+    ON following.follower_id = a.user_id
+WHERE u.user_id = a.user_id
+  AND (u.follower_count <> coalesce(followers.n, 0) OR u.following_count <> coalesce(following.n, 0))
+  AND (EXISTS (SELECT 1 FROM user_follows uf
+               JOIN application_users followee ON followee.user_id = uf.followee_id
+               JOIN application_users follower ON follower.user_id = uf.follower_id
+               WHERE followee.follower_count <= 0 OR follower.following_count <= 0)
+       OR EXISTS (SELECT 1 FROM application_users n WHERE n.follower_count < 0 OR n.following_count < 0));
@@ -0,0 +1,6 @@
+-- Post and reply ids come from one sequence, allocated in blocks of 50 (pooled-lo, see VotableEntity).
+-- Databases where the sequence still advances by 1 are moved to the new increment; this is safe at any
+-- time, since the next block always starts past every id handed out so far. Runs on every startup and
+-- is idempotent.
+
+ALTER SEQUENCE IF EXISTS id_generator INCREMENT BY 50;
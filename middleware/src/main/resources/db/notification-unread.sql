@@ -0,0 +1,8 @@
+-- Unread notification counts of users (see ApplicationUser.unreadNotificationCount). Runs after Hibernate has
+-- created/updated the schema (spring.jpa.defer-datasource-initialization), and is safe to run on every startup.
+
+-- Counts the users stored before the column existed, which Hibernate added empty. Users created since start
+-- at 0 and are kept current by the statements storing and acknowledging notifications.
+UPDATE application_users u
+SET unread_notification_count = (SELECT count(*) FROM notifications n WHERE n.user_id = u.user_id AND NOT n.acknowledged)
+WHERE u.unread_notification_count IS NULL;
@@ -0,0 +1,10 @@
+-- Reply counts and last activity of posts (see Post.replyCount and Post.lastActivityAt). Runs after
+-- Hibernate has created/updated the schema (spring.jpa.defer-datasource-initialization), and is safe to run
+-- on every startup.
+
+-- Fills in posts stored before the columns existed, which Hibernate added with no replies and no activity.
+-- Posts created since start with their own date as last activity, so only the older ones are written.
+UPDATE posts p
+SET reply_count = (SELECT count(*) FROM reply r WHERE r.post_id = p.id AND NOT r.deleted),
+    last_activity_at = GREATEST(p.date_posted, (SELECT max(r.date_posted) FROM reply r WHERE r.post_id = p.id))
+WHERE p.last_activity_at IS NULL;
@@ -0,0 +1,11 @@
+-- Full-text search support for posts. Runs after Hibernate has created/updated the schema
+-- (spring.jpa.defer-datasource-initialization), and is safe to run on every startup.
+
+-- Title matches weigh more than body matches (A > B) in ts_rank.
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(text, '')), 'B')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_posts_search_vector ON posts USING GIN (search_vector);
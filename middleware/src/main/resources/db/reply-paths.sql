@@ -0,0 +1,27 @@
+-- Materialized reply paths (see Reply.path). Runs after Hibernate has created/updated the schema
+-- (spring.jpa.defer-datasource-initialization), and is safe to run on every startup.
+
+-- Finds the replies stored before the columns existed: Hibernate added them with the top-level defaults, so
+-- they are the replies with a parent but a depth of 0, a state no reply is saved in. Once they are filled in
+-- this index stays empty, so the check below costs one lookup instead of a walk of all replies.
+CREATE INDEX IF NOT EXISTS idx_reply_unfilled_path ON reply (id)
+    WHERE parent_reply_id_junction IS NOT NULL AND depth = 0;
+
+-- Fills in the path and depth of those replies, once. Only replies whose stored values are wrong are written.
+WITH RECURSIVE tree (id, path, depth) AS (
+    SELECT r.id, CAST('/' AS varchar), 0
+    FROM reply r
+    WHERE r.parent_reply_id_junction IS NULL
+      AND EXISTS (SELECT 1 FROM reply u WHERE u.parent_reply_id_junction IS NOT NULL AND u.depth = 0)
+    UNION ALL
+    SELECT r.id, CAST(t.path || t.id || '/' AS varchar), t.depth + 1
+    FROM reply r
+    JOIN tree t ON r.parent_reply_id_junction = t.id
+)
+UPDATE reply r SET path = tree.path, depth = tree.depth
+FROM tree
+WHERE r.id = tree.id AND (r.path <> tree.path OR r.depth <> tree.depth);
+
+-- Serves subtree fetches, which select the paths starting with a prefix as one range. The "C" collation
+-- orders paths byte by byte, so that range holds exactly the paths with that prefix.
+CREATE INDEX IF NOT EXISTS idx_reply_path ON reply (path COLLATE "C");
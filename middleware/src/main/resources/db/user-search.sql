@@ -0,0 +1,16 @@
+-- Fuzzy user search support. Runs after Hibernate has created/updated the schema
+-- (spring.jpa.defer-datasource-initialization), and is safe to run on every startup.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Every name a user can be found by, lowercased, username first.
+ALTER TABLE application_users ADD COLUMN IF NOT EXISTS search_name text
+    GENERATED ALWAYS AS (
+        lower(coalesce(username, '') || ' ' || coalesce(display_name, '') || ' ' || coalesce(full_name, ''))
+    ) STORED;
+
+-- Serves the similarity (<%) and substring (LIKE '%q%') matches.
+CREATE INDEX IF NOT EXISTS idx_users_search_name_trgm ON application_users USING GIN (search_name gin_trgm_ops);
+
+-- Serves the username prefix match (LIKE 'q%') used for queries too short to have trigrams.
+CREATE INDEX IF NOT EXISTS idx_users_search_name_prefix ON application_users (search_name text_pattern_ops);
@@ -1,6 +1,8 @@
 package com.vision.testing.controller;
 
 import com.vision.middleware.controller.AdminController;
+import com.vision.middleware.dto.VoteReconciliationReportDTO;
+import com.vision.middleware.service.VoteReconciliationService;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -8,12 +10,16 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class AdminControllerTest {
 
-    private final AdminController adminController = new AdminController();
+    private final VoteReconciliationService voteReconciliationService = mock(VoteReconciliationService.class);
+    private final AdminController adminController = new AdminController(voteReconciliationService);
     private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(adminController).build();
 
     @Test
@@ -33,4 +39,38 @@ class AdminControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(result -> assertThat(result.getResponse().getContentAsString()).isEqualTo("Admin level access"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getVoteReconciliation_shouldReturnProgress() throws Exception {
+        when(voteReconciliationService.getProgress()).thenReturn(VoteReconciliationReportDTO.builder()
+                .running(true).partitions(10).partitionsDone(4).drifted(3).build());
+
+        mockMvc.perform(get("/admin/votes/reconcile"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running").value(true))
+                .andExpect(jsonPath("$.partitions").value(10))
+                .andExpect(jsonPath("$.partitionsDone").value(4));
+    }
+
+    @Test
+    void startVoteReconciliation_shouldStartInBackground() throws Exception {
+        when(voteReconciliationService.getProgress()).thenReturn(new VoteReconciliationReportDTO());
+
+        mockMvc.perform(post("/admin/votes/reconcile"))
+                .andExpect(status().isAccepted());
+
+        verify(voteReconciliationService).reconcileAsync();
+    }
+
+    @Test
+    void startVoteReconciliation_alreadyRunning_shouldReturnConflict() throws Exception {
+        when(voteReconciliationService.isRunning()).thenReturn(true);
+        when(voteReconciliationService.getProgress()).thenReturn(VoteReconciliationReportDTO.builder().running(true).build());
+
+        mockMvc.perform(post("/admin/votes/reconcile"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.running").value(true));
+
+        verify(voteReconciliationService, never()).reconcileAsync();
+    }
+}
@@ -4,21 +4,28 @@ import com.vision.middleware.controller.NotificationController;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Notification;
 import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.dto.AcknowledgeRequest;
 import com.vision.middleware.dto.NotificationDTO;
 import com.vision.middleware.service.NotificationService;
 import com.vision.middleware.service.UserService;
+import com.vision.middleware.utils.JwtUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.security.Principal;
+import java.util.List;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +37,9 @@ public class NotificationControllerTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private JwtUtil jwtUtil;
+
     @InjectMocks
     private NotificationController notificationController;
 
@@ -46,7 +56,7 @@ public class NotificationControllerTest {
     }
 
     @Test
-    void testAcknowledgeNotification_WhenNotificationBelongsToUser() {
+    void testAcknowledgeNotification_OneUpdateScopedToUser() {
         // Arrange
         long notificationId = 1L;
         long userId = 100L;
@@ -54,45 +64,54 @@ public class NotificationControllerTest {
         // Simulate principal with user ID
         when(principal.getName()).thenReturn(String.valueOf(userId));
 
-        // Mock user lookup
-        when(userService.loadUserById(userId)).thenReturn(mockUser);
-
-        // Mock notification ownership check
-        when(notificationService.doesNotificationBelongToUser(notificationId, mockUser))
-                .thenReturn(true);
-
         // Act
         notificationController.acknowledgeNotification(principal, notificationId);
 
-        // Assert
-        verify(userService).loadUserById(userId);
-        verify(notificationService).doesNotificationBelongToUser(notificationId, mockUser);
-        verify(notificationService).acknowledgeNotification(notificationId);
+        // Assert: ownership is part of the update, so neither the user nor the notification is loaded first
+        verify(notificationService).acknowledgeNotifications(userId, List.of(notificationId));
+        verify(userService, never()).loadUserById(anyLong());
     }
 
     @Test
-    void testAcknowledgeNotification_WhenNotificationDoesNotBelongToUser() {
-        // Arrange
-        long notificationId = 1L;
-        long userId = 100L;
+    void testAcknowledgeNotifications_ByIds() {
+        when(jwtUtil.checkJwtAuthAndGetUserId("token")).thenReturn(100L);
+        when(notificationService.acknowledgeNotifications(100L, List.of(1L, 2L))).thenReturn(2);
 
-        // Simulate principal with user ID
-        when(principal.getName()).thenReturn(String.valueOf(userId));
+        ResponseEntity<Integer> response = notificationController.acknowledgeNotifications("token",
+                AcknowledgeRequest.builder().ids(List.of(1L, 2L)).build());
 
-        // Mock user lookup
-        when(userService.loadUserById(userId)).thenReturn(mockUser);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(2, response.getBody());
+    }
+
+    @Test
+    void testAcknowledgeNotifications_UpToId() {
+        when(principal.getName()).thenReturn("100");
+        when(notificationService.acknowledgeNotificationsUpTo(100L, 50L)).thenReturn(7);
 
-        // Mock notification ownership check
-        when(notificationService.doesNotificationBelongToUser(notificationId, mockUser))
-                .thenReturn(false);
+        Integer acknowledged = notificationController.acknowledgeNotifications(principal,
+                AcknowledgeRequest.builder().upToId(50L).build());
 
-        // Act
-        notificationController.acknowledgeNotification(principal, notificationId);
+        assertEquals(7, acknowledged);
+        verify(notificationService, never()).acknowledgeNotifications(anyLong(), any());
+    }
 
-        // Assert
-        verify(userService).loadUserById(userId);
-        verify(notificationService).doesNotificationBelongToUser(notificationId, mockUser);
-        verify(notificationService, never()).acknowledgeNotification(notificationId);
+    @Test
+    void testAcknowledgeNotifications_InvalidRequest() {
+        when(jwtUtil.checkJwtAuthAndGetUserId("token")).thenReturn(100L);
+        when(principal.getName()).thenReturn("100");
+        when(notificationService.acknowledgeNotifications(anyLong(), any()))
+                .thenThrow(new IllegalArgumentException("too many"));
+
+        // neither, both, or too many ids
+        assertEquals(HttpStatus.BAD_REQUEST, notificationController.acknowledgeNotifications("token",
+                new AcknowledgeRequest()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, notificationController.acknowledgeNotifications("token",
+                new AcknowledgeRequest(List.of(1L), 5L)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, notificationController.acknowledgeNotifications("token",
+                AcknowledgeRequest.builder().ids(List.of(1L)).build()).getStatusCode());
+        assertNull(notificationController.acknowledgeNotifications(principal, new AcknowledgeRequest()));
+        verify(notificationService, never()).acknowledgeNotificationsUpTo(anyLong(), anyLong());
     }
 
     @Test
@@ -107,21 +126,45 @@ public class NotificationControllerTest {
         when(userService.loadUserById(userId)).thenReturn(mockUser);
 
         // Act
-        notificationController.getUnreadNotifications(principal);
+        notificationController.getUnreadNotifications(principal, "cursor");
 
         // Assert
         verify(userService).loadUserById(userId);
-        verify(notificationService).sendUnreadNotifications(mockUser);
+        verify(notificationService).sendUnreadNotifications(mockUser, "cursor");
+    }
+
+    @Test
+    void testGetUnreadNotifications_MalformedCursor() {
+        when(principal.getName()).thenReturn("100");
+        when(userService.loadUserById(100L)).thenReturn(mockUser);
+        doThrow(new IllegalArgumentException("Malformed cursor"))
+                .when(notificationService).sendUnreadNotifications(mockUser, "bad");
+
+        // nothing is sent, and the error does not reach the client
+        notificationController.getUnreadNotifications(principal, "bad");
+
+        verify(notificationService).sendUnreadNotifications(mockUser, "bad");
+    }
+
+    @Test
+    void testGetUnreadCount() {
+        when(jwtUtil.checkJwtAuthAndGetUserId("token")).thenReturn(100L);
+        when(notificationService.getUnreadCount(100L)).thenReturn(7L);
+
+        ResponseEntity<Long> response = notificationController.getUnreadCount("token");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(7L, response.getBody());
     }
 
     @Test
     void testGetUnreadNotifications_WhenPrincipalIsNull() {
         // Act
-        notificationController.getUnreadNotifications(null);
+        notificationController.getUnreadNotifications(null, null);
 
         // Assert
         verify(userService, never()).loadUserById(anyLong());
-        verify(notificationService, never()).sendUnreadNotifications(any());
+        verify(notificationService, never()).sendUnreadNotifications(any(), any());
     }
 
     @Test
@@ -6,11 +6,17 @@ import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.MediaPost;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.PostImportReportDTO;
 import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.service.PostImportService;
+import com.vision.middleware.service.PostSearchService;
 import com.vision.middleware.service.PostService;
+import com.vision.middleware.service.TimelineService;
+import com.vision.middleware.service.VoteCounterBuffer;
 import com.vision.middleware.utils.JwtUtil;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
@@ -24,6 +30,8 @@ import org.mockito.quality.Strictness;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -34,10 +42,13 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -59,6 +70,18 @@ class PostControllerTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private TimelineService timelineService;
+
+    @Mock
+    private PostSearchService postSearchService;
+
+    @Mock
+    private PostImportService postImportService;
+
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
     @InjectMocks
     private PostController postController;
 
@@ -101,6 +124,37 @@ class PostControllerTest {
         verify(postService).createPost(any(PostDTO.class), any(Long.class));
     }
 
+    @Test
+    void testImportPosts_Success() throws Exception {
+        String token = "validToken";
+        PostImportReportDTO report = PostImportReportDTO.builder().imported(2).rejected(1).chunks(1).build();
+
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(1L);
+        when(postImportService.importPosts(any(), eq(1L))).thenReturn(report);
+
+        mockMvc.perform(post("/post/import")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"title\": \"a\"}, {\"title\": \"b\"}, {\"title\": \"c\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(1));
+    }
+
+    @Test
+    void testImportPosts_MalformedBody_ReturnsBadRequest() throws Exception {
+        String token = "validToken";
+
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(1L);
+        when(postImportService.importPosts(any(), eq(1L))).thenThrow(new IllegalArgumentException("not an array"));
+
+        mockMvc.perform(post("/post/import")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testCreateMediaPost_Success() throws Exception {
         // Arrange
@@ -137,10 +191,12 @@ class PostControllerTest {
         // Arrange
         int page = 0;
         int size = 10;
-        List<Post> posts = createSamplePosts();
-        Page<Post> postPage = new PageImpl<>(posts, PageRequest.of(page, size), posts.size());
+        PostDTO postDTO = createSamplePostDTO();
+        postDTO.setPostId(1L);
+        List<PostDTO> posts = List.of(postDTO);
+        Page<PostDTO> postPage = new PageImpl<>(posts, PageRequest.of(page, size), posts.size());
 
-        when(postService.getAllPosts(page, size, "date", null, null))
+        when(postService.getAllPostDTOs(page, size, "date", null, null))
                 .thenReturn(postPage);
 
         // Act & Assert
@@ -151,9 +207,10 @@ class PostControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.content").isArray())
-                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getId()));
+                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getPostId()))
+                .andExpect(jsonPath("$.content.[0].postedBy.username").value("testuser"));
 
-        verify(postService).getAllPosts(page, size, "date", null, null);
+        verify(postService).getAllPostDTOs(page, size, "date", null, null);
     }
 
     @Test
@@ -162,10 +219,12 @@ class PostControllerTest {
         String username = "testuser";
         int page = 0;
         int size = 10;
-        List<Post> posts = createSamplePosts();
-        Page<Post> postPage = new PageImpl<>(posts, PageRequest.of(page, size), posts.size());
+        PostDTO postDTO = createSamplePostDTO();
+        postDTO.setPostId(1L);
+        List<PostDTO> posts = List.of(postDTO);
+        Page<PostDTO> postPage = new PageImpl<>(posts, PageRequest.of(page, size), posts.size());
 
-        when(postService.getAllPostsByUsername(username, page, size, "date", null, null))
+        when(postService.getAllPostDTOsByUsername(username, page, size, "date", null, null))
                 .thenReturn(postPage);
 
         // Act & Assert
@@ -177,9 +236,84 @@ class PostControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.content").isArray())
-                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getId()));
+                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getPostId()));
+
+        verify(postService).getAllPostDTOsByUsername(username, page, size, "date", null, null);
+    }
+
+    @Test
+    void testGetPostSlice_Success() throws Exception {
+        // Arrange
+        List<Post> posts = createSamplePosts();
+        Slice<Post> postSlice = new SliceImpl<>(posts, PageRequest.of(0, 1), true);
+
+        when(postService.getPostSlice(null, 1, "date", null, null)).thenReturn(postSlice);
+        when(postService.nextCursor(postSlice, "date")).thenReturn("next");
+
+        // Act & Assert
+        mockMvc.perform(get("/post/all/cursor")
+                        .param("size", "1")
+                        .param("sort-by", "date"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getId()))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+
+        verify(postService).getPostSlice(null, 1, "date", null, null);
+    }
+
+    @Test
+    void testGetPostSliceByUsername_InvalidCursor() throws Exception {
+        // Arrange
+        when(postService.getPostSliceByUsername("testuser", "garbage", 10, "date", null, null))
+                .thenThrow(new IllegalArgumentException("Malformed cursor"));
+
+        // Act & Assert
+        mockMvc.perform(get("/post/by-user/cursor")
+                        .param("username", "testuser")
+                        .param("cursor", "garbage"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(Matchers.emptyOrNullString()));
+    }
+
+    @Test
+    void testGetFeed_Success() throws Exception {
+        // Arrange
+        String token = "validToken";
+        long userId = 1L;
+        List<Post> posts = createSamplePosts();
+        Slice<Post> postSlice = new SliceImpl<>(posts, PageRequest.of(0, 1), true);
+
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(userId);
+        when(timelineService.getTimeline(userId, null, 1)).thenReturn(postSlice);
+        when(postService.nextCursor(postSlice, "date")).thenReturn("next");
+
+        // Act & Assert
+        mockMvc.perform(get("/post/feed")
+                        .header("Authorization", token)
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.[0].postId").value(posts.get(0).getId()))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
 
-        verify(postService).getAllPostsByUsername(username, page, size, "date", null, null);
+        verify(timelineService).getTimeline(userId, null, 1);
+    }
+
+    @Test
+    void testGetFeed_InvalidCursor() throws Exception {
+        // Arrange
+        String token = "validToken";
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(1L);
+        when(timelineService.getTimeline(1L, "garbage", 10))
+                .thenThrow(new IllegalArgumentException("Malformed cursor"));
+
+        // Act & Assert
+        mockMvc.perform(get("/post/feed")
+                        .header("Authorization", token)
+                        .param("cursor", "garbage"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -213,13 +347,19 @@ class PostControllerTest {
         VoteDTO voteDTO = createSampleVoteDTO();
 
         when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(userId);
+        when(postService.userVoteOnPost(voteDTO.getVotableId(), userId, voteDTO.getVoteType())).thenReturn(
+                VoteDTO.builder().votableId(voteDTO.getVotableId()).voteType(voteDTO.getVoteType())
+                        .likeCount(7L).dislikeCount(2L).build());
 
         // Act & Assert
         mockMvc.perform(post("/post/vote")
                         .header("Authorization", token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(voteDTO)))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.votableId").value(voteDTO.getVotableId()))
+                .andExpect(jsonPath("$.likeCount").value(7))
+                .andExpect(jsonPath("$.dislikeCount").value(2));
 
         verify(postService).userVoteOnPost(voteDTO.getVotableId(), userId, voteDTO.getVoteType());
     }
@@ -228,18 +368,20 @@ class PostControllerTest {
     void testSearchPosts_Success() throws Exception {
         // Arrange
         String query = "test query";
-        List<Post> posts = createSamplePosts();
+        CursorPageDTO<PostDTO> results = createSampleSearchResults("next");
 
-        when(postService.searchPosts(query)).thenReturn(posts);
+        when(postSearchService.searchPosts(query, null, null, null, null, 20)).thenReturn(results);
 
         // Act & Assert
         mockMvc.perform(get("/post/search")
                         .param("query", query))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$").isArray());
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$.[0].snippet").value("a <b>test</b> snippet"))
+                .andExpect(header().string(PostController.NEXT_CURSOR_HEADER, "next"));
 
-        verify(postService).searchPosts(query);
+        verify(postSearchService).searchPosts(query, null, null, null, null, 20);
     }
 
     @Test
@@ -251,16 +393,29 @@ class PostControllerTest {
                 .andExpect(content().string(Matchers.emptyOrNullString()));
     }
 
+    @Test
+    void testSearchPosts_InvalidCursor() throws Exception {
+        // Arrange
+        when(postSearchService.searchPosts("test", null, null, null, "garbage", 20))
+                .thenThrow(new IllegalArgumentException("Malformed cursor"));
+
+        // Act & Assert
+        mockMvc.perform(get("/post/search")
+                        .param("query", "test")
+                        .param("cursor", "garbage"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testSearchPostsByUser_Success() throws Exception {
         // Arrange
         String query = "test query";
         long userId = 1L;
         ApplicationUser user = new ApplicationUser();
-        List<Post> posts = createSamplePosts();
+        CursorPageDTO<PostDTO> results = createSampleSearchResults(null);
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(postService.searchPostsByUser(query, user)).thenReturn(posts);
+        when(postSearchService.searchPosts(query, user, null, null, null, 20)).thenReturn(results);
 
         // Act & Assert
         mockMvc.perform(get("/post/search-by-user")
@@ -268,9 +423,10 @@ class PostControllerTest {
                         .param("userId", String.valueOf(userId)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$").isArray());
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(header().doesNotExist(PostController.NEXT_CURSOR_HEADER));
 
-        verify(postService).searchPostsByUser(query, user);
+        verify(postSearchService).searchPosts(query, user, null, null, null, 20);
     }
 
     @Test
@@ -305,10 +461,11 @@ class PostControllerTest {
                 .email("a@b.com")
                 .phoneNumber("1234567890")
                 .build();
-        List<Post> posts = createSamplePosts();
+        CursorPageDTO<PostDTO> results = createSampleSearchResults(null);
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(postService.searchPostsByDateRange(query, user, startDate, endDate)).thenReturn(posts);
+        when(postSearchService.searchPosts(eq(query), eq(user), any(Date.class), any(Date.class), isNull(), eq(20)))
+                .thenReturn(results);
 
         // Format dates to ISO 8601 format in UTC
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
@@ -393,6 +550,42 @@ class PostControllerTest {
         verify(postService).getUserVote(votableId, userId);
     }
 
+    @Test
+    void testCheckUserVotes_ReturnsVotesById() throws Exception {
+        // Arrange
+        String token = "validToken";
+        long userId = 1L;
+
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(userId);
+        when(postService.getUserVotes(List.of(1L, 2L, 3L), userId))
+                .thenReturn(Map.of(1L, UserVote.VoteType.LIKE, 3L, UserVote.VoteType.DISLIKE));
+
+        // Act & Assert
+        mockMvc.perform(post("/post/votes")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2, 3]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.1").value("LIKE"))
+                .andExpect(jsonPath("$.2").doesNotExist())
+                .andExpect(jsonPath("$.3").value("DISLIKE"));
+    }
+
+    @Test
+    void testCheckUserVotes_TooManyIds_ReturnsBadRequest() throws Exception {
+        // Arrange
+        String token = "validToken";
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(1L);
+        when(postService.getUserVotes(any(), anyLong())).thenThrow(new IllegalArgumentException("too many"));
+
+        // Act & Assert
+        mockMvc.perform(post("/post/votes")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2, 3]"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testUnvoteOnPost_Success() throws Exception {
         // Arrange
@@ -426,6 +619,19 @@ class PostControllerTest {
                 .build();
     }
 
+    private CursorPageDTO<PostDTO> createSampleSearchResults(String nextCursor) {
+        PostDTO postDTO = createSamplePostDTO();
+        postDTO.setPostId(1L);
+        postDTO.setSnippet("a <b>test</b> snippet");
+
+        return CursorPageDTO.<PostDTO>builder()
+                .content(List.of(postDTO))
+                .size(20)
+                .hasNext(nextCursor != null)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     private List<Post> createSamplePosts() {
         ApplicationUser user = ApplicationUser.builder()
                 .id(1L)
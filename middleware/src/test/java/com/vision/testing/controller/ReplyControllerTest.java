@@ -1,11 +1,13 @@
 package com.vision.testing.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.middleware.controller.PostController;
 import com.vision.middleware.controller.ReplyController;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.Reply;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.ReplyDTO;
 import com.vision.middleware.dto.ReplyRequest;
 import com.vision.middleware.dto.UserDTO;
@@ -29,12 +31,18 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -86,6 +94,39 @@ public class ReplyControllerTest {
                 .andExpect(content().json(objectMapper.writeValueAsString(replyDTOs)));
     }
 
+    @Test
+    public void testGetReplyTreePageNoAuth() throws Exception {
+        long postId = 1L;
+        List<ReplyDTO> replyDTOs = Collections.singletonList(
+                ReplyDTO.builder()
+                        .id(1L)
+                        .text("Test Reply")
+                        .childCount(7)
+                        .moreCursor("more")
+                        .build()
+        );
+
+        when(replyService.getCommentTreePage(postId, null, 10, 2, 3)).thenReturn(
+                CursorPageDTO.<ReplyDTO>builder().content(replyDTOs).size(10).hasNext(true).nextCursor("next").build());
+
+        mockMvc.perform(get("/replies/post/{postId}/tree", postId)
+                        .param("limit", "10")
+                        .param("children", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(PostController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(jsonPath("$[0].childCount").value(7))
+                .andExpect(jsonPath("$[0].moreCursor").value("more"));
+    }
+
+    @Test
+    public void testGetMoreRepliesNoAuthBadCursor() throws Exception {
+        when(replyService.getMoreReplies(eq(1L), eq("bad"), isNull(), anyInt(), anyInt(), anyInt()))
+                .thenThrow(new IllegalArgumentException("Malformed cursor"));
+
+        mockMvc.perform(get("/replies/post/{postId}/tree/more", 1L).param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testCreateReplyWithParentReply() throws Exception {
         long postId = 1L;
@@ -170,13 +211,18 @@ public class ReplyControllerTest {
         when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(userId);
         when(userService.loadUserById(userId)).thenReturn(user);
         when(replyService.findReplyById(replyId)).thenReturn(reply);
+        VoteDTO result = VoteDTO.builder().votableId(replyId).voteType(UserVote.VoteType.LIKE)
+                .likeCount(3L).dislikeCount(1L).build();
+        when(replyService.userVoteOnReply(replyId, userId, UserVote.VoteType.LIKE)).thenReturn(result);
 
         mockMvc.perform(post("/replies/vote")
                         .header("Authorization", token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(voteDTO)))
                 .andExpect(status().isOk())
-                .andExpect(content().json(objectMapper.writeValueAsString(voteDTO)));
+                .andExpect(content().json(objectMapper.writeValueAsString(result)))
+                .andExpect(jsonPath("$.likeCount").value(3))
+                .andExpect(jsonPath("$.dislikeCount").value(1));
     }
 
     @Test
@@ -194,6 +240,23 @@ public class ReplyControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void testCheckUserVotesOnReplies() throws Exception {
+        long userId = 1L;
+        String token = "Bearer validToken";
+
+        when(jwtUtil.checkJwtAuthAndGetUserId(token)).thenReturn(userId);
+        when(replyService.getUserVotesOnReplies(List.of(4L, 5L), userId))
+                .thenReturn(Map.of(5L, UserVote.VoteType.LIKE));
+
+        mockMvc.perform(post("/replies/votes")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[4, 5]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"5\": \"LIKE\"}", true));
+    }
+
     @Test
     public void testGetUserVoteOnReply() throws Exception {
         long replyId = 1L;
@@ -1,8 +1,11 @@
 package com.vision.testing.controller;
 
+import com.vision.middleware.controller.PostController;
 import com.vision.middleware.controller.UserController;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.relations.UserFollows;
+import com.vision.middleware.dto.CursorPageDTO;
+import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.service.FollowerService;
 import com.vision.middleware.service.UserService;
 import com.vision.middleware.utils.JwtUtil;
@@ -264,36 +267,59 @@ public class UserControllerTest {
     @Test
     public void testSearchUsers_ValidQuery() throws Exception {
         String query = "test";
-        ApplicationUser user1 = ApplicationUser.builder()
-                .id(1L)
-                .username("testUser1")
-                .password("password")
-                .fullName("Test User One")
-                .email("test1@example.com")
-                .phoneNumber("1234567890")
-                .build();
-        ApplicationUser user2 = ApplicationUser.builder()
-                .id(2L)
-                .username("testUser2")
-                .password("password")
-                .fullName("Test User Two")
-                .email("test2@example.com")
-                .phoneNumber("1234567890")
+        CursorPageDTO<UserDTO> users = CursorPageDTO.<UserDTO>builder()
+                .content(Arrays.asList(
+                        UserDTO.builder().userId(1L).username("testUser1").build(),
+                        UserDTO.builder().userId(2L).username("testUser2").build()))
+                .size(20)
+                .hasNext(true)
+                .nextCursor("next-page")
                 .build();
 
-        List<ApplicationUser> users = Arrays.asList(user1, user2);
-
-        when(userService.searchUsers(query)).thenReturn(users);
+        when(userService.searchUsers(query, null, 20)).thenReturn(users);
 
         mockMvc.perform(get("/user/search")
                         .param("query", query))
                 .andExpect(status().isOk())
+                .andExpect(header().string(PostController.NEXT_CURSOR_HEADER, "next-page"))
                 .andExpect(jsonPath("$[0].userId").value(1L))
                 .andExpect(jsonPath("$[0].username").value("testUser1"))
                 .andExpect(jsonPath("$[1].userId").value(2L))
                 .andExpect(jsonPath("$[1].username").value("testUser2"));
     }
 
+    @Test
+    public void testSearchUsers_InvalidCursor() throws Exception {
+        when(userService.searchUsers("test", "garbage", 20)).thenThrow(new IllegalArgumentException("Malformed cursor"));
+
+        mockMvc.perform(get("/user/search")
+                        .param("query", "test")
+                        .param("cursor", "garbage"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testAutocompleteUsers() throws Exception {
+        when(userService.autocompleteUsers("jo", 5)).thenReturn(List.of(
+                UserDTO.builder().userId(2L).username("jdoe").followerCount(50).build(),
+                UserDTO.builder().userId(1L).username("johnny").followerCount(5).build()));
+
+        mockMvc.perform(get("/user/autocomplete")
+                        .param("prefix", "jo")
+                        .param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].username").value("jdoe"))
+                .andExpect(jsonPath("$[1].username").value("johnny"));
+    }
+
+    @Test
+    public void testAutocompleteUsers_BlankPrefix() throws Exception {
+        mockMvc.perform(get("/user/autocomplete")
+                        .param("prefix", " "))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(userService);
+    }
+
     @Test
     public void testSearchUsers_InvalidQuery() throws Exception {
         String query = "";
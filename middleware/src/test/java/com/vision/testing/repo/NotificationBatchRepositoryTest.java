@@ -0,0 +1,171 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Notification;
+import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.repo.NotificationBatchRepository;
+import com.vision.middleware.repo.NotificationRepository;
+import com.vision.middleware.repo.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // rolled back after each test.
+public class NotificationBatchRepositoryTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private NotificationBatchRepository notificationBatchRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ApplicationUser user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(ApplicationUser.builder()
+                .username("notified")
+                .password("testpassword")
+                .fullName("testname")
+                .email("notified@email.com")
+                .phoneNumber("1234567890")
+                .build());
+    }
+
+    private Notification notification(String body) {
+        return Notification.builder()
+                .associatedUser(user)
+                .notificationType(NotificationType.MESSAGE)
+                .notificationBody(body)
+                .timeCreated(Instant.now().truncatedTo(ChronoUnit.MICROS))
+                .build();
+    }
+
+    @Test
+    void testInsertAll_AssignsIdsAndStoresEveryRow() {
+        Notification first = notification("first");
+        Notification second = notification("second");
+        second.setTargetType(VotableType.REPLY);
+        second.setTargetId(42L);
+        entityManager.flush();
+
+        notificationBatchRepository.insertAll(List.of(first, second));
+
+        assertThat(first.getId()).isPositive();
+        assertThat(second.getId()).isGreaterThan(first.getId());
+        entityManager.clear();
+        Notification stored = notificationRepository.findById(second.getId()).orElseThrow();
+        assertThat(stored.getNotificationBody()).isEqualTo("second");
+        assertThat(stored.getNotificationType()).isEqualTo(NotificationType.MESSAGE);
+        assertThat(stored.getTargetType()).isEqualTo(VotableType.REPLY);
+        assertThat(stored.getTargetId()).isEqualTo(42L);
+        assertThat(stored.getTimeCreated()).isEqualTo(second.getTimeCreated());
+        assertThat(stored.isAcknowledged()).isFalse();
+        assertThat(stored.getAssociatedUser().getId()).isEqualTo(user.getId());
+
+        // ids generated by the identity column afterwards do not collide
+        Notification saved = notificationRepository.saveAndFlush(notification("third"));
+        assertThat(saved.getId()).isGreaterThan(second.getId());
+    }
+
+    @Test
+    void testInsertAllAndAcknowledge_KeepUnreadCountAndPage() {
+        Notification first = notification("first");
+        Notification second = notification("second");
+        Notification third = notification("third");
+        Notification read = notification("read");
+        read.setAcknowledged(true);
+        entityManager.flush();
+
+        notificationBatchRepository.insertAll(List.of(first, second, third, read));
+        assertThat(userRepository.findUnreadNotificationCountById(user.getId())).contains(3L);
+
+        assertThat(notificationRepository.findUnreadPage(user.getId(), Long.MAX_VALUE, Limit.of(2)))
+                .extracting(Notification::getNotificationBody).containsExactly("third", "second");
+        assertThat(notificationRepository.findUnreadPage(user.getId(), second.getId(), Limit.of(2)))
+                .extracting(Notification::getNotificationBody).containsExactly("first");
+
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(second.getId()))).isEqualTo(1);
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(second.getId()))).isZero(); // counted once
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(read.getId()))).isZero();
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(Long.MAX_VALUE))).isZero();
+        entityManager.clear();
+
+        assertThat(userRepository.findUnreadNotificationCountById(user.getId())).contains(2L);
+        assertThat(notificationRepository.findUnreadPage(user.getId(), Long.MAX_VALUE, Limit.of(10)))
+                .extracting(Notification::getNotificationBody).containsExactly("third", "first");
+    }
+
+    @Test
+    void testAcknowledgeAllAndUpTo_OnlyTheUsersUnreadOnes() {
+        ApplicationUser other = userRepository.save(ApplicationUser.builder()
+                .username("other")
+                .password("testpassword")
+                .fullName("testname")
+                .email("other@email.com")
+                .phoneNumber("0987654321")
+                .build());
+        Notification first = notification("first");
+        Notification second = notification("second");
+        Notification third = notification("third");
+        Notification fourth = notification("fourth");
+        Notification others = notification("other's");
+        others.setAssociatedUser(other);
+        entityManager.flush();
+        notificationBatchRepository.insertAll(List.of(first, second, third, fourth, others));
+
+        // the other user's notification is not acknowledged, and the second is counted once
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(second.getId(), others.getId()))).isEqualTo(1);
+        assertThat(notificationRepository.acknowledgeAll(user.getId(), List.of(second.getId()))).isZero();
+        assertThat(notificationRepository.acknowledgeUpTo(user.getId(), third.getId())).isEqualTo(2);
+        assertThat(notificationRepository.acknowledgeUpTo(other.getId(), first.getId())).isZero();
+        entityManager.clear();
+
+        assertThat(userRepository.findUnreadNotificationCountById(user.getId())).contains(1L);
+        assertThat(userRepository.findUnreadNotificationCountById(other.getId())).contains(1L);
+        assertThat(notificationRepository.findUnreadPage(user.getId(), Long.MAX_VALUE, Limit.of(10)))
+                .extracting(Notification::getNotificationBody).containsExactly("fourth");
+        assertThat(notificationRepository.findById(others.getId()).orElseThrow().isAcknowledged()).isFalse();
+    }
+}
@@ -2,10 +2,16 @@ package com.vision.testing.repo;
 
 import com.vision.middleware.Application;
 import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.MediaPost;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.baseentities.VotableEntity;
+import com.vision.middleware.dto.PostDTO;
 import com.vision.middleware.repo.PostRepository;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import com.vision.middleware.repo.searchspec.PostIndexRow;
+import com.vision.middleware.repo.searchspec.PostSearchHit;
+import com.vision.middleware.utils.HotScoreUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,17 +20,23 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 
 @Testcontainers
 @SpringBootTest(classes = Application.class)
@@ -393,4 +405,203 @@ public class PostRepositoryTest {
                 .datePosted(createdAt)
                 .build());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testFindPostSliceWithFilters_WalksAllPostsWithoutDuplicates() {
+        // Create posts, some sharing the same date so the id tie-breaker matters
+        Date now = new Date();
+        for (int i = 0; i < 7; i++) {
+            createPost("Keyset Post " + i, testUser, new Date(now.getTime() - (i / 2) * 1000L));
+        }
+
+        // Walk the listing three posts at a time
+        List<Long> seen = new ArrayList<>();
+        PostCursor cursor = null;
+        Slice<Post> slice;
+        do {
+            slice = postRepository.findPostSliceWithFilters(null, PostCursor.SortKey.DATE, cursor, 3, null, null);
+            slice.getContent().forEach(post -> seen.add(post.getId()));
+            if (slice.hasNext()) {
+                cursor = PostCursor.fromPost(slice.getContent().get(slice.getContent().size() - 1), PostCursor.SortKey.DATE);
+            }
+        } while (slice.hasNext());
+
+        // Assertions
+        assertThat(seen).hasSize(7).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void testFindPostSliceWithFilters_PopularityOrder() {
+        // Create posts with different like counts
+        Post post1 = createPost("Least Liked", testUser);
+        Post post2 = createPost("Most Liked", testUser);
+        post2.setLikeCount(10);
+        postRepository.save(post2);
+
+        // Retrieve the first post by popularity
+        Slice<Post> slice = postRepository.findPostSliceWithFilters(testUser, PostCursor.SortKey.POPULARITY, null, 1, null, null);
+
+        // Assertions
+        assertThat(slice.getContent()).hasSize(1);
+        assertThat(slice.getContent().get(0).getId()).isEqualTo(post2.getId());
+        assertThat(slice.hasNext()).isTrue();
+
+        // Retrieve the next post after the cursor
+        PostCursor cursor = PostCursor.fromPost(slice.getContent().get(0), PostCursor.SortKey.POPULARITY);
+        Slice<Post> next = postRepository.findPostSliceWithFilters(testUser, PostCursor.SortKey.POPULARITY, cursor, 1, null, null);
+
+        assertThat(next.getContent().get(0).getId()).isEqualTo(post1.getId());
+        assertThat(next.hasNext()).isFalse();
+    }
+
+    @Test
+    void testFindPostSliceWithFilters_ActiveOrder() {
+        // The older post was replied to last, so it is the most active
+        Date now = new Date();
+        Post older = createPost("older post", testUser, new Date(now.getTime() - 60_000));
+        Post newer = createPost("newer post", testUser, now);
+        postRepository.addReplyActivity(older.getId(), 1, new Date(now.getTime() + 1000));
+
+        Slice<Post> slice = postRepository.findPostSliceWithFilters(testUser, PostCursor.SortKey.ACTIVE, null, 1, null, null);
+
+        assertThat(slice.getContent()).extracting(Post::getId).containsExactly(older.getId());
+        assertThat(slice.hasNext()).isTrue();
+
+        // Resume after the last activity, not the date posted
+        PostCursor cursor = PostCursor.decode(
+                PostCursor.fromPost(slice.getContent().get(0), PostCursor.SortKey.ACTIVE).encode(), PostCursor.SortKey.ACTIVE);
+        Slice<Post> next = postRepository.findPostSliceWithFilters(testUser, PostCursor.SortKey.ACTIVE, cursor, 1, null, null);
+
+        assertThat(next.getContent()).extracting(Post::getId).containsExactly(newer.getId());
+        assertThat(next.hasNext()).isFalse();
+    }
+
+    @Test
+    void testDecayHotScores_OnlyTouchesRecentPosts() {
+        Date now = new Date();
+        long hour = 3_600_000L;
+        Date windowStart = new Date(now.getTime() - HotScoreUtility.ACTIVE_WINDOW_HOURS * hour);
+        Date sweepStart = new Date(windowStart.getTime() - 24 * hour);
+
+        Post fresh = postRepository.save(Post.builder().text("fresh").postedBy(testUser)
+                .datePosted(new Date(now.getTime() - 5 * hour)).likeCount(10).hotScore(99).build());
+        Post leftWindow = postRepository.save(Post.builder().text("left window").postedBy(testUser)
+                .datePosted(new Date(windowStart.getTime() - hour)).likeCount(10).hotScore(99).build());
+        Post ancient = postRepository.save(Post.builder().text("ancient").postedBy(testUser)
+                .datePosted(new Date(sweepStart.getTime() - hour)).likeCount(10).hotScore(99).build());
+
+        int updated = postRepository.decayHotScores(now, windowStart, sweepStart,
+                HotScoreUtility.GRAVITY, HotScoreUtility.AGE_OFFSET_HOURS);
+
+        assertThat(updated).isEqualTo(2);
+        assertThat(postRepository.findById(fresh.getId()).get().getHotScore())
+                .isCloseTo(HotScoreUtility.compute(10, fresh.getDatePosted(), now), within(1e-6));
+        assertThat(postRepository.findById(leftWindow.getId()).get().getHotScore()).isZero();
+        assertThat(postRepository.findById(ancient.getId()).get().getHotScore()).isEqualTo(99); // outside the sweep
+    }
+
+    @Test
+    void testAddReplyActivity_CountsRepliesAndOrdersByActivity() {
+        Date now = new Date();
+        Post older = createPost("older post", testUser, new Date(now.getTime() - 60_000));
+        Post newer = createPost("newer post", testUser, now);
+        assertThat(older.getLastActivityAt()).isEqualTo(older.getDatePosted());
+
+        Date replied = new Date(now.getTime() + 1000);
+        assertThat(postRepository.addReplyActivity(older.getId(), 1, replied)).isEqualTo(1);
+        postRepository.addReplyActivity(older.getId(), 1, new Date(now.getTime() - 30_000)); // older reply
+        postRepository.addReplyActivity(older.getId(), -1, null);
+
+        // saving a post loaded before the replies leaves their count alone
+        older.setTitle("edited");
+        postRepository.save(older);
+
+        Post stored = postRepository.findById(older.getId()).orElseThrow();
+        assertThat(stored.getReplyCount()).isEqualTo(1);
+        assertThat(stored.getLastActivityAt()).hasSameTimeAs(replied);
+        assertThat(stored.getTitle()).isEqualTo("edited");
+
+        Page<Post> active = postRepository.findAllPostsWithFilters(
+                PageRequest.of(0, 10, Sort.by(Sort.Order.desc("lastActivityAt"), Sort.Order.desc("id"))), null, null);
+        assertThat(active.getContent()).extracting(Post::getId).containsExactly(older.getId(), newer.getId());
+    }
+
+    @Test
+    void testFindPostDTOsWithFilters_ProjectsAuthorAndMedia() {
+        Date now = new Date();
+        createPost("text post", testUser, new Date(now.getTime() - 1000));
+        postRepository.save(MediaPost.builder()
+                .text("media post")
+                .postedBy(testUser)
+                .datePosted(now)
+                .mediaFileName("image.png")
+                .build());
+
+        Page<PostDTO> page = postRepository.findPostDTOsWithFilters(
+                testUser, PageRequest.of(0, 1, Sort.by(Sort.Order.desc("datePosted"))), null, null);
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(page.getContent()).hasSize(1);
+        PostDTO first = page.getContent().get(0);
+        assertThat(first.getText()).isEqualTo("media post");
+        assertThat(first.getMediaFileName()).isEqualTo("image.png");
+        assertThat(first.getPostedBy().getUserId()).isEqualTo(testUser.getId());
+        assertThat(first.getPostedBy().getUsername()).isEqualTo(testUser.getUsername());
+        assertThat(first.getReplyCount()).isZero();
+        assertThat(first.getLastActivityAt()).hasSameTimeAs(now);
+
+        Page<PostDTO> second = postRepository.findPostDTOsWithFilters(
+                null, PageRequest.of(1, 1, Sort.by(Sort.Order.desc("datePosted"))), null, null);
+        assertThat(second.getContent().get(0).getText()).isEqualTo("text post");
+        assertThat(second.getContent().get(0).getMediaFileName()).isNull();
+    }
+
+    @Test
+    void testSearchFullText_RanksStemsAndPaginates() {
+        Date min = new Date(0);
+        Date max = new Date(253402300799000L);
+        Post titleMatch = postRepository.save(Post.builder().title("Running shoes").text("a review")
+                .postedBy(testUser).datePosted(new Date()).build());
+        Post textMatch = postRepository.save(Post.builder().title("Weekend").text("we went for a run in the park")
+                .postedBy(testUser).datePosted(new Date()).build());
+        createPost("nothing relevant here", testUser);
+
+        // "runs" is stemmed, so it matches both "running" and "run"; title matches rank higher.
+        List<PostSearchHit> firstPage = postRepository.searchFullText("runs", -1, min, max, Float.MAX_VALUE, Long.MAX_VALUE, 1);
+        assertThat(firstPage).extracting(PostSearchHit::getPostId).containsExactly(titleMatch.getId());
+        assertThat(firstPage.get(0).getSnippet()).contains("<b>Running</b>");
+        assertThat(firstPage.get(0).getUsername()).isEqualTo(testUser.getUsername());
+
+        PostSearchHit last = firstPage.get(0);
+        List<PostSearchHit> secondPage = postRepository.searchFullText("runs", -1, min, max, last.getRank(), last.getPostId(), 10);
+        assertThat(secondPage).extracting(PostSearchHit::getPostId).containsExactly(textMatch.getId());
+
+        assertThat(postRepository.searchFullText("runs", testUser.getId() + 1, min, max, Float.MAX_VALUE, Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    @Transactional // the stream reads from an open cursor
+    void testStreamAllForIndex_InIdOrder() {
+        Post second = createPost("second post", testUser);
+        Post first = createPost("first post", testUser);
+
+        try (Stream<PostIndexRow> rows = postRepository.streamAllForIndex()) {
+            List<PostIndexRow> all = rows.toList();
+
+            assertThat(all).extracting(PostIndexRow::getId).containsExactly(second.getId(), first.getId());
+            assertThat(all.get(0).getAuthorId()).isEqualTo(testUser.getId());
+            assertThat(all.get(0).getText()).isEqualTo("second post");
+        }
+    }
+
+    @Test
+    void testFindAllForIndexByIdIn_SkipsMissingPosts() {
+        Post first = createPost("first post", testUser);
+        Post second = createPost("second post", testUser);
+
+        List<PostIndexRow> rows = postRepository.findAllForIndexByIdIn(List.of(second.getId(), first.getId(), Long.MAX_VALUE));
+
+        assertThat(rows).extracting(PostIndexRow::getId).containsExactly(first.getId(), second.getId());
+        assertThat(rows.get(1).getText()).isEqualTo("second post");
+    }
+}
@@ -0,0 +1,148 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.service.PostgresClusterTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class PostgresClusterTransportTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    // two nodes sharing the database
+    private PostgresClusterTransport sender;
+
+    private PostgresClusterTransport receiver;
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        sender = new PostgresClusterTransport(dataSource);
+        receiver = new PostgresClusterTransport(dataSource);
+        receiver.subscribe("cluster_test", received::add);
+
+        // LISTEN is issued by the listener thread, so wait until messages arrive
+        String ready = null;
+        for (int i = 0; i < 50 && ready == null; i++) {
+            sender.publish("cluster_test", "ready");
+            ready = received.poll(200, TimeUnit.MILLISECONDS);
+        }
+        assertThat(ready).isEqualTo("ready");
+        Thread.sleep(200);
+        received.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testMessagesDeliveredInOrder() throws InterruptedException {
+        sender.publish("cluster_test", "first");
+        sender.publish("cluster_test", "second:with:colons");
+        sender.publish("cluster_other", "not subscribed");
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("second:with:colons");
+        assertThat(received.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testLongMessageSentInChunks() throws InterruptedException {
+        // well over the 8000 byte limit of a notification, with multibyte characters
+        String payload = "é€".repeat(3 * PostgresClusterTransport.MAX_CHUNK_CHARS) + "end";
+
+        sender.publish("cluster_test", payload);
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(payload);
+    }
+
+    @Test
+    public void testChunkNeverSplitsSurrogatePair() throws InterruptedException {
+        // an emoji whose two chars would fall on either side of the first chunk boundary
+        String payload = "a".repeat(PostgresClusterTransport.MAX_CHUNK_CHARS - 1) + "\uD83D\uDE00" + "end";
+
+        sender.publish("cluster_test", payload);
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(payload);
+    }
+
+    @Test
+    public void testPublishTakesNoConnectionOnCallerThread() throws InterruptedException {
+        List<String> connectingThreads = new CopyOnWriteArrayList<>();
+        PostgresClusterTransport recorded = new PostgresClusterTransport(new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                connectingThreads.add(Thread.currentThread().getName());
+                return super.getConnection();
+            }
+        });
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                recorded.publish("cluster_test", "message " + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("message " + i);
+            }
+        } finally {
+            recorded.close();
+        }
+
+        // one connection, held by the sender thread for every message
+        assertThat(connectingThreads).containsExactly("cluster-sender");
+    }
+
+    @Test
+    public void testMessagesQueuedBeforeCloseStillSent() throws InterruptedException {
+        PostgresClusterTransport closing = new PostgresClusterTransport(dataSource);
+        closing.publish("cluster_test", "before close");
+        closing.close();
+        closing.publish("cluster_test", "after close");
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("before close");
+        assertThat(received.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+}
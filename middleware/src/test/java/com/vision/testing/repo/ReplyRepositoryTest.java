@@ -7,17 +7,22 @@ import com.vision.middleware.domain.Reply;
 import com.vision.middleware.repo.PostRepository;
 import com.vision.middleware.repo.ReplyRepository;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import javax.sql.DataSource;
 import java.util.List;
 import java.util.Optional;
 
@@ -52,6 +57,12 @@ public class ReplyRepositoryTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
     private Post post;
     private ApplicationUser author;
 
@@ -105,6 +116,79 @@ public class ReplyRepositoryTest {
         assertThat(replies.get(1).getText()).isEqualTo("Reply 2");
     }
 
+    @Test
+    void testFindCommentTreeRows() {
+        Reply top = replyRepository.save(Reply.builder()
+                .post(post)
+                .author(author)
+                .text("Top")
+                .build());
+        Reply child = replyRepository.save(Reply.builder()
+                .post(post)
+                .author(author)
+                .text("Child")
+                .parentReply(top)
+                .build());
+
+        List<ReplyTreeRow> rows = replyRepository.findCommentTreeRows(post.getId());
+
+        assertThat(rows).hasSize(2);
+        ReplyTreeRow childRow = rows.stream().filter(r -> r.getId().equals(child.getId())).findFirst().orElseThrow();
+        assertThat(childRow.getParentId()).isEqualTo(top.getId());
+        assertThat(childRow.getText()).isEqualTo("Child");
+        assertThat(childRow.getUsername()).isEqualTo("testuser");
+        assertThat(childRow.getDeleted()).isFalse();
+        assertThat(rows).filteredOn(r -> r.getId().equals(top.getId())).singleElement()
+                .satisfies(r -> assertThat(r.getParentId()).isNull());
+    }
+
+    private Reply saveReply(String text, Reply parent) {
+        return replyRepository.save(Reply.builder()
+                .post(post)
+                .author(author)
+                .text(text)
+                .parentReply(parent)
+                .build());
+    }
+
+    @Test
+    void testPathsAndSubtreeRows() {
+        Reply top = saveReply("Top", null);
+        Reply child = saveReply("Child", top);
+        Reply grandchild = saveReply("Grandchild", child);
+        Reply otherTop = saveReply("Other top", null);
+        saveReply("Other child", otherTop);
+
+        assertThat(top.getPath()).isEqualTo("/");
+        assertThat(child.getPath()).isEqualTo("/" + top.getId() + "/");
+        assertThat(grandchild.getPath()).isEqualTo("/" + top.getId() + "/" + child.getId() + "/");
+        assertThat(grandchild.getDepth()).isEqualTo(2);
+
+        assertThat(replyRepository.findSubtreeRows(post.getId(), top.getId()))
+                .extracting(ReplyTreeRow::getId).containsExactlyInAnyOrder(child.getId(), grandchild.getId());
+        assertThat(replyRepository.findSubtreeRows(post.getId(), grandchild.getId())).isEmpty();
+        assertThat(replyRepository.findSubtreeRows(post.getId() + 1, top.getId())).isEmpty();
+        assertThat(replyRepository.findMaxDepthUnder(top.getChildPath())).isEqualTo(2);
+        assertThat(replyRepository.findMaxDepthUnder(grandchild.getChildPath())).isEqualTo(-1);
+    }
+
+    @Test
+    void testMovePaths() {
+        Reply top = saveReply("Top", null);
+        Reply child = saveReply("Child", top);
+        Reply grandchild = saveReply("Grandchild", child);
+        Reply otherTop = saveReply("Other top", null);
+
+        // child moves under otherTop, keeping its depth
+        int moved = replyRepository.movePaths(child.getChildPath(), otherTop.getChildPath() + child.getId() + "/", 0);
+
+        assertThat(moved).isEqualTo(1);
+        Reply reloaded = replyRepository.findById(grandchild.getId()).orElseThrow();
+        assertThat(reloaded.getPath()).isEqualTo("/" + otherTop.getId() + "/" + child.getId() + "/");
+        assertThat(reloaded.getDepth()).isEqualTo(2);
+        assertThat(replyRepository.findById(top.getId()).orElseThrow().getPath()).isEqualTo("/");
+    }
+
     @Test
     void testFindById() {
         // Create and save a reply
@@ -124,4 +208,27 @@ public class ReplyRepositoryTest {
         assertThat(foundReply).isPresent();
         assertThat(foundReply.get().getText()).isEqualTo("Reply");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReplyPathsScript_FillsInUnfilledRepliesOnce() {
+        Reply top = saveReply("Top", null);
+        Reply child = saveReply("Child", top);
+        Reply grandchild = saveReply("Grandchild", child);
+        ResourceDatabasePopulator script = new ResourceDatabasePopulator(new ClassPathResource("db/reply-paths.sql"));
+
+        // stored before the columns existed: the top-level defaults
+        jdbcTemplate.update("UPDATE reply SET path = '/', depth = 0 WHERE id IN (?, ?)", child.getId(), grandchild.getId());
+        script.execute(dataSource);
+
+        Reply reloaded = replyRepository.findById(grandchild.getId()).orElseThrow();
+        assertThat(reloaded.getPath()).isEqualTo("/" + top.getId() + "/" + child.getId() + "/");
+        assertThat(reloaded.getDepth()).isEqualTo(2);
+        assertThat(replyRepository.findById(child.getId()).orElseThrow().getDepth()).isEqualTo(1);
+
+        // with no unfilled replies left, later startups do not walk the replies again
+        jdbcTemplate.update("UPDATE reply SET path = '/elsewhere/' WHERE id = ?", grandchild.getId());
+        script.execute(dataSource);
+
+        assertThat(replyRepository.findById(grandchild.getId()).orElseThrow().getPath()).isEqualTo("/elsewhere/");
+    }
+}
@@ -0,0 +1,142 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.relations.UserFollows;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.TimelineEntryRepository;
+import com.vision.middleware.repo.UserFollowsRepository;
+import com.vision.middleware.repo.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // native inserts need a transaction; rolled back after each test.
+public class TimelineEntryRepositoryTest {
+
+    private static final Date END_OF_TIME = new Date(253402300799000L); // 9999-12-31
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private TimelineEntryRepository timelineEntryRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserFollowsRepository followsRepository;
+
+    private ApplicationUser author;
+    private ApplicationUser follower;
+
+    @BeforeEach
+    void setUp() {
+        author = createUser("timelineauthor", "1111111111");
+        follower = createUser("timelinefollower", "2222222222");
+        followsRepository.save(UserFollows.builder().follower(follower).followee(author).build());
+    }
+
+    @Test
+    void testFanOutDeliversOncePerFollower() {
+        Post post = createPost(author, 1000);
+
+        int delivered = timelineEntryRepository.fanOutToFollowers(post.getId(), author.getId(), post.getDatePosted());
+        int redelivered = timelineEntryRepository.fanOutToFollowers(post.getId(), author.getId(), post.getDatePosted());
+
+        assertThat(delivered).isEqualTo(1);
+        assertThat(redelivered).isEqualTo(0); // already delivered, conflict is ignored
+    }
+
+    @Test
+    void testTimelineKeysetAndUnfollowCleanup() {
+        Post older = createPost(author, 1000);
+        Post newer = createPost(author, 2000);
+        timelineEntryRepository.backfillFromAuthor(follower.getId(), author.getId(), 50);
+
+        List<Post> firstSlice = timelineEntryRepository.findTimelinePostsBefore(
+                follower.getId(), END_OF_TIME, Long.MAX_VALUE, Limit.of(1));
+        List<Post> secondSlice = timelineEntryRepository.findTimelinePostsBefore(
+                follower.getId(), newer.getDatePosted(), newer.getId(), Limit.of(1));
+
+        assertThat(firstSlice).extracting(Post::getId).containsExactly(newer.getId());
+        assertThat(secondSlice).extracting(Post::getId).containsExactly(older.getId());
+
+        timelineEntryRepository.deleteByOwnerIdAndAuthorId(follower.getId(), author.getId());
+
+        assertThat(timelineEntryRepository.findTimelinePostsBefore(
+                follower.getId(), END_OF_TIME, Long.MAX_VALUE, Limit.of(10))).isEmpty();
+    }
+
+    @Test
+    void testBackfillFromFolloweesCopiesOwnAndFollowedPosts() {
+        ApplicationUser popular = createUser("timelinepopular", "3333333333");
+        followsRepository.save(UserFollows.builder().follower(follower).followee(popular).build());
+        userRepository.adjustFollowerCountById(popular.getId(), 101);
+        Post older = createPost(author, 1000);
+        Post newer = createPost(author, 2000);
+        Post own = createPost(follower, 1500);
+        createPost(popular, 3000); // merged in on read instead
+        createPost(createUser("timelinestranger", "4444444444"), 4000);
+
+        int delivered = timelineEntryRepository.backfillFromFollowees(follower.getId(), 100, 1);
+        int redelivered = timelineEntryRepository.backfillFromFollowees(follower.getId(), 100, 50);
+
+        assertThat(delivered).isEqualTo(2); // one post per author
+        assertThat(redelivered).isEqualTo(1);
+        assertThat(timelineEntryRepository.findTimelinePostsBefore(
+                follower.getId(), END_OF_TIME, Long.MAX_VALUE, Limit.of(10)))
+                .extracting(Post::getId).containsExactly(newer.getId(), own.getId(), older.getId());
+    }
+
+    private ApplicationUser createUser(String username, String phoneNumber) {
+        return userRepository.save(ApplicationUser.builder()
+                .username(username)
+                .password("testpassword")
+                .fullName("hello world")
+                .email(username + "@example.com")
+                .phoneNumber(phoneNumber)
+                .build());
+    }
+
+    private Post createPost(ApplicationUser user, long millis) {
+        return postRepository.save(Post.builder()
+                .text("Timeline post " + millis)
+                .postedBy(user)
+                .datePosted(new Date(millis))
+                .build());
+    }
+}
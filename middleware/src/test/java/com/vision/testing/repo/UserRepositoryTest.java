@@ -0,0 +1,149 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.relations.UserFollows;
+import com.vision.middleware.repo.UserFollowsRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.UserAutocompleteRow;
+import com.vision.middleware.repo.searchspec.UserSearchHit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // rolled back after each test.
+public class UserRepositoryTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserFollowsRepository followsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private ApplicationUser johnDoe;
+    private ApplicationUser johnny;
+    private ApplicationUser jane;
+
+    @BeforeEach
+    void setUp() {
+        johnDoe = createUser("jdoe", "Johnathan Doe", "1111111111");
+        johnny = createUser("johnny_b", "Johnny Bravo", "2222222222");
+        jane = createUser("jane", "Jane Smith", "3333333333");
+        userRepository.flush(); // the search reads the generated column
+    }
+
+    @Test
+    void testSearchByName_ToleratesTyposAndRanksBestMatchFirst() {
+        // "johny" is a typo: closest to "johnny", then to "johnathan" (full name only)
+        List<UserSearchHit> hits = userRepository.searchByName("johny", "%johny%", Float.MAX_VALUE, Long.MAX_VALUE, 10);
+
+        assertThat(hits).extracting(UserSearchHit::getUserId).containsExactly(johnny.getId(), johnDoe.getId());
+        assertThat(hits.get(0).getUsername()).isEqualTo("johnny_b");
+    }
+
+    @Test
+    void testSearchByName_MatchesFullNameAndPagesOnRank() {
+        List<UserSearchHit> firstPage = userRepository.searchByName("john", "%john%", Float.MAX_VALUE, Long.MAX_VALUE, 1);
+        UserSearchHit last = firstPage.get(0);
+        List<UserSearchHit> secondPage = userRepository.searchByName("john", "%john%", last.getRank(), last.getUserId(), 10);
+
+        // "Johnathan" only appears in the full name; jane does not match at all.
+        assertThat(firstPage).extracting(UserSearchHit::getUserId).containsExactly(johnny.getId());
+        assertThat(secondPage).extracting(UserSearchHit::getUserId).containsExactly(johnDoe.getId());
+    }
+
+    @Test
+    void testSearchByName_ShortQueryMatchesUsernamePrefix() {
+        List<UserSearchHit> hits = userRepository.searchByName("ja", "ja%", Float.MAX_VALUE, Long.MAX_VALUE, 10);
+
+        assertThat(hits).extracting(UserSearchHit::getUserId).containsExactly(jane.getId());
+    }
+
+    @Test
+    void testFindAutocompleteRowById() {
+        Optional<UserAutocompleteRow> row = userRepository.findAutocompleteRowById(johnny.getId());
+
+        assertThat(row).isPresent();
+        assertThat(row.get().getUsername()).isEqualTo("johnny_b");
+        assertThat(row.get().getFollowerCount()).isZero();
+        assertThat(userRepository.findAutocompleteRowById(Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    void testFollowCountsScript_CountsFollowsStoredBeforeTheCountsOnce() {
+        followsRepository.save(UserFollows.builder().follower(johnDoe).followee(jane).build());
+        followsRepository.save(UserFollows.builder().follower(johnny).followee(jane).build());
+        followsRepository.flush();
+        ResourceDatabasePopulator script = new ResourceDatabasePopulator(new ClassPathResource("db/follow-counts.sql"));
+
+        // stored before the counts were kept: left at 0, or below 0 once an older follow was removed
+        jdbcTemplate.update("UPDATE application_users SET follower_count = 0, following_count = 0");
+        jdbcTemplate.update("UPDATE application_users SET following_count = -1 WHERE user_id = ?", jane.getId());
+        script.execute(dataSource);
+
+        assertThat(counts(jane)).containsExactly(2L, 0L);
+        assertThat(counts(johnDoe)).containsExactly(0L, 1L);
+        assertThat(counts(johnny)).containsExactly(0L, 1L);
+
+        // with every follow counted, later startups do not count again
+        jdbcTemplate.update("UPDATE application_users SET follower_count = 5 WHERE user_id = ?", jane.getId());
+        script.execute(dataSource);
+
+        assertThat(counts(jane)).containsExactly(5L, 0L);
+    }
+
+    private List<Long> counts(ApplicationUser user) {
+        return jdbcTemplate.queryForObject("SELECT follower_count, following_count FROM application_users WHERE user_id = ?",
+                (rs, row) -> List.of(rs.getLong(1), rs.getLong(2)), user.getId());
+    }
+
+    private ApplicationUser createUser(String username, String fullName, String phoneNumber) {
+        return userRepository.save(ApplicationUser.builder()
+                .username(username)
+                .password("testpassword")
+                .fullName(fullName)
+                .email(username + "@example.com")
+                .phoneNumber(phoneNumber)
+                .build());
+    }
+}
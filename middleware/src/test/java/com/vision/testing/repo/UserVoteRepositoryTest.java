@@ -0,0 +1,209 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.Reply;
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.searchspec.VotableVoteRow;
+import com.vision.middleware.repo.searchspec.VoteOutcome;
+import com.vision.middleware.utils.HotScoreUtility;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // rolled back after each test.
+public class UserVoteRepositoryTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private UserVoteRepository userVoteRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private ReplyRepository replyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ApplicationUser voter;
+    private Post post;
+    private Date now;
+
+    @BeforeEach
+    void setUp() {
+        voter = userRepository.save(ApplicationUser.builder()
+                .username("voter")
+                .password("testpassword")
+                .fullName("testname")
+                .email("voter@email.com")
+                .phoneNumber("1234567890")
+                .build());
+        now = new Date();
+        post = postRepository.save(Post.builder().postedBy(voter).title("post").datePosted(now).build());
+        entityManager.flush();
+    }
+
+    private VoteOutcome cast(long votableId, VotableType type, UserVote.VoteType voteType, boolean applyCounts) {
+        return userVoteRepository.castVote(voter.getId(), votableId, type.name(), voteType.name(), applyCounts,
+                now, windowStart(), HotScoreUtility.AGE_OFFSET_HOURS, HotScoreUtility.GRAVITY);
+    }
+
+    private VoteOutcome remove(long votableId, VotableType type, boolean applyCounts) {
+        return userVoteRepository.removeVote(voter.getId(), votableId, type.name(), applyCounts,
+                now, windowStart(), HotScoreUtility.AGE_OFFSET_HOURS, HotScoreUtility.GRAVITY);
+    }
+
+    private Date windowStart() {
+        return new Date(now.getTime() - TimeUnit.HOURS.toMillis(HotScoreUtility.ACTIVE_WINDOW_HOURS));
+    }
+
+    private UserVote.VoteType storedVote(long votableId) {
+        entityManager.clear();
+        return userVoteRepository.findAll().stream()
+                .filter(vote -> vote.getVotable().getId() == votableId)
+                .map(UserVote::getVoteType)
+                .findFirst().orElse(null);
+    }
+
+    @Test
+    void testCastVote_InsertFlipAndDuplicate() {
+        VoteOutcome first = cast(post.getId(), VotableType.POST, UserVote.VoteType.LIKE, true);
+        assertThat(first.getFound()).isTrue();
+        assertThat(first.getChanged()).isTrue();
+        assertThat(first.getPreviousVoteType()).isNull();
+        assertThat(first.getLikeCount()).isEqualTo(1);
+        assertThat(first.getDislikeCount()).isZero();
+        assertThat(first.getPostId()).isEqualTo(post.getId());
+        assertThat(first.getAuthorId()).isEqualTo(voter.getId());
+        assertThat(storedVote(post.getId())).isEqualTo(UserVote.VoteType.LIKE);
+
+        VoteOutcome flipped = cast(post.getId(), VotableType.POST, UserVote.VoteType.DISLIKE, true);
+        assertThat(flipped.getChanged()).isTrue();
+        assertThat(flipped.getPreviousVoteType()).isEqualTo("LIKE");
+        assertThat(flipped.getLikeCount()).isZero();
+        assertThat(flipped.getDislikeCount()).isEqualTo(1);
+        assertThat(storedVote(post.getId())).isEqualTo(UserVote.VoteType.DISLIKE);
+
+        VoteOutcome duplicate = cast(post.getId(), VotableType.POST, UserVote.VoteType.DISLIKE, true);
+        assertThat(duplicate.getFound()).isTrue();
+        assertThat(duplicate.getChanged()).isFalse();
+        assertThat(duplicate.getDislikeCount()).isEqualTo(1);
+
+        Post stored = postRepository.findById(post.getId()).orElseThrow();
+        assertThat(stored.getLikeCount()).isZero();
+        assertThat(stored.getDislikeCount()).isEqualTo(1);
+        assertThat(stored.getVoteScore()).isEqualTo(-1);
+        assertThat(stored.getHotScore()).isLessThan(0);
+        assertThat(userVoteRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void testCastVote_WithoutApplyingCounts_LeavesCountsToCaller() {
+        Reply reply = replyRepository.save(Reply.builder().post(post).author(voter).text("reply").likeCount(4).build());
+        entityManager.flush();
+
+        VoteOutcome outcome = cast(reply.getId(), VotableType.REPLY, UserVote.VoteType.LIKE, false);
+
+        assertThat(outcome.getChanged()).isTrue();
+        assertThat(outcome.getLikeCount()).isEqualTo(4);
+        assertThat(outcome.getPostId()).isEqualTo(post.getId());
+        assertThat(outcome.getAuthorId()).isEqualTo(voter.getId());
+        entityManager.clear();
+        assertThat(replyRepository.findById(reply.getId()).orElseThrow().getLikeCount()).isEqualTo(4);
+        assertThat(storedVote(reply.getId())).isEqualTo(UserVote.VoteType.LIKE);
+    }
+
+    @Test
+    void testCastVote_WrongTypeOrMissing_NotFound() {
+        VoteOutcome wrongType = cast(post.getId(), VotableType.REPLY, UserVote.VoteType.LIKE, true);
+        VoteOutcome missing = cast(Long.MAX_VALUE, VotableType.POST, UserVote.VoteType.LIKE, true);
+
+        assertThat(wrongType.getFound()).isFalse();
+        assertThat(wrongType.getChanged()).isFalse();
+        assertThat(missing.getFound()).isFalse();
+        assertThat(userVoteRepository.count()).isZero();
+    }
+
+    @Test
+    void testRemoveVote_RemovesOnceAndRestoresCounts() {
+        cast(post.getId(), VotableType.POST, UserVote.VoteType.DISLIKE, true);
+
+        VoteOutcome removed = remove(post.getId(), VotableType.POST, true);
+        assertThat(removed.getFound()).isTrue();
+        assertThat(removed.getChanged()).isTrue();
+        assertThat(removed.getPreviousVoteType()).isEqualTo("DISLIKE");
+        assertThat(removed.getDislikeCount()).isZero();
+
+        VoteOutcome again = remove(post.getId(), VotableType.POST, true);
+        assertThat(again.getChanged()).isFalse();
+        assertThat(again.getPreviousVoteType()).isNull();
+
+        entityManager.clear();
+        Post stored = postRepository.findById(post.getId()).orElseThrow();
+        assertThat(stored.getDislikeCount()).isZero();
+        assertThat(stored.getVoteScore()).isZero();
+        assertThat(userVoteRepository.count()).isZero();
+    }
+
+    @Test
+    void testFindVoteTypesByUser_OnlyTheUsersVotes() {
+        Post other = postRepository.save(Post.builder().postedBy(voter).title("other").datePosted(now).build());
+        Reply reply = replyRepository.save(Reply.builder().post(post).author(voter).text("reply").build());
+        entityManager.flush();
+        cast(post.getId(), VotableType.POST, UserVote.VoteType.LIKE, false);
+        cast(other.getId(), VotableType.POST, UserVote.VoteType.DISLIKE, false);
+        cast(reply.getId(), VotableType.REPLY, UserVote.VoteType.LIKE, false);
+
+        List<VotableVoteRow> rows = userVoteRepository.findVoteTypesByUser(voter.getId());
+
+        assertThat(rows).extracting(VotableVoteRow::getVotableId, VotableVoteRow::getVotableType, VotableVoteRow::getVoteType)
+                .containsExactlyInAnyOrder(
+                        tuple(post.getId(), VotableType.POST, UserVote.VoteType.LIKE),
+                        tuple(other.getId(), VotableType.POST, UserVote.VoteType.DISLIKE),
+                        tuple(reply.getId(), VotableType.REPLY, UserVote.VoteType.LIKE));
+        assertThat(userVoteRepository.findVoteTypesByUser(voter.getId() + 1)).isEmpty();
+    }
+}
@@ -0,0 +1,112 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.Reply;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.VoteCounterRepository;
+import com.vision.middleware.repo.VoteCounterRepository.CounterDelta;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // rolled back after each test.
+public class VoteCounterRepositoryTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private VoteCounterRepository voteCounterRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private ReplyRepository replyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ApplicationUser author;
+
+    @BeforeEach
+    void setUp() {
+        author = userRepository.save(ApplicationUser.builder()
+                .username("voter")
+                .password("testpassword")
+                .fullName("testname")
+                .email("voter@email.com")
+                .phoneNumber("1234567890")
+                .build());
+    }
+
+    @Test
+    void testAddToCounts_IncrementsCountsAndRecomputesScores() {
+        Date now = new Date();
+        Post post = postRepository.save(Post.builder().postedBy(author).title("post")
+                .datePosted(now).likeCount(2).dislikeCount(1).build());
+        Reply reply = replyRepository.save(Reply.builder().post(post).author(author).text("reply").build());
+        Post old = postRepository.save(Post.builder().postedBy(author).title("old")
+                .datePosted(new Date(now.getTime() - 100 * 3_600_000L)).build());
+        entityManager.flush();
+
+        voteCounterRepository.addToCounts(List.of(
+                new CounterDelta(post.getId(), 3, 1),
+                new CounterDelta(reply.getId(), 0, 2),
+                new CounterDelta(old.getId(), 5, 0),
+                new CounterDelta(Long.MAX_VALUE, 1, 0) // no longer exists, ignored
+        ), now);
+        entityManager.clear();
+
+        Post updatedPost = postRepository.findById(post.getId()).orElseThrow();
+        assertThat(updatedPost.getLikeCount()).isEqualTo(5);
+        assertThat(updatedPost.getDislikeCount()).isEqualTo(2);
+        assertThat(updatedPost.getVoteScore()).isEqualTo(3);
+        assertThat(updatedPost.getHotScore()).isGreaterThan(0);
+
+        Reply updatedReply = replyRepository.findById(reply.getId()).orElseThrow();
+        assertThat(updatedReply.getDislikeCount()).isEqualTo(2);
+        assertThat(updatedReply.getVoteScore()).isEqualTo(-2);
+        assertThat(updatedReply.getHotScore()).isLessThan(0);
+
+        // outside the active window: counted, but no longer hot
+        Post updatedOld = postRepository.findById(old.getId()).orElseThrow();
+        assertThat(updatedOld.getLikeCount()).isEqualTo(5);
+        assertThat(updatedOld.getHotScore()).isZero();
+    }
+}
@@ -0,0 +1,164 @@
+package com.vision.testing.repo;
+
+import com.vision.middleware.Application;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.Reply;
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.VoteReconciliationRepository;
+import com.vision.middleware.repo.VoteReconciliationRepository.CountDrift;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@Testcontainers
+@SpringBootTest(classes = Application.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional // rolled back after each test.
+public class VoteReconciliationRepositoryTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:13")
+            .withDatabaseName("testdb")
+            .withUsername("username")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void postgresqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgresContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgresContainer::getUsername);
+        registry.add("spring.datasource.password", postgresContainer::getPassword);
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+    }
+
+    @Autowired
+    private VoteReconciliationRepository voteReconciliationRepository;
+
+    @Autowired
+    private UserVoteRepository userVoteRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private ReplyRepository replyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ApplicationUser author;
+
+    @BeforeEach
+    void setUp() {
+        author = userRepository.save(ApplicationUser.builder()
+                .username("voter")
+                .password("testpassword")
+                .fullName("testname")
+                .email("voter@email.com")
+                .phoneNumber("1234567890")
+                .build());
+    }
+
+    private void vote(ApplicationUser user, Post post, UserVote.VoteType voteType) {
+        userVoteRepository.save(UserVote.builder().user(user).votable(post)
+                .votableType(VotableType.POST).voteType(voteType).build());
+    }
+
+    @Test
+    void testFindDrift_OnlyDifferingVotablesInRange() {
+        Date now = new Date();
+        Post correct = postRepository.save(Post.builder().postedBy(author).title("correct").datePosted(now).likeCount(1).build());
+        Post drifted = postRepository.save(Post.builder().postedBy(author).title("drifted").datePosted(now)
+                .likeCount(5).dislikeCount(0).build());
+        Reply unvoted = replyRepository.save(Reply.builder().post(correct).author(author).text("reply").likeCount(2).build());
+        ApplicationUser other = userRepository.save(ApplicationUser.builder()
+                .username("other")
+                .password("testpassword")
+                .fullName("testname")
+                .email("other@email.com")
+                .phoneNumber("0987654321")
+                .build());
+        vote(author, correct, UserVote.VoteType.LIKE);
+        vote(author, drifted, UserVote.VoteType.LIKE);
+        vote(other, drifted, UserVote.VoteType.DISLIKE);
+        entityManager.flush();
+
+        long[] range = voteReconciliationRepository.findIdRange();
+        assertThat(range[0]).isLessThanOrEqualTo(correct.getId());
+        assertThat(range[1]).isGreaterThanOrEqualTo(unvoted.getId());
+
+        List<CountDrift> drift = voteReconciliationRepository.findDrift(range[0], range[1] + 1);
+        assertThat(drift).extracting(CountDrift::getVotableId, CountDrift::getLikeCount, CountDrift::getDislikeCount,
+                        CountDrift::getActualLikes, CountDrift::getActualDislikes)
+                .containsExactlyInAnyOrder(
+                        tuple(drifted.getId(), 5L, 0L, 1L, 1L),
+                        tuple(unvoted.getId(), 2L, 0L, 0L, 0L));
+
+        // the range end is exclusive
+        assertThat(voteReconciliationRepository.findDrift(drifted.getId(), unvoted.getId()))
+                .extracting(CountDrift::getVotableId).containsExactly(drifted.getId());
+    }
+
+    @Test
+    void testFindCounts_ReadsGivenVotablesWhetherOrNotTheyDiffer() {
+        Post post = postRepository.save(Post.builder().postedBy(author).title("post").datePosted(new Date()).likeCount(1).build());
+        vote(author, post, UserVote.VoteType.LIKE);
+        entityManager.flush();
+
+        List<CountDrift> counts = voteReconciliationRepository.findCounts(List.of(post.getId(), Long.MAX_VALUE));
+
+        assertThat(counts).extracting(CountDrift::getVotableId, CountDrift::getLikeCount, CountDrift::getActualLikes)
+                .containsExactly(tuple(post.getId(), 1L, 1L));
+    }
+
+    @Test
+    void testRunExclusively_SkipsWhileAnotherRunHoldsTheLock() throws Exception {
+        // other threads take connections of their own, like other nodes do
+        Callable<Boolean> otherNode = () -> voteReconciliationRepository.runExclusively(() -> { });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Boolean> whileRunning = new ArrayList<>();
+            boolean ran = voteReconciliationRepository.runExclusively(() -> {
+                try {
+                    whileRunning.add(executor.submit(otherNode).get());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertThat(ran).isTrue();
+            assertThat(whileRunning).containsExactly(false);
+            // released once the run ended
+            assertThat(executor.submit(otherNode).get()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
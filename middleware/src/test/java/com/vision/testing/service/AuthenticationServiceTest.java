@@ -8,6 +8,7 @@ import com.vision.middleware.repo.RoleRepository;
 import com.vision.middleware.repo.UserRepository;
 import com.vision.middleware.service.AuthenticationService;
 import com.vision.middleware.service.TokenService;
+import com.vision.middleware.service.UserAutocompleteIndex;
 import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -54,6 +55,9 @@ public class AuthenticationServiceTest {
     @Mock
     private TokenService tokenService;
 
+    @Mock
+    private UserAutocompleteIndex userAutocompleteIndex;
+
     private RegistrationDTO registrationDTO;
     private Role userRole;
 
@@ -105,6 +109,7 @@ public class AuthenticationServiceTest {
         assertThat(registeredUser.getPassword()).isEqualTo("encodedPassword");
         assertThat(registeredUser.getAuthorities().size()).isEqualTo(1);
         assertTrue(registeredUser.getAuthorities().contains(userRole));
+        verify(userAutocompleteIndex).put(savedUser);
     }
 
     @Test
@@ -0,0 +1,68 @@
+package com.vision.testing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.middleware.service.ClusterCacheInvalidator;
+import com.vision.middleware.service.ClusterRoutingTable;
+import com.vision.middleware.service.LocalClusterTransport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ClusterCacheInvalidatorTest {
+
+    private LocalClusterTransport transport;
+
+    private ClusterCacheInvalidator invalidatorA;
+
+    private ClusterCacheInvalidator invalidatorB;
+
+    @BeforeEach
+    void setUp() {
+        // two nodes sharing one transport
+        transport = new LocalClusterTransport();
+        ObjectMapper objectMapper = new ObjectMapper();
+        invalidatorA = new ClusterCacheInvalidator(transport, routingTable("a"), objectMapper);
+        invalidatorB = new ClusterCacheInvalidator(transport, routingTable("b"), objectMapper);
+        invalidatorA.start();
+        invalidatorB.start();
+    }
+
+    private static ClusterRoutingTable routingTable(String nodeId) {
+        ClusterRoutingTable table = new ClusterRoutingTable();
+        ReflectionTestUtils.setField(table, "configuredNodeId", nodeId);
+        return table;
+    }
+
+    @Test
+    public void testChangeHandledByTheOtherNodesOnly() {
+        List<List<Long>> receivedA = new ArrayList<>();
+        List<List<Long>> receivedB = new ArrayList<>();
+        List<List<Long>> otherName = new ArrayList<>();
+        invalidatorA.register("posts", receivedA::add);
+        invalidatorB.register("posts", receivedB::add);
+        invalidatorB.register("users", otherName::add);
+
+        invalidatorA.publish("posts", List.of(1L, Long.MAX_VALUE));
+        invalidatorA.publish("unknown", List.of(2L));
+
+        assertThat(receivedB).containsExactly(List.of(1L, Long.MAX_VALUE));
+        assertThat(receivedA).isEmpty();
+        assertThat(otherName).isEmpty();
+    }
+
+    @Test
+    public void testMalformedMessageIgnored() {
+        List<List<Long>> received = new ArrayList<>();
+        invalidatorB.register("posts", received::add);
+
+        transport.publish(ClusterCacheInvalidator.CHANNEL, "not json");
+        transport.publish(ClusterCacheInvalidator.CHANNEL, "{\"name\":\"posts\",\"ids\":[1]}"); // no origin
+
+        assertThat(received).isEmpty();
+    }
+}
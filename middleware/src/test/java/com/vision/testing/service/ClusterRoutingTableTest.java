@@ -0,0 +1,106 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.service.ClusterRoutingTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ClusterRoutingTableTest {
+
+    private ClusterRoutingTable routingTable;
+
+    @BeforeEach
+    void setUp() {
+        routingTable = new ClusterRoutingTable();
+    }
+
+    @Test
+    public void testNodeId() {
+        ReflectionTestUtils.setField(routingTable, "configuredNodeId", "Node-A.1");
+        assertThat(routingTable.getNodeId()).isEqualTo("node_a_1");
+
+        ClusterRoutingTable random = new ClusterRoutingTable();
+        assertThat(random.getNodeId()).matches("[a-z0-9_]+").isEqualTo(random.getNodeId());
+        assertThat(new ClusterRoutingTable().getNodeId()).isNotEqualTo(random.getNodeId());
+    }
+
+    @Test
+    public void testLocalRoutesCountSessions() {
+        String key = ClusterRoutingTable.userKey("1");
+
+        assertThat(routingTable.addLocal(key)).isTrue();
+        assertThat(routingTable.addLocal(key)).isFalse();
+        assertThat(routingTable.localKeys()).containsExactly(key);
+
+        assertThat(routingTable.removeLocal(key)).isFalse();
+        assertThat(routingTable.hasLocal(key)).isTrue();
+        assertThat(routingTable.removeLocal(key)).isTrue();
+        assertThat(routingTable.removeLocal(key)).isFalse();
+        assertThat(routingTable.localKeys()).isEmpty();
+    }
+
+    @Test
+    public void testRemoteRoutes() {
+        String user = ClusterRoutingTable.userKey("1");
+        String topic = ClusterRoutingTable.topicKey("/topic/conversations/5");
+
+        routingTable.added("a", List.of(user, topic), 1, 100);
+        routingTable.added("b", List.of(user), 1, 100);
+        assertThat(routingTable.nodesFor(user)).containsExactlyInAnyOrder("a", "b");
+        assertThat(routingTable.nodesFor(topic)).containsExactly("a");
+        assertThat(routingTable.nodesFor(ClusterRoutingTable.userKey("2"))).isEmpty();
+
+        routingTable.removed("a", List.of(user), 2, 100);
+        assertThat(routingTable.nodesFor(user)).containsExactly("b");
+
+        // a snapshot replaces all routes of the node
+        routingTable.replaced("a", List.of(user), 3, 100);
+        assertThat(routingTable.nodesFor(user)).containsExactlyInAnyOrder("a", "b");
+        assertThat(routingTable.nodesFor(topic)).isEmpty();
+
+        routingTable.left("a");
+        assertThat(routingTable.nodesFor(user)).containsExactly("b");
+        assertThat(routingTable.nodeCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExpire() {
+        String user = ClusterRoutingTable.userKey("1");
+        routingTable.added("a", List.of(user), 1, 100);
+        routingTable.added("b", List.of(user), 1, 100);
+        routingTable.replaced("b", List.of(user), 2, 200);
+
+        assertThat(routingTable.expire(150)).isEqualTo(1);
+        assertThat(routingTable.nodesFor(user)).containsExactly("b");
+        assertThat(routingTable.nodeCount()).isEqualTo(1);
+        assertThat(routingTable.expire(150)).isZero();
+    }
+
+    @Test
+    public void testVersionsTellWhenRoutesShouldBeAskedFor() {
+        String user = ClusterRoutingTable.userKey("1");
+        String topic = ClusterRoutingTable.topicKey("/topic/conversations/5");
+
+        // a node first heard of by an update, whose earlier routes are missing
+        assertThat(routingTable.added("a", List.of(user), 5, 100)).isTrue();
+        assertThat(routingTable.removed("a", List.of(user), 6, 100)).isFalse(); // already asked for
+        assertThat(routingTable.heartbeat("a", 6, 0, 100)).isTrue();
+
+        routingTable.replaced("a", List.of(topic), 6, 100);
+        assertThat(routingTable.heartbeat("a", 6, 1, 100)).isFalse();
+        assertThat(routingTable.added("a", List.of(user), 7, 100)).isFalse();
+        assertThat(routingTable.heartbeat("a", 7, 2, 100)).isFalse();
+
+        // version 8 was lost
+        assertThat(routingTable.removed("a", List.of(user), 9, 100)).isTrue();
+        assertThat(routingTable.heartbeat("a", 9, 1, 100)).isTrue();
+
+        // a heartbeat of a node not known
+        assertThat(routingTable.heartbeat("b", 1, 0, 100)).isTrue();
+        assertThat(routingTable.nodeCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,324 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.Reply;
+import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.searchspec.ReplyTreeCursor;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
+import com.vision.middleware.service.ClusterCacheInvalidator;
+import com.vision.middleware.service.CommentTreeCache;
+import com.vision.middleware.service.VoteCounterBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CommentTreeCacheTest {
+
+    @Mock
+    private ReplyRepository replyRepository;
+
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
+    @Mock
+    private ClusterCacheInvalidator clusterCacheInvalidator;
+
+    @InjectMocks
+    private CommentTreeCache commentTreeCache;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /**
+     * Row of a comment tree, as the repository would return it.
+     */
+    private record Row(Long getId, Long getParentId, String getText, Date getDatePosted, Long getLikeCount,
+                       Long getDislikeCount, Long getVoteScore, Boolean getDeleted, Long getUserId,
+                       String getUsername, String getDisplayName, String getProfilePictureFileName)
+            implements ReplyTreeRow {
+    }
+
+    private static ReplyTreeRow row(long id, Long parentId, long voteScore) {
+        return new Row(id, parentId, "reply " + id, new Date(id), Math.max(voteScore, 0), Math.max(-voteScore, 0),
+                voteScore, false, 1L, "testuser", "Test User", null);
+    }
+
+    /**
+     * Top-level 10 (score 5) and 11 (score 3); 10 has children 20 (score 2) and 21 (score 1).
+     */
+    private static List<ReplyTreeRow> thread() {
+        return List.of(row(10L, null, 5), row(11L, null, 3), row(20L, 10L, 2), row(21L, 10L, 1));
+    }
+
+    private List<Long> childIds(long postId, long parentId) {
+        return commentTreeCache.read(postId, tree -> tree.children(parentId).stream().map(ReplyTreeRow::getId).toList());
+    }
+
+    private Map<String, Consumer<List<Long>>> clusterHandlers() {
+        Map<String, Consumer<List<Long>>> handlers = new HashMap<>();
+        doAnswer(invocation -> handlers.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(clusterCacheInvalidator).register(anyString(), any());
+        commentTreeCache.listenToCluster();
+        return handlers;
+    }
+
+    private static Reply newReply(long id, long postId, Long parentId) {
+        ApplicationUser author = new ApplicationUser();
+        author.setId(2L);
+        author.setUsername("other");
+        return Reply.builder()
+                .id(id)
+                .post(Post.builder().id(postId).build())
+                .author(author)
+                .parentReply(parentId == null ? null : Reply.builder().id(parentId).build())
+                .text("new")
+                .datePosted(new Date(1000))
+                .build();
+    }
+
+    @Test
+    void read_LoadsTreeOnceInDisplayOrder() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+
+        assertThat(childIds(1L, ReplyTreeCursor.TOP_LEVEL)).containsExactly(10L, 11L);
+        assertThat(childIds(1L, 10L)).containsExactly(20L, 21L);
+        assertThat(childIds(1L, 11L)).isEmpty();
+        assertThat(commentTreeCache.readIfCached(1L, tree -> tree.size())).contains(4);
+        assertThat(commentTreeCache.readIfCached(2L, tree -> tree.size())).isEmpty();
+
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+        assertThat(commentTreeCache.weight()).isEqualTo(4);
+    }
+
+    @Test
+    void read_AddsPendingCountsAndOrdersByThem() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        when(voteCounterBuffer.pendingLikes(11L)).thenReturn(4L);
+
+        assertThat(childIds(1L, ReplyTreeCursor.TOP_LEVEL)).containsExactly(11L, 10L);
+        Long likeCount = commentTreeCache.read(1L, tree -> tree.children(ReplyTreeCursor.TOP_LEVEL).get(0).getLikeCount());
+        assertThat(likeCount).isEqualTo(7L);
+    }
+
+    @Test
+    void patches_UpdateCachedTreeInPlace() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+
+        commentTreeCache.replyCreated(newReply(22L, 1L, 10L));
+        assertThat(childIds(1L, 10L)).containsExactly(20L, 21L, 22L);
+
+        commentTreeCache.replyVoteChanged(1L, 22L, 3, 0);
+        assertThat(childIds(1L, 10L)).containsExactly(22L, 20L, 21L);
+
+        commentTreeCache.replyMoved(1L, 21L, 11L);
+        assertThat(childIds(1L, 10L)).containsExactly(22L, 20L);
+        assertThat(childIds(1L, 11L)).containsExactly(21L);
+
+        commentTreeCache.replyRemoved(1L, 20L);
+        commentTreeCache.replySoftDeleted(1L, 10L, "[deleted]");
+        assertThat(childIds(1L, 10L)).containsExactly(22L);
+        Boolean deleted = commentTreeCache.read(1L, tree -> tree.children(ReplyTreeCursor.TOP_LEVEL).get(0).getDeleted());
+        assertThat(deleted).isTrue();
+
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+        assertThat(commentTreeCache.weight()).isEqualTo(4);
+    }
+
+    @Test
+    void patch_InTransaction_OnlyAppliedAfterCommit() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+
+        TransactionSynchronizationManager.initSynchronization();
+        commentTreeCache.replyVoteChanged(1L, 11L, 5, 0);
+        assertThat(childIds(1L, ReplyTreeCursor.TOP_LEVEL)).containsExactly(10L, 11L);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(childIds(1L, ReplyTreeCursor.TOP_LEVEL)).containsExactly(11L, 10L);
+    }
+
+    @Test
+    void read_DuringUncommittedChange_IsNotCached() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+
+        TransactionSynchronizationManager.initSynchronization();
+        commentTreeCache.replyVoteChanged(1L, 11L, 5, 0);
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        assertThat(commentTreeCache.size()).isZero();
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        assertThat(commentTreeCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void read_DuringFlush_IsNotCached() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        when(voteCounterBuffer.getFlushWrites()).thenReturn(2L, 4L, 4L, 4L);
+
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        assertThat(commentTreeCache.size()).isZero();
+
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        assertThat(commentTreeCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void patch_ParentNotInTree_EvictsPost() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+
+        commentTreeCache.replyCreated(newReply(40L, 1L, 30L));
+
+        assertThat(commentTreeCache.size()).isZero();
+        assertThat(commentTreeCache.weight()).isZero();
+    }
+
+    @Test
+    void read_EvictsLeastRecentlyReadBeyondPostsAndReplies() {
+        ReflectionTestUtils.setField(commentTreeCache, "maxPosts", 2);
+        ReflectionTestUtils.setField(commentTreeCache, "maxReplies", 10L);
+        when(replyRepository.findCommentTreeRows(anyLong())).thenReturn(thread());
+        List<ReplyTreeRow> large = new ArrayList<>();
+        for (long id = 1; id <= 7; id++) {
+            large.add(row(id, null, 0));
+        }
+        when(replyRepository.findCommentTreeRows(4L)).thenReturn(large);
+
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        childIds(2L, ReplyTreeCursor.TOP_LEVEL);
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        childIds(3L, ReplyTreeCursor.TOP_LEVEL); // evicts post 2
+        assertThat(commentTreeCache.size()).isEqualTo(2);
+        assertThat(commentTreeCache.readIfCached(2L, tree -> tree.size())).isEmpty();
+
+        childIds(4L, ReplyTreeCursor.TOP_LEVEL); // 7 more replies evict both others
+        assertThat(commentTreeCache.size()).isEqualTo(1);
+        assertThat(commentTreeCache.weight()).isEqualTo(7);
+
+        ReflectionTestUtils.setField(commentTreeCache, "maxReplies", 5L);
+        commentTreeCache.clear();
+        childIds(4L, ReplyTreeCursor.TOP_LEVEL); // heavier than the whole cache
+        assertThat(commentTreeCache.size()).isZero();
+    }
+
+    @Test
+    void authorChanges_ArePatchedIntoCachedTreesAfterCommit() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+
+        TransactionSynchronizationManager.initSynchronization();
+        commentTreeCache.authorDisplayNameChanged(1L, "Renamed");
+        commentTreeCache.authorProfilePictureChanged(1L, "new.png");
+        commentTreeCache.authorDisplayNameChanged(2L, "Someone else");
+        String displayName = commentTreeCache.read(1L, tree -> tree.children(10L).get(0).getDisplayName());
+        assertThat(displayName).isEqualTo("Test User");
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        List<ReplyTreeRow> replies = commentTreeCache.read(1L, tree -> List.copyOf(tree.children(10L)));
+        assertThat(replies).extracting(ReplyTreeRow::getDisplayName).containsOnly("Renamed");
+        assertThat(replies).extracting(ReplyTreeRow::getProfilePictureFileName).containsOnly("new.png");
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+    }
+
+    @Test
+    void read_DuringAuthorChange_IsNotCached() {
+        when(replyRepository.findCommentTreeRows(1L)).thenAnswer(invocation -> {
+            commentTreeCache.authorDisplayNameChanged(1L, "Renamed"); // commits while the old name is being loaded
+            return thread();
+        });
+
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+
+        assertThat(commentTreeCache.size()).isZero();
+    }
+
+    @Test
+    void read_ReloadsTreesOlderThanTtl() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+
+        ReflectionTestUtils.setField(commentTreeCache, "ttlMs", 0L);
+        assertThat(commentTreeCache.readIfCached(1L, tree -> tree.size())).isEmpty();
+        assertThat(commentTreeCache.weight()).isZero();
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        verify(replyRepository, times(2)).findCommentTreeRows(1L);
+    }
+
+    @Test
+    void changes_ArePublishedToOtherNodesOnceCommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        commentTreeCache.replyCreated(newReply(22L, 1L, 10L));
+        commentTreeCache.replyVoteChanged(1L, 11L, 5, 0);
+        commentTreeCache.authorDisplayNameChanged(2L, "Renamed");
+        verify(clusterCacheInvalidator, never()).publish(anyString(), anyList());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(clusterCacheInvalidator).publish(CommentTreeCache.CLUSTER_POSTS, List.of(1L));
+        verify(clusterCacheInvalidator).publish(CommentTreeCache.CLUSTER_VOTES, List.of(1L, 11L, 5L, 0L));
+        verify(clusterCacheInvalidator).publish(CommentTreeCache.CLUSTER_AUTHORS, List.of(2L));
+
+        commentTreeCache.clear();
+        verify(clusterCacheInvalidator).publish(CommentTreeCache.CLUSTER_ALL, List.of());
+    }
+
+    @Test
+    void changesOnOtherNodes_EvictOrPatchCachedTrees() {
+        Map<String, Consumer<List<Long>>> handlers = clusterHandlers();
+        when(replyRepository.findCommentTreeRows(anyLong())).thenReturn(thread());
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        childIds(2L, ReplyTreeCursor.TOP_LEVEL);
+
+        // votes are patched in, without reloading
+        handlers.get(CommentTreeCache.CLUSTER_VOTES).accept(List.of(1L, 11L, 5L, 0L));
+        assertThat(childIds(1L, ReplyTreeCursor.TOP_LEVEL)).containsExactly(11L, 10L);
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+
+        handlers.get(CommentTreeCache.CLUSTER_POSTS).accept(List.of(1L));
+        assertThat(commentTreeCache.readIfCached(1L, tree -> tree.size())).isEmpty();
+        assertThat(commentTreeCache.size()).isEqualTo(1);
+
+        handlers.get(CommentTreeCache.CLUSTER_AUTHORS).accept(List.of(2L)); // not an author of post 2
+        assertThat(commentTreeCache.size()).isEqualTo(1);
+        handlers.get(CommentTreeCache.CLUSTER_AUTHORS).accept(List.of(1L));
+        assertThat(commentTreeCache.size()).isZero();
+        assertThat(commentTreeCache.weight()).isZero();
+
+        childIds(1L, ReplyTreeCursor.TOP_LEVEL);
+        handlers.get(CommentTreeCache.CLUSTER_ALL).accept(List.of());
+        assertThat(commentTreeCache.size()).isZero();
+
+        // changes of other nodes are not sent back
+        verify(clusterCacheInvalidator, never()).publish(anyString(), anyList());
+    }
+}
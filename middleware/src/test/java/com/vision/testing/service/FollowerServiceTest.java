@@ -5,6 +5,8 @@ import com.vision.middleware.domain.Role;
 import com.vision.middleware.domain.relations.UserFollows;
 import com.vision.middleware.repo.UserFollowsRepository;
 import com.vision.middleware.service.FollowerService;
+import com.vision.middleware.service.NotificationAggregator;
+import com.vision.middleware.service.TimelineService;
 import com.vision.middleware.service.UserService;
 import com.vision.middleware.utils.JwtUtil;
 import org.junit.jupiter.api.BeforeEach;
@@ -31,6 +33,12 @@ public class FollowerServiceTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private TimelineService timelineService;
+
+    @Mock
+    private NotificationAggregator notificationAggregator;
+
     private ApplicationUser user1;
     private ApplicationUser user2;
     private ApplicationUser user3;
@@ -103,6 +111,11 @@ public class FollowerServiceTest {
 
         // relation should be saved
         verify(followsRepository, times(1)).save(any(UserFollows.class));
+        // counters and timeline follow the new relation
+        verify(userService, times(1)).adjustFollowCounts(1L, 2L, 1);
+        verify(timelineService, times(1)).onFollow(1L, 2L);
+        // user 2 is told about their new follower
+        verify(notificationAggregator, times(1)).followed(2L, 1L);
     }
 
     @Test
@@ -118,6 +131,8 @@ public class FollowerServiceTest {
         // relation exists already, so followsRepository's save() method
         // should not ever be run.
         verify(followsRepository, never()).save(any(UserFollows.class));
+        verify(userService, never()).adjustFollowCounts(anyLong(), anyLong(), anyLong());
+        verifyNoInteractions(notificationAggregator);
     }
 
     @Test
@@ -148,6 +163,31 @@ public class FollowerServiceTest {
         verify(followsRepository, times(1)).deleteByFollowerAndFollowee(user1, user2);
     }
 
+    @Test
+    void testUser1UnfollowsUser2UpdatesCountsAndTimeline() {
+        when(userService.loadUserById(1L)).thenReturn(user1);
+        when(userService.loadUserById(2L)).thenReturn(user2);
+        when(followsRepository.deleteByFollowerAndFollowee(user1, user2)).thenReturn(1L);
+
+        followerService.unfollowUser(1L, 2L);
+
+        verify(userService, times(1)).adjustFollowCounts(1L, 2L, -1);
+        verify(timelineService, times(1)).onUnfollow(1L, 2L);
+    }
+
+    @Test
+    void testUser1UnfollowsUser2ButDoesNotFollowThem() {
+        when(userService.loadUserById(1L)).thenReturn(user1);
+        when(userService.loadUserById(2L)).thenReturn(user2);
+        when(followsRepository.deleteByFollowerAndFollowee(user1, user2)).thenReturn(0L);
+
+        followerService.unfollowUser(1L, 2L);
+
+        // nothing was deleted, so counters must not drift.
+        verify(userService, never()).adjustFollowCounts(anyLong(), anyLong(), anyLong());
+        verify(timelineService, never()).onUnfollow(anyLong(), anyLong());
+    }
+
     @Test
     void testGetByFollowing() {
         when(userService.loadUserById(1L)).thenReturn(user1);
@@ -0,0 +1,171 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Notification;
+import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.service.NotificationAggregator;
+import com.vision.middleware.service.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class NotificationAggregatorTest {
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private NotificationAggregator notificationAggregator;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(notificationAggregator, "windowMs", 60000L);
+        ReflectionTestUtils.setField(notificationAggregator, "maxDelayMs", 600000L);
+        ReflectionTestUtils.setField(notificationAggregator, "maxGroups", 100);
+        ReflectionTestUtils.setField(notificationAggregator, "maxActors", 100);
+
+        // users 1..n are named user1..usern
+        when(userRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> {
+                ApplicationUser user = new ApplicationUser();
+                user.setId(id);
+                user.setUsername("user" + id);
+                return user;
+            }).toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private List<Notification> sent() {
+        ArgumentCaptor<Notification> captor = ArgumentCaptor.forClass(Notification.class);
+        verify(notificationService, atLeast(0)).sendNotification(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    void liked_ManyUsers_SentAsOneNotificationPerTarget() {
+        for (long liker = 2; liker <= 43; liker++) {
+            notificationAggregator.liked(1L, liker, VotableType.POST, 10L);
+        }
+        notificationAggregator.liked(1L, 2L, VotableType.REPLY, 10L);
+        notificationAggregator.liked(1L, 43L, VotableType.POST, 10L); // liked again, counted once
+
+        assertThat(notificationAggregator.pending()).isEqualTo(2);
+        assertThat(notificationAggregator.flushDue()).isZero(); // still within the window
+
+        assertThat(notificationAggregator.flushAll()).isEqualTo(2);
+        assertThat(sent()).extracting(Notification::getNotificationBody)
+                .containsExactly("user43 and 41 others liked your post", "user2 liked your reply");
+        assertThat(sent()).extracting(Notification::getTargetType, Notification::getTargetId)
+                .containsExactly(tuple(VotableType.POST, 10L), tuple(VotableType.REPLY, 10L));
+        assertThat(sent()).allSatisfy(notification -> {
+            assertThat(notification.getAssociatedUser().getId()).isEqualTo(1L);
+            assertThat(notification.getNotificationType()).isEqualTo(NotificationType.LIKE);
+        });
+        verify(userRepository, times(1)).findAllById(anyCollection());
+        assertThat(notificationAggregator.pending()).isZero();
+    }
+
+    @Test
+    void followed_CoalescedPerFollowee() {
+        notificationAggregator.followed(1L, 2L);
+        notificationAggregator.followed(1L, 3L);
+        notificationAggregator.followed(4L, 2L);
+
+        notificationAggregator.flushAll();
+
+        assertThat(sent()).extracting(Notification::getNotificationBody)
+                .containsExactly("user3 and 1 other followed you", "user2 followed you");
+        assertThat(sent()).extracting(Notification::getNotificationType).containsOnly(NotificationType.FOLLOW);
+        assertThat(sent()).extracting(Notification::getTargetType, Notification::getTargetId)
+                .containsOnly(tuple(null, null));
+    }
+
+    @Test
+    void flushDue_SendsGroupsQuietForTheWindowOrCollectedTooLong() {
+        ReflectionTestUtils.setField(notificationAggregator, "windowMs", 0L);
+        notificationAggregator.liked(1L, 2L, VotableType.POST, 10L);
+        assertThat(notificationAggregator.flushDue()).isEqualTo(1);
+
+        ReflectionTestUtils.setField(notificationAggregator, "windowMs", 60000L);
+        ReflectionTestUtils.setField(notificationAggregator, "maxDelayMs", 0L);
+        notificationAggregator.liked(1L, 3L, VotableType.POST, 10L);
+        assertThat(notificationAggregator.flushDue()).isEqualTo(1);
+
+        assertThat(sent()).hasSize(2);
+    }
+
+    @Test
+    void liked_OwnPost_NotNotified() {
+        notificationAggregator.liked(1L, 1L, VotableType.POST, 10L);
+        notificationAggregator.followed(1L, 1L);
+
+        assertThat(notificationAggregator.pending()).isZero();
+    }
+
+    @Test
+    void liked_InTransaction_RecordedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        notificationAggregator.liked(1L, 2L, VotableType.POST, 10L);
+        assertThat(notificationAggregator.pending()).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(notificationAggregator.pending()).isEqualTo(1);
+    }
+
+    @Test
+    void liked_BeyondLimits_SendsOldestEarlyAndCountsExtraUsers() {
+        ReflectionTestUtils.setField(notificationAggregator, "maxGroups", 2);
+        ReflectionTestUtils.setField(notificationAggregator, "maxActors", 2);
+        for (long liker = 2; liker <= 6; liker++) {
+            notificationAggregator.liked(1L, liker, VotableType.POST, 10L);
+        }
+        notificationAggregator.liked(1L, 2L, VotableType.POST, 11L);
+        assertThat(sent()).isEmpty();
+
+        notificationAggregator.liked(1L, 2L, VotableType.POST, 12L); // a third group sends the oldest
+
+        assertThat(notificationAggregator.pending()).isEqualTo(2);
+        assertThat(sent()).extracting(Notification::getNotificationBody)
+                .containsExactly("user6 and 4 others liked your post");
+    }
+
+    @Test
+    void flushAll_RecipientGone_Dropped() {
+        when(userRepository.findAllById(anyCollection())).thenReturn(List.of());
+        notificationAggregator.liked(1L, 2L, VotableType.POST, 10L);
+
+        assertThat(notificationAggregator.flushAll()).isZero();
+        verifyNoInteractions(notificationService);
+    }
+}
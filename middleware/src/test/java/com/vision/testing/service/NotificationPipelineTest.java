@@ -0,0 +1,162 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Notification;
+import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.dto.NotificationDTO;
+import com.vision.middleware.repo.NotificationBatchRepository;
+import com.vision.middleware.service.NotificationPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class NotificationPipelineTest {
+
+    @Mock
+    private NotificationBatchRepository notificationBatchRepository;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private NotificationPipeline notificationPipeline;
+
+    private ApplicationUser user;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(notificationPipeline, "capacity", 10);
+        ReflectionTestUtils.setField(notificationPipeline, "batchSize", 5);
+        user = new ApplicationUser();
+        user.setId(7L);
+
+        // the repository gives each notification the next id
+        AtomicLong ids = new AtomicLong();
+        doAnswer(invocation -> {
+            List<Notification> batch = invocation.getArgument(0);
+            batch.forEach(notification -> notification.setId(ids.incrementAndGet()));
+            return null;
+        }).when(notificationBatchRepository).insertAll(anyList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        notificationPipeline.stop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Notification notification(String body) {
+        return Notification.builder()
+                .associatedUser(user)
+                .notificationType(NotificationType.MESSAGE)
+                .notificationBody(body)
+                .timeCreated(Instant.now())
+                .build();
+    }
+
+    private List<NotificationDTO> pushed() {
+        ArgumentCaptor<NotificationDTO> captor = ArgumentCaptor.forClass(NotificationDTO.class);
+        verify(messagingTemplate, atLeast(0)).convertAndSendToUser(eq("7"), eq("/queue/notifications"), captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    void drain_StoresBatchInOneTransactionBeforePushingInOrder() {
+        notificationPipeline.submit(notification("first"));
+        notificationPipeline.submit(notification("second"));
+        notificationPipeline.submit(notification("third"));
+        verifyNoInteractions(notificationBatchRepository, messagingTemplate);
+
+        assertThat(notificationPipeline.drain()).isEqualTo(3);
+
+        InOrder inOrder = inOrder(notificationBatchRepository, transactionManager, messagingTemplate);
+        inOrder.verify(notificationBatchRepository).insertAll(argThat(batch -> batch.size() == 3));
+        inOrder.verify(transactionManager).commit(any());
+        inOrder.verify(messagingTemplate, times(3)).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+        assertThat(pushed()).extracting(NotificationDTO::getNotificationBody).containsExactly("first", "second", "third");
+        assertThat(pushed()).extracting(NotificationDTO::getNotificationId).containsExactly(1L, 2L, 3L);
+        assertThat(notificationPipeline.pending()).isZero();
+    }
+
+    @Test
+    void drain_TakesAtMostOneBatch() {
+        for (int i = 0; i < 7; i++) {
+            notificationPipeline.submit(notification("n" + i));
+        }
+
+        assertThat(notificationPipeline.drain()).isEqualTo(5);
+        assertThat(notificationPipeline.drain()).isEqualTo(2);
+        assertThat(notificationPipeline.drain()).isZero();
+        verify(notificationBatchRepository, times(2)).insertAll(anyList());
+    }
+
+    @Test
+    void submit_InTransaction_QueuedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        notificationPipeline.submit(notification("after commit"));
+        assertThat(notificationPipeline.pending()).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(notificationPipeline.pending()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_QueueFull_DeliversOnSendingThread() {
+        ReflectionTestUtils.setField(notificationPipeline, "capacity", 1);
+        notificationPipeline.submit(notification("queued"));
+        notificationPipeline.submit(notification("overflow"));
+
+        assertThat(notificationPipeline.pending()).isEqualTo(1);
+        assertThat(pushed()).extracting(NotificationDTO::getNotificationBody).containsExactly("overflow");
+    }
+
+    @Test
+    void drain_BatchFails_StoresOneAtATimeAndDropsFailures() {
+        doThrow(new IllegalStateException("batch failed")).when(notificationBatchRepository)
+                .insertAll(argThat(batch -> batch.size() > 1 || batch.get(0).getNotificationBody().equals("bad")));
+        notificationPipeline.submit(notification("good"));
+        notificationPipeline.submit(notification("bad"));
+        notificationPipeline.submit(notification("also good"));
+
+        notificationPipeline.drain();
+
+        assertThat(pushed()).extracting(NotificationDTO::getNotificationBody).containsExactly("good", "also good");
+    }
+
+    @Test
+    void start_ConsumerDeliversWithoutBeingDrained() {
+        notificationPipeline.start();
+        notificationPipeline.submit(notification("background"));
+
+        verify(messagingTemplate, timeout(5000)).convertAndSendToUser(eq("7"), eq("/queue/notifications"), any(NotificationDTO.class));
+        assertThat(notificationPipeline.pending()).isZero();
+    }
+}
@@ -3,20 +3,29 @@ package com.vision.testing.service;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Notification;
 import com.vision.middleware.domain.enums.NotificationType;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.NotificationDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.NotificationRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.NotificationCursor;
+import com.vision.middleware.service.NotificationPipeline;
 import com.vision.middleware.service.NotificationService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -33,6 +42,12 @@ public class NotificationServiceTest {
     @Mock
     private NotificationRepository notificationRepository;
 
+    @Mock
+    private NotificationPipeline notificationPipeline;
+
+    @Mock
+    private UserRepository userRepository;
+
     @InjectMocks
     private NotificationService notificationService;
 
@@ -53,76 +68,123 @@ public class NotificationServiceTest {
 
     @Test
     public void testSendNotification() {
-        when(notificationRepository.saveAndFlush(any(Notification.class))).thenReturn(notification);
-
         notificationService.sendNotification(notification);
 
-        verify(notificationRepository, times(1)).saveAndFlush(notification);
-        verify(messagingTemplate, times(1)).convertAndSendToUser(eq("1"), eq("/queue/notifications"), any(NotificationDTO.class));
+        // stored and pushed by the pipeline, off the caller's thread
+        verify(notificationPipeline, times(1)).submit(notification);
+        verifyNoInteractions(notificationRepository, messagingTemplate);
     }
 
     @Test
-    public void testDoesNotificationBelongToUser_Valid() {
-        when(notificationRepository.findById(1L)).thenReturn(Optional.of(notification));
+    public void testAcknowledgeNotifications_OneStatementForDistinctIds() {
+        when(notificationRepository.acknowledgeAll(eq(1L), anyCollection())).thenReturn(2);
 
-        boolean result = notificationService.doesNotificationBelongToUser(1L, user);
+        int acknowledged = notificationService.acknowledgeNotifications(1L, Arrays.asList(3L, 4L, 3L, null));
 
-        assertThat(result).isTrue();
+        assertThat(acknowledged).isEqualTo(2);
+        verify(notificationRepository, times(1)).acknowledgeAll(1L, Set.of(3L, 4L));
+        verify(notificationRepository, never()).findById(anyLong());
     }
 
     @Test
-    public void testDoesNotificationBelongToUser_Invalid() {
-        ApplicationUser otherUser = new ApplicationUser();
-        otherUser.setId(2L);
-
-        when(notificationRepository.findById(1L)).thenReturn(Optional.of(notification));
+    public void testAcknowledgeNotifications_NoIds() {
+        assertThat(notificationService.acknowledgeNotifications(1L, List.of())).isZero();
+        verifyNoInteractions(notificationRepository);
+    }
 
-        boolean result = notificationService.doesNotificationBelongToUser(1L, otherUser);
+    @Test
+    public void testAcknowledgeNotifications_TooMany() {
+        List<Long> ids = LongStream.rangeClosed(1, NotificationService.MAX_BULK_ACKNOWLEDGE + 1).boxed().toList();
 
-        assertThat(result).isFalse();
+        assertThatThrownBy(() -> notificationService.acknowledgeNotifications(1L, ids))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(notificationRepository);
     }
 
     @Test
-    public void testDoesNotificationBelongToUser_NotFound() {
-        when(notificationRepository.findById(1L)).thenReturn(Optional.empty());
+    public void testAcknowledgeNotificationsUpTo() {
+        when(notificationRepository.acknowledgeUpTo(1L, 50L)).thenReturn(9);
+
+        assertThat(notificationService.acknowledgeNotificationsUpTo(1L, 50L)).isEqualTo(9);
+    }
+
+    private Notification unread(long id) {
+        Notification unreadNotification = new Notification();
+        unreadNotification.setId(id);
+        unreadNotification.setAssociatedUser(user);
+        unreadNotification.setNotificationBody("Unread Notification " + id);
+        unreadNotification.setNotificationType(NotificationType.MESSAGE);
+        unreadNotification.setAcknowledged(false);
+        return unreadNotification;
+    }
 
-        assertThatThrownBy(() -> notificationService.doesNotificationBelongToUser(1L, user))
-                .isInstanceOf(IdNotFoundException.class)
-                .hasMessage("Notification ID 1 does not exist.");
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSendUnreadNotifications() {
+        when(notificationRepository.findUnreadPage(1L, Long.MAX_VALUE, Limit.of(NotificationService.UNREAD_PAGE_SIZE + 1)))
+                .thenReturn(List.of(unread(3L), unread(2L)));
+
+        notificationService.sendUnreadNotifications(user, null);
+
+        // the whole page in one frame
+        ArgumentCaptor<CursorPageDTO<NotificationDTO>> captor = ArgumentCaptor.forClass(CursorPageDTO.class);
+        verify(messagingTemplate, times(1)).convertAndSendToUser(eq("1"), eq("/queue/notifications/unread"), captor.capture());
+        assertThat(captor.getValue().getContent()).extracting(NotificationDTO::getNotificationId).containsExactly(3L, 2L);
+        assertThat(captor.getValue().isHasNext()).isFalse();
+        assertThat(captor.getValue().getNextCursor()).isNull();
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), eq("/queue/notifications"), any());
     }
 
     @Test
-    public void testAcknowledgeNotification() {
-        when(notificationRepository.findById(1L)).thenReturn(Optional.of(notification));
+    public void testGetUnreadNotifications_PagesByCursor() {
+        when(notificationRepository.findUnreadPage(1L, Long.MAX_VALUE, Limit.of(3)))
+                .thenReturn(List.of(unread(9L), unread(7L), unread(4L)));
+
+        CursorPageDTO<NotificationDTO> first = notificationService.getUnreadNotifications(1L, null, 2);
+
+        assertThat(first.getContent()).extracting(NotificationDTO::getNotificationId).containsExactly(9L, 7L);
+        assertThat(first.isHasNext()).isTrue();
+        assertThat(NotificationCursor.decode(first.getNextCursor()).getId()).isEqualTo(7L);
 
-        notificationService.acknowledgeNotification(1L);
+        when(notificationRepository.findUnreadPage(1L, 7L, Limit.of(3))).thenReturn(List.of(unread(4L)));
 
-        assertThat(notification.isAcknowledged()).isTrue();
-        verify(notificationRepository, times(1)).save(notification);
+        CursorPageDTO<NotificationDTO> second = notificationService.getUnreadNotifications(1L, first.getNextCursor(), 2);
+
+        assertThat(second.getContent()).extracting(NotificationDTO::getNotificationId).containsExactly(4L);
+        assertThat(second.isHasNext()).isFalse();
     }
 
     @Test
-    public void testAcknowledgeNotification_NotFound() {
-        when(notificationRepository.findById(1L)).thenReturn(Optional.empty());
+    public void testGetUnreadNotifications_ClampsSize() {
+        when(notificationRepository.findUnreadPage(anyLong(), anyLong(), any(Limit.class))).thenReturn(List.of());
+
+        notificationService.getUnreadNotifications(1L, "", 0);
+        notificationService.getUnreadNotifications(1L, "", 10_000);
 
-        assertThatThrownBy(() -> notificationService.acknowledgeNotification(1L))
-                .isInstanceOf(IdNotFoundException.class)
-                .hasMessage("Notification id not found");
+        verify(notificationRepository).findUnreadPage(1L, Long.MAX_VALUE, Limit.of(2));
+        verify(notificationRepository).findUnreadPage(1L, Long.MAX_VALUE, Limit.of(NotificationService.MAX_UNREAD_PAGE_SIZE + 1));
     }
 
     @Test
-    public void testSendUnreadNotifications() {
-        Notification unreadNotification = new Notification();
-        unreadNotification.setId(2L);
-        unreadNotification.setAssociatedUser(user);
-        unreadNotification.setNotificationBody("Unread Notification");
-        unreadNotification.setNotificationType(NotificationType.MESSAGE);
-        unreadNotification.setAcknowledged(false);
+    public void testGetUnreadNotifications_MalformedCursor() {
+        assertThatThrownBy(() -> notificationService.getUnreadNotifications(1L, "not a cursor", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(notificationRepository);
+    }
 
-        when(notificationRepository.findByAssociatedUserAndAcknowledgedFalse(user)).thenReturn(List.of(unreadNotification));
+    @Test
+    public void testGetUnreadCount() {
+        when(userRepository.findUnreadNotificationCountById(1L)).thenReturn(Optional.of(12L));
+
+        assertThat(notificationService.getUnreadCount(1L)).isEqualTo(12L);
+        verifyNoInteractions(notificationRepository);
+    }
 
-        notificationService.sendUnreadNotifications(user);
+    @Test
+    public void testGetUnreadCount_UserNotFound() {
+        when(userRepository.findUnreadNotificationCountById(1L)).thenReturn(Optional.empty());
 
-        verify(messagingTemplate, times(1)).convertAndSendToUser(eq("1"), eq("/queue/notifications"), any(NotificationDTO.class));
+        assertThatThrownBy(() -> notificationService.getUnreadCount(1L))
+                .isInstanceOf(IdNotFoundException.class);
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.vision.testing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.MediaPost;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.dto.PostImportReportDTO;
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.service.PostImportService;
+import com.vision.middleware.service.PostSearchIndex;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PostImportServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PostSearchIndex postSearchIndex;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private PostImportService postImportService;
+
+    private final List<Post> persisted = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(postImportService, "chunkSize", 2);
+
+        when(entityManager.getReference(eq(ApplicationUser.class), anyLong())).thenAnswer(invocation -> {
+            ApplicationUser user = new ApplicationUser();
+            user.setId(invocation.getArgument(1));
+            return user;
+        });
+        doAnswer(invocation -> {
+            Post post = invocation.getArgument(0);
+            persisted.add(post);
+            post.setId((long) persisted.size());
+            return null;
+        }).when(entityManager).persist(any(Post.class));
+    }
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void importPosts_WritesInChunksAndRejectsUnknownAuthors() {
+        when(userRepository.findExistingIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().filter(id -> id != 9L).toList();
+        });
+
+        PostImportReportDTO report = postImportService.importPosts(json("""
+                [
+                  {"title": "first", "text": "one"},
+                  {"title": "second", "postedBy": {"userId": 7}},
+                  {"title": "ghost", "postedBy": {"userId": 9}},
+                  {"title": "media", "mediaFileName": "cat.png", "datePosted": 1000}
+                ]
+                """), 1L);
+
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getRejected()).isEqualTo(1);
+        assertThat(report.getChunks()).isEqualTo(2);
+        assertThat(persisted).extracting(Post::getTitle).containsExactly("first", "second", "media");
+        assertThat(persisted).extracting(post -> post.getPostedBy().getId()).containsExactly(1L, 7L, 1L);
+        assertThat(persisted.get(0).getDatePosted()).isNotNull();
+        assertThat(persisted.get(2)).isInstanceOf(MediaPost.class);
+        assertThat(persisted.get(2).getDatePosted().getTime()).isEqualTo(1000L);
+
+        // every chunk is flushed and cleared, then indexed after its own commit
+        verify(entityManager, times(2)).flush();
+        verify(entityManager, times(2)).clear();
+        verify(transactionManager, times(2)).commit(any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PostCreatedEvent>> indexed = ArgumentCaptor.forClass(Collection.class);
+        verify(postSearchIndex, times(2)).addAll(indexed.capture());
+        assertThat(indexed.getAllValues().get(0)).extracting(PostCreatedEvent::getPostId).containsExactly(1L, 2L);
+        assertThat(indexed.getAllValues().get(1)).extracting(PostCreatedEvent::getPostId).containsExactly(3L);
+    }
+
+    @Test
+    public void importPosts_EmptyArray_ImportsNothing() {
+        PostImportReportDTO report = postImportService.importPosts(json("[]"), 1L);
+
+        assertThat(report.getImported()).isZero();
+        assertThat(report.getChunks()).isZero();
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    public void importPosts_NotAnArray_Throws() {
+        assertThatThrownBy(() -> postImportService.importPosts(json("{\"title\": \"a\"}"), 1L))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> postImportService.importPosts(json("[1, 2]"), 1L))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void importPosts_MalformedElement_KeepsCommittedChunks() {
+        when(userRepository.findExistingIds(anyCollection())).thenReturn(List.of(1L));
+
+        assertThatThrownBy(() -> postImportService.importPosts(json("""
+                [{"title": "a"}, {"title": "b"}, {"title": oops}]
+                """), 1L)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(persisted).extracting(Post::getTitle).containsExactly("a", "b");
+        verify(transactionManager).commit(any());
+    }
+}
@@ -0,0 +1,225 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostIndexRow;
+import com.vision.middleware.service.ClusterCacheInvalidator;
+import com.vision.middleware.service.PostSearchIndex;
+import com.vision.middleware.service.PostSearchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PostSearchIndexTest {
+
+    private static final long MAX_DATE = 253402300799000L; // 9999-12-31
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ClusterCacheInvalidator clusterCacheInvalidator;
+
+    @InjectMocks
+    private PostSearchIndex postSearchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(postSearchIndex, "engine", PostSearchService.ENGINE_MEMORY);
+    }
+
+    private void index(long postId, long authorId, long millis, String title, String text) {
+        postSearchIndex.onPostCreated(new PostCreatedEvent(postId, authorId, new Date(millis), title, text));
+    }
+
+    private List<PostSearchIndex.Hit> search(String query, int limit) {
+        return postSearchIndex.search(query, postSearchIndex.statistics(query), -1, 0, MAX_DATE, Float.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    private PostIndexRow row(long id, String title, String text) {
+        PostIndexRow row = mock(PostIndexRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getAuthorId()).thenReturn(1L);
+        when(row.getDatePosted()).thenReturn(new Date(id));
+        when(row.getTitle()).thenReturn(title);
+        when(row.getText()).thenReturn(text);
+        return row;
+    }
+
+    @Test
+    public void tokenize_LowercasesAndDropsPunctuationAndShortTokens() {
+        assertThat(PostSearchIndex.tokenize("Hello, World! A x-ray of Café 42"))
+                .containsExactly("hello", "world", "ray", "of", "café", "42");
+    }
+
+    @Test
+    public void search_RanksTitleMatchesAndMoreTermsHigher() {
+        index(1L, 1L, 1000, "Gardening tips", "Water your tomatoes in the morning");
+        index(2L, 1L, 2000, "Tomatoes", "Growing them in pots");
+        index(3L, 1L, 3000, "Weekend", "Nothing about vegetables");
+        index(4L, 1L, 4000, "Tomatoes in pots", "Pots keep tomatoes tidy");
+
+        List<PostSearchIndex.Hit> hits = search("TOMATOES pots", 10);
+
+        assertThat(hits).extracting(PostSearchIndex.Hit::getPostId).containsExactly(4L, 2L, 1L);
+        assertThat(hits.get(0).getScore()).isGreaterThan(hits.get(1).getScore());
+    }
+
+    @Test
+    public void search_FiltersByUserAndDate() {
+        index(1L, 1L, 1000, "rust", null);
+        index(2L, 2L, 2000, "rust", null);
+        index(3L, 1L, 3000, "rust", null);
+
+        PostSearchIndex.Statistics statistics = postSearchIndex.statistics("rust");
+        List<PostSearchIndex.Hit> byUser = postSearchIndex.search("rust", statistics, 1L, 0, MAX_DATE, Float.MAX_VALUE, Long.MAX_VALUE, 10);
+        List<PostSearchIndex.Hit> byDate = postSearchIndex.search("rust", statistics, -1, 1500, 2500, Float.MAX_VALUE, Long.MAX_VALUE, 10);
+
+        assertThat(byUser).extracting(PostSearchIndex.Hit::getPostId).containsExactly(3L, 1L);
+        assertThat(byDate).extracting(PostSearchIndex.Hit::getPostId).containsExactly(2L);
+    }
+
+    @Test
+    public void search_KeepsTopKAndResumesAfterCursor() {
+        // equal scores, so the order is by id descending; wide id gaps exercise multi-byte deltas.
+        LongStream.rangeClosed(1, 1000).forEach(i -> index(i * 100_000, 1L, i, "same", "words"));
+
+        List<PostSearchIndex.Hit> first = search("same", 3);
+        PostSearchIndex.Hit last = first.get(2);
+        List<PostSearchIndex.Hit> second = postSearchIndex.search("same", postSearchIndex.statistics("same"), -1, 0, MAX_DATE,
+                last.getScore(), last.getPostId(), 3);
+
+        assertThat(first).extracting(PostSearchIndex.Hit::getPostId).containsExactly(100_000_000L, 99_900_000L, 99_800_000L);
+        assertThat(second).extracting(PostSearchIndex.Hit::getPostId).containsExactly(99_700_000L, 99_600_000L, 99_500_000L);
+        assertThat(search("words", 2000)).hasSize(1000);
+    }
+
+    @Test
+    public void search_PagesScoredWithFirstPageStatistics_NeitherSkipNorRepeat() {
+        index(1L, 1L, 1000, "rust", "one two three four");
+        index(2L, 1L, 2000, "rust", "one two");
+        index(3L, 1L, 3000, "rust", null);
+        index(4L, 1L, 4000, "rust", "one two three four five six seven eight");
+        PostSearchIndex.Statistics statistics = postSearchIndex.statistics("rust");
+        List<PostSearchIndex.Hit> first = postSearchIndex.search("rust", statistics, -1, 0, MAX_DATE,
+                Float.MAX_VALUE, Long.MAX_VALUE, 2);
+        PostSearchIndex.Hit last = first.get(1);
+
+        // posts added between the pages change the average length and how rare the term is.
+        LongStream.rangeClosed(10, 60).forEach(i -> index(i, 1L, i, "other", "filler words in a long text"));
+        index(5L, 1L, 5000, "rust rust", null);
+        List<PostSearchIndex.Hit> second = postSearchIndex.search("rust", statistics, -1, 0, MAX_DATE,
+                last.getScore(), last.getPostId(), 10);
+
+        assertThat(first).extracting(PostSearchIndex.Hit::getPostId).containsExactly(3L, 2L);
+        assertThat(second).extracting(PostSearchIndex.Hit::getPostId).containsExactly(1L, 4L); // 5 ranks above the cursor
+        assertThat(postSearchIndex.search("rust", statistics, -1, 0, MAX_DATE, Float.MAX_VALUE, Long.MAX_VALUE, 3))
+                .extracting(PostSearchIndex.Hit::getScore).contains(first.get(0).getScore(), last.getScore());
+    }
+
+    @Test
+    public void search_StatisticsOfAnotherQuery_ThrowsException() {
+        index(1L, 1L, 1000, "hello", "world");
+        PostSearchIndex.Statistics statistics = postSearchIndex.statistics("hello");
+
+        assertThatThrownBy(() -> postSearchIndex.search("hello world", statistics, -1, 0, MAX_DATE,
+                Float.MAX_VALUE, Long.MAX_VALUE, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void search_NoMatchingTerms_ReturnsEmpty() {
+        index(1L, 1L, 1000, "hello", "world");
+
+        assertThat(search("unknown", 10)).isEmpty();
+        assertThat(search("!!", 10)).isEmpty();
+    }
+
+    @Test
+    public void onPostCreated_Disabled_DoesNotIndex() {
+        ReflectionTestUtils.setField(postSearchIndex, "engine", PostSearchService.ENGINE_FULLTEXT);
+
+        index(1L, 1L, 1000, "hello", "world");
+
+        assertThat(postSearchIndex.size()).isZero();
+    }
+
+    @Test
+    public void rebuild_StreamsAllPostsAndBecomesReady() {
+        index(99L, 1L, 1000, "stale", "entry");
+        Stream<PostIndexRow> rows = Stream.of(row(1L, "first", "post"), row(2L, "second", "post"));
+        when(postRepository.streamAllForIndex()).thenReturn(rows);
+
+        assertThat(postSearchIndex.isReady()).isFalse();
+        postSearchIndex.rebuild();
+
+        assertThat(postSearchIndex.isReady()).isTrue();
+        assertThat(postSearchIndex.size()).isEqualTo(2);
+        assertThat(search("post", 10)).extracting(PostSearchIndex.Hit::getPostId).containsExactly(2L, 1L);
+        assertThat(search("stale", 10)).isEmpty();
+    }
+
+    @Test
+    public void rebuild_KeepsPostsCreatedWhileStreaming() {
+        Stream<PostIndexRow> rows = Stream.of(row(1L, "first", "post"), row(2L, "second", "post"));
+        when(postRepository.streamAllForIndex()).thenAnswer(invocation -> {
+            // one post commits mid-rebuild and is also seen by the stream, another is not.
+            index(2L, 1L, 2000, "second", "post");
+            index(3L, 1L, 3000, "third", "post");
+            return rows;
+        });
+
+        postSearchIndex.rebuild();
+
+        assertThat(postSearchIndex.size()).isEqualTo(3);
+        assertThat(search("post", 10)).extracting(PostSearchIndex.Hit::getPostId).containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    public void rebuild_Failure_StaysNotReady() {
+        when(postRepository.streamAllForIndex()).thenThrow(new RuntimeException("boom"));
+
+        postSearchIndex.rebuild();
+
+        assertThat(postSearchIndex.isReady()).isFalse();
+    }
+
+    @Test
+    public void postsCreatedOnOtherNodes_AreReadAndIndexed() {
+        ArgumentCaptor<Consumer<List<Long>>> handler = ArgumentCaptor.captor();
+        postSearchIndex.listenToCluster();
+        verify(clusterCacheInvalidator).register(eq(PostSearchIndex.CLUSTER_POSTS), handler.capture());
+
+        index(1L, 1L, 1000, "local post", null);
+        verify(clusterCacheInvalidator).publish(PostSearchIndex.CLUSTER_POSTS, List.of(1L));
+
+        PostIndexRow remote = row(2L, "remote post", null);
+        when(postRepository.findAllForIndexByIdIn(List.of(2L, 3L))).thenReturn(List.of(remote)); // 3 was deleted since
+        handler.getValue().accept(List.of(2L, 3L));
+
+        assertThat(search("post", 10)).extracting(PostSearchIndex.Hit::getPostId).containsExactly(2L, 1L);
+        verify(clusterCacheInvalidator, times(1)).publish(anyString(), anyList());
+    }
+}
@@ -0,0 +1,205 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.dto.CursorPageDTO;
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import com.vision.middleware.repo.searchspec.PostSearchCursor;
+import com.vision.middleware.repo.searchspec.PostSearchHit;
+import com.vision.middleware.service.PostSearchIndex;
+import com.vision.middleware.service.PostSearchService;
+import com.vision.middleware.service.VoteCounterBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PostSearchServiceTest {
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private PostSearchIndex postSearchIndex;
+
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
+    @InjectMocks
+    private PostSearchService postSearchService;
+
+    private ApplicationUser testUser;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(postSearchService, "engine", PostSearchService.ENGINE_FULLTEXT);
+
+        testUser = new ApplicationUser();
+        testUser.setId(7L);
+        testUser.setUsername("testuser");
+    }
+
+    private PostSearchHit hit(long id, float rank) {
+        PostSearchHit hit = mock(PostSearchHit.class);
+        when(hit.getPostId()).thenReturn(id);
+        when(hit.getRank()).thenReturn(rank);
+        when(hit.getLikeCount()).thenReturn(0L);
+        when(hit.getDislikeCount()).thenReturn(0L);
+        when(hit.getUserId()).thenReturn(testUser.getId());
+        when(hit.getUsername()).thenReturn(testUser.getUsername());
+        when(hit.getSnippet()).thenReturn("<b>match</b> " + id);
+        return hit;
+    }
+
+    @Test
+    public void searchPosts_FullText_FirstPage() {
+        // Arrange
+        List<PostSearchHit> hits = List.of(hit(3L, 0.9f), hit(2L, 0.5f), hit(1L, 0.1f));
+        when(postRepository.searchFullText(eq("match"), eq(-1L), any(Date.class), any(Date.class),
+                eq(Float.MAX_VALUE), eq(Long.MAX_VALUE), eq(3))).thenReturn(hits);
+
+        // Act
+        CursorPageDTO<PostDTO> result = postSearchService.searchPosts("match", null, null, null, null, 2);
+
+        // Assert
+        assertThat(result.getContent()).extracting(PostDTO::getPostId).containsExactly(3L, 2L);
+        assertThat(result.getContent().get(0).getSnippet()).isEqualTo("<b>match</b> 3");
+        assertThat(result.getContent().get(0).getPostedBy().getUsername()).isEqualTo("testuser");
+        assertThat(result.isHasNext()).isTrue();
+
+        PostSearchCursor next = PostSearchCursor.decode(result.getNextCursor());
+        assertThat(next.getRank()).isEqualTo(0.5f);
+        assertThat(next.getId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void searchPosts_FullText_ResumesAfterCursorForUser() {
+        // Arrange
+        String cursor = new PostSearchCursor(0.5f, 2L).encode();
+        Date start = new Date(1000);
+        Date end = new Date(2000);
+        PostSearchHit remaining = hit(1L, 0.1f);
+        when(postRepository.searchFullText("match", 7L, start, end, 0.5f, 2L, 11)).thenReturn(List.of(remaining));
+
+        // Act
+        CursorPageDTO<PostDTO> result = postSearchService.searchPosts("match", testUser, start, end, cursor, 10);
+
+        // Assert
+        assertThat(result.getContent()).extracting(PostDTO::getPostId).containsExactly(1L);
+        assertThat(result.isHasNext()).isFalse();
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void searchPosts_CapsPageSize() {
+        postSearchService.searchPosts("match", null, null, null, null, 10_000);
+
+        verify(postRepository).searchFullText(anyString(), anyLong(), any(), any(), anyFloat(), anyLong(),
+                eq(PostSearchService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    public void searchPosts_FullText_RejectsListingCursor() {
+        String listingCursor = new PostCursor(PostCursor.SortKey.DATE, 0, new Date(), 1L).encode();
+
+        assertThatThrownBy(() -> postSearchService.searchPosts("match", null, null, null, listingCursor, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void searchPosts_LikeEngine_UsesSubstringFallback() {
+        // Arrange
+        ReflectionTestUtils.setField(postSearchService, "engine", PostSearchService.ENGINE_LIKE);
+        List<PostDTO> rows = List.of(
+                PostDTO.builder().postId(2L).datePosted(new Date(2000)).build(),
+                PostDTO.builder().postId(1L).datePosted(new Date(1000)).build()
+        );
+        when(postRepository.findPostDTOs(any(Specification.class), eq(PostCursor.SortKey.DATE.toSort()), eq(2)))
+                .thenReturn(rows);
+
+        // Act
+        CursorPageDTO<PostDTO> result = postSearchService.searchPosts("atch", null, null, null, null, 1);
+
+        // Assert
+        assertThat(result.getContent()).extracting(PostDTO::getPostId).containsExactly(2L);
+        PostCursor next = PostCursor.decode(result.getNextCursor(), PostCursor.SortKey.DATE);
+        assertThat(next.getId()).isEqualTo(2L);
+        verify(postRepository, never()).searchFullText(any(), anyLong(), any(), any(), anyFloat(), anyLong(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void searchPosts_MemoryEngine_LoadsRankedPageFromIndex() {
+        // Arrange
+        ReflectionTestUtils.setField(postSearchService, "engine", PostSearchService.ENGINE_MEMORY);
+        when(postSearchIndex.isReady()).thenReturn(true);
+        PostSearchIndex.Statistics statistics = new PostSearchIndex.Statistics(12.5f, new float[]{0.75f});
+        when(postSearchIndex.statistics("match")).thenReturn(statistics);
+        when(postSearchIndex.search(eq("match"), eq(statistics), eq(7L), anyLong(), anyLong(), eq(Float.MAX_VALUE), eq(Long.MAX_VALUE), eq(3)))
+                .thenReturn(List.of(new PostSearchIndex.Hit(5L, 2.5f), new PostSearchIndex.Hit(9L, 1.5f),
+                        new PostSearchIndex.Hit(1L, 0.5f)));
+        // the database returns the page in its own order, and post 9 has been removed since it was indexed.
+        when(postRepository.findPostDTOs(any(Specification.class), eq(Sort.unsorted()), eq(2)))
+                .thenReturn(List.of(PostDTO.builder().postId(5L).build()));
+
+        // Act
+        CursorPageDTO<PostDTO> result = postSearchService.searchPosts("match", testUser, null, null, null, 2);
+
+        // Assert
+        assertThat(result.getContent()).extracting(PostDTO::getPostId).containsExactly(5L);
+        assertThat(result.isHasNext()).isTrue();
+        PostSearchCursor next = PostSearchCursor.decode(result.getNextCursor());
+        assertThat(next.getRank()).isEqualTo(1.5f);
+        assertThat(next.getId()).isEqualTo(9L);
+        assertThat(next.getStatistics()).containsExactly(12.5f, 0.75f); // later pages score like this one
+        verify(postRepository, never()).searchFullText(any(), anyLong(), any(), any(), anyFloat(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void searchPosts_MemoryEngine_NextPageScoredWithCursorStatistics() {
+        // Arrange
+        ReflectionTestUtils.setField(postSearchService, "engine", PostSearchService.ENGINE_MEMORY);
+        when(postSearchIndex.isReady()).thenReturn(true);
+        String cursor = new PostSearchCursor(1.5f, 9L, new float[]{12.5f, 0.75f}).encode();
+
+        // Act
+        postSearchService.searchPosts("match", null, null, null, cursor, 10);
+
+        // Assert
+        ArgumentCaptor<PostSearchIndex.Statistics> statistics = ArgumentCaptor.captor();
+        verify(postSearchIndex).search(eq("match"), statistics.capture(), anyLong(), anyLong(), anyLong(), eq(1.5f), eq(9L), eq(11));
+        assertThat(statistics.getValue().averageLength()).isEqualTo(12.5f);
+        assertThat(statistics.getValue().idfs()).containsExactly(0.75f);
+        verify(postSearchIndex, never()).statistics(any());
+    }
+
+    @Test
+    public void searchPosts_MemoryEngine_FallsBackToFullTextUntilIndexIsReady() {
+        ReflectionTestUtils.setField(postSearchService, "engine", PostSearchService.ENGINE_MEMORY);
+        when(postSearchIndex.isReady()).thenReturn(false);
+
+        postSearchService.searchPosts("match", null, null, null, null, 10);
+
+        verify(postRepository).searchFullText(anyString(), anyLong(), any(), any(), anyFloat(), anyLong(), anyInt());
+        verify(postSearchIndex, never()).search(any(), any(), anyLong(), anyLong(), anyLong(), anyFloat(), anyLong(), anyInt());
+    }
+}
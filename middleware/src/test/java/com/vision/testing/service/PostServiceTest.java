@@ -3,28 +3,38 @@ package com.vision.testing.service;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.MediaPost;
 import com.vision.middleware.domain.Post;
+import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
 import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.VoteDTO;
+import com.vision.middleware.events.PostCreatedEvent;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
 import com.vision.middleware.service.PostService;
 import com.vision.middleware.service.UserService;
 import com.vision.middleware.service.VotingService;
+import com.vision.middleware.service.VoteCounterBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,6 +50,12 @@ public class PostServiceTest {
     @Mock
     private VotingService votingService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
     @InjectMocks
     private PostService postService;
 
@@ -82,6 +98,24 @@ public class PostServiceTest {
         verify(postRepository).save(any(Post.class));
     }
 
+    @Test
+    public void createPost_PublishesPostCreatedEvent() {
+        // Arrange
+        when(userService.loadUserById(testUser.getId())).thenReturn(testUser);
+        when(postRepository.save(any(Post.class))).thenReturn(testPost);
+
+        // Act
+        postService.createPost(testPostDTO, testUser.getId());
+
+        // Assert
+        ArgumentCaptor<PostCreatedEvent> captor = ArgumentCaptor.forClass(PostCreatedEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertThat(captor.getValue().getPostId()).isEqualTo(testPost.getId());
+        assertThat(captor.getValue().getAuthorId()).isEqualTo(testUser.getId());
+        assertThat(captor.getValue().getTitle()).isEqualTo(testPost.getTitle());
+        assertThat(captor.getValue().getText()).isEqualTo(testPost.getText());
+    }
+
     @Test
     public void createPost_MediaPost_Success() {
         // Arrange
@@ -107,20 +141,23 @@ public class PostServiceTest {
     @Test
     public void userVoteOnPost_Success() {
         // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.of(testPost));
-        when(userService.loadUserById(testUser.getId())).thenReturn(testUser);
+        VoteDTO vote = VoteDTO.builder().votableId(1L).voteType(UserVote.VoteType.LIKE).likeCount(1L).dislikeCount(0L).build();
+        when(votingService.castVote(testUser.getId(), 1L, VotableType.POST, UserVote.VoteType.LIKE)).thenReturn(vote);
 
         // Act
-        postService.userVoteOnPost(1L, testUser.getId(), UserVote.VoteType.LIKE);
+        VoteDTO result = postService.userVoteOnPost(1L, testUser.getId(), UserVote.VoteType.LIKE);
 
         // Assert
-        verify(votingService).voteOnVotable(testUser, testPost, UserVote.VoteType.LIKE);
+        assertThat(result).isSameAs(vote);
+        // the vote is written by ids, without loading the post or the user
+        verifyNoInteractions(postRepository, userService);
     }
 
     @Test
     public void userVoteOnPost_PostNotFound_ThrowsException() {
         // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.empty());
+        when(votingService.castVote(testUser.getId(), 1L, VotableType.POST, UserVote.VoteType.LIKE))
+                .thenThrow(new IdNotFoundException("Post id 1 not found."));
 
         // Assert
         assertThatThrownBy(() ->
@@ -130,22 +167,19 @@ public class PostServiceTest {
 
     @Test
     public void removeUserVote_Success() {
-        // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.of(testPost));
-        when(userService.loadUserById(testUser.getId())).thenReturn(testUser);
-
         // Act
         postService.removeUserVote(1L, testUser.getId());
 
         // Assert
-        verify(votingService).deleteVote(testUser, testPost);
+        verify(votingService).removeVote(testUser.getId(), 1L, VotableType.POST);
+        verifyNoInteractions(postRepository, userService);
     }
 
     @Test
     public void removeUserVote_NoExistingVote_ShouldNotThrowException() {
         // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.of(testPost));
-        when(userService.loadUserById(testUser.getId())).thenReturn(testUser);
+        when(votingService.removeVote(testUser.getId(), 1L, VotableType.POST))
+                .thenReturn(VoteDTO.builder().votableId(1L).likeCount(0L).dislikeCount(0L).build());
 
         // Act & Assert (should not throw any exception)
         assertThatNoException().isThrownBy(() ->
@@ -153,13 +187,14 @@ public class PostServiceTest {
         );
 
         // Verify voting service was called
-        verify(votingService).deleteVote(testUser, testPost);
+        verify(votingService).removeVote(testUser.getId(), 1L, VotableType.POST);
     }
 
     @Test
     public void removeUserVote_PostNotFound_ThrowsIdNotFoundException() {
         // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.empty());
+        when(votingService.removeVote(testUser.getId(), 1L, VotableType.POST))
+                .thenThrow(new IdNotFoundException("Post id 1 not found."));
 
         // Assert
         assertThatThrownBy(() -> postService.removeUserVote(1L, testUser.getId()))
@@ -233,124 +268,157 @@ public class PostServiceTest {
     }
 
     @Test
-    public void searchPosts_Success() {
+    public void getAllPostDTOs_NewSort_UsesProjection() {
         // Arrange
-        List<Post> postList = Collections.singletonList(testPost);
-        when(postRepository.searchPosts("test", null)).thenReturn(postList);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("datePosted")));
+        PostDTO dto = PostDTO.builder().postId(1L).title("Test Post").build();
+        Page<PostDTO> page = new PageImpl<>(List.of(dto), pageable, 1);
+
+        when(postRepository.findPostDTOsWithFilters(null, pageable, null, null)).thenReturn(page);
 
         // Act
-        List<Post> result = postService.searchPosts("test");
+        Page<PostDTO> result = postService.getAllPostDTOs(0, 10, "new", null, null);
 
         // Assert
-        assertThat(result).hasSize(1);
-        assertThat(result.get(0)).isEqualTo(testPost);
+        assertThat(result.getContent()).containsExactly(dto);
+        verify(postRepository).findPostDTOsWithFilters(null, pageable, null, null);
     }
 
     @Test
-    public void searchPostsByUser_Success() {
+    public void getAllPostDTOs_HotSort_UsesProjection() {
         // Arrange
-        List<Post> postList = Collections.singletonList(testPost);
-        when(postRepository.searchPosts("test", testUser)).thenReturn(postList);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("hotScore"), Sort.Order.desc("id")));
+        PostDTO dto = PostDTO.builder().postId(1L).title("Test Post").build();
+        Page<PostDTO> page = new PageImpl<>(List.of(dto), pageable, 1);
+
+        when(postRepository.findPostDTOsWithFilters(null, pageable, null, null)).thenReturn(page);
 
         // Act
-        List<Post> result = postService.searchPostsByUser("test", testUser);
+        Page<PostDTO> result = postService.getAllPostDTOs(0, 10, "hot", null, null);
 
         // Assert
-        assertThat(result).hasSize(1);
-        assertThat(result.get(0)).isEqualTo(testPost);
+        assertThat(result.getContent()).containsExactly(dto);
+        verify(postRepository).findPostDTOsWithFilters(null, pageable, null, null);
     }
 
     @Test
-    public void searchPostsByDateRange_Success() {
+    public void getAllPostDTOs_ActiveSort_UsesProjection() {
         // Arrange
-        Date startDate = new Date();
-        Date endDate = new Date();
-        List<Post> postList = Collections.singletonList(testPost);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("lastActivityAt"), Sort.Order.desc("id")));
+        PostDTO dto = PostDTO.builder().postId(1L).title("Test Post").build();
+        Page<PostDTO> page = new PageImpl<>(List.of(dto), pageable, 1);
 
-        when(postRepository.searchPostsByDateAndQuery("test", testUser, startDate, endDate))
-                .thenReturn(postList);
+        when(postRepository.findPostDTOsWithFilters(null, pageable, null, null)).thenReturn(page);
 
         // Act
-        List<Post> result = postService.searchPostsByDateRange("test", testUser, startDate, endDate);
+        Page<PostDTO> result = postService.getAllPostDTOs(0, 10, "active", null, null);
 
         // Assert
-        assertThat(result).hasSize(1);
-        assertThat(result.get(0)).isEqualTo(testPost);
+        assertThat(result.getContent()).containsExactly(dto);
+        verify(postRepository).findPostDTOsWithFilters(null, pageable, null, null);
     }
 
     @Test
-    public void getAllPosts_NewSort_Success() {
+    public void getAllPostDTOs_PopularitySort_UsesProjection() {
         // Arrange
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("datePosted")));
-        List<Post> postList = Collections.singletonList(testPost);
-        Page<Post> page = new PageImpl<>(postList, pageable, 1);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
+        PostDTO dto = PostDTO.builder().postId(1L).title("Test Post").build();
+        Page<PostDTO> page = new PageImpl<>(List.of(dto), pageable, 1);
 
-        when(postRepository.findAllPostsWithFilters(pageable, null, null)).thenReturn(page);
+        when(postRepository.findPostDTOsWithFilters(null, pageable, null, null)).thenReturn(page);
 
         // Act
-        Page<Post> result = postService.getAllPosts(0, 10, "new", null, null);
+        Page<PostDTO> result = postService.getAllPostDTOs(0, 10, "popularity", null, null);
 
         // Assert
-        assertThat(result.getContent()).hasSize(1);
-        assertThat(result.getContent().get(0)).isEqualTo(testPost);
-        verify(postRepository).findAllPostsWithFilters(pageable, null, null);
+        assertThat(result.getContent()).containsExactly(dto);
+        verify(postRepository).findPostDTOsWithFilters(null, pageable, null, null);
+        verify(voteCounterBuffer).mergeInto(dto); // unflushed votes are included
     }
 
     @Test
-    public void getAllPosts_PopularitySort_Success() {
+    public void getAllPostDTOsByUsername_Success() {
         // Arrange
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
-        List<Post> postList = Collections.singletonList(testPost);
-        Page<Post> page = new PageImpl<>(postList, pageable, 1);
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("datePosted")));
+        Page<PostDTO> page = new PageImpl<>(List.of(PostDTO.builder().postId(1L).build()), pageable, 1);
 
-        when(postRepository.findAllPostsWithFilters(pageable, null, null)).thenReturn(page);
+        when(userService.loadUserByUsername("testuser")).thenReturn(testUser);
+        when(postRepository.findPostDTOsWithFilters(testUser, pageable, null, null)).thenReturn(page);
 
         // Act
-        Page<Post> result = postService.getAllPosts(0, 10, "popularity", null, null);
+        Page<PostDTO> result = postService.getAllPostDTOsByUsername("testuser", 0, 10, "date", null, null);
 
         // Assert
         assertThat(result.getContent()).hasSize(1);
-        assertThat(result.getContent().get(0)).isEqualTo(testPost);
-        verify(postRepository).findAllPostsWithFilters(pageable, null, null);
+        verify(postRepository).findPostDTOsWithFilters(testUser, pageable, null, null);
     }
 
     @Test
-    public void getAllPostsByUsername_NewSort_Success() {
+    public void getPostSlice_FirstSlice_Success() {
         // Arrange
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("datePosted")));
-        List<Post> postList = Collections.singletonList(testPost);
-        Page<Post> page = new PageImpl<>(postList, pageable, 1);
+        Slice<Post> slice = new SliceImpl<>(Collections.singletonList(testPost), PageRequest.of(0, 10), false);
+        when(postRepository.findPostSliceWithFilters(null, PostCursor.SortKey.DATE, null, 10, null, null)).thenReturn(slice);
+
+        // Act
+        Slice<Post> result = postService.getPostSlice(null, 10, "date", null, null);
+
+        // Assert
+        assertThat(result.getContent()).containsExactly(testPost);
+        assertThat(postService.nextCursor(result, "date")).isNull();
+    }
+
+    @Test
+    public void getPostSliceByUsername_WithCursor_Success() {
+        // Arrange
+        testPost.setLikeCount(3);
+        String cursor = PostCursor.fromPost(testPost, PostCursor.SortKey.POPULARITY).encode();
+        Slice<Post> slice = new SliceImpl<>(Collections.singletonList(testPost), PageRequest.of(0, 1), true);
 
         when(userService.loadUserByUsername("testuser")).thenReturn(testUser);
-        when(postRepository.findAllPostsByUserWithFilters(testUser, pageable, null, null)).thenReturn(page);
+        when(postRepository.findPostSliceWithFilters(eq(testUser), eq(PostCursor.SortKey.POPULARITY), any(PostCursor.class), eq(1), isNull(), isNull()))
+                .thenReturn(slice);
 
         // Act
-        Page<Post> result = postService.getAllPostsByUsername("testuser", 0, 10, "new", null, null);
+        Slice<Post> result = postService.getPostSliceByUsername("testuser", cursor, 1, "popularity", null, null);
 
         // Assert
-        assertThat(result.getContent()).hasSize(1);
-        assertThat(result.getContent().get(0)).isEqualTo(testPost);
-        verify(userService).loadUserByUsername("testuser");
-        verify(postRepository).findAllPostsByUserWithFilters(testUser, pageable, null, null);
+        assertThat(result.getContent()).containsExactly(testPost);
+        PostCursor next = PostCursor.decode(postService.nextCursor(result, "popularity"), PostCursor.SortKey.POPULARITY);
+        assertThat(next.getId()).isEqualTo(testPost.getId());
+        assertThat(next.getLikeCount()).isEqualTo(3);
     }
 
     @Test
-    public void getAllPostsByUsername_PopularitySort_Success() {
+    public void getPostSlice_CursorForOtherSort_ThrowsIllegalArgumentException() {
         // Arrange
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Order.desc("likeCount"), Sort.Order.desc("datePosted")));
-        List<Post> postList = Collections.singletonList(testPost);
-        Page<Post> page = new PageImpl<>(postList, pageable, 1);
+        String cursor = PostCursor.fromPost(testPost, PostCursor.SortKey.POPULARITY).encode();
 
-        when(userService.loadUserByUsername("testuser")).thenReturn(testUser);
-        when(postRepository.findAllPostsByUserWithFilters(testUser, pageable, null, null)).thenReturn(page);
+        // Assert
+        assertThatThrownBy(() -> postService.getPostSlice(cursor, 10, "date", null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void getPostSlice_Active_ResumesAfterLastActivity() {
+        // Arrange
+        testPost.setLastActivityAt(new Date(testPost.getDatePosted().getTime() + 1000));
+        Slice<Post> slice = new SliceImpl<>(Collections.singletonList(testPost), PageRequest.of(0, 1), true);
+        when(postRepository.findPostSliceWithFilters(null, PostCursor.SortKey.ACTIVE, null, 1, null, null)).thenReturn(slice);
 
         // Act
-        Page<Post> result = postService.getAllPostsByUsername("testuser", 0, 10, "popularity", null, null);
+        Slice<Post> result = postService.getPostSlice(null, 1, "active", null, null);
 
         // Assert
-        assertThat(result.getContent()).hasSize(1);
-        assertThat(result.getContent().get(0)).isEqualTo(testPost);
-        verify(userService).loadUserByUsername("testuser");
-        verify(postRepository).findAllPostsByUserWithFilters(testUser, pageable, null, null);
+        PostCursor next = PostCursor.decode(postService.nextCursor(result, "active"), PostCursor.SortKey.ACTIVE);
+        assertThat(next.getId()).isEqualTo(testPost.getId());
+        assertThat(next.getLastActivityAt()).isEqualTo(testPost.getLastActivityAt());
+    }
+
+    @Test
+    public void getPostSlice_HotSort_ThrowsIllegalArgumentException() {
+        // Assert
+        assertThatThrownBy(() -> postService.getPostSlice(null, 10, "hot", null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(postRepository);
     }
-}
\ No newline at end of file
+}
@@ -3,14 +3,22 @@ package com.vision.testing.service;
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.Reply;
+import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.CursorPageDTO;
 import com.vision.middleware.dto.ReplyDTO;
+import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
+import com.vision.middleware.repo.PostRepository;
 import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.repo.searchspec.ReplyTreeRow;
+import com.vision.middleware.service.CommentTreeCache;
+import com.vision.middleware.service.CommentTreeCache.CommentTree;
 import com.vision.middleware.service.PostService;
 import com.vision.middleware.service.ReplyService;
 import com.vision.middleware.service.UserService;
 import com.vision.middleware.service.VotingService;
+import com.vision.middleware.service.VoteCounterBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,9 +30,13 @@ import org.mockito.quality.Strictness;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.util.*;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +46,9 @@ public class ReplyServiceTest {
     @Mock
     private ReplyRepository replyRepository;
 
+    @Mock
+    private PostRepository postRepository;
+
     @Mock
     private UserService userService;
 
@@ -43,6 +58,12 @@ public class ReplyServiceTest {
     @Mock
     private VotingService votingService;
 
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
+    @Mock
+    private CommentTreeCache commentTreeCache;
+
     @InjectMocks
     private ReplyService replyService;
 
@@ -85,6 +106,11 @@ public class ReplyServiceTest {
                 .build();
 
         when(userService.loadUserById(1L)).thenReturn(testUser);
+        // the cache loads a tree on every read, so each test's rows are read as they are at the time
+        when(commentTreeCache.read(anyLong(), any())).thenAnswer(invocation -> {
+            Function<CommentTree, ?> reader = invocation.getArgument(1);
+            return reader.apply(CommentTree.of(replyRepository.findCommentTreeRows(invocation.getArgument(0))));
+        });
     }
 
     @Test
@@ -99,6 +125,8 @@ public class ReplyServiceTest {
         assertThat(createdReply.getText()).isEqualTo("Test reply content");
 
         verify(replyRepository).save(any(Reply.class));
+        verify(commentTreeCache).replyCreated(testReply);
+        verify(postRepository).addReplyActivity(testPost.getId(), 1, testReply.getDatePosted());
     }
 
     @Test
@@ -126,6 +154,7 @@ public class ReplyServiceTest {
         for (int i = 0; i < 100; i++) {
             deepestParent = Reply.builder()
                     .parentReply(deepestParent)
+                    .depth(deepestParent.getDepth() + 1)
                     .build();
         }
 
@@ -196,6 +225,33 @@ public class ReplyServiceTest {
 
         verify(replyRepository).delete(testReply);
         verify(replyRepository).save(parentReply);
+        verify(commentTreeCache).replyRemoved(testPost.getId(), testReply.getId());
+        verify(postRepository).addReplyActivity(testPost.getId(), -1, null);
+    }
+
+    @Test
+    void deleteReply_TopLevelWithoutChildren_DeletedCompletely() {
+        testReply.setChildReplies(new HashSet<>());
+        testReply.setParentReply(null);
+
+        replyService.deleteReply(testReply);
+
+        verify(replyRepository).delete(testReply);
+        verify(replyRepository, never()).save(any());
+        verify(commentTreeCache).replyRemoved(testPost.getId(), testReply.getId());
+        verify(postRepository).addReplyActivity(testPost.getId(), -1, null);
+    }
+
+    @Test
+    void deleteReply_AlreadySoftDeleted_NotCountedAgain() {
+        testReply.softDelete();
+        testReply.setChildReplies(new HashSet<>());
+        testReply.setParentReply(Reply.builder().id(2L).build());
+
+        replyService.deleteReply(testReply);
+
+        verify(replyRepository).delete(testReply);
+        verify(postRepository, never()).addReplyActivity(anyLong(), anyLong(), any());
     }
 
     @Test
@@ -212,15 +268,34 @@ public class ReplyServiceTest {
         assertThat(testReply.isDeleted()).isTrue();
         assertThat(testReply.getText()).isEqualTo("[deleted]");
         verify(replyRepository).save(testReply);
+        verify(commentTreeCache).replySoftDeleted(testPost.getId(), testReply.getId(), "[deleted]");
+        verify(postRepository).addReplyActivity(testPost.getId(), -1, null);
+    }
+
+    private static ReplyTreeRow row(long id, Long parentId, String text, long voteScore) {
+        return new ReplyTreeRow() {
+            public Long getId() { return id; }
+            public Long getParentId() { return parentId; }
+            public String getText() { return text; }
+            public Date getDatePosted() { return new Date(id); }
+            public Long getLikeCount() { return Math.max(voteScore, 0); }
+            public Long getDislikeCount() { return Math.max(-voteScore, 0); }
+            public Long getVoteScore() { return voteScore; }
+            public Boolean getDeleted() { return false; }
+            public Long getUserId() { return 1L; }
+            public String getUsername() { return "testuser"; }
+            public String getDisplayName() { return "Test User"; }
+            public String getProfilePictureFileName() { return null; }
+        };
     }
 
     @Test
     void getCommentTreeForPost_ReturnsCorrectStructure() {
-        List<Reply> topLevelReplies = new ArrayList<>();
-        topLevelReplies.add(testReply);
-
-        when(replyRepository.findTopLevelRepliesByPostId(1L)).thenReturn(topLevelReplies);
-        when(votingService.getUserVoteOnVotable(testUser, testReply)).thenReturn(Optional.empty());
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(List.of(
+                row(testReply.getId(), null, testReply.getText(), 0),
+                row(testChildReply.getId(), testReply.getId(), testChildReply.getText(), 0)));
+        when(votingService.getUserVotesOnAll(eq(testUser.getId()), eq(VotableType.REPLY), any()))
+                .thenReturn(Map.of(testChildReply.getId(), UserVote.VoteType.LIKE));
 
         List<ReplyDTO> commentTree = replyService.getCommentTreeForPost(1L, testUser);
 
@@ -228,70 +303,270 @@ public class ReplyServiceTest {
         ReplyDTO firstReply = commentTree.get(0);
         assertThat(firstReply.getId()).isEqualTo(testReply.getId());
         assertThat(firstReply.getText()).isEqualTo(testReply.getText());
+        assertThat(firstReply.getAuthor().getUsername()).isEqualTo("testuser");
 
         ReplyDTO childReply = commentTree.get(0).getReplies().get(0);
         assertThat(childReply.getId()).isEqualTo(testChildReply.getId());
         assertThat(childReply.getText()).isEqualTo(testChildReply.getText());
+        assertThat(childReply.getReplies()).isEmpty();
+
+        assertThat(firstReply.getUserVoteType()).isNull();
+        assertThat(childReply.getUserVoteType()).isEqualTo(UserVote.VoteType.LIKE);
+        verify(votingService, times(1)).getUserVotesOnAll(testUser.getId(), VotableType.REPLY,
+                Set.of(testReply.getId(), testChildReply.getId()));
+        verify(votingService, never()).getUserVoteOnVotable(any(), any());
     }
 
     @Test
-    void userVoteOnReply_ValidInput_VotingServiceCalled() {
-        when(replyRepository.findById(testReply.getId())).thenReturn(Optional.of(testReply));
+    void getCommentTreeForPost_AnonymousCaller_SkipsVoteLookup() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(List.of(
+                row(testReply.getId(), null, testReply.getText(), 0),
+                row(testChildReply.getId(), testReply.getId(), testChildReply.getText(), 0)));
+
+        List<ReplyDTO> commentTree = replyService.getCommentTreeForPost(1L, null);
+
+        assertThat(commentTree).singleElement().satisfies(reply -> {
+            assertThat(reply.getUserVoteType()).isNull();
+            assertThat(reply.getReplies()).singleElement()
+                    .satisfies(child -> assertThat(child.getUserVoteType()).isNull());
+        });
+        verifyNoInteractions(votingService);
+    }
 
-        replyService.userVoteOnReply(testReply.getId(), testUser.getId(), UserVote.VoteType.LIKE);
+    @Test
+    void getCommentTreeForPost_KeepsRowOrderAmongSiblings() {
+        // rows interleave levels, as ordered by score across the whole post
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(List.of(
+                row(20L, 10L, "best child", 9),
+                row(10L, null, "best top", 5),
+                row(21L, 11L, "only grandchild", 4),
+                row(11L, 10L, "second child", 3),
+                row(12L, null, "second top", 1),
+                row(13L, 10L, "third child", -2)));
 
-        verify(votingService).voteOnVotable(testUser, testReply, UserVote.VoteType.LIKE);
+        List<ReplyDTO> commentTree = replyService.getCommentTreeForPost(1L, testUser);
+
+        assertThat(commentTree).extracting(ReplyDTO::getId).containsExactly(10L, 12L);
+        assertThat(commentTree.get(0).getReplies()).extracting(ReplyDTO::getId).containsExactly(20L, 11L, 13L);
+        assertThat(commentTree.get(0).getReplies().get(1).getReplies()).extracting(ReplyDTO::getId).containsExactly(21L);
+        assertThat(commentTree.get(1).getReplies()).isEmpty();
+        verify(replyRepository, times(1)).findCommentTreeRows(1L);
+        verify(replyRepository, never()).findTopLevelRepliesByPostId(any());
+    }
+
+    private List<ReplyTreeRow> wideThread() {
+        // top-level 10..14; 10 has children 20..23; 20 has child 30
+        List<ReplyTreeRow> rows = new ArrayList<>();
+        for (long id = 10; id <= 14; id++) {
+            rows.add(row(id, null, "top " + id, 100 - id));
+        }
+        for (long id = 20; id <= 23; id++) {
+            rows.add(row(id, 10L, "child " + id, 50 - id));
+        }
+        rows.add(row(30L, 20L, "grandchild", 0));
+        return rows;
     }
 
     @Test
-    void userVoteOnReply_ReplyNotFound_ThrowsIdNotFoundException() {
-        when(replyRepository.findById(999L)).thenReturn(Optional.empty());
+    void getCommentTreePage_LimitsTopLevelChildrenAndDepth() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(wideThread());
 
-        assertThatThrownBy(() ->
-                replyService.userVoteOnReply(999L, testUser.getId(), UserVote.VoteType.LIKE)
-        ).isInstanceOf(IdNotFoundException.class)
-                .hasMessageContaining("Reply id 999 not found.");
+        CursorPageDTO<ReplyDTO> page = replyService.getCommentTreePage(1L, null, 2, 3, 2);
+
+        assertThat(page.getContent()).extracting(ReplyDTO::getId).containsExactly(10L, 11L);
+        assertThat(page.isHasNext()).isTrue();
+
+        ReplyDTO top = page.getContent().get(0);
+        assertThat(top.getChildCount()).isEqualTo(4);
+        assertThat(top.getReplies()).extracting(ReplyDTO::getId).containsExactly(20L, 21L, 22L);
+        assertThat(top.getMoreCursor()).isNotNull();
+
+        // cut off by depth: counted but not included
+        ReplyDTO child = top.getReplies().get(0);
+        assertThat(child.getChildCount()).isEqualTo(1);
+        assertThat(child.getReplies()).isEmpty();
+        assertThat(child.getMoreCursor()).isNotNull();
+
+        ReplyDTO leaf = page.getContent().get(1);
+        assertThat(leaf.getChildCount()).isZero();
+        assertThat(leaf.getMoreCursor()).isNull();
+        verifyNoInteractions(votingService);
     }
 
     @Test
-    void userVoteOnReply_UserNotFound_ThrowsUsernameNotFoundException() {
-        when(replyRepository.findById(testReply.getId())).thenReturn(Optional.of(testReply));
-        when(userService.loadUserById(999L)).thenThrow(new UsernameNotFoundException("User not found."));
+    void getMoreReplies_ContinuesFromCursors() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(wideThread());
+        CursorPageDTO<ReplyDTO> first = replyService.getCommentTreePage(1L, null, 2, 3, 2);
+
+        CursorPageDTO<ReplyDTO> topLevel = replyService.getMoreReplies(1L, first.getNextCursor(), null, 2, 0, 1);
+        assertThat(topLevel.getContent()).extracting(ReplyDTO::getId).containsExactly(12L, 13L);
+        CursorPageDTO<ReplyDTO> last = replyService.getMoreReplies(1L, topLevel.getNextCursor(), null, 2, 0, 1);
+        assertThat(last.getContent()).extracting(ReplyDTO::getId).containsExactly(14L);
+        assertThat(last.isHasNext()).isFalse();
+        assertThat(last.getNextCursor()).isNull();
+
+        // children are continued from the parent's subtree alone
+        List<ReplyTreeRow> under10 = wideThread().stream().filter(row -> row.getId() >= 20).toList();
+        when(replyRepository.findSubtreeRows(1L, 10L)).thenReturn(under10);
+        when(replyRepository.findSubtreeRows(1L, 20L)).thenReturn(under10.subList(under10.size() - 1, under10.size()));
+
+        ReplyDTO top = first.getContent().get(0);
+        CursorPageDTO<ReplyDTO> moreChildren = replyService.getMoreReplies(1L, top.getMoreCursor(), null, 10, 3, 2);
+        assertThat(moreChildren.getContent()).extracting(ReplyDTO::getId).containsExactly(23L);
+
+        CursorPageDTO<ReplyDTO> deeper = replyService.getMoreReplies(1L, top.getReplies().get(0).getMoreCursor(), null, 10, 3, 2);
+        assertThat(deeper.getContent()).extracting(ReplyDTO::getId).containsExactly(30L);
+    }
 
-        assertThatThrownBy(() ->
-                replyService.userVoteOnReply(testReply.getId(), 999L, UserVote.VoteType.LIKE)
-        ).isInstanceOf(UsernameNotFoundException.class)
-                .hasMessageContaining("User not found.");
+    @Test
+    void getMoreReplies_TreeCached_ContinuesChildrenFromIt() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(wideThread());
+        when(commentTreeCache.readIfCached(eq(1L), any())).thenAnswer(invocation -> {
+            Function<CommentTree, ?> reader = invocation.getArgument(1);
+            return Optional.ofNullable(reader.apply(CommentTree.of(wideThread())));
+        });
+        ReplyDTO top = replyService.getCommentTreePage(1L, null, 2, 3, 2).getContent().get(0);
+
+        CursorPageDTO<ReplyDTO> moreChildren = replyService.getMoreReplies(1L, top.getMoreCursor(), null, 10, 3, 2);
+
+        assertThat(moreChildren.getContent()).extracting(ReplyDTO::getId).containsExactly(23L);
+        verify(replyRepository, never()).findSubtreeRows(anyLong(), anyLong());
+        verify(voteCounterBuffer, never()).mergeInto(any(ReplyDTO.class));
     }
 
     @Test
-    void removeUserVoteOnReply_ValidInput_VotingServiceCalled() {
-        when(replyRepository.findById(testReply.getId())).thenReturn(Optional.of(testReply));
+    void getMoreReplies_CursorReplyDeleted_ContinuesAfterItsPosition() {
+        List<ReplyTreeRow> rows = new ArrayList<>(wideThread());
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(rows);
+        String cursor = replyService.getCommentTreePage(1L, null, 2, 0, 1).getNextCursor();
 
-        replyService.removeUserVoteOnReply(testReply.getId(), testUser.getId());
+        rows.removeIf(row -> row.getId() == 11L);
 
-        verify(votingService).deleteVote(testUser, testReply);
+        assertThat(replyService.getMoreReplies(1L, cursor, null, 10, 0, 1).getContent())
+                .extracting(ReplyDTO::getId).containsExactly(12L, 13L, 14L);
     }
 
     @Test
-    void removeUserVoteOnReply_ReplyNotFound_ThrowsIdNotFoundException() {
-        when(replyRepository.findById(999L)).thenReturn(Optional.empty());
+    void getMoreReplies_InvalidCursor_ThrowsIllegalArgumentException() {
+        when(replyRepository.findCommentTreeRows(1L)).thenReturn(wideThread());
+        String cursor = replyService.getCommentTreePage(1L, null, 2, 0, 1).getNextCursor();
+
+        assertThatThrownBy(() -> replyService.getMoreReplies(2L, cursor, null, 10, 0, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> replyService.getMoreReplies(1L, "not a cursor", null, 10, 0, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Reply placedReply(long id, Post post, Reply parent) {
+        Reply reply = Reply.builder().id(id).post(post).build();
+        if (parent != null) {
+            parent.addChildReply(reply);
+        }
+        reply.placeUnder(parent);
+        return reply;
+    }
+
+    @Test
+    void moveReply_MovesSubtreePathsInOneStatement() {
+        Reply top = placedReply(10L, testPost, null);
+        Reply child = placedReply(20L, testPost, top);
+        Reply otherTop = placedReply(11L, testPost, null);
+        when(replyRepository.findMaxDepthUnder("/10/20/")).thenReturn(3);
+        when(replyRepository.saveAndFlush(child)).thenReturn(child);
+
+        replyService.moveReply(child, otherTop);
+
+        assertThat(child.getPath()).isEqualTo("/11/");
+        assertThat(child.getDepth()).isEqualTo(1);
+        assertThat(child.getParentReply()).isSameAs(otherTop);
+        assertThat(top.getChildReplies()).isEmpty();
+        verify(replyRepository).movePaths("/10/20/", "/11/20/", 0);
+        verify(commentTreeCache).replyMoved(testPost.getId(), 20L, 11L);
+
+        when(replyRepository.findMaxDepthUnder("/11/20/")).thenReturn(3);
+        replyService.moveReply(child, null);
+
+        assertThat(child.getPath()).isEqualTo("/");
+        assertThat(child.getDepth()).isZero();
+        verify(replyRepository).movePaths("/11/20/", "/20/", -1);
+    }
+
+    @Test
+    void moveReply_BelowItself_ThrowsIllegalArgumentException() {
+        Reply top = placedReply(10L, testPost, null);
+        Reply grandchild = placedReply(30L, testPost, placedReply(20L, testPost, top));
+
+        assertThatThrownBy(() -> replyService.moveReply(top, grandchild))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("below itself");
+        assertThatThrownBy(() -> replyService.moveReply(top, top))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(replyRepository, never()).movePaths(any(), any(), anyInt());
+    }
+
+    @Test
+    void moveReply_ToAnotherPost_ThrowsIllegalArgumentException() {
+        Reply reply = placedReply(10L, testPost, null);
+        Reply elsewhere = placedReply(11L, Post.builder().id(2L).build(), null);
+
+        assertThatThrownBy(() -> replyService.moveReply(reply, elsewhere))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("within its post");
+    }
+
+    @Test
+    void moveReply_SubtreeTooDeep_ThrowsIllegalArgumentException() {
+        Reply top = placedReply(10L, testPost, null);
+        Reply deepParent = Reply.builder().id(50L).post(testPost).path("/11/").depth(60).build();
+        when(replyRepository.findMaxDepthUnder("/10/")).thenReturn(45);
+
+        assertThatThrownBy(() -> replyService.moveReply(top, deepParent))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Maximum nesting depth");
+        verify(replyRepository, never()).movePaths(any(), any(), anyInt());
+    }
+
+    @Test
+    void userVoteOnReply_ValidInput_VotingServiceCalled() {
+        VoteDTO vote = VoteDTO.builder().votableId(testReply.getId()).voteType(UserVote.VoteType.LIKE).build();
+        when(votingService.castVote(testUser.getId(), testReply.getId(), VotableType.REPLY, UserVote.VoteType.LIKE))
+                .thenReturn(vote);
+
+        VoteDTO result = replyService.userVoteOnReply(testReply.getId(), testUser.getId(), UserVote.VoteType.LIKE);
+
+        assertThat(result).isSameAs(vote);
+        verify(replyRepository, never()).findById(anyLong());
+        verify(userService, never()).loadUserById(anyLong());
+    }
+
+    @Test
+    void userVoteOnReply_ReplyNotFound_ThrowsIdNotFoundException() {
+        when(votingService.castVote(testUser.getId(), 999L, VotableType.REPLY, UserVote.VoteType.LIKE))
+                .thenThrow(new IdNotFoundException("Reply id 999 not found."));
 
         assertThatThrownBy(() ->
-                replyService.removeUserVoteOnReply(999L, testUser.getId())
+                replyService.userVoteOnReply(999L, testUser.getId(), UserVote.VoteType.LIKE)
         ).isInstanceOf(IdNotFoundException.class)
                 .hasMessageContaining("Reply id 999 not found.");
     }
 
     @Test
-    void removeUserVoteOnReply_UserNotFound_ThrowsUsernameNotFoundException() {
-        when(replyRepository.findById(testReply.getId())).thenReturn(Optional.of(testReply));
-        when(userService.loadUserById(999L)).thenThrow(new UsernameNotFoundException("User not found."));
+    void removeUserVoteOnReply_ValidInput_VotingServiceCalled() {
+        replyService.removeUserVoteOnReply(testReply.getId(), testUser.getId());
+
+        verify(votingService).removeVote(testUser.getId(), testReply.getId(), VotableType.REPLY);
+        verify(replyRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void removeUserVoteOnReply_ReplyNotFound_ThrowsIdNotFoundException() {
+        when(votingService.removeVote(testUser.getId(), 999L, VotableType.REPLY))
+                .thenThrow(new IdNotFoundException("Reply id 999 not found."));
 
         assertThatThrownBy(() ->
-                replyService.removeUserVoteOnReply(testReply.getId(), 999L)
-        ).isInstanceOf(UsernameNotFoundException.class)
-                .hasMessageContaining("User not found.");
+                replyService.removeUserVoteOnReply(999L, testUser.getId())
+        ).isInstanceOf(IdNotFoundException.class)
+                .hasMessageContaining("Reply id 999 not found.");
     }
 
     @Test
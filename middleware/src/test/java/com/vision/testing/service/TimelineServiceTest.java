@@ -0,0 +1,171 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.domain.Post;
+import com.vision.middleware.events.PostCreatedEvent;
+import com.vision.middleware.repo.PostRepository;
+import com.vision.middleware.repo.TimelineEntryRepository;
+import com.vision.middleware.repo.UserFollowsRepository;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.PostCursor;
+import com.vision.middleware.service.TimelineService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class TimelineServiceTest {
+
+    @Mock
+    private TimelineEntryRepository timelineEntryRepository;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserFollowsRepository followsRepository;
+
+    @InjectMocks
+    private TimelineService timelineService;
+
+    private ApplicationUser author;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(timelineService, "maxFanOutFollowers", 100L);
+        ReflectionTestUtils.setField(timelineService, "backfillSize", 50);
+        when(userRepository.findTimelineFilledById(anyLong())).thenReturn(Optional.of(true));
+
+        author = new ApplicationUser();
+        author.setId(2L);
+        author.setUsername("author");
+    }
+
+    private Post post(long id, long millis) {
+        return Post.builder().id(id).postedBy(author).datePosted(new Date(millis)).build();
+    }
+
+    @Test
+    public void onPostCreated_RegularAuthor_FansOutToFollowers() {
+        // Arrange
+        Date date = new Date();
+        when(userRepository.findFollowerCountById(2L)).thenReturn(Optional.of(10L));
+
+        // Act
+        timelineService.onPostCreated(new PostCreatedEvent(5L, 2L, date, "title", "text"));
+
+        // Assert
+        verify(timelineEntryRepository).deliverToOwner(2L, 5L, 2L, date);
+        verify(timelineEntryRepository).fanOutToFollowers(5L, 2L, date);
+    }
+
+    @Test
+    public void onPostCreated_PopularAuthor_OnlyDeliversToAuthor() {
+        // Arrange
+        Date date = new Date();
+        when(userRepository.findFollowerCountById(2L)).thenReturn(Optional.of(1000L));
+
+        // Act
+        timelineService.onPostCreated(new PostCreatedEvent(5L, 2L, date, "title", "text"));
+
+        // Assert
+        verify(timelineEntryRepository).deliverToOwner(2L, 5L, 2L, date);
+        verify(timelineEntryRepository, never()).fanOutToFollowers(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void onFollow_RegularAuthor_BackfillsTimeline() {
+        when(userRepository.findFollowerCountById(2L)).thenReturn(Optional.of(10L));
+
+        timelineService.onFollow(1L, 2L);
+
+        verify(timelineEntryRepository).backfillFromAuthor(1L, 2L, 50);
+    }
+
+    @Test
+    public void getTimeline_FirstSlice_HasNext() {
+        // Arrange
+        List<Post> inbox = List.of(post(3L, 3000), post(2L, 2000), post(1L, 1000));
+        when(timelineEntryRepository.findTimelinePostsBefore(eq(1L), any(Date.class), eq(Long.MAX_VALUE), eq(Limit.of(3))))
+                .thenReturn(inbox);
+        when(followsRepository.findFolloweeIdsWithFollowerCountAbove(1L, 100L)).thenReturn(List.of());
+
+        // Act
+        Slice<Post> result = timelineService.getTimeline(1L, null, 2);
+
+        // Assert
+        assertThat(result.getContent()).extracting(Post::getId).containsExactly(3L, 2L);
+        assertThat(result.hasNext()).isTrue();
+        verifyNoInteractions(postRepository);
+    }
+
+    @Test
+    public void getTimeline_MergesPopularAuthorsNewestFirst() {
+        // Arrange
+        String cursor = PostCursor.fromPost(post(10L, 10_000), PostCursor.SortKey.DATE).encode();
+        Post shared = post(4L, 4000);
+        when(timelineEntryRepository.findTimelinePostsBefore(eq(1L), eq(new Date(10_000)), eq(10L), any(Limit.class)))
+                .thenReturn(List.of(post(6L, 6000), shared));
+        when(followsRepository.findFolloweeIdsWithFollowerCountAbove(1L, 100L)).thenReturn(List.of(2L));
+        when(postRepository.findByAuthorIdsBefore(eq(List.of(2L)), eq(new Date(10_000)), eq(10L), any(Limit.class)))
+                .thenReturn(List.of(post(7L, 7000), shared, post(5L, 5000)));
+
+        // Act
+        Slice<Post> result = timelineService.getTimeline(1L, cursor, 10);
+
+        // Assert
+        assertThat(result.getContent()).extracting(Post::getId).containsExactly(7L, 6L, 5L, 4L);
+        assertThat(result.hasNext()).isFalse();
+    }
+
+    @Test
+    public void getTimeline_UnfilledTimeline_FilledBeforeRead() {
+        // Arrange: a user stored before timelines existed
+        when(userRepository.findTimelineFilledById(1L)).thenReturn(Optional.empty());
+        when(timelineEntryRepository.findTimelinePostsBefore(eq(1L), any(Date.class), eq(Long.MAX_VALUE), any(Limit.class)))
+                .thenReturn(List.of(post(3L, 3000)));
+
+        // Act
+        Slice<Post> result = timelineService.getTimeline(1L, null, 10);
+
+        // Assert
+        InOrder inOrder = inOrder(timelineEntryRepository, userRepository);
+        inOrder.verify(timelineEntryRepository).backfillFromFollowees(1L, 100L, 50);
+        inOrder.verify(userRepository).markTimelineFilledById(1L);
+        inOrder.verify(timelineEntryRepository).findTimelinePostsBefore(eq(1L), any(Date.class), eq(Long.MAX_VALUE), any(Limit.class));
+        assertThat(result.getContent()).extracting(Post::getId).containsExactly(3L);
+    }
+
+    @Test
+    public void getTimeline_FilledTimeline_NotFilledAgain() {
+        timelineService.getTimeline(1L, null, 10);
+
+        verify(timelineEntryRepository, never()).backfillFromFollowees(anyLong(), anyLong(), anyInt());
+        verify(userRepository, never()).markTimelineFilledById(anyLong());
+    }
+
+    @Test
+    public void getTimeline_InvalidCursor_ThrowsException() {
+        assertThatThrownBy(() -> timelineService.getTimeline(1L, "garbage", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,208 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.ApplicationUser;
+import com.vision.middleware.dto.UserDTO;
+import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.UserAutocompleteRow;
+import com.vision.middleware.service.ClusterCacheInvalidator;
+import com.vision.middleware.service.UserAutocompleteIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class UserAutocompleteIndexTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ClusterCacheInvalidator clusterCacheInvalidator;
+
+    @InjectMocks
+    private UserAutocompleteIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private ApplicationUser user(long id, String username, String displayName, long followerCount) {
+        return ApplicationUser.builder()
+                .id(id)
+                .username(username)
+                .password("password")
+                .fullName("full name")
+                .email(username + "@example.com")
+                .phoneNumber("1234567890")
+                .displayName(displayName)
+                .followerCount(followerCount)
+                .build();
+    }
+
+    private UserAutocompleteRow row(long id, String username, long followerCount) {
+        UserAutocompleteRow row = mock(UserAutocompleteRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getUsername()).thenReturn(username);
+        when(row.getFollowerCount()).thenReturn(followerCount);
+        return row;
+    }
+
+    @Test
+    public void complete_RanksByFollowerCountAcrossUsernamesAndDisplayNames() {
+        index.put(user(1L, "johnny", null, 5));
+        index.put(user(2L, "jdoe", "John Doe", 50));
+        index.put(user(3L, "jonas", null, 20));
+        index.put(user(4L, "alice", null, 1000));
+
+        assertThat(index.complete("Jo", 10)).extracting(UserDTO::getUserId).containsExactly(2L, 3L, 1L);
+        assertThat(index.complete("joh", 10)).extracting(UserDTO::getUserId).containsExactly(2L, 1L);
+        assertThat(index.complete("john d", 10)).extracting(UserDTO::getUserId).containsExactly(2L);
+        assertThat(index.complete("jo", 1)).extracting(UserDTO::getUsername).containsExactly("jdoe");
+        assertThat(index.complete("x", 10)).isEmpty();
+        assertThat(index.complete("johnnyb", 10)).isEmpty();
+    }
+
+    @Test
+    public void complete_UserMatchingTwiceIsListedOnce() {
+        index.put(user(1L, "sam", "Samantha", 5));
+
+        assertThat(index.complete("sam", 10)).extracting(UserDTO::getUserId).containsExactly(1L);
+    }
+
+    @Test
+    public void complete_KeepsOnlyTopK() {
+        IntStream.rangeClosed(1, 25).forEach(i -> index.put(user(i, "user" + i, null, i)));
+
+        assertThat(index.complete("user", 100)).hasSize(UserAutocompleteIndex.TOP_K)
+                .extracting(UserDTO::getUserId).startsWith(25L, 24L, 23L);
+        // "user1" covers user1 and user10..user19
+        assertThat(index.complete("user1", 3)).extracting(UserDTO::getUserId).containsExactly(19L, 18L, 17L);
+    }
+
+    @Test
+    public void updateDisplayName_MovesUserToNewName() {
+        index.put(user(1L, "abc", "Old Name", 5));
+        index.put(user(2L, "oldie", null, 1));
+
+        index.updateDisplayName(1L, "New Name");
+
+        assertThat(index.complete("old", 10)).extracting(UserDTO::getUserId).containsExactly(2L);
+        assertThat(index.complete("new", 10)).extracting(UserDTO::getDisplayName).containsExactly("New Name");
+    }
+
+    @Test
+    public void adjustFollowerCount_ReRanksBothWays() {
+        index.put(user(1L, "anna", null, 10));
+        index.put(user(2L, "annie", null, 5));
+
+        index.adjustFollowerCount(2L, 10);
+        assertThat(index.complete("ann", 10)).extracting(UserDTO::getUserId).containsExactly(2L, 1L);
+        assertThat(index.complete("ann", 10).get(0).getFollowerCount()).isEqualTo(15);
+
+        index.adjustFollowerCount(2L, -10);
+        assertThat(index.complete("ann", 10)).extracting(UserDTO::getUserId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void adjustFollowerCount_RefillsTopListFromSubtree() {
+        IntStream.rangeClosed(1, 11).forEach(i -> index.put(user(i, "user" + i, null, 100 + i)));
+
+        // user11 drops from first to last, so the 11th-ranked user must come back into the list
+        index.adjustFollowerCount(11L, -1000);
+
+        assertThat(index.complete("user", 10)).extracting(UserDTO::getUserId)
+                .containsExactly(10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L);
+    }
+
+    @Test
+    public void updateProfilePicture_IsReturned() {
+        index.put(user(1L, "pic", null, 0));
+
+        index.updateProfilePicture(1L, "new.png");
+
+        assertThat(index.complete("pic", 10).get(0).getProfilePictureFileName()).isEqualTo("new.png");
+    }
+
+    @Test
+    public void load_StreamsUsersButKeepsNewerChanges() {
+        index.put(user(1L, "renamed", null, 0));
+        UserAutocompleteRow stale = row(1L, "stale", 0);
+        UserAutocompleteRow other = row(2L, "other", 3);
+        when(userRepository.streamAllForAutocomplete()).thenReturn(Stream.of(stale, other));
+
+        assertThat(index.isReady()).isFalse();
+        index.load();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.complete("stale", 10)).isEmpty();
+        assertThat(index.complete("renamed", 10)).extracting(UserDTO::getUserId).containsExactly(1L);
+        assertThat(index.complete("oth", 10)).extracting(UserDTO::getUserId).containsExactly(2L);
+    }
+
+    @Test
+    public void changesInTransaction_OnlyApplyOnCommit() {
+        index.put(user(1L, "kept", null, 5));
+
+        TransactionSynchronizationManager.initSynchronization();
+        index.put(user(2L, "phantom", null, 0));
+        index.adjustFollowerCount(1L, 100);
+        index.updateDisplayName(1L, "Renamed");
+        assertThat(index.complete("phantom", 10)).isEmpty();
+        assertThat(index.complete("kept", 10).get(0).getFollowerCount()).isEqualTo(5);
+
+        // rolled back: the synchronizations never run
+        TransactionSynchronizationManager.clearSynchronization();
+        assertThat(index.complete("phantom", 10)).isEmpty();
+        assertThat(index.complete("renamed", 10)).isEmpty();
+
+        TransactionSynchronizationManager.initSynchronization();
+        index.adjustFollowerCount(1L, 100);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(index.complete("kept", 10).get(0).getFollowerCount()).isEqualTo(105);
+    }
+
+    @Test
+    public void changesOnOtherNodes_ReloadTheUser() {
+        ArgumentCaptor<Consumer<List<Long>>> handler = ArgumentCaptor.captor();
+        index.listenToCluster();
+        verify(clusterCacheInvalidator).register(eq(UserAutocompleteIndex.CLUSTER_USERS), handler.capture());
+
+        index.put(user(1L, "before", null, 5));
+        verify(clusterCacheInvalidator).publish(UserAutocompleteIndex.CLUSTER_USERS, List.of(1L));
+
+        // renamed and followed on another node
+        UserAutocompleteRow after = row(1L, "after", 7);
+        when(userRepository.findAutocompleteRowById(1L)).thenReturn(Optional.of(after));
+        when(userRepository.findAutocompleteRowById(2L)).thenReturn(Optional.empty());
+        handler.getValue().accept(List.of(1L, 2L));
+
+        assertThat(index.complete("before", 10)).isEmpty();
+        assertThat(index.complete("aft", 10)).extracting(UserDTO::getFollowerCount).containsExactly(7L);
+        verify(clusterCacheInvalidator, times(1)).publish(anyString(), anyList());
+    }
+}
@@ -2,9 +2,15 @@ package com.vision.testing.service;
 
 import com.vision.middleware.domain.ApplicationUser;
 import com.vision.middleware.domain.relations.UserFollows;
+import com.vision.middleware.dto.CursorPageDTO;
+import com.vision.middleware.dto.UserDTO;
 import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.UserFollowsRepository;
 import com.vision.middleware.repo.UserRepository;
+import com.vision.middleware.repo.searchspec.UserSearchCursor;
+import com.vision.middleware.repo.searchspec.UserSearchHit;
+import com.vision.middleware.service.CommentTreeCache;
+import com.vision.middleware.service.UserAutocompleteIndex;
 import com.vision.middleware.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +18,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -21,6 +28,7 @@ import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,6 +43,12 @@ public class UserServiceTest {
     @Mock
     private UserFollowsRepository userFollowsRepository;
 
+    @Mock
+    private UserAutocompleteIndex userAutocompleteIndex;
+
+    @Mock
+    private CommentTreeCache commentTreeCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -153,6 +167,8 @@ public class UserServiceTest {
 
         // Verify that the repository method was called with correct parameters
         verify(userRepository, times(1)).updateDisplayNameById(userId, newDisplayName);
+        verify(userAutocompleteIndex).updateDisplayName(userId, newDisplayName);
+        verify(commentTreeCache).authorDisplayNameChanged(userId, newDisplayName);
     }
 
     @Test
@@ -203,35 +219,83 @@ public class UserServiceTest {
         verify(userRepository, times(1)).updateBirthdateById(userId, newBirthdate);
     }
 
+    private UserSearchHit searchHit(long id, String username, float rank) {
+        UserSearchHit hit = mock(UserSearchHit.class, withSettings().strictness(Strictness.LENIENT));
+        when(hit.getUserId()).thenReturn(id);
+        when(hit.getUsername()).thenReturn(username);
+        when(hit.getRank()).thenReturn(rank);
+        return hit;
+    }
+
     @Test
     public void testSearchUsers() {
-        // Prepare test data
-        String searchQuery = "john";
-        List<ApplicationUser> mockUsers = new ArrayList<>();
-        ApplicationUser user1 = new ApplicationUser();
-        user1.setUsername("johndoe");
-        ApplicationUser user2 = new ApplicationUser();
-        user2.setUsername("johnsmith");
-        mockUsers.add(user1);
-        mockUsers.add(user2);
-
-        // Mock the repository method
-        when(userRepository.findAllByUsernameContainingIgnoreCase(searchQuery))
-                .thenReturn(mockUsers);
+        // Prepare test data: one more hit than the page size means there is a next page
+        UserSearchHit johnDoe = searchHit(1L, "johndoe", 1.0f);
+        UserSearchHit johnSmith = searchHit(2L, "johnsmith", 0.8f);
+        UserSearchHit jon = searchHit(3L, "jon", 0.6f);
+        when(userRepository.searchByName("john", "%john%", Float.MAX_VALUE, Long.MAX_VALUE, 3))
+                .thenReturn(List.of(johnDoe, johnSmith, jon));
 
         // Call the method
-        List<ApplicationUser> foundUsers = userService.searchUsers(searchQuery);
+        CursorPageDTO<UserDTO> foundUsers = userService.searchUsers("  John ", null, 2);
 
         // Verify results
-        assertThat(foundUsers).isNotNull();
-        assertThat(foundUsers).hasSize(2);
-        assertThat(foundUsers.get(0).getUsername()).isEqualTo("johndoe");
-        assertThat(foundUsers.get(1).getUsername()).isEqualTo("johnsmith");
+        assertThat(foundUsers.getContent()).extracting(UserDTO::getUsername).containsExactly("johndoe", "johnsmith");
+        assertThat(foundUsers.isHasNext()).isTrue();
+        UserSearchCursor next = UserSearchCursor.decode(foundUsers.getNextCursor());
+        assertThat(next.getRank()).isEqualTo(0.8f);
+        assertThat(next.getId()).isEqualTo(2L);
+    }
 
-        // Verify repository method was called
-        verify(userRepository, times(1)).findAllByUsernameContainingIgnoreCase(searchQuery);
+    @Test
+    public void testSearchUsers_ResumesAfterCursor() {
+        String cursor = new UserSearchCursor(0.8f, 2L).encode();
+        UserSearchHit jon = searchHit(3L, "jon", 0.6f);
+        when(userRepository.searchByName("john", "%john%", 0.8f, 2L, 11)).thenReturn(List.of(jon));
+
+        CursorPageDTO<UserDTO> foundUsers = userService.searchUsers("john", cursor, 10);
+
+        assertThat(foundUsers.getContent()).extracting(UserDTO::getUserId).containsExactly(3L);
+        assertThat(foundUsers.isHasNext()).isFalse();
+        assertThat(foundUsers.getNextCursor()).isNull();
     }
 
+    @Test
+    public void testSearchUsers_ShortQueryMatchesPrefixAndEscapesWildcards() {
+        when(userRepository.searchByName(anyString(), anyString(), anyFloat(), anyLong(), anyInt())).thenReturn(List.of());
+
+        userService.searchUsers("a_", null, 10);
+        userService.searchUsers("50%", null, 10_000);
+
+        verify(userRepository).searchByName("a_", "a\\_%", Float.MAX_VALUE, Long.MAX_VALUE, 11);
+        verify(userRepository).searchByName("50%", "%50\\%%", Float.MAX_VALUE, Long.MAX_VALUE,
+                UserService.MAX_SEARCH_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void testSearchUsers_InvalidCursor() {
+        assertThatThrownBy(() -> userService.searchUsers("john", "garbage", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    public void testAdjustFollowCounts_UpdatesAutocompleteRanking() {
+        userService.adjustFollowCounts(1L, 2L, 1);
+
+        verify(userRepository).adjustFollowingCountById(1L, 1);
+        verify(userRepository).adjustFollowerCountById(2L, 1);
+        verify(userAutocompleteIndex).adjustFollowerCount(2L, 1);
+    }
+
+    @Test
+    public void testAutocompleteUsers_CapsLimit() {
+        List<UserDTO> suggestions = List.of(UserDTO.builder().userId(1L).username("john").build());
+        when(userAutocompleteIndex.complete("jo", UserAutocompleteIndex.TOP_K)).thenReturn(suggestions);
+
+        assertThat(userService.autocompleteUsers("jo", 500)).isEqualTo(suggestions);
+        verifyNoInteractions(userRepository);
+    }
 
     @Test
     public void testUpdateProfilePictureById() {
@@ -243,6 +307,8 @@ public class UserServiceTest {
 
         // Verify that the repository method was called with correct parameters
         verify(userRepository, times(1)).updateProfilePictureFileNameById(userId, newProfilePictureFileName);
+        verify(userAutocompleteIndex).updateProfilePicture(userId, newProfilePictureFileName);
+        verify(commentTreeCache).authorProfilePictureChanged(userId, newProfilePictureFileName);
     }
 
     @Test
@@ -0,0 +1,207 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.domain.enums.VotableType;
+import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.searchspec.VotableVoteRow;
+import com.vision.middleware.service.ClusterCacheInvalidator;
+import com.vision.middleware.service.UserVoteCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class UserVoteCacheTest {
+
+    @Mock
+    private UserVoteRepository userVoteRepository;
+
+    @Mock
+    private ClusterCacheInvalidator clusterCacheInvalidator;
+
+    @InjectMocks
+    private UserVoteCache userVoteCache;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static VotableVoteRow row(long votableId, VotableType votableType, UserVote.VoteType voteType) {
+        return new VotableVoteRow() {
+            @Override
+            public Long getVotableId() {
+                return votableId;
+            }
+
+            @Override
+            public VotableType getVotableType() {
+                return votableType;
+            }
+
+            @Override
+            public UserVote.VoteType getVoteType() {
+                return voteType;
+            }
+        };
+    }
+
+    @Test
+    void getVote_LoadsUserOnceAndAnswersFromMemory() {
+        when(userVoteRepository.findVoteTypesByUser(1L)).thenReturn(List.of(
+                row(130L, VotableType.POST, UserVote.VoteType.LIKE),
+                row(5L, VotableType.POST, UserVote.VoteType.DISLIKE),
+                row(7L, VotableType.REPLY, UserVote.VoteType.LIKE),
+                row(Long.MAX_VALUE, VotableType.POST, UserVote.VoteType.LIKE)));
+
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 130L)).contains(UserVote.VoteType.LIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 5L)).contains(UserVote.VoteType.DISLIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, Long.MAX_VALUE)).contains(UserVote.VoteType.LIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.REPLY, 7L)).contains(UserVote.VoteType.LIKE);
+        // votes are per votable type
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 7L)).isEmpty();
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 131L)).isEmpty();
+        assertThat(userVoteCache.getVotes(1L, VotableType.POST, List.of(5L, 6L, 130L)))
+                .containsOnly(entry(5L, UserVote.VoteType.DISLIKE), entry(130L, UserVote.VoteType.LIKE));
+
+        verify(userVoteRepository, times(1)).findVoteTypesByUser(1L);
+    }
+
+    @Test
+    void update_FlipsAndRemovesVotesInPlace() {
+        when(userVoteRepository.findVoteTypesByUser(1L)).thenReturn(List.of());
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).isEmpty();
+
+        userVoteCache.update(1L, VotableType.POST, 10L, null, UserVote.VoteType.LIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).contains(UserVote.VoteType.LIKE);
+
+        userVoteCache.update(1L, VotableType.POST, 10L, UserVote.VoteType.LIKE, UserVote.VoteType.DISLIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).contains(UserVote.VoteType.DISLIKE);
+
+        userVoteCache.update(1L, VotableType.POST, 10L, UserVote.VoteType.DISLIKE, null);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).isEmpty();
+
+        verify(userVoteRepository, times(1)).findVoteTypesByUser(1L);
+    }
+
+    @Test
+    void update_UncachedUser_IsNotLoaded() {
+        userVoteCache.update(1L, VotableType.POST, 10L, null, UserVote.VoteType.LIKE);
+
+        assertThat(userVoteCache.size()).isZero();
+        verifyNoInteractions(userVoteRepository);
+    }
+
+    @Test
+    void update_InTransaction_OnlyAppliedAfterCommit() {
+        when(userVoteRepository.findVoteTypesByUser(1L)).thenReturn(List.of());
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        userVoteCache.update(1L, VotableType.POST, 10L, null, UserVote.VoteType.LIKE);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).isEmpty();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).contains(UserVote.VoteType.LIKE);
+    }
+
+    @Test
+    void update_OutOfOrder_EvictsUser() {
+        when(userVoteRepository.findVoteTypesByUser(1L))
+                .thenReturn(List.of())
+                .thenReturn(List.of(row(10L, VotableType.POST, UserVote.VoteType.DISLIKE)));
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+
+        // the flip from LIKE to DISLIKE arrives before the LIKE it replaced
+        userVoteCache.update(1L, VotableType.POST, 10L, UserVote.VoteType.LIKE, UserVote.VoteType.DISLIKE);
+        assertThat(userVoteCache.size()).isZero();
+
+        assertThat(userVoteCache.getVote(1L, VotableType.POST, 10L)).contains(UserVote.VoteType.DISLIKE);
+        verify(userVoteRepository, times(2)).findVoteTypesByUser(1L);
+    }
+
+    @Test
+    void getVote_EvictsLeastRecentlyUsedUser() {
+        ReflectionTestUtils.setField(userVoteCache, "maxUsers", 2);
+        when(userVoteRepository.findVoteTypesByUser(anyLong())).thenReturn(List.of());
+
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+        userVoteCache.getVote(2L, VotableType.POST, 10L);
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+        userVoteCache.getVote(3L, VotableType.POST, 10L); // evicts user 2
+        assertThat(userVoteCache.size()).isEqualTo(2);
+
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+        userVoteCache.getVote(2L, VotableType.POST, 10L);
+
+        verify(userVoteRepository, times(1)).findVoteTypesByUser(1L);
+        verify(userVoteRepository, times(2)).findVoteTypesByUser(2L);
+    }
+
+    @Test
+    void randomVotes_MatchReference() {
+        when(userVoteRepository.findVoteTypesByUser(1L)).thenReturn(List.of());
+        Map<Long, UserVote.VoteType> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            // mostly clustered ids, as the pooled sequence hands out, with some far apart
+            long id = random.nextInt(10) == 0 ? random.nextLong() & Long.MAX_VALUE : random.nextInt(2_000);
+            UserVote.VoteType updated = switch (random.nextInt(3)) {
+                case 0 -> UserVote.VoteType.LIKE;
+                case 1 -> UserVote.VoteType.DISLIKE;
+                default -> null;
+            };
+            UserVote.VoteType previous = userVoteCache.getVote(1L, VotableType.REPLY, id).orElse(null);
+            assertThat(previous).isEqualTo(reference.get(id));
+            if (previous != updated) {
+                userVoteCache.update(1L, VotableType.REPLY, id, previous, updated);
+            }
+            if (updated == null) {
+                reference.remove(id);
+            } else {
+                reference.put(id, updated);
+            }
+        }
+
+        assertThat(userVoteCache.getVotes(1L, VotableType.REPLY, reference.keySet())).isEqualTo(reference);
+        verify(userVoteRepository, times(1)).findVoteTypesByUser(1L);
+    }
+
+    @Test
+    void update_OtherNodesEvictTheUserOnceCommitted() {
+        ArgumentCaptor<Consumer<List<Long>>> handler = ArgumentCaptor.captor();
+        userVoteCache.listenToCluster();
+        verify(clusterCacheInvalidator).register(eq(UserVoteCache.CLUSTER_USERS), handler.capture());
+
+        TransactionSynchronizationManager.initSynchronization();
+        userVoteCache.update(1L, VotableType.POST, 10L, null, UserVote.VoteType.LIKE);
+        verify(clusterCacheInvalidator, never()).publish(anyString(), anyList());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(clusterCacheInvalidator).publish(UserVoteCache.CLUSTER_USERS, List.of(1L));
+
+        // on another node
+        when(userVoteRepository.findVoteTypesByUser(1L)).thenReturn(List.of());
+        userVoteCache.getVote(1L, VotableType.POST, 10L);
+        handler.getValue().accept(List.of(1L));
+        assertThat(userVoteCache.size()).isZero();
+    }
+}
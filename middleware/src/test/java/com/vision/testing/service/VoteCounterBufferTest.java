@@ -0,0 +1,203 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.dto.PostDTO;
+import com.vision.middleware.dto.ReplyDTO;
+import com.vision.middleware.repo.VoteCounterRepository;
+import com.vision.middleware.repo.VoteCounterRepository.CounterDelta;
+import com.vision.middleware.service.VoteCounterBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class VoteCounterBufferTest {
+
+    @Mock
+    private VoteCounterRepository voteCounterRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private VoteCounterBuffer voteCounterBuffer;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CounterDelta> flushedDeltas(int flushes) {
+        ArgumentCaptor<List<CounterDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(voteCounterRepository, times(flushes)).addToCounts(captor.capture(), any());
+        return captor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    void add_AccumulatesUntilFlushed() {
+        voteCounterBuffer.add(1L, 1, 0);
+        voteCounterBuffer.add(1L, 1, 0);
+        voteCounterBuffer.add(1L, -1, 1);
+        voteCounterBuffer.add(2L, 0, 1);
+
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isEqualTo(1);
+        assertThat(voteCounterBuffer.pendingDislikes(1L)).isEqualTo(1);
+        assertThat(voteCounterBuffer.pendingDislikes(2L)).isEqualTo(1);
+        verifyNoInteractions(voteCounterRepository);
+
+        assertThat(voteCounterBuffer.flush()).isEqualTo(2);
+
+        assertThat(flushedDeltas(1)).extracting(CounterDelta::getVotableId, CounterDelta::getLikes, CounterDelta::getDislikes)
+                .containsExactlyInAnyOrder(tuple(1L, 1L, 1L), tuple(2L, 0L, 1L));
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isZero();
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void flush_SkipsVotablesWhoseChangesCancelOut() {
+        voteCounterBuffer.add(1L, 1, 0);
+        voteCounterBuffer.add(1L, -1, 0);
+
+        assertThat(voteCounterBuffer.flush()).isZero();
+        verifyNoInteractions(voteCounterRepository);
+    }
+
+    @Test
+    void add_InTransaction_OnlyCountsAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        voteCounterBuffer.add(1L, 1, 0);
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isEqualTo(1);
+    }
+
+    @Test
+    void flush_Failure_KeepsChangesForNextFlush() {
+        voteCounterBuffer.add(1L, 2, 0);
+        doThrow(new RuntimeException("db down")).doNothing().when(voteCounterRepository).addToCounts(anyList(), any());
+
+        assertThat(voteCounterBuffer.flush()).isZero();
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isEqualTo(2);
+
+        assertThat(voteCounterBuffer.flush()).isEqualTo(1);
+        assertThat(flushedDeltas(2)).extracting(CounterDelta::getLikes).containsExactly(2L, 2L);
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isZero();
+    }
+
+    @Test
+    void pendingCounts_IncludeChangesBeingFlushed() {
+        voteCounterBuffer.add(1L, 3, 0);
+        List<Long> seenDuringFlush = new ArrayList<>();
+        doAnswer(invocation -> seenDuringFlush.add(voteCounterBuffer.pendingLikes(1L)))
+                .when(voteCounterRepository).addToCounts(anyList(), any());
+
+        voteCounterBuffer.flush();
+
+        assertThat(seenDuringFlush).containsExactly(3L);
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isZero();
+    }
+
+    @Test
+    void flushWrites_OddFromFirstChangeTakenUntilDone() {
+        long before = voteCounterBuffer.getFlushWrites();
+        assertThat(voteCounterBuffer.flush()).isZero();
+        assertThat(voteCounterBuffer.getFlushWrites()).isEqualTo(before); // nothing pending, nothing taken
+
+        // changes that cancel out are still taken from pending
+        voteCounterBuffer.add(1L, 1, 0);
+        voteCounterBuffer.add(1L, -1, 0);
+        voteCounterBuffer.flush();
+        assertThat(voteCounterBuffer.getFlushWrites()).isEqualTo(before + 2);
+
+        // a failed write puts the changes back while still marked as writing
+        voteCounterBuffer.add(1L, 2, 0);
+        List<Long> seenDuringWrite = new ArrayList<>();
+        doAnswer(invocation -> {
+            seenDuringWrite.add(voteCounterBuffer.getFlushWrites());
+            throw new RuntimeException("db down");
+        }).when(voteCounterRepository).addToCounts(anyList(), any());
+
+        voteCounterBuffer.flush();
+        assertThat(seenDuringWrite).containsExactly(before + 3);
+        assertThat(voteCounterBuffer.getFlushWrites()).isEqualTo(before + 4);
+        assertThat(voteCounterBuffer.pendingLikes(1L)).isEqualTo(2);
+    }
+
+    @Test
+    void mergeInto_AddsPendingChanges() {
+        voteCounterBuffer.add(1L, 2, 1);
+        PostDTO post = PostDTO.builder().postId(1L).likeCount(10).dislikeCount(3).build();
+        ReplyDTO reply = ReplyDTO.builder().id(1L).likeCount(10).dislikeCount(3).voteScore(7).build();
+
+        voteCounterBuffer.mergeInto(post);
+        voteCounterBuffer.mergeInto(reply);
+
+        assertThat(post.getLikeCount()).isEqualTo(12);
+        assertThat(post.getDislikeCount()).isEqualTo(4);
+        assertThat(reply.getVoteScore()).isEqualTo(8);
+    }
+
+    @Test
+    void concurrentVotesAndFlushes_LoseNothing() throws InterruptedException {
+        List<CounterDelta> written = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> written.addAll(invocation.getArgument(0)))
+                .when(voteCounterRepository).addToCounts(anyList(), any());
+
+        int threads = 8;
+        int votesPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < votesPerThread; i++) {
+                    voteCounterBuffer.add(i % 3, 1, 0); // a few hot votables
+                }
+                return null;
+            });
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) {
+                voteCounterBuffer.flush();
+            }
+        });
+        flusher.start();
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        done.set(true);
+        flusher.join();
+        voteCounterBuffer.flush();
+
+        assertThat(written.stream().mapToLong(CounterDelta::getLikes).sum()).isEqualTo((long) threads * votesPerThread);
+    }
+}
@@ -0,0 +1,176 @@
+package com.vision.testing.service;
+
+import com.vision.middleware.dto.VoteReconciliationReportDTO;
+import com.vision.middleware.repo.VoteCounterRepository;
+import com.vision.middleware.repo.VoteCounterRepository.CounterDelta;
+import com.vision.middleware.repo.VoteReconciliationRepository;
+import com.vision.middleware.repo.VoteReconciliationRepository.CountDrift;
+import com.vision.middleware.service.CommentTreeCache;
+import com.vision.middleware.service.VoteCounterBuffer;
+import com.vision.middleware.service.VoteReconciliationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class VoteReconciliationServiceTest {
+
+    @Mock
+    private VoteReconciliationRepository voteReconciliationRepository;
+
+    @Mock
+    private VoteCounterRepository voteCounterRepository;
+
+    @Mock
+    private VoteCounterBuffer voteCounterBuffer;
+
+    @Mock
+    private CommentTreeCache commentTreeCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private VoteReconciliationService voteReconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(voteReconciliationService, "partitionSize", 100L);
+        ReflectionTestUtils.setField(voteReconciliationService, "parallelism", 4);
+        ReflectionTestUtils.setField(voteReconciliationService, "pauseMillis", 0L);
+        ReflectionTestUtils.setField(voteReconciliationService, "settleMillis", 0L);
+        ReflectionTestUtils.setField(voteReconciliationService, "batchSize", 2);
+
+        // no other node is reconciling
+        when(voteReconciliationRepository.runExclusively(any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return true;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CounterDelta> appliedCorrections() {
+        ArgumentCaptor<List<CounterDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(voteCounterRepository, atLeast(0)).addToCounts(captor.capture(), any());
+        return captor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    void reconcile_ScansEveryRangeInParallelAndCorrectsStableDrift() {
+        when(voteReconciliationRepository.findIdRange()).thenReturn(new long[]{1, 450});
+        Set<Long> scannedFrom = ConcurrentHashMap.newKeySet();
+        when(voteReconciliationRepository.findDrift(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            long to = invocation.getArgument(1);
+            scannedFrom.add(from);
+            assertThat(to - from).isLessThanOrEqualTo(100);
+            if (from == 101) {
+                return List.of(new CountDrift(150, 5, 0, 7, 1), new CountDrift(160, 3, 3, 3, 2));
+            }
+            if (from == 401) {
+                assertThat(to).isEqualTo(451);
+                return List.of(new CountDrift(420, 0, 0, 1, 0));
+            }
+            return List.of();
+        });
+        // 160: still one dislike in the buffer, so its counts are right
+        when(voteCounterBuffer.pendingDislikes(160L)).thenReturn(-1L);
+        // on the second look, 420 has received another vote and is left alone
+        when(voteReconciliationRepository.findCounts(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> id == 150L
+                    ? new CountDrift(150, 5, 0, 7, 1)
+                    : new CountDrift(420, 0, 0, 2, 0)).toList();
+        });
+
+        VoteReconciliationReportDTO report = voteReconciliationService.reconcile();
+
+        assertThat(scannedFrom).containsExactlyInAnyOrder(1L, 101L, 201L, 301L, 401L);
+        assertThat(appliedCorrections()).singleElement().satisfies(correction -> {
+            assertThat(correction.getVotableId()).isEqualTo(150L);
+            assertThat(correction.getLikes()).isEqualTo(2);
+            assertThat(correction.getDislikes()).isEqualTo(1);
+        });
+        assertThat(report.isRunning()).isFalse();
+        assertThat(report.getPartitions()).isEqualTo(5);
+        assertThat(report.getPartitionsDone()).isEqualTo(5);
+        assertThat(report.getDrifted()).isEqualTo(2);
+        assertThat(report.getCorrected()).isEqualTo(1);
+        assertThat(report.getUnsettled()).isEqualTo(1);
+        assertThat(report.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    void reconcile_DriftThatCatchesUp_IsNotCorrected() {
+        when(voteReconciliationRepository.findIdRange()).thenReturn(new long[]{1, 50});
+        when(voteReconciliationRepository.findDrift(1, 51)).thenReturn(List.of(new CountDrift(10, 1, 0, 2, 0)));
+        when(voteReconciliationRepository.findCounts(anyCollection())).thenReturn(List.of(new CountDrift(10, 2, 0, 2, 0)));
+
+        VoteReconciliationReportDTO report = voteReconciliationService.reconcile();
+
+        assertThat(report.getDrifted()).isEqualTo(1);
+        assertThat(report.getCorrected()).isZero();
+        assertThat(report.getUnsettled()).isZero();
+        verifyNoInteractions(voteCounterRepository, commentTreeCache);
+    }
+
+    @Test
+    void reconcile_CorrectsInBatches() {
+        when(voteReconciliationRepository.findIdRange()).thenReturn(new long[]{1, 99});
+        List<CountDrift> drift = List.of(new CountDrift(1, 0, 0, 1, 0), new CountDrift(2, 0, 0, 1, 0),
+                new CountDrift(3, 0, 0, 1, 0));
+        when(voteReconciliationRepository.findDrift(1, 100)).thenReturn(drift);
+        when(voteReconciliationRepository.findCounts(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return drift.stream().filter(d -> ids.contains(d.getVotableId())).toList();
+        });
+
+        VoteReconciliationReportDTO report = voteReconciliationService.reconcile();
+
+        assertThat(report.getCorrected()).isEqualTo(3);
+        verify(voteCounterRepository, times(2)).addToCounts(anyList(), any());
+        verify(transactionManager, times(2)).commit(any());
+        verify(commentTreeCache, atLeastOnce()).clear();
+    }
+
+    @Test
+    void reconcile_NoVotables_DoesNothing() {
+        when(voteReconciliationRepository.findIdRange()).thenReturn(null);
+
+        VoteReconciliationReportDTO report = voteReconciliationService.reconcile();
+
+        assertThat(report.getPartitions()).isZero();
+        verify(voteReconciliationRepository, never()).findDrift(anyLong(), anyLong());
+        verifyNoInteractions(voteCounterRepository);
+    }
+
+    @Test
+    void reconcile_RunningOnAnotherNode_IsSkipped() {
+        doReturn(false).when(voteReconciliationRepository).runExclusively(any());
+
+        VoteReconciliationReportDTO report = voteReconciliationService.reconcile();
+
+        assertThat(report.isRunning()).isFalse();
+        assertThat(voteReconciliationService.isRunning()).isFalse();
+        verify(voteReconciliationRepository, never()).findIdRange();
+        verifyNoInteractions(voteCounterRepository);
+    }
+}
@@ -5,10 +5,15 @@ import com.vision.middleware.domain.Post;
 import com.vision.middleware.domain.Reply;
 import com.vision.middleware.domain.enums.VotableType;
 import com.vision.middleware.domain.relations.UserVote;
+import com.vision.middleware.dto.VoteDTO;
 import com.vision.middleware.exceptions.DuplicateVoteException;
-import com.vision.middleware.repo.PostRepository;
-import com.vision.middleware.repo.ReplyRepository;
+import com.vision.middleware.exceptions.IdNotFoundException;
 import com.vision.middleware.repo.UserVoteRepository;
+import com.vision.middleware.repo.searchspec.VoteOutcome;
+import com.vision.middleware.service.CommentTreeCache;
+import com.vision.middleware.service.NotificationAggregator;
+import com.vision.middleware.service.UserVoteCache;
+import com.vision.middleware.service.VoteCounterBuffer;
 import com.vision.middleware.service.VotingService;
 import com.vision.testing.testingutil.UnsupportedVotable;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,10 +22,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,10 +39,16 @@ public class VotingServiceTest {
     private UserVoteRepository userVoteRepository;
 
     @Mock
-    private PostRepository postRepository;
+    private VoteCounterBuffer voteCounterBuffer;
 
     @Mock
-    private ReplyRepository replyRepository;
+    private UserVoteCache userVoteCache;
+
+    @Mock
+    private CommentTreeCache commentTreeCache;
+
+    @Mock
+    private NotificationAggregator notificationAggregator;
 
     @InjectMocks
     private VotingService votingService;
@@ -56,219 +71,309 @@ public class VotingServiceTest {
         testReply.setId(2L);
         testReply.setLikeCount(0);
         testReply.setDislikeCount(0);
+
+        ReflectionTestUtils.setField(votingService, "countMode", VotingService.COUNT_MODE_BUFFERED);
+    }
+
+    /**
+     * Outcome of a vote statement, as the repository would return it.
+     */
+    private record Outcome(Boolean getFound, Boolean getChanged, String getPreviousVoteType,
+                           Long getLikeCount, Long getDislikeCount, Long getPostId, Long getAuthorId) implements VoteOutcome {
+
+        Outcome(Boolean found, Boolean changed, String previousVoteType, Long likeCount, Long dislikeCount) {
+            this(found, changed, previousVoteType, likeCount, dislikeCount, found ? 1L : null, found ? 5L : null);
+        }
+    }
+
+    private static VoteOutcome changed(String previousVoteType, long likeCount, long dislikeCount) {
+        return new Outcome(true, true, previousVoteType, likeCount, dislikeCount);
+    }
+
+    private void givenCast(long votableId, String votableType, String voteType, VoteOutcome outcome) {
+        when(userVoteRepository.castVote(eq(testUser.getId()), eq(votableId), eq(votableType), eq(voteType),
+                anyBoolean(), any(), any(), anyDouble(), anyDouble())).thenReturn(outcome);
+    }
+
+    private void givenRemove(long votableId, String votableType, VoteOutcome outcome) {
+        when(userVoteRepository.removeVote(eq(testUser.getId()), eq(votableId), eq(votableType),
+                anyBoolean(), any(), any(), anyDouble(), anyDouble())).thenReturn(outcome);
     }
 
     @Test
     void voteOnPost_FirstLike_ShouldIncreasePostLikeCount() {
         // Arrange
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.empty());
+        givenCast(testPost.getId(), "POST", "LIKE", changed(null, 4, 2));
 
         // Act
         votingService.voteOnVotable(testUser, testPost, UserVote.VoteType.LIKE);
 
         // Assert
-        verify(postRepository).save(testPost);
-        assertThat(testPost.getLikeCount()).isEqualTo(1);
-        verify(userVoteRepository).save(any(UserVote.class));
+        verify(voteCounterBuffer).add(testPost.getId(), 1, 0);
+        verify(userVoteRepository, never()).save(any(UserVote.class));
+        verify(notificationAggregator).liked(5L, testUser.getId(), VotableType.POST, testPost.getId());
     }
 
     @Test
     void voteOnReply_FirstDislike_ShouldIncreaseReplyDislikeCount() {
         // Arrange
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testReply, VotableType.REPLY))
-                .thenReturn(Optional.empty());
+        givenCast(testReply.getId(), "REPLY", "DISLIKE", changed(null, 0, 0));
 
         // Act
         votingService.voteOnVotable(testUser, testReply, UserVote.VoteType.DISLIKE);
 
         // Assert
-        verify(replyRepository).save(testReply);
-        assertThat(testReply.getDislikeCount()).isEqualTo(1);
-        verify(userVoteRepository).save(any(UserVote.class));
+        verify(voteCounterBuffer).add(testReply.getId(), 0, 1);
+        verify(commentTreeCache).replyVoteChanged(1L, testReply.getId(), 0, 1);
+        verifyNoInteractions(notificationAggregator);
     }
 
     @Test
     void changeVote_FromLikeToDislike_ShouldUpdateCounts() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testPost)
-                .votableType(VotableType.POST)
-                .voteType(UserVote.VoteType.LIKE)
-                .build();
-        testPost.setLikeCount(1L); // user liked post already
-
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.of(existingVote));
+        givenCast(testPost.getId(), "POST", "DISLIKE", changed("LIKE", 1, 0));
 
         // Act
         votingService.voteOnVotable(testUser, testPost, UserVote.VoteType.DISLIKE);
 
         // Assert
-        verify(postRepository).save(testPost);
-        assertThat(testPost.getLikeCount()).isEqualTo(0);
-        assertThat(testPost.getDislikeCount()).isEqualTo(1);
-        verify(userVoteRepository).save(existingVote);
+        verify(voteCounterBuffer).add(testPost.getId(), -1, 1);
+        verifyNoInteractions(commentTreeCache);
+        verify(userVoteCache).update(testUser.getId(), VotableType.POST, testPost.getId(),
+                UserVote.VoteType.LIKE, UserVote.VoteType.DISLIKE);
     }
 
     @Test
     void changeVote_FromDislikeToLike_ShouldUpdateCounts() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testPost)
-                .votableType(VotableType.POST)
-                .voteType(UserVote.VoteType.DISLIKE)
-                .build();
-        testPost.setDislikeCount(1L); // user disliked post already
-
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.of(existingVote));
+        givenCast(testPost.getId(), "POST", "LIKE", changed("DISLIKE", 0, 1));
 
         // Act
         votingService.voteOnVotable(testUser, testPost, UserVote.VoteType.LIKE);
 
         // Assert
-        verify(postRepository).save(testPost);
-        assertThat(testPost.getLikeCount()).isEqualTo(1);
-        assertThat(testPost.getDislikeCount()).isEqualTo(0);
-        verify(userVoteRepository).save(existingVote);
+        verify(voteCounterBuffer).add(testPost.getId(), 1, -1);
+        verify(notificationAggregator).liked(5L, testUser.getId(), VotableType.POST, testPost.getId());
     }
 
     @Test
     void duplicateVote_ShouldThrowException() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testPost)
-                .votableType(VotableType.POST)
-                .voteType(UserVote.VoteType.LIKE)
-                .build();
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.of(existingVote));
+        givenCast(testPost.getId(), "POST", "LIKE", new Outcome(true, false, null, 1L, 0L));
 
         // Act & Assert
         assertThatThrownBy(() ->
                 votingService.voteOnVotable(testUser, testPost, UserVote.VoteType.LIKE)
         ).isInstanceOf(DuplicateVoteException.class);
+        verifyNoInteractions(voteCounterBuffer, userVoteCache);
     }
 
     @Test
-    void deleteVoteLikePost_ShouldDecreaseVoteCount() {
+    void castVote_VotableNotFound_ShouldThrowIdNotFoundException() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testPost)
-                .votableType(VotableType.POST)
-                .voteType(UserVote.VoteType.LIKE)
-                .build();
-        testPost.setLikeCount(1);
+        givenCast(99L, "POST", "LIKE", new Outcome(false, false, null, null, null));
+
+        // Act & Assert
+        assertThatThrownBy(() -> votingService.castVote(testUser.getId(), 99L, VotableType.POST, UserVote.VoteType.LIKE))
+                .isInstanceOf(IdNotFoundException.class)
+                .hasMessage("Post id 99 not found.");
+        verifyNoInteractions(voteCounterBuffer);
+    }
 
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.of(existingVote));
+    @Test
+    void castVote_UserNotFound_ShouldThrowIdNotFoundException() {
+        // Arrange
+        when(userVoteRepository.castVote(eq(99L), anyLong(), anyString(), anyString(),
+                anyBoolean(), any(), any(), anyDouble(), anyDouble()))
+                .thenThrow(new DataIntegrityViolationException("user_votes_user_id_fkey"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> votingService.castVote(99L, testPost.getId(), VotableType.POST, UserVote.VoteType.LIKE))
+                .isInstanceOf(IdNotFoundException.class)
+                .hasMessage("id 99 not found");
+    }
+
+    @Test
+    void castVote_Buffered_ShouldReturnCountsIncludingVoteAndPendingChanges() {
+        // Arrange
+        givenCast(testPost.getId(), "POST", "LIKE", changed("DISLIKE", 10, 5));
+        when(voteCounterBuffer.pendingLikes(testPost.getId())).thenReturn(3L);
+        when(voteCounterBuffer.pendingDislikes(testPost.getId())).thenReturn(0L);
+
+        // Act
+        VoteDTO result = votingService.castVote(testUser.getId(), testPost.getId(), VotableType.POST, UserVote.VoteType.LIKE);
+
+        // Assert
+        assertThat(result.getVotableId()).isEqualTo(testPost.getId());
+        assertThat(result.getVoteType()).isEqualTo(UserVote.VoteType.LIKE);
+        assertThat(result.getLikeCount()).isEqualTo(14L);
+        assertThat(result.getDislikeCount()).isEqualTo(4L);
+        verify(userVoteRepository).castVote(eq(testUser.getId()), eq(testPost.getId()), eq("POST"), eq("LIKE"),
+                eq(false), any(), any(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void castVote_Sync_ShouldApplyCountsInStatementAndNotBuffer() {
+        // Arrange
+        ReflectionTestUtils.setField(votingService, "countMode", VotingService.COUNT_MODE_SYNC);
+        givenCast(testPost.getId(), "POST", "LIKE", changed(null, 11, 5));
+
+        // Act
+        VoteDTO result = votingService.castVote(testUser.getId(), testPost.getId(), VotableType.POST, UserVote.VoteType.LIKE);
+
+        // Assert
+        assertThat(result.getLikeCount()).isEqualTo(11L);
+        assertThat(result.getDislikeCount()).isEqualTo(5L);
+        verify(userVoteRepository).castVote(eq(testUser.getId()), eq(testPost.getId()), eq("POST"), eq("LIKE"),
+                eq(true), any(), any(), anyDouble(), anyDouble());
+        verify(voteCounterBuffer, never()).add(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void castVote_SyncOnReply_StillPatchesCachedTree() {
+        // Arrange
+        ReflectionTestUtils.setField(votingService, "countMode", VotingService.COUNT_MODE_SYNC);
+        givenCast(testReply.getId(), "REPLY", "DISLIKE", changed("LIKE", 2, 1));
+
+        // Act
+        votingService.castVote(testUser.getId(), testReply.getId(), VotableType.REPLY, UserVote.VoteType.DISLIKE);
+
+        // Assert
+        verify(voteCounterBuffer, never()).add(anyLong(), anyLong(), anyLong());
+        verify(commentTreeCache).replyVoteChanged(1L, testReply.getId(), -1, 1);
+    }
+
+    @Test
+    void deleteVoteLikePost_ShouldDecreaseVoteCount() {
+        // Arrange
+        givenRemove(testPost.getId(), "POST", changed("LIKE", 1, 0));
 
         // Act
         votingService.deleteVote(testUser, testPost);
 
         // Assert
-        verify(postRepository).save(testPost);
-        assertThat(testPost.getLikeCount()).isEqualTo(0);
-        verify(userVoteRepository).deleteByVotableIdAndUserId(testPost.getId(), testUser.getId());
+        verify(voteCounterBuffer).add(testPost.getId(), -1, 0);
     }
 
 
     @Test
     void deleteVoteDislikePost_ShouldDecreaseVoteCount() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testPost)
-                .votableType(VotableType.POST)
-                .voteType(UserVote.VoteType.DISLIKE)
-                .build();
-        testPost.setDislikeCount(1);
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testPost, VotableType.POST))
-                .thenReturn(Optional.of(existingVote));
+        givenRemove(testPost.getId(), "POST", changed("DISLIKE", 0, 1));
 
         // Act
         votingService.deleteVote(testUser, testPost);
 
         // Assert
-        verify(postRepository).save(testPost);
-        assertThat(testPost.getDislikeCount()).isEqualTo(0);
-        verify(userVoteRepository).deleteByVotableIdAndUserId(testPost.getId(), testUser.getId());
+        verify(voteCounterBuffer).add(testPost.getId(), 0, -1);
     }
 
     @Test
     void deleteVoteLikeReply_ShouldDecreaseVoteCount() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testReply)
-                .votableType(VotableType.REPLY)
-                .voteType(UserVote.VoteType.LIKE)
-                .build();
-        testReply.setLikeCount(1);
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testReply, VotableType.REPLY))
-                .thenReturn(Optional.of(existingVote));
+        givenRemove(testReply.getId(), "REPLY", changed("LIKE", 1, 0));
 
         // Act
         votingService.deleteVote(testUser, testReply);
 
         // Assert
-        verify(replyRepository).save(testReply);
-        assertThat(testReply.getLikeCount()).isEqualTo(0);
-        verify(userVoteRepository).deleteByVotableIdAndUserId(testReply.getId(), testUser.getId());
+        verify(voteCounterBuffer).add(testReply.getId(), -1, 0);
+        verify(commentTreeCache).replyVoteChanged(1L, testReply.getId(), -1, 0);
     }
 
 
     @Test
     void deleteVoteDislikeReply_ShouldDecreaseVoteCount() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testReply)
-                .votableType(VotableType.REPLY)
-                .voteType(UserVote.VoteType.DISLIKE)
-                .build();
-        testReply.setDislikeCount(1);
-
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testReply, VotableType.REPLY))
-                .thenReturn(Optional.of(existingVote));
+        givenRemove(testReply.getId(), "REPLY", changed("DISLIKE", 0, 1));
 
         // Act
         votingService.deleteVote(testUser, testReply);
 
         // Assert
-        verify(replyRepository).save(testReply);
-        assertThat(testReply.getDislikeCount()).isEqualTo(0);
-        verify(userVoteRepository).deleteByVotableIdAndUserId(testReply.getId(), testUser.getId());
+        verify(voteCounterBuffer).add(testReply.getId(), 0, -1);
+        verify(userVoteCache).update(testUser.getId(), VotableType.REPLY, testReply.getId(),
+                UserVote.VoteType.DISLIKE, null);
     }
 
     @Test
-    void getUserVoteOnVotable_ShouldReturnVoteType() {
+    void deleteVote_NoExistingVote_ShouldNotChangeCounts() {
         // Arrange
-        UserVote existingVote = UserVote.builder()
-                .user(testUser)
-                .votable(testReply)
-                .votableType(VotableType.REPLY)
-                .voteType(UserVote.VoteType.DISLIKE)
-                .build();
+        givenRemove(testPost.getId(), "POST", new Outcome(true, false, null, 0L, 0L));
+
+        // Act
+        VoteDTO result = votingService.removeVote(testUser.getId(), testPost.getId(), VotableType.POST);
+
+        // Assert
+        assertThat(result.getVoteType()).isNull();
+        verify(voteCounterBuffer, never()).add(anyLong(), anyLong(), anyLong());
+        verifyNoInteractions(userVoteCache);
+    }
+
+    @Test
+    void removeVote_ReplyNotFound_ShouldThrowIdNotFoundException() {
+        // Arrange
+        givenRemove(99L, "REPLY", new Outcome(false, false, null, null, null));
+
+        // Act & Assert
+        assertThatThrownBy(() -> votingService.removeVote(testUser.getId(), 99L, VotableType.REPLY))
+                .isInstanceOf(IdNotFoundException.class)
+                .hasMessage("Reply id 99 not found.");
+    }
 
-        when(userVoteRepository.findByUserAndVotableAndVotableType(testUser, testReply, VotableType.REPLY))
-                .thenReturn(Optional.of(existingVote));
+    @Test
+    void getUserVoteOnVotable_ShouldReturnVoteType() {
+        // Arrange
+        when(userVoteCache.getVote(testUser.getId(), VotableType.REPLY, testReply.getId()))
+                .thenReturn(Optional.of(UserVote.VoteType.DISLIKE));
 
         // Act
         Optional<UserVote.VoteType> result = votingService.getUserVoteOnVotable(testUser, testReply);
 
         // Assert
         assertThat(result).contains(UserVote.VoteType.DISLIKE);
+        verifyNoInteractions(userVoteRepository);
+    }
+
+    @Test
+    void getUserVotes_ShouldReadDistinctIdsFromCache() {
+        // Arrange
+        when(userVoteCache.getVotes(testUser.getId(), VotableType.POST, Set.of(1L, 2L, 3L)))
+                .thenReturn(Map.of(1L, UserVote.VoteType.LIKE, 3L, UserVote.VoteType.DISLIKE));
+
+        // Act
+        Map<Long, UserVote.VoteType> votes = votingService.getUserVotes(testUser.getId(), VotableType.POST,
+                Arrays.asList(1L, 2L, 3L, 3L, null));
+
+        // Assert
+        assertThat(votes).containsOnly(entry(1L, UserVote.VoteType.LIKE), entry(3L, UserVote.VoteType.DISLIKE));
+        verifyNoInteractions(userVoteRepository);
+    }
+
+    @Test
+    void getUserVotes_NoIds_ShouldNotQuery() {
+        assertThat(votingService.getUserVotes(testUser.getId(), VotableType.REPLY, List.of())).isEmpty();
+        verifyNoInteractions(userVoteCache);
+    }
+
+    @Test
+    void getUserVotes_TooManyIds_ShouldThrowException() {
+        List<Long> ids = LongStream.rangeClosed(1, VotingService.MAX_BULK_VOTES + 1).boxed().toList();
+
+        assertThatThrownBy(() -> votingService.getUserVotes(testUser.getId(), VotableType.POST, ids))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(userVoteCache);
+    }
+
+    @Test
+    void getUserVotesOnAll_ShouldNotLimitIds() {
+        List<Long> ids = LongStream.rangeClosed(1, VotingService.MAX_BULK_VOTES + 1).boxed().toList();
+        when(userVoteCache.getVotes(testUser.getId(), VotableType.REPLY, ids))
+                .thenReturn(Map.of(7L, UserVote.VoteType.DISLIKE));
+
+        assertThat(votingService.getUserVotesOnAll(testUser.getId(), VotableType.REPLY, ids))
+                .containsOnly(entry(7L, UserVote.VoteType.DISLIKE));
+        verifyNoInteractions(userVoteRepository);
     }
 
     @Test
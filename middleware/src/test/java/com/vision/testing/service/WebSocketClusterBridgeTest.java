@@ -0,0 +1,292 @@
+package com.vision.testing.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vision.middleware.service.ClusterRoutingTable;
+import com.vision.middleware.service.LocalClusterTransport;
+import com.vision.middleware.service.WebSocketClusterBridge;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class WebSocketClusterBridgeTest {
+
+    @Mock
+    private ObjectProvider<SimpMessagingTemplate> providerA;
+
+    @Mock
+    private ObjectProvider<SimpMessagingTemplate> providerB;
+
+    @Mock
+    private SimpMessagingTemplate templateA;
+
+    @Mock
+    private SimpMessagingTemplate templateB;
+
+    private LocalClusterTransport transport;
+
+    private ObjectMapper objectMapper;
+
+    // route messages published, as "channel KIND", and whether they are lost instead of delivered
+    private final List<String> published = new ArrayList<>();
+
+    private boolean dropping;
+
+    private ClusterRoutingTable tableA;
+
+    private ClusterRoutingTable tableB;
+
+    private WebSocketClusterBridge bridgeA;
+
+    private WebSocketClusterBridge bridgeB;
+
+    @BeforeEach
+    void setUp() {
+        // two nodes sharing one transport
+        objectMapper = new ObjectMapper();
+        transport = new LocalClusterTransport() {
+            @Override
+            public void publish(String channel, String payload) {
+                if (channel.startsWith(WebSocketClusterBridge.ROUTES_CHANNEL)) {
+                    published.add(channel + " " + routeUpdate(payload).kind());
+                }
+                if (!dropping) {
+                    super.publish(channel, payload);
+                }
+            }
+        };
+        tableA = routingTable("a");
+        tableB = routingTable("b");
+        when(providerA.getObject()).thenReturn(templateA);
+        when(providerB.getObject()).thenReturn(templateB);
+        bridgeA = new WebSocketClusterBridge(transport, tableA, objectMapper, providerA);
+        bridgeB = new WebSocketClusterBridge(transport, tableB, objectMapper, providerB);
+    }
+
+    private static ClusterRoutingTable routingTable(String nodeId) {
+        ClusterRoutingTable table = new ClusterRoutingTable();
+        ReflectionTestUtils.setField(table, "configuredNodeId", nodeId);
+        return table;
+    }
+
+    private WebSocketClusterBridge.RouteUpdate routeUpdate(String json) {
+        try {
+            return objectMapper.readValue(json, WebSocketClusterBridge.RouteUpdate.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SimpMessageHeaderAccessor headers(SimpMessageType type, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        return accessor;
+    }
+
+    private void connect(WebSocketClusterBridge bridge, String sessionId, String userId) {
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0],
+                headers(SimpMessageType.CONNECT_ACK, sessionId).getMessageHeaders());
+        bridge.onConnected(new SessionConnectedEvent(this, message, new UsernamePasswordAuthenticationToken(userId, null)));
+    }
+
+    private void subscribe(WebSocketClusterBridge bridge, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = headers(SimpMessageType.SUBSCRIBE, sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        bridge.onSubscribe(new SessionSubscribeEvent(this, MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    private void unsubscribe(WebSocketClusterBridge bridge, String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = headers(SimpMessageType.UNSUBSCRIBE, sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        bridge.onUnsubscribe(new SessionUnsubscribeEvent(this, MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    private void disconnect(WebSocketClusterBridge bridge, String sessionId) {
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0],
+                headers(SimpMessageType.DISCONNECT, sessionId).getMessageHeaders());
+        bridge.onDisconnect(new SessionDisconnectEvent(this, message, sessionId, CloseStatus.NORMAL));
+    }
+
+    private static Message<byte[]> message(String destination, String body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Message<byte[]> relayedTo(SimpMessagingTemplate template, String destination) {
+        ArgumentCaptor<Message<?>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(template).send(eq(destination), captor.capture());
+        return (Message<byte[]>) captor.getValue();
+    }
+
+    @Test
+    public void testUserMessageRelayedToTheUsersNode() {
+        bridgeB.start();
+        connect(bridgeB, "s1", "1");
+        bridgeA.start(); // learns node b's routes from its answer
+
+        Message<byte[]> sent = message("/user/1/queue/notifications", "{\"id\":7}");
+        assertThat(bridgeA.preSend(sent, null)).isSameAs(sent);
+
+        Message<byte[]> relayed = relayedTo(templateB, "/user/1/queue/notifications");
+        assertThat(new String(relayed.getPayload(), StandardCharsets.UTF_8)).isEqualTo("{\"id\":7}");
+        assertThat(relayed.getHeaders().get(WebSocketClusterBridge.RELAYED_HEADER)).isEqualTo("a");
+        assertThat(relayed.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString()).isEqualTo("application/json");
+        verifyNoInteractions(templateA);
+
+        // node b delivers it locally without sending it back
+        assertThat(bridgeB.preSend(relayed, null)).isSameAs(relayed);
+        verifyNoInteractions(templateA);
+    }
+
+    @Test
+    public void testMessageNotRelayedWithoutRoute() {
+        bridgeA.start();
+        bridgeB.start();
+        connect(bridgeB, "s1", "1");
+
+        bridgeA.preSend(message("/user/2/queue/notifications", "{}"), null);
+        bridgeA.preSend(message("/topic/conversations/5", "{}"), null);
+        bridgeA.preSend(message("/queue/notifications-users1", "{}"), null);
+
+        verifyNoInteractions(templateA, templateB);
+    }
+
+    @Test
+    public void testTopicMessageRelayedToSubscribedNodes() {
+        bridgeA.start();
+        bridgeB.start();
+        subscribe(bridgeB, "s1", "sub-0", "/topic/conversations/5");
+
+        bridgeA.preSend(message("/topic/conversations/5", "{}"), null);
+        relayedTo(templateB, "/topic/conversations/5");
+
+        unsubscribe(bridgeB, "s1", "sub-0");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.topicKey("/topic/conversations/5"))).isEmpty();
+        bridgeA.preSend(message("/topic/conversations/5", "{}"), null);
+        verify(templateB, times(1)).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    public void testRouteRemovedWhenLastSessionCloses() {
+        bridgeA.start();
+        bridgeB.start();
+        String user = ClusterRoutingTable.userKey("1");
+        connect(bridgeB, "s1", "1");
+        connect(bridgeB, "s2", "1");
+        subscribe(bridgeB, "s1", "sub-0", "/topic/conversations/5");
+        assertThat(tableA.nodesFor(user)).containsExactly("b");
+
+        disconnect(bridgeB, "s1");
+        disconnect(bridgeB, "s1"); // reported twice
+        assertThat(tableA.nodesFor(user)).containsExactly("b");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.topicKey("/topic/conversations/5"))).isEmpty();
+
+        disconnect(bridgeB, "s2");
+        assertThat(tableA.nodesFor(user)).isEmpty();
+        assertThat(tableB.localKeys()).isEmpty();
+    }
+
+    @Test
+    public void testHeartbeatAndShutdown() {
+        bridgeA.start();
+        bridgeB.start();
+        connect(bridgeB, "s1", "1");
+
+        // a lost announcement is repaired by the next heartbeat
+        tableA.left("b");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).isEmpty();
+        bridgeB.heartbeat();
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).containsExactly("b");
+
+        bridgeB.stop();
+        assertThat(tableA.nodeCount()).isZero();
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).isEmpty();
+    }
+
+    @Test
+    public void testHelloAnsweredOnlyToTheNewNode() {
+        bridgeA.start();
+        connect(bridgeA, "s1", "1");
+        published.clear();
+
+        bridgeB.start();
+
+        assertThat(published).containsExactly("ws_cluster HELLO", "ws_cluster_b SNAPSHOT");
+        assertThat(tableB.nodesFor(ClusterRoutingTable.userKey("1"))).containsExactly("a");
+    }
+
+    @Test
+    public void testHeartbeatIsADigestWhileRoutesAgree() {
+        bridgeA.start();
+        bridgeB.start();
+        connect(bridgeB, "s1", "1");
+        subscribe(bridgeB, "s1", "sub-0", "/topic/conversations/5");
+        published.clear();
+
+        bridgeA.heartbeat();
+        bridgeB.heartbeat();
+
+        assertThat(published).containsExactly("ws_cluster DIGEST", "ws_cluster DIGEST");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).containsExactly("b");
+    }
+
+    @Test
+    public void testMissedAnnouncementRepairedBySnapshotToThatNodeOnly() {
+        bridgeA.start();
+        bridgeB.start();
+        dropping = true;
+        connect(bridgeB, "s1", "1"); // lost
+        dropping = false;
+        published.clear();
+
+        // node a notices the gap in node b's versions with its next announcement
+        connect(bridgeB, "s2", "2");
+
+        assertThat(published).containsExactly("ws_cluster ADD", "ws_cluster_b SYNC", "ws_cluster_a SNAPSHOT");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).containsExactly("b");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("2"))).containsExactly("b");
+
+        // or with its next heartbeat, if it made no other change
+        dropping = true;
+        disconnect(bridgeB, "s1");
+        dropping = false;
+        published.clear();
+        bridgeB.heartbeat();
+
+        assertThat(published).containsExactly("ws_cluster DIGEST", "ws_cluster_b SYNC", "ws_cluster_a SNAPSHOT");
+        assertThat(tableA.nodesFor(ClusterRoutingTable.userKey("1"))).isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package com.vision.testing.utils;
+
+import com.vision.middleware.utils.AfterCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AfterCommitTest {
+
+    private final List<String> calls = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testOutsideTransactionRunsRightAway() {
+        AfterCommit.run(() -> calls.add("action"), () -> calls.add("completion"));
+
+        assertThat(calls).containsExactly("action", "completion");
+    }
+
+    @Test
+    void testInsideTransactionRunsOnCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(() -> calls.add("action"), () -> calls.add("completion"));
+        assertThat(calls).isEmpty();
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(calls).containsExactly("action", "completion");
+    }
+
+    @Test
+    void testRollbackOnlyRunsCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(() -> calls.add("action"), () -> calls.add("completion"));
+        TransactionSynchronizationUtils.invokeAfterCompletion(
+                TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(calls).containsExactly("completion");
+    }
+}
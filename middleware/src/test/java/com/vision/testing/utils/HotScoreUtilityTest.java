@@ -0,0 +1,47 @@
+package com.vision.testing.utils;
+
+import com.vision.middleware.utils.HotScoreUtility;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotScoreUtilityTest {
+
+    private final Date now = new Date();
+
+    private Date hoursAgo(long hours) {
+        return new Date(now.getTime() - TimeUnit.HOURS.toMillis(hours));
+    }
+
+    @Test
+    void testNewerPostWithSameVotesIsHotter() {
+        double fresh = HotScoreUtility.compute(10, hoursAgo(1), now);
+        double older = HotScoreUtility.compute(10, hoursAgo(20), now);
+
+        assertThat(fresh).isGreaterThan(older);
+    }
+
+    @Test
+    void testFreshPostCanOutrankOlderMorePopularPost() {
+        double fresh = HotScoreUtility.compute(10, hoursAgo(1), now);
+        double older = HotScoreUtility.compute(100, hoursAgo(48), now);
+
+        assertThat(fresh).isGreaterThan(older);
+    }
+
+    @Test
+    void testOutsideActiveWindowScoresZero() {
+        double score = HotScoreUtility.compute(1000, hoursAgo(HotScoreUtility.ACTIVE_WINDOW_HOURS + 1), now);
+
+        assertThat(score).isZero();
+    }
+
+    @Test
+    void testNegativeVotesScoreBelowZero() {
+        assertThat(HotScoreUtility.compute(-5, hoursAgo(1), now)).isNegative();
+        assertThat(HotScoreUtility.compute(0, null, now)).isZero();
+    }
+}